@@ -6,6 +6,7 @@ import android.content.Intent;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 
+import de.shadow578.yetanothervideoplayer.feature.resume.PlaybackPositionStore;
 import de.shadow578.yetanothervideoplayer.ui.CrashScreenActivity;
 import de.shadow578.yetanothervideoplayer.util.Logging;
 
@@ -29,6 +30,9 @@ public class YAVPApp extends Application implements Thread.UncaughtExceptionHand
 
         //setup this class to catch exceptions
         Thread.setDefaultUncaughtExceptionHandler(this);
+
+        //read saved playback positions in the background, so they are ready when the player or media picker needs them
+        PlaybackPositionStore.preload(this);
     }
 
     @Override
@@ -0,0 +1,273 @@
+package de.shadow578.yetanothervideoplayer.feature.controlview;
+
+import android.media.AudioManager;
+import android.view.Choreographer;
+import android.view.Window;
+import android.view.WindowManager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * Applies screen brightness and media volume set by swipe gestures.
+ * Only the latest target values are buffered and applied at most once per Choreographer frame,
+ * so window attributes are set (and the window relayouted) once per frame at most.
+ * The volume index is read from the audio manager once per swipe (see onSwipeStart()), and setStreamVolume is skipped if the index did not change.
+ * Only use on the main thread.
+ */
+public class BrightnessVolumeApplicator
+{
+    /**
+     * Callback for applied values. Called at most once per frame
+     */
+    public interface Callback
+    {
+        /**
+         * called after the brightness was applied
+         *
+         * @param brightness the new brightness value (0.0 - 1.0, 0 = device default)
+         */
+        void onBrightnessApplied(float brightness);
+
+        /**
+         * called after the volume was applied (even if setting it was skipped because the index did not change)
+         *
+         * @param volumePercent the new volume value (0.0 - 1.0)
+         */
+        void onVolumeApplied(float volumePercent);
+    }
+
+    /**
+     * the audio manager to set the volume with. null if not available
+     */
+    @Nullable
+    private final AudioManager audioManager;
+
+    /**
+     * the window to set the brightness of. null if not available
+     */
+    @Nullable
+    private final Window window;
+
+    /**
+     * the callback for applied values
+     */
+    @NonNull
+    private final Callback callback;
+
+    /**
+     * range of the media volume index
+     */
+    private final int minVolume, maxVolume;
+
+    /**
+     * latest brightness and volume targets, not yet applied
+     */
+    private float targetBrightness;
+    private int targetVolume;
+    private boolean hasBrightnessTarget, hasVolumeTarget;
+
+    /**
+     * the media volume index read at the start of the swipe, or last set by this applicator. -1 if it has to be read (again)
+     */
+    private int currentVolume = -1;
+
+    /**
+     * is applyTargets posted to the choreographer?
+     */
+    private boolean isApplyPosted;
+
+    /**
+     * Applies the latest targets on the next frame
+     */
+    private final Choreographer.FrameCallback applyTargets = new Choreographer.FrameCallback()
+    {
+        @Override
+        public void doFrame(long frameTimeNanos)
+        {
+            isApplyPosted = false;
+            if (hasBrightnessTarget)
+            {
+                hasBrightnessTarget = false;
+                applyBrightness(targetBrightness);
+            }
+
+            if (hasVolumeTarget)
+            {
+                hasVolumeTarget = false;
+                applyVolume(targetVolume);
+            }
+        }
+    };
+
+    /**
+     * Create a new applicator
+     *
+     * @param audioManager the audio manager to set the media volume with
+     * @param window       the window to set the brightness of
+     * @param callback     the callback for applied values
+     */
+    public BrightnessVolumeApplicator(@Nullable AudioManager audioManager, @Nullable Window window, @NonNull Callback callback)
+    {
+        this.audioManager = audioManager;
+        this.window = window;
+        this.callback = callback;
+
+        //get volume range once
+        if (audioManager != null)
+        {
+            maxVolume = audioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC);
+            minVolume = Util.SDK_INT > 28 ? audioManager.getStreamMinVolume(AudioManager.STREAM_MUSIC) : 0;
+        }
+        else
+        {
+            maxVolume = 0;
+            minVolume = 0;
+        }
+    }
+
+    //region Brightness
+
+    /**
+     * @return the current brightness, including a target that was not applied yet. (0.0 - 1.0, 0 = device default, negative if not set)
+     */
+    public float getBrightness()
+    {
+        if (hasBrightnessTarget) return targetBrightness;
+        if (window == null) return -1f;
+        return window.getAttributes().screenBrightness;
+    }
+
+    /**
+     * set the brightness, applied on the next frame. replaces the previous target
+     *
+     * @param brightness the brightness to set (0.0 - 1.0, 0 = device default)
+     */
+    public void setBrightness(float brightness)
+    {
+        if (window == null) return;
+        targetBrightness = brightness;
+        hasBrightnessTarget = true;
+        postApply();
+    }
+
+    /**
+     * set the brightness of the window, if it changed
+     *
+     * @param brightness the brightness to set
+     */
+    private void applyBrightness(float brightness)
+    {
+        if (window == null) return;
+
+        //only set the attributes (which relayouts the window) if the value changed
+        WindowManager.LayoutParams windowAttributes = window.getAttributes();
+        if (windowAttributes.screenBrightness != brightness)
+        {
+            windowAttributes.screenBrightness = brightness;
+            window.setAttributes(windowAttributes);
+        }
+
+        callback.onBrightnessApplied(brightness);
+    }
+    //endregion
+
+    //region Volume
+
+    /**
+     * Call when a swipe starts. The volume may have been changed by others (eg. volume keys) since the last swipe,
+     * so it is read from the audio manager again on the next getVolume(). During the swipe, only the value set by this applicator is used
+     */
+    public void onSwipeStart()
+    {
+        if (!hasVolumeTarget)
+            currentVolume = -1;
+    }
+
+    /**
+     * @return the current media volume index, including a target that was not applied yet. 0 if no audio manager is available
+     */
+    public int getVolume()
+    {
+        if (hasVolumeTarget) return targetVolume;
+        if (audioManager == null) return 0;
+
+        //read the volume once per swipe
+        if (currentVolume < 0)
+            currentVolume = audioManager.getStreamVolume(AudioManager.STREAM_MUSIC);
+        return currentVolume;
+    }
+
+    /**
+     * @return the minimum media volume index
+     */
+    public int getMinVolume()
+    {
+        return minVolume;
+    }
+
+    /**
+     * @return the maximum media volume index
+     */
+    public int getMaxVolume()
+    {
+        return maxVolume;
+    }
+
+    /**
+     * set the media volume index, applied on the next frame. replaces the previous target
+     *
+     * @param volume the volume index to set. clamped to the volume range
+     */
+    public void setVolume(int volume)
+    {
+        if (audioManager == null) return;
+        targetVolume = Math.min(Math.max(volume, minVolume), maxVolume);
+        hasVolumeTarget = true;
+        postApply();
+    }
+
+    /**
+     * set the media volume, if the index changed
+     *
+     * @param volume the volume index to set
+     */
+    private void applyVolume(int volume)
+    {
+        if (audioManager == null) return;
+
+        //skip the ipc call if the index did not change since the swipe started or it was last set
+        if (volume != currentVolume)
+            audioManager.setStreamVolume(AudioManager.STREAM_MUSIC, volume, 0);
+
+        currentVolume = volume;
+
+        //calculate volume in percent
+        float volumePercent = maxVolume > minVolume ? ((float) volume - (float) minVolume) / ((float) maxVolume - (float) minVolume) : 0f;
+        callback.onVolumeApplied(volumePercent);
+    }
+    //endregion
+
+    /**
+     * drop all targets that were not applied yet
+     */
+    public void cancel()
+    {
+        Choreographer.getInstance().removeFrameCallback(applyTargets);
+        isApplyPosted = false;
+        hasBrightnessTarget = false;
+        hasVolumeTarget = false;
+    }
+
+    /**
+     * post applyTargets to the next frame, if not already posted
+     */
+    private void postApply()
+    {
+        if (isApplyPosted) return;
+        isApplyPosted = true;
+        Choreographer.getInstance().postFrameCallback(applyTargets);
+    }
+}
@@ -11,23 +11,22 @@ import android.os.Message;
 import android.util.AttributeSet;
 import android.util.SizeF;
 import android.view.View;
-import android.view.Window;
-import android.view.WindowManager;
 import android.widget.FrameLayout;
 import android.widget.TextView;
 
 import androidx.annotation.Nullable;
 
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultControlDispatcher;
 import com.google.android.exoplayer2.Player;
-import com.google.android.exoplayer2.util.Util;
+import com.google.android.exoplayer2.ui.TimeBar;
 
 import de.shadow578.yetanothervideoplayer.R;
 import de.shadow578.yetanothervideoplayer.feature.controlview.ui.CircleRippleAnimationView;
 import de.shadow578.yetanothervideoplayer.feature.controlview.ui.DoubleTapSeekOverlay;
+import de.shadow578.yetanothervideoplayer.feature.playback.InteractiveSeeker;
 import de.shadow578.yetanothervideoplayer.feature.swipe.SwipeGestureListener;
-import de.shadow578.yetanothervideoplayer.util.ConfigKeys;
-import de.shadow578.yetanothervideoplayer.util.ConfigUtil;
+import de.shadow578.yetanothervideoplayer.util.ConfigSnapshot;
 import de.shadow578.yetanothervideoplayer.util.Logging;
 
 /**
@@ -72,9 +71,9 @@ public class GesturePlayerControlView extends FrameLayout
     private TapToHidePlayerControlView playerControls;
 
     /**
-     * The audio manager instance used to adjust media volume by swiping
+     * Applies volume and brightness set by swiping, once per frame
      */
-    private AudioManager audioManager;
+    private BrightnessVolumeApplicator swipeApplicator;
 
     /**
      * The TextView in the center of the screen, used to show information
@@ -97,6 +96,32 @@ public class GesturePlayerControlView extends FrameLayout
     @Nullable
     private Listener listener;
 
+    /**
+     * Seeker for low- latency scrubbing. If null, the player is seeked directly
+     */
+    @Nullable
+    private InteractiveSeeker interactiveSeeker;
+
+    /**
+     * playback position at the first of the stacked double- taps that are queued on the seek overlay. C.TIME_UNSET if none are queued
+     */
+    private long doubleTapSeekBase = C.TIME_UNSET;
+
+    /**
+     * swipe velocity (dp/s) at which a swipe adjusts volume / brightness by exactly one step per swipe threshold
+     */
+    private static final float REFERENCE_SWIPE_VELOCITY = 400f;
+
+    /**
+     * limits of the velocity gain of swipe adjustments: slow swipes allow fine adjustment, fast swipes cover the whole range quickly
+     */
+    private static final float MIN_SWIPE_GAIN = 0.5f, MAX_SWIPE_GAIN = 3f;
+
+    /**
+     * volume steps collected from swipes that were not applied yet. fractions are kept for the next swipe
+     */
+    private float pendingVolumeSteps;
+
     //region ~~ Message Handler (delayHandler) ~~
 
     /**
@@ -115,6 +140,11 @@ public class GesturePlayerControlView extends FrameLayout
         private static final int SET_INFO_TEXT_INVISIBLE = 1;
     }
 
+    /**
+     * origin of the double- tap ripple animation, reused for every double- tap
+     */
+    private final PointF rippleOrigin = new PointF();
+
     /**
      * Shared handler that can be used to invoke methods and/or functions with a delay,
      */
@@ -190,6 +220,29 @@ public class GesturePlayerControlView extends FrameLayout
 
         //setup gesture controls
         setupGestures();
+
+        //seek once stacked double- taps settled
+        if (seekOverlay != null)
+            seekOverlay.setSeekListener(new DoubleTapSeekOverlay.SeekListener()
+            {
+                @Override
+                public void onSeekSettled(long seekOffsetMs)
+                {
+                    //seek relative to where the user started tapping, not where playback is now
+                    long base = doubleTapSeekBase;
+                    doubleTapSeekBase = C.TIME_UNSET;
+                    if (base == C.TIME_UNSET)
+                        seekPlayerRelative(seekOffsetMs);
+                    else
+                        seekPlayerTo(base + seekOffsetMs);
+                }
+            });
+
+        //seek while scrubbing the progress bar, and let the seeker do the final seek of the PlayerControlView
+        TimeBar timeBar = playerControls.findViewById(R.id.exo_progress);
+        if (timeBar != null)
+            timeBar.addListener(new ScrubListener());
+        playerControls.setControlDispatcher(new ScrubControlDispatcher());
     }
     //endregion
 
@@ -238,6 +291,17 @@ public class GesturePlayerControlView extends FrameLayout
         playerControls.hide();
     }
 
+    /**
+     * set the seeker used for low- latency scrubbing
+     *
+     * @param seeker the seeker to use. if null, seeks are done directly on the player
+     */
+    public GesturePlayerControlView setInteractiveSeeker(@Nullable InteractiveSeeker seeker)
+    {
+        interactiveSeeker = seeker;
+        return this;
+    }
+
     /**
      * set the listener for volume and brightness
      *
@@ -248,6 +312,16 @@ public class GesturePlayerControlView extends FrameLayout
         this.listener = listener;
     }
 
+    @Override
+    protected void onDetachedFromWindow()
+    {
+        super.onDetachedFromWindow();
+
+        //drop swipe adjustments that were not applied yet
+        swipeApplicator.cancel();
+        pendingVolumeSteps = 0;
+    }
+
     //endregion
 
     //region Swipe Gestures
@@ -257,71 +331,84 @@ public class GesturePlayerControlView extends FrameLayout
      */
     private void setupGestures()
     {
-        //get audio manager
-        audioManager = (AudioManager) getContext().getSystemService(Context.AUDIO_SERVICE);
-
-        //get configuration values needed in swipe handler (avoid looking up values constantly)
-        final boolean enableSwipeGestures = ConfigUtil.getConfigBoolean(getContext(), ConfigKeys.KEY_SWIPE_GESTURES_EN, R.bool.DEF_SWIPE_GESTURES_EN);
-        final int touchDecayTime = ConfigUtil.getConfigInt(getContext(), ConfigKeys.KEY_SWIPE_DECAY_TIME, R.integer.DEF_TOUCH_DECAY_TIME);
-        final int swipeFlingThreshold = ConfigUtil.getConfigInt(getContext(), ConfigKeys.KEY_SWIPE_FLING_THRESHOLD, R.integer.DEF_SWIPE_FLING_THRESHOLD);
-        final int doubleTapDecayTime = ConfigUtil.getConfigInt(getContext(), ConfigKeys.KEY_DOUBLE_TAP_DECAY_TIME, R.integer.DEF_DOUBLE_TAP_DECAY_TIME);
-        final int doubleTapMaxDistance = ConfigUtil.getConfigInt(getContext(), ConfigKeys.KEY_DOUBLE_TAP_MAX_RADIUS, R.integer.DEF_DOUBLE_TAP_MAX_RADIUS);
+        //create applicator for volume and brightness, using the audio manager and the window of the host activity
+        AudioManager audioManager = (AudioManager) getContext().getSystemService(Context.AUDIO_SERVICE);
+        if (audioManager == null)
+            Logging.logW("audioManager is null, cannot adjust media volume!");
 
-        final RectF swipeIgnore = new RectF(ConfigUtil.getConfigInt(getContext(), ConfigKeys.KEY_SWIPE_DEAD_ZONE_RECT_LEFT, R.integer.DEF_SWIPE_DEAD_ZONE_LEFT),
-                ConfigUtil.getConfigInt(getContext(), ConfigKeys.KEY_SWIPE_DEAD_ZONE_RECT_TOP, R.integer.DEF_SWIPE_DEAD_ZONE_TOP),
-                ConfigUtil.getConfigInt(getContext(), ConfigKeys.KEY_SWIPE_DEAD_ZONE_RECT_RIGHT, R.integer.DEF_SWIPE_DEAD_ZONE_RIGHT),
-                ConfigUtil.getConfigInt(getContext(), ConfigKeys.KEY_SWIPE_DEAD_ZONE_RECT_BOTTOM, R.integer.DEF_SWIPE_DEAD_ZONE_BOTTOM));
+        Activity hostActivity = getHostActivity();
+        swipeApplicator = new BrightnessVolumeApplicator(audioManager, hostActivity != null ? hostActivity.getWindow() : null, new SwipeApplicatorCallback());
 
-        final float brightnessAdjustStep = ConfigUtil.getConfigInt(getContext(), ConfigKeys.KEY_BRIGHTNESS_ADJUST_STEP, R.integer.DEF_BRIGHTNESS_ADJUST_STEP) / 100.0f;
-        final float hardSwipeThreshold = ConfigUtil.getConfigInt(getContext(), ConfigKeys.KEY_BRIGHTNESS_HARD_SWIPE_THRESHOLD, R.integer.DEF_BRIGHTNESS_HARD_SWIPE_THRESHOLD);
-        final boolean hardSwipeEnable = ConfigUtil.getConfigBoolean(getContext(), ConfigKeys.KEY_BRIGHTNESS_HARD_SWIPE_EN, R.bool.DEF_BRIGHTNESS_HARD_SWIPE_EN);
+        //get configuration values needed in swipe handler (avoid looking up values constantly)
+        ConfigSnapshot config = ConfigSnapshot.get(getContext());
+        final boolean enableSwipeGestures = config.swipeGesturesEnable;
+        final int touchDecayTime = config.swipeDecayTime;
+        final int swipeFlingThreshold = config.swipeFlingThreshold;
+        final int doubleTapDecayTime = config.doubleTapDecayTime;
+        final int doubleTapMaxDistance = config.doubleTapMaxRadius;
+
+        final RectF swipeIgnore = new RectF(config.swipeDeadZoneLeft,
+                config.swipeDeadZoneTop,
+                config.swipeDeadZoneRight,
+                config.swipeDeadZoneBottom);
+
+        final float brightnessAdjustStep = config.brightnessAdjustStep / 100.0f;
+        final float hardSwipeThreshold = config.brightnessHardSwipeThreshold;
+        final boolean hardSwipeEnable = config.brightnessHardSwipeEnable;
+        final int seekIncrement = config.seekButtonIncrement;
+        final float density = getResources().getDisplayMetrics().density;
 
         //init and set listener
         setOnTouchListener(new SwipeGestureListener(touchDecayTime, doubleTapDecayTime, swipeFlingThreshold, swipeFlingThreshold, doubleTapMaxDistance, swipeIgnore)
         {
+            /**
+             * second touch position of a double- tap in px, reused for every double- tap
+             */
+            private final PointF secondTouchPosPx = new PointF();
+
+            @Override
+            protected void onSwipeStart(PointF firstContact, SizeF screenSize)
+            {
+                //pick up volume changes made since the last swipe (eg. by volume keys)
+                swipeApplicator.onSwipeStart();
+            }
+
             @Override
-            public void onVerticalSwipe(float deltaY, PointF swipeStart, PointF swipeEnd, PointF firstContact, SizeF screenSize)
+            public void onVerticalSwipe(float deltaY, float velocityY, PointF swipeStart, PointF swipeEnd, PointF firstContact, SizeF screenSize)
             {
                 //ignore if swipe gestures are disabled
                 if (!enableSwipeGestures)
                 {
-                    super.onVerticalSwipe(deltaY, swipeStart, swipeEnd, firstContact, screenSize);
+                    super.onVerticalSwipe(deltaY, velocityY, swipeStart, swipeEnd, firstContact, screenSize);
                     return;
                 }
 
+                //scale the adjustment with the distance swiped (in swipe thresholds) and the velocity of the swipe
+                float gain = Math.min(Math.max(Math.abs(velocityY) / REFERENCE_SWIPE_VELOCITY, MIN_SWIPE_GAIN), MAX_SWIPE_GAIN);
+                float steps = (deltaY / swipeFlingThreshold) * gain;
+
                 //check which screen size the swipe originated from
                 if (isRightScreenSide(firstContact, screenSize))
                 {
-                    //swipe on right site of screen, adjust volume
-                    if (deltaY > 0.0)
+                    //swipe on right site of screen, adjust volume by whole steps
+                    //(swipe up increases, swipe down decreases volume)
+                    pendingVolumeSteps += steps;
+                    int volumeSteps = (int) pendingVolumeSteps;
+                    if (volumeSteps != 0)
                     {
-                        //swipe up, increase volume
-                        adjustVolume(true);
-                    }
-                    else
-                    {
-                        //swipe down, decrease volume
-                        adjustVolume(false);
+                        swipeApplicator.setVolume(swipeApplicator.getVolume() + volumeSteps);
+                        pendingVolumeSteps -= volumeSteps;
                     }
                 }
                 else
                 {
                     //swipe on left site of screen, adjust brightness
-                    if (deltaY > 0)
-                    {
-                        //swipe up, increase brightness
-                        adjustScreenBrightness(brightnessAdjustStep, false);
-                    }
-                    else
-                    {
-                        //swipe down, decrease brightness:
-                        //check if "hard" swipe, override hard swipe if not enabled
-                        boolean hardSwipe = hardSwipeEnable || Math.abs(deltaY) > hardSwipeThreshold;
-
+                    //swipe down decreases brightness:
+                    //check if "hard" swipe, override hard swipe if not enabled
+                    boolean hardSwipe = deltaY < 0 && (hardSwipeEnable || Math.abs(deltaY) > hardSwipeThreshold);
 
-                        //allow setting brightness to 0 when hard swiping (but ONLY then)
-                        adjustScreenBrightness(-brightnessAdjustStep, hardSwipe);
-                    }
+                    //allow setting brightness to 0 when hard swiping (but ONLY then)
+                    adjustScreenBrightness(steps * brightnessAdjustStep, hardSwipe);
                 }
             }
 
@@ -343,10 +430,10 @@ public class GesturePlayerControlView extends FrameLayout
             protected void onDoubleClick(float distanceSquared, long tapDeltaTime, PointF firstTouchPos, PointF secondTouchPos, SizeF screenSize)
             {
                 //get fast- forward and rewind increments
-                int seekAmount = ConfigUtil.getConfigInt(getContext(), ConfigKeys.KEY_SEEK_BUTTON_INCREMENT, R.integer.DEF_SEEK_BUTTON_INCREMENT);
+                int seekAmount = seekIncrement;
 
                 //calculate second touch position in px (current is in dp) -> for animations
-                PointF secondTouchPosPx = new PointF(dpToPx(secondTouchPos.x, getContext()), dpToPx(secondTouchPos.y, getContext()));
+                secondTouchPosPx.set(secondTouchPos.x * density, secondTouchPos.y * density);
 
                 //check on which side of the screen the double click ended
                 if (isRightScreenSide(secondTouchPos, screenSize))
@@ -363,21 +450,19 @@ public class GesturePlayerControlView extends FrameLayout
                     seekAmount *= -1;
                 }
 
-                //get and check player for seeking
-                Player player = playerControls.getPlayer();
-                if (player == null) return;
-
-                //calculate position to seek to
-                long seekPositionAbs = player.getCurrentPosition() + seekAmount;
+                //merge stacked seeks into a single seek once the user stops tapping
+                if (seekOverlay != null)
+                {
+                    //remember the position at the first tap, the merged seek is relative to it
+                    Player player = playerControls.getPlayer();
+                    if (!seekOverlay.isSeekPending() || doubleTapSeekBase == C.TIME_UNSET)
+                        doubleTapSeekBase = player == null ? C.TIME_UNSET : player.getCurrentPosition();
 
-                //limit seeking to bounds of player
-                long playDuration = player.getDuration();
-                if (seekPositionAbs < 0) seekPositionAbs = 0;
-                if (seekPositionAbs > playDuration && playDuration != C.TIME_UNSET)
-                    seekPositionAbs = playDuration;
+                    seekOverlay.queueSeek(seekAmount);
+                    return;
+                }
 
-                //seek the player
-                player.seekTo(seekPositionAbs);
+                seekPlayerRelative(seekAmount);
             }
 
             /**
@@ -393,82 +478,140 @@ public class GesturePlayerControlView extends FrameLayout
     }
 
     /**
-     * Adjust the screen brightness
+     * Routes the seek the PlayerControlView does when scrubbing stops to the interactive seeker,
+     * so the scrub ends with a single exact seek instead of a second seek with the keyframe- snapping seek parameters of the scrub
+     */
+    private class ScrubControlDispatcher extends DefaultControlDispatcher
+    {
+        @Override
+        public boolean dispatchSeekTo(Player player, int windowIndex, long positionMs)
+        {
+            //seek normally if not scrubbing (eg. rewind button) or seeking to another window
+            if (interactiveSeeker == null || !interactiveSeeker.isInteracting() || windowIndex != player.getCurrentWindowIndex())
+                return super.dispatchSeekTo(player, windowIndex, positionMs);
+
+            //finish the interaction with a exact seek to the final position
+            interactiveSeeker.finish(positionMs);
+            return true;
+        }
+    }
+
+    /**
+     * Seeks to the scrub position while the user drags the progress bar.
+     * The PlayerControlView itself only seeks when scrubbing stops, through the ScrubControlDispatcher
+     */
+    private class ScrubListener implements TimeBar.OnScrubListener
+    {
+        @Override
+        public void onScrubStart(TimeBar timeBar, long position)
+        {
+            if (interactiveSeeker != null)
+                interactiveSeeker.scrubTo(position);
+        }
+
+        @Override
+        public void onScrubMove(TimeBar timeBar, long position)
+        {
+            if (interactiveSeeker != null)
+                interactiveSeeker.scrubTo(position);
+        }
+
+        @Override
+        public void onScrubStop(TimeBar timeBar, long position, boolean canceled)
+        {
+            //the PlayerControlView already finished the interaction through the ScrubControlDispatcher, unless the scrub was canceled
+            //(it does not seek then). finish() does nothing if the interaction was finished, so this never seeks twice
+            if (interactiveSeeker != null)
+                interactiveSeeker.finish();
+        }
+    }
+
+    /**
+     * Adjust the screen brightness. The brightness is applied on the next frame
      *
      * @param adjust    the amount to adjust the brightness by. (range of brightness is 0.0 to 1.0)
      * @param allowZero if set to true, setting the brightness to zero (=device default/auto) is allowed. Otherwise, minimum brightness is clamped to 0.01
      */
     private void adjustScreenBrightness(float adjust, boolean allowZero)
     {
-        //get host activity and it's window
-        Activity hostActivity = getHostActivity();
-        if (hostActivity == null) return;
-
-        //get and check window
-        Window hostWindow = hostActivity.getWindow();
-        if (hostWindow == null) return;
-
-        //get window attributes
-        WindowManager.LayoutParams windowAttributes = hostWindow.getAttributes();
+        //get current brightness, including the target not yet applied
+        float brightness = swipeApplicator.getBrightness();
 
         //check if brightness is already zero (overrides allowZero)
-        boolean alreadyZero = windowAttributes.screenBrightness == 0.0f;
+        boolean alreadyZero = brightness == 0.0f;
 
-        //modify screen brightness attribute withing range
+        //modify screen brightness withing range
         //allow setting it to zero if allowZero is set or the value was previously zero too
-        windowAttributes.screenBrightness = Math.min(Math.max(windowAttributes.screenBrightness + adjust, ((allowZero || alreadyZero) ? 0.0f : 0.01f)), 1f);
-
-        //set changed window attributes
-        hostWindow.setAttributes(windowAttributes);
-
-        //show info text for brightness
-        String brightnessStr = ((int) Math.floor(windowAttributes.screenBrightness * 100)) + "%";
-        if (windowAttributes.screenBrightness == 0)
-        {
-            brightnessStr = getContext().getString(R.string.info_brightness_auto);
-        }
-        showInfoText(getContext().getString(R.string.info_brightness_change), brightnessStr);
-
-        //call listener
-        if (listener != null) listener.onBrightnessChange(windowAttributes.screenBrightness);
+        swipeApplicator.setBrightness(Math.min(Math.max(brightness + adjust, ((allowZero || alreadyZero) ? 0.0f : 0.01f)), 1f));
     }
 
     /**
-     * Adjust the media volume by one volume step
-     *
-     * @param raise should the volume be raises (=true) or lowered (=false) by one step?
+     * Shows info text and calls the listener for brightness and volume applied by the swipe applicator
      */
-    private void adjustVolume(boolean raise)
+    private class SwipeApplicatorCallback implements BrightnessVolumeApplicator.Callback
     {
-        //check audioManager
-        if (audioManager == null)
+        @Override
+        public void onBrightnessApplied(float brightness)
         {
-            Logging.logW("audioManager is null, cannot adjust media volume!");
-            return;
-        }
+            //show info text for brightness
+            String brightnessStr = ((int) Math.floor(brightness * 100)) + "%";
+            if (brightness == 0)
+            {
+                brightnessStr = getContext().getString(R.string.info_brightness_auto);
+            }
+            showInfoText(getContext().getString(R.string.info_brightness_change), brightnessStr);
 
-        //adjusts volume without ui
-        audioManager.adjustStreamVolume(AudioManager.STREAM_MUSIC, (raise ? AudioManager.ADJUST_RAISE : AudioManager.ADJUST_LOWER), 0);
+            //call listener
+            if (listener != null) listener.onBrightnessChange(brightness);
+        }
 
-        //show info text for volume:
-        //get volume + range
-        int currentVolume = audioManager.getStreamVolume(AudioManager.STREAM_MUSIC);
-        int maxVolume = audioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC);
-        int minVolume = 0;
-        if (Util.SDK_INT > 28)
+        @Override
+        public void onVolumeApplied(float volumePercent)
         {
-            //get minimum stream volume if above api28
-            minVolume = audioManager.getStreamMinVolume(AudioManager.STREAM_MUSIC);
+            //show info text
+            showInfoText(getContext().getString(R.string.info_volume_change), (int) (volumePercent * 100));
+
+            //call listener
+            if (listener != null) listener.onVolumeChange(volumePercent);
         }
+    }
 
-        //calculate volume in percent
-        float volumePercent = ((float) currentVolume - (float) minVolume) / ((float) maxVolume - (float) minVolume);
+    /**
+     * Seek the player relative to the current position, with a single exact seek
+     *
+     * @param seekOffsetMs the offset to seek by, in ms
+     */
+    private void seekPlayerRelative(long seekOffsetMs)
+    {
+        Player player = playerControls.getPlayer();
+        if (player == null) return;
 
-        //show info text
-        showInfoText(getContext().getString(R.string.info_volume_change), (int) (volumePercent * 100));
+        seekPlayerTo(player.getCurrentPosition() + seekOffsetMs);
+    }
 
-        //call listener
-        if (listener != null) listener.onVolumeChange(volumePercent);
+    /**
+     * Seek the player to a position, with a single exact seek
+     *
+     * @param seekPositionAbs the position to seek to, in ms. limited to the bounds of the media
+     */
+    private void seekPlayerTo(long seekPositionAbs)
+    {
+        //get and check player for seeking
+        Player player = playerControls.getPlayer();
+        if (player == null) return;
+
+        //drop any interaction (eg. scrubbing), this seek replaces it
+        if (interactiveSeeker != null && interactiveSeeker.isInteracting())
+            interactiveSeeker.cancel();
+
+        //limit seeking to bounds of player
+        long playDuration = player.getDuration();
+        if (seekPositionAbs < 0) seekPositionAbs = 0;
+        if (seekPositionAbs > playDuration && playDuration != C.TIME_UNSET)
+            seekPositionAbs = playDuration;
+
+        //seek the player
+        player.seekTo(seekPositionAbs);
     }
 
     /**
@@ -484,9 +627,12 @@ public class GesturePlayerControlView extends FrameLayout
         if (seekOverlay != null)
             seekOverlay.showSeekAnimation(isForwardSeek, (int) Math.floor(seekAmountS));
 
-        //show ripple effect
+        //show ripple effect (the origin is copied, so the point can be reused)
         if (rippleAnimation != null)
-            rippleAnimation.startAnimationAt(new PointF(isForwardSeek ? getWidth() : 0, tapPosPx.y));
+        {
+            rippleOrigin.set(isForwardSeek ? getWidth() : 0, tapPosPx.y);
+            rippleAnimation.startAnimationAt(rippleOrigin);
+        }
     }
 
     //endregion
@@ -516,7 +662,7 @@ public class GesturePlayerControlView extends FrameLayout
         infoTextView.setVisibility(View.VISIBLE);
 
         //hide text after delay
-        int infoTextDuration = ConfigUtil.getConfigInt(getContext(), ConfigKeys.KEY_INFO_TEXT_DURATION, R.integer.DEF_INFO_TEXT_DURATION);
+        int infoTextDuration = ConfigSnapshot.get(getContext()).infoTextDuration;
         delayHandler.sendEmptyMessageDelayed(Messages.START_FADE_OUT_INFO_TEXT, infoTextDuration);
     }
 
@@ -20,7 +20,9 @@ import androidx.annotation.Nullable;
 import de.shadow578.yetanothervideoplayer.R;
 
 /**
- * View that creates a custom ripple effect on one side of the screen
+ * View that creates a custom ripple effect on one side of the screen.
+ * The ripple redraws the view every frame; only the alpha fade- out runs on a hardware layer, as it does not change the content.
+ * Animation frames do not allocate.
  */
 @SuppressWarnings({"unused", "UnusedReturnValue"})
 public class CircleRippleAnimationView extends View implements ValueAnimator.AnimatorUpdateListener, ValueAnimator.AnimatorListener
@@ -70,6 +72,22 @@ public class CircleRippleAnimationView extends View implements ValueAnimator.Ani
      * the currently active fade- out animation
      */
     private ViewPropertyAnimator currentFadeAnimation;
+
+    /**
+     * end action of the fade- out animation, reused for every fade- out
+     */
+    private final Runnable onFadeOutEnd = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            //make self fully invisible
+            setVisibility(GONE);
+
+            //reset alpha for the next time
+            setAlpha(1f);
+        }
+    };
     //endregion
 
     //region Variables
@@ -89,6 +107,13 @@ public class CircleRippleAnimationView extends View implements ValueAnimator.Ani
      */
     private final Path arcPath = new Path();
 
+    /**
+     * width, height, arc size and side the arc path was last built for. the path is only rebuilt if one of them changes
+     */
+    private int arcPathWidth = -1, arcPathHeight = -1;
+    private float arcPathSize = -1;
+    private boolean arcPathLeft;
+
     /**
      * the animator that animates the ripple circle
      */
@@ -122,7 +147,7 @@ public class CircleRippleAnimationView extends View implements ValueAnimator.Ani
     /**
      * the position of the ripple circles origin
      */
-    private PointF rippleOrigin = new PointF(0f, 0f);
+    private final PointF rippleOrigin = new PointF(0f, 0f);
 
     /**
      * should the ripple circle and arc be faded out before going invisible?
@@ -308,8 +333,8 @@ public class CircleRippleAnimationView extends View implements ValueAnimator.Ani
      */
     public CircleRippleAnimationView setRippleOrigin(PointF newPosition)
     {
-        //set position of ripple origin
-        rippleOrigin = newPosition;
+        //set position of ripple origin (copied, so the caller can reuse the point)
+        rippleOrigin.set(newPosition);
 
         //update background path for new position
         updateArcPath();
@@ -401,7 +426,8 @@ public class CircleRippleAnimationView extends View implements ValueAnimator.Ani
     @Override
     public void onAnimationUpdate(ValueAnimator valueAnimator)
     {
-        updateRippleRadiusAndInvalidate((float) valueAnimator.getAnimatedValue());
+        //animated values are 0 to 1, so the fraction is the value (without unboxing it)
+        updateRippleRadiusAndInvalidate(valueAnimator.getAnimatedFraction());
     }
     //endregion
 
@@ -426,19 +452,8 @@ public class CircleRippleAnimationView extends View implements ValueAnimator.Ani
     {
         if (enableFadeOut)
         {
-            //fade out, then go invisible
-            currentFadeAnimation = animate().alpha(0f).setDuration(fadeOutDuration).withEndAction(new Runnable()
-            {
-                @Override
-                public void run()
-                {
-                    //make self fully invisible
-                    setVisibility(GONE);
-
-                    //reset alpha for the next time
-                    setAlpha(1f);
-                }
-            });
+            //fade out, then go invisible. only the alpha changes, so the fade is rendered from a hardware layer
+            currentFadeAnimation = animate().alpha(0f).setDuration(fadeOutDuration).withLayer().withEndAction(onFadeOutEnd);
         }
         else
         {
@@ -514,6 +529,16 @@ public class CircleRippleAnimationView extends View implements ValueAnimator.Ani
      */
     private void updateArcPath()
     {
+        //only rebuild if size or side changed
+        boolean isLeft = isRippleOriginLeft();
+        if (arcPathWidth == getWidth() && arcPathHeight == getHeight() && arcPathSize == arcSize && arcPathLeft == isLeft)
+            return;
+
+        arcPathWidth = getWidth();
+        arcPathHeight = getHeight();
+        arcPathSize = arcSize;
+        arcPathLeft = isLeft;
+
         //reset previous path
         arcPath.reset();
 
@@ -549,7 +574,7 @@ public class CircleRippleAnimationView extends View implements ValueAnimator.Ani
         //calculate new radius of the ripple circle
         currentRippleRadius = ((maxRippleRadius - minRippleRadius) * radiusFactor) + minRippleRadius;
 
-        //invalidate the view to redraw
+        //redraw view
         invalidate();
     }
 
@@ -3,10 +3,8 @@ package de.shadow578.yetanothervideoplayer.feature.controlview.ui;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.drawable.AnimationDrawable;
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Message;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.widget.FrameLayout;
 import android.widget.TextView;
 
@@ -14,19 +12,33 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import de.shadow578.yetanothervideoplayer.R;
-import de.shadow578.yetanothervideoplayer.util.Logging;
 
 
 /**
  * View that contains handles animations for double- tap seeking.
  * Just put this view in your layout with width & height set to match_parent and call the appropriate functions to play the animations - it's that simple!
+ * All animations (seek arrows, fade- out, seek stack reset) run on a single timeline that updates on Choreographer frames while something is shown.
+ * Seeks queued with queueSeek() are merged and reported once to the {@link SeekListener} when the user stopped tapping.
  */
 @SuppressWarnings({"unused", "UnusedReturnValue"})
 public class DoubleTapSeekOverlay extends FrameLayout
 {
+    /**
+     * Listener for merged seeks
+     */
+    public interface SeekListener
+    {
+        /**
+         * called once the user stopped double- tapping, with all seeks queued since the last call merged
+         *
+         * @param seekOffsetMs the merged offset to seek by, in ms
+         */
+        void onSeekSettled(long seekOffsetMs);
+    }
+
     //region Constants
     /**
-     * After how many milliseconds the seek amount is reset (after a reset is requested)
+     * After how many milliseconds the seek amount is reset (after the seek text was hidden)
      */
     @SuppressWarnings("FieldCanBeLocal")
     private final long SEEK_AMOUNT_RESET_DELAY_MS = 1000;
@@ -76,6 +88,37 @@ public class DoubleTapSeekOverlay extends FrameLayout
      */
     private AnimationDrawable seekReverseAnimation;
 
+    /**
+     * timeline state of the forward and reverse seek animation
+     */
+    private SeekSide forwardSide, reverseSide;
+
+    /**
+     * listener for merged seeks
+     */
+    @Nullable
+    private SeekListener seekListener;
+
+    /**
+     * offset of all seeks queued since the last settled seek, in ms
+     */
+    private long pendingSeekMs = 0;
+
+    /**
+     * was a seek queued that was not yet reported?
+     */
+    private boolean hasPendingSeek = false;
+
+    /**
+     * time of the last double- tap (showSeekAnimation) and the last queued seek, System.nanoTime()
+     */
+    private long lastTapNanos, lastQueuedSeekNanos;
+
+    /**
+     * is the timeline posted to the choreographer?
+     */
+    private boolean isTimelinePosted = false;
+
     /**
      * The last direction we seeked to (used for seek amount stacking)
      */
@@ -108,139 +151,213 @@ public class DoubleTapSeekOverlay extends FrameLayout
     private long textFadeOutDuration = DEFAULT_FADE_DURATION;
     //endregion
 
-    //region Message Handler
+    //region Timeline
 
     /**
-     * Messages used by the delayedHandler
+     * Animation state of the seek text and arrows for one direction
      */
-    private static final class Messages
+    private static final class SeekSide
     {
         /**
-         * Message to start fading out the textview for forward seeking.
-         * After the fade- out is finished, STOP_SEEK_FORWARD_ANIM is called
+         * the text view of this side
+         */
+        private final TextView text;
+
+        /**
+         * the animated arrows on the text view. frames are selected by the timeline, the drawable never runs on its own
          */
-        private static final int FADE_SEEK_FORWARD_ANIM = 0;
+        private final AnimationDrawable animation;
 
         /**
-         * Message to start fading out the textview for reverse seeking.
-         * After the fade- out is finished, STOP_SEEK_REVERSE_ANIM is called
+         * duration of one cycle through all frames of the animation, in ms
          */
-        private static final int FADE_SEEK_REVERSE_ANIM = 1;
+        private final long cycleMs;
 
         /**
-         * Message to stop the forward seeking animation and hide the textview for forward seeking (instantly, without animation)
+         * is this side shown?
          */
-        private static final int STOP_SEEK_FORWARD_ANIM = 2;
+        private boolean active;
 
         /**
-         * Message to stop the reverse seeking animation and hide the textview for reverse seeking (instantly, without animation)
+         * when this side was shown, System.nanoTime()
          */
-        private static final int STOP_SEEK_REVERSE_ANIM = 3;
+        private long startNanos;
+
+        /**
+         * the currently selected animation frame
+         */
+        private int frame;
+
+        /**
+         * the current alpha of the text view
+         */
+        private float alpha = 1f;
+
+        private SeekSide(@NonNull TextView text, @NonNull AnimationDrawable animation)
+        {
+            this.text = text;
+            this.animation = animation;
+
+            long cycle = 0;
+            for (int i = 0; i < animation.getNumberOfFrames(); i++)
+                cycle += animation.getDuration(i);
+            cycleMs = Math.max(cycle, 1);
+        }
 
         /**
-         * Message to reset the seek amount stack
+         * get the frame that is shown at a time of the animation
+         *
+         * @param elapsedMs time since the animation started, in ms
+         * @return the index of the frame
          */
-        private static final int RESET_SEEK_AMOUNT_STACK = 4;
+        private int getFrameAt(long elapsedMs)
+        {
+            long t = elapsedMs % cycleMs;
+            for (int i = 0; i < animation.getNumberOfFrames(); i++)
+            {
+                t -= animation.getDuration(i);
+                if (t < 0) return i;
+            }
+            return 0;
+        }
     }
 
     /**
-     * Handler that can be used to delay actions
+     * The timeline, updates all animations once per frame
      */
-    private final Handler delayedHandler = new Handler(Looper.getMainLooper())
+    private final Choreographer.FrameCallback timeline = new Choreographer.FrameCallback()
     {
         @Override
-        public void handleMessage(Message msg)
+        public void doFrame(long frameTimeNanos)
         {
-            switch (msg.what)
+            isTimelinePosted = false;
+            updateTimeline(frameTimeNanos);
+        }
+    };
+
+    /**
+     * update all animations and report the merged seek once it settled.
+     * Keeps itself posted while anything is shown or a seek is pending.
+     *
+     * @param nowNanos the time of the frame, System.nanoTime()
+     */
+    private void updateTimeline(long nowNanos)
+    {
+        boolean running = updateSide(forwardSide, nowNanos);
+        running |= updateSide(reverseSide, nowNanos);
+
+        //report the merged seek once the user stopped tapping
+        if (hasPendingSeek && nanosToMs(nowNanos - lastQueuedSeekNanos) >= animationDurationMs)
+        {
+            long seekOffset = pendingSeekMs;
+            pendingSeekMs = 0;
+            hasPendingSeek = false;
+            if (seekListener != null)
+                seekListener.onSeekSettled(seekOffset);
+        }
+
+        if (running || hasPendingSeek)
+            postTimeline();
+    }
+
+    /**
+     * update the animation frame and fade of a side, and hide it once finished
+     *
+     * @param side     the side to update
+     * @param nowNanos the time of the frame, System.nanoTime()
+     * @return is the side still shown?
+     */
+    private boolean updateSide(@Nullable SeekSide side, long nowNanos)
+    {
+        if (side == null || !side.active) return false;
+
+        //select the current frame, only if it changed
+        int frame = side.getFrameAt(nanosToMs(nowNanos - side.startNanos));
+        if (frame != side.frame)
+        {
+            side.animation.selectDrawable(frame);
+            side.frame = frame;
+        }
+
+        //stay fully visible for the animation duration after the last tap
+        long sinceTapMs = nanosToMs(nowNanos - lastTapNanos);
+        if (sinceTapMs < animationDurationMs) return true;
+
+        //then fade out (if enabled) and hide
+        long fadeMs = sinceTapMs - animationDurationMs;
+        if (enableFadeOutTexts && fadeMs < textFadeOutDuration)
+        {
+            float alpha = 1f - ((float) fadeMs / textFadeOutDuration);
+            if (alpha != side.alpha)
             {
-                case Messages.FADE_SEEK_FORWARD_ANIM:
-                {
-                    //start fade out animation
-                    seekForwardText.animate().alpha(0f).setDuration(textFadeOutDuration).withEndAction(new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            //make invisible after animation
-                            delayedHandler.sendEmptyMessage(Messages.STOP_SEEK_FORWARD_ANIM);
-                        }
-                    });
-                    break;
-                }
-                case Messages.FADE_SEEK_REVERSE_ANIM:
-                {
-                    //start fade out animation
-                    seekReverseText.animate().alpha(0f).setDuration(textFadeOutDuration).withEndAction(new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            //make invisible after animation
-                            delayedHandler.sendEmptyMessage(Messages.STOP_SEEK_REVERSE_ANIM);
-                        }
-                    });
-                    break;
-                }
-                case Messages.STOP_SEEK_FORWARD_ANIM:
-                {
-                    //stop the animation and reset it to frame 0
-                    if (seekForwardAnimation != null)
-                    {
-                        seekForwardAnimation.stop();
-                        seekForwardAnimation.selectDrawable(0);
-                    }
-
-                    if (seekForwardText != null)
-                    {
-                        //hide the forward seeking text
-                        seekForwardText.setVisibility(GONE);
-
-                        //reset alpha after animation
-                        seekForwardText.setAlpha(1f);
-                    }
-
-                    //reset seek amount if last seek direction was forward
-                    if (lastSeekDirection)
-                        delayedHandler.sendEmptyMessageDelayed(Messages.RESET_SEEK_AMOUNT_STACK, SEEK_AMOUNT_RESET_DELAY_MS);
-                    break;
-                }
-                case Messages.STOP_SEEK_REVERSE_ANIM:
-                {
-                    //stop the animation and reset it to frame 0
-                    if (seekReverseAnimation != null)
-                    {
-                        seekReverseAnimation.stop();
-                        seekReverseAnimation.selectDrawable(0);
-                    }
-
-                    if (seekReverseText != null)
-                    {
-                        //hide the reverse seeking text
-                        seekReverseText.setVisibility(GONE);
-
-                        //reset alpha after animation
-                        seekReverseText.setAlpha(1f);
-                    }
-
-                    //reset seek amount if last seek direction was backwards
-                    if (!lastSeekDirection)
-                        delayedHandler.sendEmptyMessageDelayed(Messages.RESET_SEEK_AMOUNT_STACK, SEEK_AMOUNT_RESET_DELAY_MS);
-                    break;
-                }
-                case Messages.RESET_SEEK_AMOUNT_STACK:
-                {
-                    //reset seek amount
-                    seekAmountStack = 0;
-                    break;
-                }
-                default:
-                {
-                    //invalid message :(
-                    Logging.logE("Invalid Message ID %d in DoubleTapSeekOverlay!", msg.what);
-                }
+                side.text.setAlpha(alpha);
+                side.alpha = alpha;
             }
+            return true;
         }
-    };
+
+        hideSide(side);
+        return false;
+    }
+
+    /**
+     * show a side, continuing its animation if already shown
+     *
+     * @param side     the side to show
+     * @param nowNanos the current time, System.nanoTime()
+     */
+    private void showSide(@Nullable SeekSide side, long nowNanos)
+    {
+        if (side == null) return;
+
+        //reset fade
+        if (side.alpha != 1f)
+        {
+            side.text.setAlpha(1f);
+            side.alpha = 1f;
+        }
+
+        if (side.active) return;
+        side.active = true;
+        side.startNanos = nowNanos;
+        side.text.setVisibility(VISIBLE);
+    }
+
+    /**
+     * hide a side instantly and reset its animation to frame 0
+     *
+     * @param side the side to hide
+     */
+    private void hideSide(@Nullable SeekSide side)
+    {
+        if (side == null || !side.active) return;
+        side.active = false;
+
+        side.animation.selectDrawable(0);
+        side.frame = 0;
+        side.text.setVisibility(GONE);
+        side.text.setAlpha(1f);
+        side.alpha = 1f;
+    }
+
+    /**
+     * post the timeline to the next frame, if not already posted
+     */
+    private void postTimeline()
+    {
+        if (isTimelinePosted) return;
+        isTimelinePosted = true;
+        Choreographer.getInstance().postFrameCallback(timeline);
+    }
+
+    /**
+     * @param nanos the duration in nanoseconds
+     * @return the duration in milliseconds
+     */
+    private static long nanosToMs(long nanos)
+    {
+        return nanos / 1000000L;
+    }
     //endregion
 
     //region Constructors
@@ -389,8 +506,56 @@ public class DoubleTapSeekOverlay extends FrameLayout
         return textFadeOutDuration;
     }
 
+    /**
+     * set the listener for merged seeks
+     *
+     * @param listener the listener to set
+     * @return own instance, for set chaining
+     */
+    public DoubleTapSeekOverlay setSeekListener(@Nullable SeekListener listener)
+    {
+        seekListener = listener;
+        return this;
+    }
+
     //endregion
 
+    /**
+     * Queue a seek. All seeks queued in short succession are merged, and reported once to the seek listener
+     * after no seek was queued for the animation duration.
+     *
+     * @param seekOffsetMs the offset to seek by, in ms
+     */
+    public void queueSeek(long seekOffsetMs)
+    {
+        pendingSeekMs += seekOffsetMs;
+        hasPendingSeek = true;
+        lastQueuedSeekNanos = System.nanoTime();
+        postTimeline();
+    }
+
+    /**
+     * @return was a seek queued that was not yet reported to the seek listener?
+     */
+    public boolean isSeekPending()
+    {
+        return hasPendingSeek;
+    }
+
+    @Override
+    protected void onDetachedFromWindow()
+    {
+        super.onDetachedFromWindow();
+
+        //stop the timeline, and drop the pending seek (the player is going away with the view)
+        Choreographer.getInstance().removeFrameCallback(timeline);
+        isTimelinePosted = false;
+        hasPendingSeek = false;
+        pendingSeekMs = 0;
+        hideSide(forwardSide);
+        hideSide(reverseSide);
+    }
+
     /**
      * Show the seek animation.
      * also cancels all other seek animations and updates the text shown
@@ -413,11 +578,12 @@ public class DoubleTapSeekOverlay extends FrameLayout
      */
     public void showSeekAnimation(boolean forward, int seekAmountS, boolean stackSeekAmount)
     {
-        //cancel seek stack being reset
-        delayedHandler.removeMessages(Messages.RESET_SEEK_AMOUNT_STACK);
+        long now = System.nanoTime();
 
-        //reset seek amount to 0 if seeking in different direction OR stacking is disabled
-        if (forward != lastSeekDirection || !stackSeekAmount)
+        //reset seek amount to 0 if seeking in different direction, stacking is disabled, or the stack expired
+        //(the stack expires a while after the seek text was hidden)
+        long stackLifetimeMs = animationDurationMs + (enableFadeOutTexts ? textFadeOutDuration : 0) + SEEK_AMOUNT_RESET_DELAY_MS;
+        if (forward != lastSeekDirection || !stackSeekAmount || nanosToMs(now - lastTapNanos) >= stackLifetimeMs)
         {
             seekAmountStack = 0;
         }
@@ -426,58 +592,21 @@ public class DoubleTapSeekOverlay extends FrameLayout
         seekAmountStack += seekAmountS;
         seekAmountS = seekAmountStack;
 
-        //update last seek direction
+        //update last seek direction and tap time
         lastSeekDirection = forward;
+        lastTapNanos = now;
 
-        //do animation stuff
-        if (forward)
+        //hide the other direction instantly, show the direction we seek to with the new text
+        SeekSide side = forward ? forwardSide : reverseSide;
+        hideSide(forward ? reverseSide : forwardSide);
+        if (side != null)
         {
-            //cancel messages that would cancel the seeking animation we want to play
-            delayedHandler.removeMessages(Messages.STOP_SEEK_FORWARD_ANIM);
-            delayedHandler.removeMessages(Messages.FADE_SEEK_FORWARD_ANIM);
-
-            //cancel the animation for the reverse direction instantly
-            delayedHandler.sendEmptyMessage(Messages.STOP_SEEK_REVERSE_ANIM);
-
-            //make textview for seeking direction visible and start the animation we want
-            //also update the text in the textview
-            if (seekForwardText != null && seekForwardAnimation != null)
-            {
-                //set text
-                seekForwardText.setText(String.format(getContext().getString(R.string.double_tap_seek_seek_duration_label), seekAmountS));
-
-                //make visible and start animation
-                seekForwardText.setVisibility(VISIBLE);
-                seekForwardAnimation.start();
-            }
-
-            //cancel the animation after a delay
-            stopSeekForward(animationDurationMs);
+            side.text.setText(String.format(getContext().getString(R.string.double_tap_seek_seek_duration_label), seekAmountS));
+            showSide(side, now);
         }
-        else
-        {
-            //cancel messages that would cancel the seeking animation we want to play
-            delayedHandler.removeMessages(Messages.STOP_SEEK_REVERSE_ANIM);
-            delayedHandler.removeMessages(Messages.FADE_SEEK_REVERSE_ANIM);
-
-            //cancel the animation for the reverse direction instantly
-            delayedHandler.sendEmptyMessage(Messages.STOP_SEEK_FORWARD_ANIM);
-
-            //make textview for seeking direction visible and start the animation we want
-            //also update the text in the textview
-            if (seekReverseText != null && seekReverseAnimation != null)
-            {
-                //set text
-                seekReverseText.setText(String.format(getContext().getString(R.string.double_tap_seek_seek_duration_label), seekAmountS));
 
-                //make visible and start animation
-                seekReverseText.setVisibility(VISIBLE);
-                seekReverseAnimation.start();
-            }
-
-            //cancel the animation after a delay
-            stopSeekReverse(animationDurationMs);
-        }
+        //the timeline hides the text after the animation duration
+        postTimeline();
     }
 
     /**
@@ -507,41 +636,9 @@ public class DoubleTapSeekOverlay extends FrameLayout
         seekReverseText.setCompoundDrawablesRelativeWithIntrinsicBounds(null, seekReverseAnimation, null, null);
         seekReverseAnimation.setCallback(seekReverseText);
         seekReverseAnimation.setVisible(true, true);
-    }
 
-    /**
-     * Stop the seek forward animation
-     * This either sends Message STOP_SEEK_FORWARD_ANIM or FADE_SEEK_FORWARD_ANIM, depending on configuration of the view
-     *
-     * @param stopDelay by how much the stop of the seek should by delayed by, in ms (<= 0: instantly)
-     */
-    private void stopSeekForward(long stopDelay)
-    {
-        if (stopDelay <= 0)
-        {
-            delayedHandler.sendEmptyMessage(enableFadeOutTexts ? Messages.FADE_SEEK_FORWARD_ANIM : Messages.STOP_SEEK_FORWARD_ANIM);
-        }
-        else
-        {
-            delayedHandler.sendEmptyMessageDelayed(enableFadeOutTexts ? Messages.FADE_SEEK_FORWARD_ANIM : Messages.STOP_SEEK_FORWARD_ANIM, stopDelay);
-        }
-    }
-
-    /**
-     * Stop the seek reverse animation
-     * This either sends Message STOP_SEEK_REVERSE_ANIM or FADE_SEEK_REVERSE_ANIM, depending on configuration of the view
-     *
-     * @param stopDelay by how much the stop of the seek should by delayed by, in ms (<= 0: instantly)
-     */
-    private void stopSeekReverse(long stopDelay)
-    {
-        if (stopDelay <= 0)
-        {
-            delayedHandler.sendEmptyMessage(enableFadeOutTexts ? Messages.FADE_SEEK_REVERSE_ANIM : Messages.STOP_SEEK_REVERSE_ANIM);
-        }
-        else
-        {
-            delayedHandler.sendEmptyMessageDelayed(enableFadeOutTexts ? Messages.FADE_SEEK_REVERSE_ANIM : Messages.STOP_SEEK_REVERSE_ANIM, stopDelay);
-        }
+        //frames are selected by the timeline
+        forwardSide = new SeekSide(seekForwardText, seekForwardAnimation);
+        reverseSide = new SeekSide(seekReverseText, seekReverseAnimation);
     }
 }
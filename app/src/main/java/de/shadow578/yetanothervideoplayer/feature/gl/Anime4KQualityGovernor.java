@@ -0,0 +1,343 @@
+package de.shadow578.yetanothervideoplayer.feature.gl;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.analytics.AnalyticsListener;
+
+import de.shadow578.yetanothervideoplayer.util.Logging;
+
+/**
+ * Feedback loop between the gpu time of the passes measured by a {@link GLAnime4K} filter and the video quality.
+ * The number of Anime4K passes is picked from the (fractional) processing scale of the filter, and limited by the frame time budget.
+ * The budget is derived from the gpu time of the passes measured by the filter, not from the time between frames
+ * (which is about the frame deadline whenever frames keep up, no matter how fast the passes are).
+ * When the passes take too much of the frame deadline, Anime4K passes are dropped first, then the video quality is lowered (using the {@link Callback}).
+ * When there is headroom again, the steps are undone in reverse order.
+ * Overload and headroom are judged on the processing time, as the time between frames is the deadline whenever frames are paced,
+ * and includes pauses. Intervals without a measured processing time are ignored.
+ * The pass count is re- evaluated whenever the processing scale changes (eg. when entering PiP).
+ * Lower video quality only reaches the decoder once the media that is already buffered played out, so after lowering it,
+ * it is not lowered again until the decoder input format changed (register as AnalyticsListener on the player) or the buffer played out.
+ */
+public class Anime4KQualityGovernor implements GLFilterBase.FrameStatsListener, GLAnime4K.ScaleListener, AnalyticsListener
+{
+    /**
+     * Callback to change the video quality
+     */
+    public interface Callback
+    {
+        /**
+         * @return the frame rate of the current video, or -1 if not known
+         */
+        float getVideoFrameRate();
+
+        /**
+         * @return how much media is buffered ahead of the playback position, in ms
+         */
+        long getBufferedDurationMs();
+
+        /**
+         * lower the video quality one step
+         *
+         * @return was the quality lowered?
+         */
+        boolean reduceVideoQuality();
+
+        /**
+         * undo one step of reduceVideoQuality()
+         *
+         * @return was the quality raised?
+         */
+        boolean restoreVideoQuality();
+    }
+
+    //region ~~ Constants ~~
+
+    /**
+     * frame rate used as deadline when the video frame rate is not known
+     */
+    private static final float DEFAULT_TARGET_FPS = 30f;
+
+    /**
+     * the passes are too slow if their gpu time is larger than deadline * this (the rest of the frame needs some time too)
+     */
+    private static final float OVERLOAD_FACTOR = 0.9f;
+
+    /**
+     * there is headroom if the gpu time of the passes is smaller than deadline * this
+     */
+    private static final float HEADROOM_FACTOR = 0.5f;
+
+    /**
+     * how many intervals in a row need headroom before quality is raised again
+     */
+    private static final int HEADROOM_INTERVALS_TO_RECOVER = 3;
+
+    /**
+     * max. number of passes, used for scales of 2 and up (processing is done at max. 2x video resolution)
+     */
+    private static final int MAX_PASSES = 2;
+
+    /**
+     * passes are only added if the estimated gpu time of all passes stays below deadline * this
+     */
+    private static final float BUDGET_FACTOR = 0.8f;
+
+    /**
+     * after lowering video quality without a decoder format change, it is lowered again at the earliest after the buffered media
+     * played out, plus this (two stats intervals, so one full interval of the new quality was measured), in ms
+     */
+    private static final long REDUCE_HOLDOFF_MARGIN_MS = 10000;
+    //endregion
+
+    /**
+     * handler on the main thread, the callback is invoked on this
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * the filter whose frame time is watched
+     */
+    private final GLAnime4K filter;
+
+    /**
+     * callback to change video quality
+     */
+    private final Callback callback;
+
+    /**
+     * the number of passes suited for the current processing scale. quality is never raised above this
+     */
+    private int scalePasses;
+
+    /**
+     * how many passes fit into the frame time budget, from the measured gpu time of the passes. MAX_PASSES if not yet measured
+     */
+    private int budgetPasses = MAX_PASSES;
+
+    /**
+     * how many intervals in a row had headroom
+     */
+    private int headroomIntervals = 0;
+
+    /**
+     * was video quality lowered, and the decoder input format did not change since? only used on the main thread
+     */
+    private boolean awaitingFormatChange = false;
+
+    /**
+     * while awaitingFormatChange, video quality is not lowered again before this time, in SystemClock.elapsedRealtime() base
+     */
+    private long reduceHoldoffUntilMs = 0;
+
+    /**
+     * should the next stats interval be ignored? set when the format changed, as that interval mixes frames of both formats
+     */
+    private boolean skipNextInterval = false;
+
+    /**
+     * Create a governor and register it as frame stats listener on the filter
+     *
+     * @param filter   the filter to govern
+     * @param callback callback to change the video quality
+     */
+    public Anime4KQualityGovernor(@NonNull GLAnime4K filter, @NonNull Callback callback)
+    {
+        this.filter = filter;
+        this.callback = callback;
+        filter.setFrameStatsListener(this);
+        filter.setScaleListener(this);
+
+        //scale may not be known yet, then passes are set once it is
+        scalePasses = getPassesForScale(filter.getProcessingScale());
+        filter.setPasses(scalePasses);
+    }
+
+    /**
+     * stop governing the filter. Quality changes are not undone
+     */
+    public void release()
+    {
+        filter.setFrameStatsListener(null);
+        filter.setScaleListener(null);
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    @Override
+    public void onFrameStatsUpdate(GLFilterBase filter, final FrameStats stats)
+    {
+        //called on the gl thread, evaluate on main thread
+        mainHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                evaluate(stats);
+            }
+        });
+    }
+
+    @Override
+    public void onProcessingScaleChanged(GLAnime4K filter, final float scale)
+    {
+        //called on the gl thread, evaluate on main thread
+        mainHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                onScaleChanged(scale);
+            }
+        });
+    }
+
+    @Override
+    public void onDecoderInputFormatChanged(@NonNull EventTime eventTime, int trackType, @NonNull Format format)
+    {
+        //called on the main thread. lowered quality reached the decoder, so it may be lowered again once it was measured
+        if (trackType != C.TRACK_TYPE_VIDEO) return;
+        awaitingFormatChange = false;
+        skipNextInterval = true;
+        headroomIntervals = 0;
+    }
+
+    /**
+     * pick the number of passes for a new processing scale, limited by the frame time budget
+     *
+     * @param scale the new processing scale
+     */
+    private void onScaleChanged(float scale)
+    {
+        scalePasses = getPassesForScale(scale);
+        int passes = Math.max(1, Math.min(scalePasses, budgetPasses));
+        headroomIntervals = 0;
+
+        if (passes != filter.getPasses())
+        {
+            filter.setPasses(passes);
+            Logging.logD("[A4KGovernor] processing scale changed to %.2f, set passes to %d", scale, passes);
+        }
+    }
+
+    /**
+     * get the number of passes suited for a processing scale: one pass per 1x scale (rounded), at least one
+     *
+     * @param scale the processing scale. if <= 0 (not known), one pass is used
+     * @return the number of passes
+     */
+    private static int getPassesForScale(float scale)
+    {
+        return Math.max(1, Math.min(MAX_PASSES, Math.round(scale)));
+    }
+
+    /**
+     * check the processing time against the deadline and lower or raise quality
+     *
+     * @param stats the frame stats of the filter
+     */
+    private void evaluate(FrameStats stats)
+    {
+        //nothing measured (eg. no frames processed in the interval), cannot judge
+        float processingTimeMs = stats.getAverageProcessingTimeMs();
+        if (processingTimeMs <= 0) return;
+
+        //interval with frames of the old and new format
+        if (skipNextInterval)
+        {
+            skipNextInterval = false;
+            return;
+        }
+        float pacedFps = stats.getPacedFps();
+
+        //get deadline from the video frame rate, or the paced frame rate (or fps limit) if that is lower
+        float targetFps = callback.getVideoFrameRate();
+        if (targetFps <= 0) targetFps = DEFAULT_TARGET_FPS;
+        if (pacedFps > 0) targetFps = Math.min(targetFps, pacedFps);
+        else if (filter.getFpsLimit() > 0) targetFps = Math.min(targetFps, filter.getFpsLimit());
+        float deadlineMs = 1000f / targetFps;
+
+        //estimate how many passes fit into the budget from the measured gpu time of one pass
+        float passTimeMs = processingTimeMs / Math.max(1, filter.getPasses());
+        budgetPasses = (int) (deadlineMs * BUDGET_FACTOR / passTimeMs);
+
+        if (processingTimeMs > deadlineMs * OVERLOAD_FACTOR)
+        {
+            //passes too slow for the deadline, lower quality
+            headroomIntervals = 0;
+            stepDown(processingTimeMs, deadlineMs);
+        }
+        else if (processingTimeMs < deadlineMs * HEADROOM_FACTOR)
+        {
+            //headroom, raise quality after a few intervals
+            headroomIntervals++;
+            if (headroomIntervals >= HEADROOM_INTERVALS_TO_RECOVER)
+            {
+                headroomIntervals = 0;
+                stepUp(processingTimeMs, deadlineMs);
+            }
+        }
+        else
+        {
+            //in range, do nothing
+            headroomIntervals = 0;
+        }
+    }
+
+    /**
+     * lower quality: drop passes first (directly to the budget, if that is lower), then lower video quality one step
+     */
+    private void stepDown(float processingTimeMs, float deadlineMs)
+    {
+        int passes = filter.getPasses();
+        if (passes > 1)
+        {
+            int newPasses = Math.max(1, Math.min(passes - 1, budgetPasses));
+            filter.setPasses(newPasses);
+            Logging.logD("[A4KGovernor] processing time %.1f ms > deadline %.1f ms, reduced passes to %d", processingTimeMs, deadlineMs, newPasses);
+        }
+        else if (isReduceHeldOff())
+        {
+            Logging.logD("[A4KGovernor] processing time %.1f ms > deadline %.1f ms, waiting for the reduced video quality to be decoded", processingTimeMs, deadlineMs);
+        }
+        else if (callback.reduceVideoQuality())
+        {
+            //the buffered media is still decoded at the old quality, don't judge the new one before it played out
+            awaitingFormatChange = true;
+            reduceHoldoffUntilMs = SystemClock.elapsedRealtime() + Math.max(0, callback.getBufferedDurationMs()) + REDUCE_HOLDOFF_MARGIN_MS;
+            Logging.logD("[A4KGovernor] processing time %.1f ms > deadline %.1f ms, reduced video quality", processingTimeMs, deadlineMs);
+        }
+    }
+
+    /**
+     * @return was video quality lowered recently, and the lower quality not yet decoded?
+     */
+    private boolean isReduceHeldOff()
+    {
+        return awaitingFormatChange && SystemClock.elapsedRealtime() < reduceHoldoffUntilMs;
+    }
+
+    /**
+     * raise quality one step: raise video quality first, then add a pass
+     */
+    private void stepUp(float processingTimeMs, float deadlineMs)
+    {
+        if (callback.restoreVideoQuality())
+        {
+            Logging.logD("[A4KGovernor] processing time %.1f ms < deadline %.1f ms, restored video quality", processingTimeMs, deadlineMs);
+            return;
+        }
+
+        int passes = filter.getPasses();
+        if (passes < scalePasses && passes < budgetPasses)
+        {
+            filter.setPasses(passes + 1);
+            Logging.logD("[A4KGovernor] processing time %.1f ms < deadline %.1f ms, restored passes to %d", processingTimeMs, deadlineMs, passes + 1);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package de.shadow578.yetanothervideoplayer.feature.gl;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Paces the frames of a gl filter to the display's vsync.
+ * Vsync timestamps are collected using {@link Choreographer} frame callbacks on the main thread.
+ * On the gl thread, every frame is mapped to the vsync slot it will be presented in. A frame limit is matched to a cadence of
+ * vsync slots (eg. 30 fps on a 60 Hz display = every second vsync, 24 fps = alternating every second and third vsync),
+ * and frames that fall into a slot that does not need a new frame are skipped.
+ * Vsync is only observed while frames are paced: observing starts with the first paced frame,
+ * and stops by itself once no paced frame was seen for IDLE_TIMEOUT_NANOS (eg. filter disabled, video paused, no fps limit).
+ */
+public class FramePacer implements Choreographer.FrameCallback
+{
+    /**
+     * refresh rate assumed until the first vsync intervals are measured
+     */
+    private static final float DEFAULT_REFRESH_RATE = 60f;
+
+    /**
+     * how long frame stats are collected before they are published, in ms
+     */
+    private static final long STATS_INTERVAL_MS = 5000;
+
+    /**
+     * vsync is no longer observed if no paced frame was seen for this long, in ns
+     */
+    private static final long IDLE_TIMEOUT_NANOS = 500_000_000L;
+
+    /**
+     * if no frame arrived for this many vsyncs (eg. video paused or seeking), the stats interval and the cadence are restarted,
+     * so the gap does not show up as a slow frame
+     */
+    private static final int STATS_GAP_VSYNCS = 16;
+
+    /**
+     * fps limits that are less than this many vsyncs per frame are not paced (eg. 60 fps on a 59.94 Hz display),
+     * as they would only skip frames because of vsync jitter
+     */
+    private static final double MIN_SLOTS_PER_FRAME = 1.05;
+
+    /**
+     * handler on the main thread, choreographer callbacks have to be posted from there
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    //region ~~ Vsync (written on main thread, read on gl thread) ~~
+
+    /**
+     * timestamp of the last vsync, in System.nanoTime() base. 0 if not yet known
+     */
+    private volatile long lastVsyncNanos = 0;
+
+    /**
+     * how many vsyncs were observed
+     */
+    private volatile long vsyncCount = 0;
+
+    /**
+     * estimated time between two vsyncs, in ns
+     */
+    private volatile long vsyncIntervalNanos = (long) (1e9 / DEFAULT_REFRESH_RATE);
+
+    /**
+     * are choreographer callbacks currently posted? only used on the main thread
+     */
+    private boolean isRunning = false;
+
+    /**
+     * was observing vsync requested, and not yet stopped? set on the gl thread, cleared on the main thread
+     */
+    private volatile boolean isObserving = false;
+
+    /**
+     * time of the last paced frame, in System.nanoTime() base
+     */
+    private volatile long lastPacedFrameNanos = 0;
+    //endregion
+
+    //region ~~ Pacing + stats (gl thread) ~~
+
+    /**
+     * the vsync slot the last processed frame was presented in. -1 if no frame was processed yet
+     */
+    private long lastProcessedSlot = -1;
+
+    /**
+     * the (fractional) vsync slot the next frame should be processed in
+     */
+    private double nextSlot = 0;
+
+    /**
+     * every how many vsyncs a frame is processed (may be fractional, for cadences like 3:2). 1 if not paced
+     */
+    private double slotsPerFrame = 1;
+
+    /**
+     * time of the last frame, in ns. 0 if no frame arrived yet
+     */
+    private long lastFrameNanos = 0;
+
+    /**
+     * start of the current stats interval, in ns. 0 if not started
+     */
+    private long statsStartNanos = 0;
+
+    /**
+     * processed and skipped frames in the current stats interval
+     */
+    private int statsProcessedFrames = 0;
+    private int statsSkippedFrames = 0;
+    //endregion
+
+    //region ~~ Lifecycle ~~
+
+    /**
+     * start observing vsync. May be called from any thread
+     */
+    public void start()
+    {
+        isObserving = true;
+        mainHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (isRunning) return;
+                isRunning = true;
+                Choreographer.getInstance().postFrameCallback(FramePacer.this);
+            }
+        });
+    }
+
+    /**
+     * stop observing vsync. May be called from any thread
+     */
+    public void stop()
+    {
+        isObserving = false;
+        mainHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                isRunning = false;
+                Choreographer.getInstance().removeFrameCallback(FramePacer.this);
+            }
+        });
+    }
+
+    /**
+     * Choreographer vsync callback, on main thread
+     *
+     * @param frameTimeNanos the time of the vsync, in System.nanoTime() base
+     */
+    @Override
+    public void doFrame(long frameTimeNanos)
+    {
+        if (!isRunning) return;
+
+        //stop observing once frames are no longer paced. vsync timestamps are measured again when pacing restarts
+        if (frameTimeNanos - lastPacedFrameNanos > IDLE_TIMEOUT_NANOS)
+        {
+            isRunning = false;
+            isObserving = false;
+            lastVsyncNanos = 0;
+            return;
+        }
+
+        //measure vsync interval, ignoring intervals where the main thread missed vsyncs
+        long lastVsync = lastVsyncNanos;
+        if (lastVsync != 0)
+        {
+            long interval = frameTimeNanos - lastVsync;
+            long estimate = vsyncIntervalNanos;
+            if (interval > estimate / 2 && interval < estimate + estimate / 2)
+                vsyncIntervalNanos = estimate + (interval - estimate) / 8;
+
+            //count missed vsyncs too, so slots stay in sync with the display
+            vsyncCount += Math.max(1, Math.round((double) interval / estimate));
+        }
+        lastVsyncNanos = frameTimeNanos;
+
+        //keep observing
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+    //endregion
+
+    //region ~~ Pacing ~~
+
+    /**
+     * Decide if a frame should be processed. Call once for every frame on the gl thread.
+     *
+     * @param nowNanos the current time, System.nanoTime()
+     * @param fpsLimit if > 0, frames are paced to a cadence of vsync slots that is not above this
+     * @return should the frame be processed? if false, the last processed frame should be presented again
+     */
+    public boolean onFrame(long nowNanos, long fpsLimit)
+    {
+        //frames stopped for a while (paused, seeking): start a new stats interval and restart the cadence
+        if (lastFrameNanos != 0 && (nowNanos - lastFrameNanos) > STATS_GAP_VSYNCS * vsyncIntervalNanos)
+        {
+            statsStartNanos = 0;
+            statsProcessedFrames = 0;
+            statsSkippedFrames = 0;
+            lastProcessedSlot = -1;
+        }
+        lastFrameNanos = nowNanos;
+        if (statsStartNanos == 0) statsStartNanos = nowNanos;
+
+        //match the limit to the vsync interval
+        long interval = vsyncIntervalNanos;
+        slotsPerFrame = getSlotsPerFrame(fpsLimit, interval);
+        if (fpsLimit > 0)
+        {
+            //pacing needs vsync timestamps (also to find out if the limit is below the refresh rate)
+            lastPacedFrameNanos = nowNanos;
+            if (!isObserving) start();
+        }
+
+        //get the vsync slot this frame is presented in
+        long slot = getVsyncSlot(nowNanos, interval);
+
+        //never process two frames for the same slot, and follow the cadence
+        //(a slot before the last one means the slot base changed, so restart the cadence)
+        boolean restart = lastProcessedSlot == -1 || slot < lastProcessedSlot;
+        boolean process = restart || (slot > lastProcessedSlot && slot >= (long) Math.floor(nextSlot));
+        if (process)
+        {
+            //schedule the next frame. if we fell behind, continue from this slot instead of catching up
+            if (restart || slot >= nextSlot + slotsPerFrame)
+                nextSlot = slot + slotsPerFrame;
+            else
+                nextSlot += slotsPerFrame;
+
+            lastProcessedSlot = slot;
+            statsProcessedFrames++;
+        }
+        else
+        {
+            statsSkippedFrames++;
+        }
+        return process;
+    }
+
+    /**
+     * Check if a fps limit is below the display's refresh rate, so pacing to it actually skips frames.
+     * Until vsync was observed, a refresh rate of DEFAULT_REFRESH_RATE is assumed. May be called from any thread.
+     *
+     * @param fpsLimit the fps limit. if <= 0, no limit is applied
+     * @return does the limit skip frames?
+     */
+    public boolean isLimiting(long fpsLimit)
+    {
+        return getSlotsPerFrame(fpsLimit, vsyncIntervalNanos) > 1;
+    }
+
+    /**
+     * Check if the current stats interval is over. Call on the gl thread.
+     *
+     * @param nowNanos the current time, System.nanoTime()
+     * @return is the interval over, so pollStats() should be called?
+     */
+    public boolean isStatsIntervalOver(long nowNanos)
+    {
+        return statsStartNanos != 0 && (nowNanos - statsStartNanos) >= STATS_INTERVAL_MS * 1000000L && statsProcessedFrames > 0;
+    }
+
+    /**
+     * Collect the frame stats of the current interval, and start the next interval. Call on the gl thread, once isStatsIntervalOver() returned true.
+     *
+     * @param nowNanos         the current time, System.nanoTime()
+     * @param processingTimeMs the average gpu time spent processing a frame in the interval, -1 if not measured
+     * @return the stats of the interval
+     */
+    @NonNull
+    public FrameStats pollStats(long nowNanos, float processingTimeMs)
+    {
+        float durationMs = (nowNanos - statsStartNanos) / 1e6f;
+        float refreshRate = (float) (1e9 / vsyncIntervalNanos);
+        FrameStats stats = new FrameStats(statsProcessedFrames / (durationMs / 1000f),
+                durationMs / statsProcessedFrames,
+                processingTimeMs,
+                statsSkippedFrames,
+                refreshRate,
+                slotsPerFrame > 1 ? (float) (refreshRate / slotsPerFrame) : -1);
+
+        //start next interval
+        statsStartNanos = nowNanos;
+        statsProcessedFrames = 0;
+        statsSkippedFrames = 0;
+        return stats;
+    }
+
+    /**
+     * get every how many vsyncs a frame is processed for a fps limit
+     *
+     * @param fpsLimit the fps limit. if <= 0, no limit is applied
+     * @param interval the vsync interval, in ns
+     * @return the (fractional) vsyncs per frame. 1 if the limit is not below the refresh rate
+     */
+    private static double getSlotsPerFrame(long fpsLimit, long interval)
+    {
+        if (fpsLimit <= 0) return 1;
+        double slots = 1e9 / (interval * (double) fpsLimit);
+        return slots < MIN_SLOTS_PER_FRAME ? 1 : slots;
+    }
+
+    /**
+     * get the index of the vsync a frame rendered now will be presented at
+     *
+     * @param nowNanos the current time, System.nanoTime()
+     * @param interval the vsync interval, in ns
+     * @return the vsync slot index
+     */
+    private long getVsyncSlot(long nowNanos, long interval)
+    {
+        long lastVsync = lastVsyncNanos;
+        if (lastVsync == 0)
+        {
+            //no vsync observed yet, use a grid based on nanoTime only
+            return nowNanos / interval;
+        }
+
+        //slots since the last observed vsync (the main thread may lag behind), +1 for the next vsync
+        return vsyncCount + Math.max(0, (nowNanos - lastVsync) / interval) + 1;
+    }
+    //endregion
+}
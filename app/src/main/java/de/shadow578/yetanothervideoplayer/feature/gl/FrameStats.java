@@ -0,0 +1,108 @@
+package de.shadow578.yetanothervideoplayer.feature.gl;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Frame statistics of a gl filter, collected by the {@link FramePacer} over one interval
+ */
+@SuppressWarnings("unused")
+public final class FrameStats
+{
+    /**
+     * how many frames were processed per second
+     */
+    private final float averageFps;
+
+    /**
+     * average time between processed frames, in ms
+     */
+    private final float averageFrameTimeMs;
+
+    /**
+     * average gpu time spent processing a frame (eg. the anime4k passes), in ms. -1 if not measured
+     */
+    private final float averageProcessingTimeMs;
+
+    /**
+     * how many frames were not processed because they would not be presented
+     */
+    private final int skippedFrames;
+
+    /**
+     * refresh rate of the display, in Hz
+     */
+    private final float refreshRate;
+
+    /**
+     * the frame rate frames are paced to (a integer fraction of the refresh rate), -1 if not paced
+     */
+    private final float pacedFps;
+
+    public FrameStats(float averageFps, float averageFrameTimeMs, float averageProcessingTimeMs, int skippedFrames, float refreshRate, float pacedFps)
+    {
+        this.averageFps = averageFps;
+        this.averageFrameTimeMs = averageFrameTimeMs;
+        this.averageProcessingTimeMs = averageProcessingTimeMs;
+        this.skippedFrames = skippedFrames;
+        this.refreshRate = refreshRate;
+        this.pacedFps = pacedFps;
+    }
+
+    /**
+     * @return how many frames were processed per second
+     */
+    public float getAverageFps()
+    {
+        return averageFps;
+    }
+
+    /**
+     * @return average time between processed frames, in ms
+     */
+    public float getAverageFrameTimeMs()
+    {
+        return averageFrameTimeMs;
+    }
+
+    /**
+     * @return average gpu time spent processing a frame (eg. the anime4k passes), in ms. -1 if not measured
+     */
+    public float getAverageProcessingTimeMs()
+    {
+        return averageProcessingTimeMs;
+    }
+
+    /**
+     * @return how many frames were not processed because they would not be presented
+     */
+    public int getSkippedFrames()
+    {
+        return skippedFrames;
+    }
+
+    /**
+     * @return refresh rate of the display, in Hz
+     */
+    public float getRefreshRate()
+    {
+        return refreshRate;
+    }
+
+    /**
+     * @return the frame rate frames are paced to (a integer fraction of the refresh rate), -1 if not paced
+     */
+    public float getPacedFps()
+    {
+        return pacedFps;
+    }
+
+    @NonNull
+    @Override
+    public String toString()
+    {
+        return String.format(Locale.US, "FrameStats{fps= %.1f; frame time= %.1f ms; processing time= %.1f ms; skipped= %d; refresh= %.1f Hz; paced= %.1f fps}",
+                averageFps, averageFrameTimeMs, averageProcessingTimeMs, skippedFrames, refreshRate, pacedFps);
+    }
+}
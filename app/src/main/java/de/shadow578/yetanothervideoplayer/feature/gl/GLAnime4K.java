@@ -3,14 +3,8 @@ package de.shadow578.yetanothervideoplayer.feature.gl;
 import android.content.Context;
 
 import com.daasuu.epf.EFramebufferObject;
-import com.daasuu.epf.EglUtil;
 import com.google.android.exoplayer2.video.VideoListener;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-
 import de.shadow578.yetanothervideoplayer.util.Logging;
 
 //allow direct use of gl functions
@@ -18,54 +12,122 @@ import static android.opengl.GLES20.*;
 
 /**
  * Anime4K filter for ExoPlayerFilter library, implemented in GLSL ES (for OpenGL ES)
+ * Uses a compute shader backend (see {@link GLAnime4KCompute}) on GLES 3.1, and fragment shaders otherwise.
  * Implements ExoPlayer's VideoListener to get real video resolution and automatically adjust push strength
  */
 public class GLAnime4K extends GLFilterBase implements VideoListener
 {
+    /**
+     * Listener for changes of the processing scale (eg. when the video or render size changed)
+     */
+    public interface ScaleListener
+    {
+        /**
+         * Called on the GL thread when the processing scale changed
+         *
+         * @param filter the filter whose scale changed
+         * @param scale  the new scale (processing resolution / video resolution)
+         */
+        void onProcessingScaleChanged(GLAnime4K filter, float scale);
+    }
+
     //region Shader Variables
-    //shader sources
-    private final String srcCommonVertex, srcColorGet, srcColorPush, srcGradientGet, srcGradientPush;
+    //shader sources (all programs share the same vertex shader, only doing stuff in fragment shaders)
+    private final String srcCommonVertex, srcColor, srcGradient, srcGradPush;
 
-    //all shaders share the same vertex shader (only doing stuff in fragment shaders)
-    private int commonVertexShader;
+    //compute shader source (all stages of one pass in a single dispatch)
+    private final String srcCompute;
 
-    //color GET shader
-    private int colorGetFragmentShader, colorGetProgram;
+    //compute backend, null if compute shaders are not supported (then the fragment programs are used)
+    private GLAnime4KCompute compute;
 
-    //color PUSH shader
-    private int colorPushFragmentShader, colorPushProgram;
+    //texture containing the output of the last frame processed by the compute backend
+    private int computeOutput;
 
-    //gradient GET shader
-    private int gradientGetFragmentShader, gradientGetProgram;
+    //color program (color GET + PUSH)
+    private GLProgram colorProgram;
 
-    //gradient PUSH shader
-    private int gradientPushFragmentShader, gradientPushProgram;
+    //gradient program (gradient GET)
+    private GLProgram gradientProgram;
 
-    //buffer for rendering of filters
+    //gradient push program (gradient PUSH)
+    private GLProgram gradPushProgram;
+
+    //copy program, scales between render and processing resolution
+    private GLProgram copyProgram;
+
+    //uniform handles of color, gradient and gradient push program, resolved in setup()
+    private int hndColorTextureSize, hndColorPushStrength;
+    private int hndGradientTextureSize;
+    private int hndGradPushTextureSize, hndGradPushStrength;
+
+    //buffer for rendering of filters, holds the output of color push
     private EFramebufferObject buffer;
+
+    //buffer for the output of gradient get, same size and format as buffer
+    private EFramebufferObject gradientBuffer;
+
+    //second buffer when processing at video resolution or pacing frames (buffer and this are ping- ponged, instead of buffer and target)
+    //holds the output of the last processed frame, so it can be presented again on skipped frames
+    private EFramebufferObject outputBuffer;
+
+    //does outputBuffer contain the output of a processed frame?
+    private boolean hasOutput = false;
+
+    //is the fps limit below the display refresh rate, so frames are skipped? only used on the gl thread
+    private boolean isFrameLimited = false;
+
+    //measures the gpu time of the passes, for the frame stats
+    private final GLPassTimer passTimer = new GLPassTimer();
+
+    //should intermediate textures use RGBA16F instead of RGBA8 (if supported)?
+    private volatile boolean highPrecision = false;
+
+    //are buffers and programs currently set up for RGBA16F intermediates? only used on the gl thread
+    private boolean useHalfFloat = false;
     //endregion
 
+    //processing is done at most at video resolution * this, then scaled to render resolution in one draw
+    private static final int MAX_PROCESSING_SCALE = 2;
+
     //resolution of render surface and video
     private int renderWidth, renderHeight, videoWidth, videoHeight;
 
+    //resolution anime4k is processed at
+    private int processingWidth, processingHeight;
+
+    //processing resolution / video resolution (fractional). -1 if not yet known
+    private volatile float processingScale = -1f;
+
+    //listener for changes of processingScale
+    private volatile ScaleListener scaleListener;
+
+    //have render or video size changed, so the buffers have to be updated on the gl thread?
+    private volatile boolean buffersDirty = false;
+
     //how many passes are executed (more = slower)
-    private int a4kPasses = 2;
+    private volatile int a4kPasses = 2;
 
-    //the strength of anime4k push operations
-    private float a4kColorPushStrength = 0.33f;
-    private float a4kGradPushStrength = 0.33f;
+    //has the pass count changed, so the push strength has to be adjusted on the gl thread?
+    private volatile boolean pushStrengthDirty = false;
+
+    //the strength of anime4k push operations. auto- adjusted on the gl thread, or set manually from any thread
+    private volatile float a4kColorPushStrength = 0.33f;
+    private volatile float a4kGradPushStrength = 0.33f;
 
     //should push strength be auto- adjusted based on real video resolution?
     //set by setPushStrength function
-    private boolean enableAutoPushStrength = true;
+    private volatile boolean enableAutoPushStrength = true;
 
-    public GLAnime4K(Context ctx, int resComVertex, int resColorGet, int resColorPush, int resGradGet, int resGradPush)
+    public GLAnime4K(Context ctx, int resComVertex, int resColor, int resGradient, int resGradPush, int resCompute)
     {
-        srcCommonVertex = readShaderRes(ctx, resComVertex);
-        srcColorGet = readShaderRes(ctx, resColorGet);
-        srcColorPush = readShaderRes(ctx, resColorPush);
-        srcGradientGet = readShaderRes(ctx, resGradGet);
-        srcGradientPush = readShaderRes(ctx, resGradPush);
+        //sources are only read once per process, linked programs are cached in the code cache dir
+        srcCommonVertex = GLProgramCache.getSource(ctx, resComVertex);
+        srcColor = GLProgramCache.getSource(ctx, resColor);
+        srcGradient = GLProgramCache.getSource(ctx, resGradient);
+        srcGradPush = GLProgramCache.getSource(ctx, resGradPush);
+        srcCompute = GLProgramCache.getSource(ctx, resCompute);
+        programCacheDir = ctx.getCodeCacheDir();
     }
 
     //region GLFilter code
@@ -76,29 +138,23 @@ public class GLAnime4K extends GLFilterBase implements VideoListener
     @Override
     public void setup()
     {
-        //setup shaders:
-        //common vertex shader (shared between all programs)
-        commonVertexShader = EglUtil.loadShader(srcCommonVertex, GL_VERTEX_SHADER);
-
-        //color get
-        colorGetFragmentShader = EglUtil.loadShader(srcColorGet, GL_FRAGMENT_SHADER);
-        colorGetProgram = EglUtil.createProgram(commonVertexShader, colorGetFragmentShader);
+        //setup programs (loaded from program binaries if possible):
+        //color + gradient + gradient push, matching the intermediate format
+        useHalfFloat = highPrecision && GLHalfFloatFramebuffer.isSupported();
+        setupAnime4KPrograms();
 
-        //color push
-        colorPushFragmentShader = EglUtil.loadShader(srcColorPush, GL_FRAGMENT_SHADER);
-        colorPushProgram = EglUtil.createProgram(commonVertexShader, colorPushFragmentShader);
+        //copy
+        copyProgram = createProgram(DEFAULT_VERTEX_SHADER, DEFAULT_FRAGMENT_SHADER);
 
-        //gradient get
-        gradientGetFragmentShader = EglUtil.loadShader(srcGradientGet, GL_FRAGMENT_SHADER);
-        gradientGetProgram = EglUtil.createProgram(commonVertexShader, gradientGetFragmentShader);
-
-        //gradient push
-        gradientPushFragmentShader = EglUtil.loadShader(srcGradientPush, GL_FRAGMENT_SHADER);
-        gradientPushProgram = EglUtil.createProgram(commonVertexShader, gradientPushFragmentShader);
+        //compute backend if supported, the fragment programs are the fallback
+        setupCompute();
 
         //create vertex buffer
         setupVertexBuffer();
 
+        //measure the gpu time of the passes
+        passTimer.setup();
+
         //log gl info
         Logging.logD("~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~");
         Logging.logD("[A4K] GL Environment Debug Info:");
@@ -112,6 +168,58 @@ public class GLAnime4K extends GLFilterBase implements VideoListener
         Logging.logD("[A4K] setup shader finished.");
     }
 
+    /**
+     * Create the color, gradient and gradient push programs and resolve their uniform handles.
+     * The sampler precision of the shaders is chosen to match the intermediate format (lowp for RGBA8, mediump for RGBA16F)
+     */
+    private void setupAnime4KPrograms()
+    {
+        String defines = "#define A4K_SAMPLER_PRECISION " + (useHalfFloat ? "mediump" : "lowp") + "\n";
+
+        //color (get + push)
+        colorProgram = createProgram(srcCommonVertex, defines + srcColor);
+
+        //gradient (get)
+        gradientProgram = createProgram(srcCommonVertex, defines + srcGradient);
+
+        //gradient (push)
+        gradPushProgram = createProgram(srcCommonVertex, defines + srcGradPush);
+
+        //resolve uniform handles once, so drawing needs no lookups
+        hndColorTextureSize = colorProgram.getHandle("vTextureSize");
+        hndColorPushStrength = colorProgram.getHandle("fPushStrength");
+        hndGradientTextureSize = gradientProgram.getHandle("vTextureSize");
+        hndGradPushTextureSize = gradPushProgram.getHandle("vTextureSize");
+        hndGradPushStrength = gradPushProgram.getHandle("fPushStrength");
+    }
+
+    /**
+     * Create the compute backend if compute shaders are supported.
+     * If the compute program fails to compile (driver bugs), the fragment programs are used instead.
+     * Compute output is written using image store, so RGBA16F does not depend on half float frame buffer support.
+     */
+    private void setupCompute()
+    {
+        if (!GLAnime4KCompute.isSupported())
+        {
+            Logging.logD("[A4K] compute shaders not supported, using fragment shaders");
+            return;
+        }
+
+        try
+        {
+            compute = new GLAnime4KCompute();
+            compute.setup(srcCompute, programCacheDir, highPrecision);
+            Logging.logD("[A4K] using compute shader backend");
+        }
+        catch (RuntimeException e)
+        {
+            Logging.logW("[A4K] failed to setup compute shader backend, using fragment shaders: %s", e.toString());
+            compute.release();
+            compute = null;
+        }
+    }
+
     /**
      * Called when the frame size is changed. use this to update frame buffers.
      *
@@ -123,18 +231,115 @@ public class GLAnime4K extends GLFilterBase implements VideoListener
     {
         Logging.logD("[A4K] RENDER size to " + width + " x " + height);
 
-        //update frame buffer w+h
-        if (buffer == null) buffer = new EFramebufferObject();
-        buffer.setup(width, height);
-
-        //set render width + height for auto push strength
+        //set render width + height, buffers are updated with the next frame (not at all if the filter is disabled in a chain)
         renderWidth = width;
         renderHeight = height;
-        autoAdjustPushStrength();
+        buffersDirty = true;
+    }
+
+    /**
+     * Update the processing resolution and (re) create the frame buffers for it.
+     * Anime4K is processed at the video resolution scaled by the largest factor (at most MAX_PROCESSING_SCALE) that fits into the render resolution.
+     * Has to be called on the gl thread.
+     */
+    private void updateBuffers()
+    {
+        buffersDirty = false;
+
+        //get processing resolution: one scale for both sides, so the aspect ratio of the video is kept
+        processingWidth = renderWidth;
+        processingHeight = renderHeight;
+        if (videoWidth > 0 && videoHeight > 0)
+        {
+            float scale = Math.min(Math.min((float) renderWidth / videoWidth, (float) renderHeight / videoHeight), MAX_PROCESSING_SCALE);
+            processingWidth = fitToRender(Math.round(videoWidth * scale), renderWidth);
+            processingHeight = fitToRender(Math.round(videoHeight * scale), renderHeight);
+        }
+        Logging.logD("[A4K] PROCESSING size to " + processingWidth + " x " + processingHeight);
+
+        //output format of the compute backend changed, recreate it (falls back to fragment shaders if that fails)
+        if (compute != null && compute.isHalfFloat() != highPrecision)
+        {
+            compute.release();
+            compute = null;
+            setupCompute();
+        }
+
+        //compute backend only needs its output textures, no frame buffers
+        if (compute != null)
+        {
+            compute.resize(processingWidth, processingHeight);
+            hasOutput = false;
+            updateProcessingScale();
+            return;
+        }
+
+        //intermediate format changed, recreate programs with matching precision
+        boolean halfFloat = highPrecision && GLHalfFloatFramebuffer.isSupported();
+        if (highPrecision && !halfFloat)
+            Logging.logW("[A4K] RGBA16F frame buffers are not supported, using RGBA8");
+        if (halfFloat != useHalfFloat)
+        {
+            useHalfFloat = halfFloat;
+            colorProgram.delete();
+            gradientProgram.delete();
+            gradPushProgram.delete();
+            setupAnime4KPrograms();
+        }
+
+        //return old buffers to the pool, and get buffers with the new size and format (the pool only reallocates if size or format changed)
+        GLFramebufferPool pool = getFramebufferPool();
+        pool.recycle(buffer);
+        pool.recycle(gradientBuffer);
+        pool.recycle(outputBuffer);
+        outputBuffer = null;
+        buffer = pool.obtain(processingWidth, processingHeight, useHalfFloat);
+        gradientBuffer = pool.obtain(processingWidth, processingHeight, useHalfFloat);
+
+        //output buffer is only needed when processing and render resolution differ, or frames may be skipped
+        if (usesOutputBuffer())
+            outputBuffer = pool.obtain(processingWidth, processingHeight, useHalfFloat);
+        hasOutput = false;
+
+        //processing resolution changed, so does the push strength
+        updateProcessingScale();
     }
 
     /**
-     * Draw frame using Anime4k shaders
+     * Clamp a processing size to the render size.
+     * Sizes within a pixel of the render size are snapped to it, so rounding does not force an extra scaling draw.
+     *
+     * @param size       the processing size, from the video size * processing scale
+     * @param renderSize the render size on the same axis
+     * @return the processing size to use
+     */
+    private static int fitToRender(int size, int renderSize)
+    {
+        if (size >= renderSize - 1) return renderSize;
+        return Math.max(1, size);
+    }
+
+    /**
+     * @return is anime4k processed at a resolution different from the render resolution?
+     */
+    private boolean isProcessingScaled()
+    {
+        return processingWidth != renderWidth || processingHeight != renderHeight;
+    }
+
+    /**
+     * @return is the output processed to outputBuffer (and then copied to the target)?
+     */
+    private boolean usesOutputBuffer()
+    {
+        return isProcessingScaled() || isFrameLimited;
+    }
+
+    /**
+     * Draw frame using Anime4k shaders.
+     * Every pass is three draws of 9 fetches per pixel: color (get + push), gradient get and gradient push.
+     * Color get only needs the pixel itself, so the color push shader computes it on the fly.
+     * The gradient needs the neighbours, so computing it on the fly in the push shader would need 25 fetches per pixel instead of a extra draw.
      *
      * @param sourceTexture the texture to draw
      * @param target        the frame buffer to draw to. is already active framebuffer when this function is called
@@ -142,37 +347,116 @@ public class GLAnime4K extends GLFilterBase implements VideoListener
     @Override
     public void draw(int sourceTexture, EFramebufferObject target)
     {
+        //the fps limit only needs the output buffer while it is below the refresh rate (which is measured while pacing)
+        boolean limited = framePacer.isLimiting(fpsLimit);
+        if (limited != isFrameLimited)
+        {
+            isFrameLimited = limited;
+            buffersDirty = true;
+        }
+
+        //video size or fps limit changed since the last frame
+        if (buffersDirty) updateBuffers();
+
+        //pass count changed since the last frame, split the push strength over the new passes
+        if (pushStrengthDirty)
+        {
+            pushStrengthDirty = false;
+            autoAdjustPushStrength();
+        }
+
+        //pace frames, and count fps
+        boolean processFrame = updateFpsLogic(true, fpsLimit);
+
+        //compute backend: all stages of a pass in one dispatch, then scale the output to the target
+        if (compute != null)
+        {
+            //skipped frame: present the last output again, without processing
+            if (processFrame || !hasOutput)
+            {
+                passTimer.begin();
+                computeOutput = compute.process(sourceTexture, a4kPasses, a4kColorPushStrength, a4kGradPushStrength);
+                passTimer.end();
+                hasOutput = true;
+            }
+
+            //computeOutput -> target
+            drawUsingProgram(copyProgram, computeOutput, target);
+            return;
+        }
+
+        //process at lower resolution or with frame pacing
+        if (usesOutputBuffer())
+        {
+            //skipped frame: present the last output again, without processing
+            if (processFrame || !hasOutput)
+            {
+                passTimer.begin();
+                processToOutputBuffer(sourceTexture);
+                passTimer.end();
+            }
+
+            //outputBuffer -> target
+            drawUsingProgram(copyProgram, outputBuffer.getTexName(), target);
+            return;
+        }
+
         //render x passes of anime4k
+        passTimer.begin();
         for (int pass = 0; pass < a4kPasses; pass++)
         {
-            //get color
+            //get + push color
             if (pass == 0)
             {
                 //first pass, sourceTexture -> buffer
-                drawUsingProgram(colorGetProgram, sourceTexture, buffer);
+                drawUsingProgram(colorProgram, sourceTexture, buffer);
             }
             else
             {
                 //already had one pass, target -> buffer
-                drawUsingProgram(colorGetProgram, target.getTexName(), buffer);
+                drawUsingProgram(colorProgram, target.getTexName(), buffer);
             }
 
-            //push color
-            //buffer -> target
-            drawUsingProgram(colorPushProgram, buffer.getTexName(), target);
-
             //get gradient
-            //target -> buffer
-            drawUsingProgram(gradientGetProgram, target.getTexName(), buffer);
+            //buffer -> gradientBuffer
+            drawUsingProgram(gradientProgram, buffer.getTexName(), gradientBuffer);
 
             //push gradient
-            //buffer -> target
-            drawUsingProgram(gradientPushProgram, buffer.getTexName(), target);
+            //gradientBuffer -> target
+            drawUsingProgram(gradPushProgram, gradientBuffer.getTexName(), target);
         }
+        passTimer.end();
+    }
 
-        //count + limit fps
-        //updateFpsLogic(logFps, fpsLimit);
-        updateFpsLogic(true, fpsLimit);
+    /**
+     * Process a frame using Anime4k shaders at processing resolution, into outputBuffer.
+     * The source is scaled down to processing resolution, then all passes run on buffer, gradientBuffer and outputBuffer.
+     * The caller scales the output up to render resolution in a single draw.
+     *
+     * @param sourceTexture the texture to process
+     */
+    private void processToOutputBuffer(int sourceTexture)
+    {
+        //scale down to processing resolution
+        //sourceTexture -> outputBuffer
+        drawUsingProgram(copyProgram, sourceTexture, outputBuffer);
+
+        //render x passes of anime4k
+        for (int pass = 0; pass < a4kPasses; pass++)
+        {
+            //get + push color
+            //outputBuffer -> buffer
+            drawUsingProgram(colorProgram, outputBuffer.getTexName(), buffer);
+
+            //get gradient
+            //buffer -> gradientBuffer
+            drawUsingProgram(gradientProgram, buffer.getTexName(), gradientBuffer);
+
+            //push gradient
+            //gradientBuffer -> outputBuffer
+            drawUsingProgram(gradPushProgram, gradientBuffer.getTexName(), outputBuffer);
+        }
+        hasOutput = true;
     }
 
     /**
@@ -183,35 +467,34 @@ public class GLAnime4K extends GLFilterBase implements VideoListener
      * -push strenght (0.0-1.0)
      * uniform float fPushStrength;
      * <p>
-     * uniform          colorget    colorpush   gradget     gradpush
-     * vTextureSize     N           Y           Y           Y
-     * fPushStrength    N           Y(col)      N           Y(grad)
+     * uniform          color       gradient    gradient push
+     * vTextureSize     Y           Y           Y
+     * fPushStrength    Y(col)      N           Y(grad)
      * <p>
-     * have to do this depending on program since opengl will optimize away unused uniforms
+     * the copy program has neither
      *
      * @param program the program that is used for drawing
      */
     @Override
-    protected void setCustomUniforms(int program)
+    protected void setCustomUniforms(GLProgram program)
     {
-        //set value of vTextureSize
-        if (program != colorGetProgram)
+        //copy program has no custom uniforms, handles were resolved in setup()
+        if (program == colorProgram)
         {
-            //every program except color GET has vTextureSize uniform
-            glUniform2f(getGlHandle(program, "vTextureSize"), buffer.getWidth(), buffer.getHeight());
+            //color program has fPushStrength uniform that translates to color push strength
+            glUniform2f(hndColorTextureSize, buffer.getWidth(), buffer.getHeight());
+            glUniform1f(hndColorPushStrength, a4kColorPushStrength);
         }
-
-        //set value of fPushStrength
-        if (program == colorPushProgram)
+        else if (program == gradientProgram)
         {
-            //color PUSH program has fPushStrength uniform that translates to color push strength
-            glUniform1f(getGlHandle(program, "fPushStrength"), a4kColorPushStrength);
+            //gradient program only needs the texture size
+            glUniform2f(hndGradientTextureSize, buffer.getWidth(), buffer.getHeight());
         }
-
-        if (program == gradientPushProgram)
+        else if (program == gradPushProgram)
         {
-            //gradient PUSH program has fPushStrength uniform that translates to grad push strength
-            glUniform1f(getGlHandle(program, "fPushStrength"), a4kGradPushStrength);
+            //gradient push program has fPushStrength uniform that translates to grad push strength
+            glUniform2f(hndGradPushTextureSize, buffer.getWidth(), buffer.getHeight());
+            glUniform1f(hndGradPushStrength, a4kGradPushStrength);
         }
     }
 
@@ -221,70 +504,61 @@ public class GLAnime4K extends GLFilterBase implements VideoListener
     @Override
     public void release()
     {
-        //delete shaders
-        glDeleteProgram(colorGetProgram);
-        glDeleteProgram(colorPushProgram);
-        glDeleteProgram(gradientGetProgram);
-        glDeleteProgram(gradientPushProgram);
-
-        glDeleteShader(colorGetFragmentShader);
-        glDeleteShader(colorPushFragmentShader);
-        glDeleteShader(gradientGetFragmentShader);
-        glDeleteShader(gradientPushFragmentShader);
-
-        glDeleteShader(commonVertexShader);
-
-        //set handles to 0
-        colorGetProgram = 0;
-        colorPushProgram = 0;
-        gradientGetProgram = 0;
-        gradientPushProgram = 0;
-
-        colorGetFragmentShader = 0;
-        colorPushFragmentShader = 0;
-        gradientGetFragmentShader = 0;
-        gradientPushFragmentShader = 0;
-
-        commonVertexShader = 0;
+        //delete programs
+        colorProgram.delete();
+        gradientProgram.delete();
+        gradPushProgram.delete();
+        copyProgram.delete();
+
+        colorProgram = null;
+        gradientProgram = null;
+        gradPushProgram = null;
+        copyProgram = null;
+
+        //release compute backend
+        if (compute != null)
+            compute.release();
+        compute = null;
+
+        //return frame buffers to the pool
+        GLFramebufferPool pool = getFramebufferPool();
+        pool.recycle(buffer);
+        pool.recycle(gradientBuffer);
+        pool.recycle(outputBuffer);
+        buffer = null;
+        gradientBuffer = null;
+        outputBuffer = null;
+        releaseFramebufferPool();
 
         //release the vertex buffer
         releaseVertexBuffer();
 
+        //release the pass timer
+        passTimer.release();
+
+        //stop observing vsync
+        framePacer.stop();
+
         //log release
         Logging.logD("[A4K] Released shader.");
     }
 
     /**
-     * Read a fragment shader source from res/raw
-     *
-     * @param ctx the context to read in
-     * @param res the resource id in res/raw
-     * @return the loaded shader source. When fails, defaults to DEFAULT_FRAGMENT_SHADER
+     * @return the average gpu time of the passes since the last call, in ms. -1 if not measured
      */
-    private String readShaderRes(Context ctx, int res)
+    @Override
+    protected float takeProcessingTimeMs()
     {
-        try
-        {
-            StringBuilder shaderSrc = new StringBuilder();
-            InputStream resStream = ctx.getResources().openRawResource(res);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(resStream));
-            String ln = reader.readLine();
-            while (ln != null)
-            {
-                shaderSrc.append(ln).append("\n");
-                ln = reader.readLine();
-            }
+        return passTimer.takeAverageMs();
+    }
 
-            reader.close();
-            resStream.close();
-            //Logging.logD(shaderSrc.toString());
-            return shaderSrc.toString();
-        }
-        catch (IOException e)
-        {
-            Logging.logE("[A4K] Error loading shader source from Res ID " + res + "! Exception: " + e.toString());
-            return DEFAULT_FRAGMENT_SHADER;
-        }
+    /**
+     * Forget the output of the last processed frame, so it is not presented again after the chain was bypassed
+     */
+    @Override
+    public void resetOutput()
+    {
+        hasOutput = false;
     }
     //endregion
 
@@ -305,38 +579,57 @@ public class GLAnime4K extends GLFilterBase implements VideoListener
     {
         Logging.logD("[A4K] VIDEO size changed to " + width + " x " + height);
 
-        //set video resolution
+        //set video resolution, buffers are updated on the gl thread with the next frame
         videoWidth = width;
         videoHeight = height;
-        autoAdjustPushStrength();
+        buffersDirty = true;
     }
     //endregion
 
     //region auto- push strength
 
     /**
-     * Auto- adjust the push strength based on render resolution and video resolution
-     * does nothing if enableAutoPushStrength is false
+     * Update the processing scale from processing and video resolution, adjust the push strength to it and notify the scale listener.
+     * Does nothing if processing OR video resolution are not yet set
+     */
+    private void updateProcessingScale()
+    {
+        if (processingWidth <= 0 || processingHeight <= 0 || videoWidth <= 0 || videoHeight <= 0) return;
+
+        //calculate scaling factor based on resolution anime4k is processed at and video (fractional, eg. 1.5 for 720p to 1080p)
+        //both sides use the same scale, so the smaller one is exact (the other may be snapped to the render size)
+        float scale = Math.min((float) processingWidth / videoWidth, (float) processingHeight / videoHeight);
+        if (scale == processingScale) return;
+        processingScale = scale;
+
+        autoAdjustPushStrength();
+
+        ScaleListener listener = scaleListener;
+        if (listener != null)
+            listener.onProcessingScaleChanged(this, scale);
+    }
+
+    /**
+     * Auto- adjust the push strength based on the processing scale and pass count.
+     * The strength is split over all passes, so dropping a pass does not weaken the effect much.
+     * does nothing if enableAutoPushStrength is false. Has to be called on the gl thread.
      */
     private void autoAdjustPushStrength()
     {
-        //abort if render OR video resolution are not yet set
-        if (renderWidth <= 0 || renderHeight <= 0 || videoWidth <= 0 || videoHeight <= 0) return;
+        //abort if scale is not yet known
+        float scale = processingScale;
+        if (scale <= 0) return;
 
         //abort if auto push strength is disabled
         if (!enableAutoPushStrength) return;
 
-        //calculate scaling factor based on resolution of render surface and video
-        float wScale = renderWidth / videoWidth;
-        float hScale = renderHeight / videoHeight;
-        float scale = (wScale + hScale) / 2f;
-
-        //calculate push factors based on scale
-        a4kColorPushStrength = clamp(scale / 6f, 0f, 1f);
-        a4kGradPushStrength = clamp(scale / 2f, 0f, 1f);
+        //calculate push factors based on scale, split over the passes
+        int passes = Math.max(1, a4kPasses);
+        a4kColorPushStrength = clamp(scale / (6f * passes), 0f, 1f);
+        a4kGradPushStrength = clamp(scale / (2f * passes), 0f, 1f);
 
         //log the change
-        Logging.logD("[A4K] Auto- Adjusting Push Strength to COL= %.2f and GRAD= %.2f. (RENDER: %d x %d; VIDEO: %d x %d)", a4kColorPushStrength, a4kGradPushStrength, renderWidth, renderHeight, videoWidth, videoHeight);
+        Logging.logD("[A4K] Auto- Adjusting Push Strength to COL= %.2f and GRAD= %.2f. (SCALE: %.2f; PASSES: %d; PROCESSING: %d x %d; VIDEO: %d x %d)", a4kColorPushStrength, a4kGradPushStrength, scale, passes, processingWidth, processingHeight, videoWidth, videoHeight);
     }
 
     /**
@@ -368,6 +661,51 @@ public class GLAnime4K extends GLFilterBase implements VideoListener
     public void setPasses(int passes)
     {
         a4kPasses = passes;
+
+        //push strength is split over the passes, adjusted on the gl thread with the next frame
+        pushStrengthDirty = true;
+    }
+
+    /**
+     * @return processing resolution / video resolution (fractional), or -1 if not yet known
+     */
+    public float getProcessingScale()
+    {
+        return processingScale;
+    }
+
+    /**
+     * Set the listener that is notified when the processing scale changed
+     *
+     * @param listener the listener. null to remove
+     */
+    public void setScaleListener(ScaleListener listener)
+    {
+        scaleListener = listener;
+    }
+
+    /**
+     * Use RGBA16F instead of RGBA8 for intermediate textures, if supported by the device.
+     * This is more precise, but needs twice the memory bandwidth.
+     *
+     * @param en use RGBA16F intermediates?
+     */
+    @SuppressWarnings("unused")
+    public void setHighPrecision(boolean en)
+    {
+        highPrecision = en;
+
+        //buffers and programs are updated on the gl thread
+        buffersDirty = true;
+    }
+
+    /**
+     * @return should RGBA16F intermediates be used (if supported)?
+     */
+    @SuppressWarnings("unused")
+    public boolean getHighPrecision()
+    {
+        return highPrecision;
     }
 
     /**
@@ -0,0 +1,225 @@
+package de.shadow578.yetanothervideoplayer.feature.gl;
+
+import android.opengl.GLES30;
+import android.opengl.GLES31;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+
+import de.shadow578.yetanothervideoplayer.util.Logging;
+
+//allow direct use of gl functions
+import static android.opengl.GLES20.*;
+
+/**
+ * Compute shader (GLES 3.1) backend of {@link GLAnime4K}.
+ * Every pass of anime4k (color get + push, gradient get + push) is a single dispatch:
+ * every work group loads its tile of the source (plus a halo) into shared memory once, and runs all stages on it.
+ * Output is written to two immutable textures that are ping- ponged between passes.
+ * Check isSupported() first, and only use on the gl thread.
+ */
+public class GLAnime4KCompute
+{
+    /**
+     * size of the output tile of one work group, has to match TILE_SIZE in a4k_compute.cs
+     */
+    private static final int TILE_SIZE = 16;
+
+    /**
+     * the compute program. not a GLProgram, since compute programs have no vertex attributes
+     */
+    private int programId;
+
+    /**
+     * uniform handles of the compute program, resolved in setup()
+     */
+    private int hndTexture, hndTextureSize, hndColorPushStrength, hndGradPushStrength;
+
+    /**
+     * output textures. passes are ping- ponged between them. 0 if not created
+     */
+    private final int[] textures = new int[2];
+
+    /**
+     * size of the output textures
+     */
+    private int width, height;
+
+    /**
+     * are the output textures (and the program) RGBA16F instead of RGBA8?
+     */
+    private boolean halfFloat;
+
+    /**
+     * Check if the current gl context supports compute shaders. Has to be called on the gl thread.
+     *
+     * @return are compute shaders supported?
+     */
+    public static boolean isSupported()
+    {
+        return GLProgramCache.getGLESVersion() >= 31;
+    }
+
+    /**
+     * (re) create the compute program for RGBA8 or RGBA16F output.
+     *
+     * @param source    the source of the compute shader. #version has to be the first line
+     * @param cacheDir  directory to save the program binary in
+     * @param halfFloat should the output be RGBA16F instead of RGBA8?
+     * @throws RuntimeException if the program could not be created
+     */
+    public void setup(@NonNull String source, @Nullable File cacheDir, boolean halfFloat)
+    {
+        deleteProgram();
+
+        //defines have to go after the #version line
+        int versionEnd = source.indexOf('\n') + 1;
+        String defines = "#define A4K_IMAGE_FORMAT " + (halfFloat ? "rgba16f" : "rgba8") + "\n";
+        programId = GLProgramCache.getComputeProgram(cacheDir, source.substring(0, versionEnd) + defines + source.substring(versionEnd));
+
+        //resolve uniform handles once, so dispatching needs no lookups
+        hndTexture = getUniform("sTexture");
+        hndTextureSize = getUniform("vTextureSize");
+        hndColorPushStrength = getUniform("fColorPushStrength");
+        hndGradPushStrength = getUniform("fGradPushStrength");
+
+        //output textures have to match the image format of the program, recreate them with the next resize()
+        if (this.halfFloat != halfFloat)
+            releaseTextures();
+        this.halfFloat = halfFloat;
+        Logging.logD("[A4KCompute] setup program with %s output", halfFloat ? "RGBA16F" : "RGBA8");
+    }
+
+    /**
+     * @return are the output textures RGBA16F?
+     */
+    public boolean isHalfFloat()
+    {
+        return halfFloat;
+    }
+
+    /**
+     * (re) create the output textures with the given size. Does nothing if the size did not change
+     *
+     * @param width  the processing width
+     * @param height the processing height
+     */
+    public void resize(int width, int height)
+    {
+        if (textures[0] != 0 && this.width == width && this.height == height) return;
+        releaseTextures();
+        this.width = width;
+        this.height = height;
+
+        //save current binding
+        int[] args = new int[1];
+        glGetIntegerv(GL_TEXTURE_BINDING_2D, args, 0);
+        int savedTexture = args[0];
+
+        //image load/store needs immutable textures
+        glGenTextures(2, textures, 0);
+        for (int texture : textures)
+        {
+            glBindTexture(GL_TEXTURE_2D, texture);
+            GLES30.glTexStorage2D(GL_TEXTURE_2D, 1, halfFloat ? GLES30.GL_RGBA16F : GLES30.GL_RGBA8, width, height);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        }
+
+        //restore binding
+        glBindTexture(GL_TEXTURE_2D, savedTexture);
+        Logging.logD("[A4KCompute] created output textures (%d x %d)", width, height);
+    }
+
+    /**
+     * Process a frame using anime4k, at the size set by resize().
+     * The source is scaled to processing size by the first pass.
+     *
+     * @param sourceTexture      the texture to process
+     * @param passes             how many passes to run
+     * @param colorPushStrength  color push strength (0.0-1.0)
+     * @param gradPushStrength   gradient push strength (0.0-1.0)
+     * @return the texture containing the output. the source texture if passes is 0
+     */
+    public int process(int sourceTexture, int passes, float colorPushStrength, float gradPushStrength)
+    {
+        glUseProgram(programId);
+        glUniform2f(hndTextureSize, width, height);
+        glUniform1f(hndColorPushStrength, colorPushStrength);
+        glUniform1f(hndGradPushStrength, gradPushStrength);
+        glUniform1i(hndTexture, 0);
+        glActiveTexture(GL_TEXTURE0);
+
+        //one work group per tile, rounded up
+        int groupsX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int groupsY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        int imageFormat = halfFloat ? GLES30.GL_RGBA16F : GLES30.GL_RGBA8;
+
+        int input = sourceTexture;
+        for (int pass = 0; pass < passes; pass++)
+        {
+            //input -> output, ping- pong between the two textures
+            int output = textures[pass % 2];
+            glBindTexture(GL_TEXTURE_2D, input);
+            GLES31.glBindImageTexture(0, output, 0, false, 0, GLES31.GL_WRITE_ONLY, imageFormat);
+            GLES31.glDispatchCompute(groupsX, groupsY, 1);
+
+            //output is sampled by the next pass (or the copy to the target)
+            GLES31.glMemoryBarrier(GLES31.GL_TEXTURE_FETCH_BARRIER_BIT | GLES31.GL_SHADER_IMAGE_ACCESS_BARRIER_BIT);
+            input = output;
+        }
+
+        glBindTexture(GL_TEXTURE_2D, 0);
+        return input;
+    }
+
+    /**
+     * release program and output textures
+     */
+    public void release()
+    {
+        deleteProgram();
+        releaseTextures();
+    }
+
+    /**
+     * delete the compute program
+     */
+    private void deleteProgram()
+    {
+        if (programId != 0)
+            glDeleteProgram(programId);
+        programId = 0;
+    }
+
+    /**
+     * delete the output textures
+     */
+    private void releaseTextures()
+    {
+        if (textures[0] != 0)
+            glDeleteTextures(2, textures, 0);
+
+        textures[0] = 0;
+        textures[1] = 0;
+    }
+
+    /**
+     * Get the handle of a uniform of the compute program
+     *
+     * @param name the name of the uniform
+     * @return the handle of the uniform
+     * @throws IllegalStateException if the uniform could not be found
+     */
+    private int getUniform(@NonNull String name)
+    {
+        int handle = glGetUniformLocation(programId, name);
+        if (handle == -1)
+            throw new IllegalStateException("Cannot find handle for " + name);
+        return handle;
+    }
+}
@@ -0,0 +1,77 @@
+package de.shadow578.yetanothervideoplayer.feature.gl;
+
+import android.content.Context;
+
+import de.shadow578.yetanothervideoplayer.R;
+
+//allow direct use of gl functions
+import static android.opengl.GLES20.*;
+
+/**
+ * Color adjustment filter (brightness, contrast and saturation)
+ */
+public class GLColorAdjust extends GLShaderFilter
+{
+    //added to the color (-1.0 - 1.0, 0.0 = unchanged)
+    private float brightness = 0f;
+
+    //contrast factor (1.0 = unchanged)
+    private float contrast = 1f;
+
+    //saturation factor (0.0 = grayscale, 1.0 = unchanged)
+    private float saturation = 1f;
+
+    //handles of the uniforms
+    private int hndBrightness, hndContrast, hndSaturation;
+
+    public GLColorAdjust(Context ctx)
+    {
+        super(ctx, R.raw.coloradjust);
+    }
+
+    @Override
+    protected void resolveUniforms(GLProgram program)
+    {
+        hndBrightness = program.getHandle("fBrightness");
+        hndContrast = program.getHandle("fContrast");
+        hndSaturation = program.getHandle("fSaturation");
+    }
+
+    @Override
+    protected void setFilterUniforms()
+    {
+        glUniform1f(hndBrightness, brightness);
+        glUniform1f(hndContrast, contrast);
+        glUniform1f(hndSaturation, saturation);
+    }
+
+    //region Parameter Interface
+
+    /**
+     * @param brightness added to the color (-1.0 - 1.0, 0.0 = unchanged)
+     */
+    @SuppressWarnings("unused")
+    public void setBrightness(float brightness)
+    {
+        this.brightness = brightness;
+    }
+
+    /**
+     * @param contrast contrast factor (1.0 = unchanged)
+     */
+    @SuppressWarnings("unused")
+    public void setContrast(float contrast)
+    {
+        this.contrast = contrast;
+    }
+
+    /**
+     * @param saturation saturation factor (0.0 = grayscale, 1.0 = unchanged)
+     */
+    @SuppressWarnings("unused")
+    public void setSaturation(float saturation)
+    {
+        this.saturation = saturation;
+    }
+    //endregion
+}
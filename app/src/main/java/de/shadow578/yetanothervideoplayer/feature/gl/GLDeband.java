@@ -0,0 +1,77 @@
+package de.shadow578.yetanothervideoplayer.feature.gl;
+
+import android.content.Context;
+
+import de.shadow578.yetanothervideoplayer.R;
+
+//allow direct use of gl functions
+import static android.opengl.GLES20.*;
+
+/**
+ * Debanding filter. Smooths flat areas whose color differs only slightly from the surrounding pixels, and adds a bit of grain to hide the remaining steps.
+ */
+public class GLDeband extends GLShaderFilter
+{
+    //max. color difference that is considered banding (0.0-1.0)
+    private float threshold = 0.02f;
+
+    //distance to the sampled pixels, in pixels
+    private float range = 8f;
+
+    //strength of the added grain (0.0-1.0)
+    private float grain = 0.01f;
+
+    //handles of the uniforms
+    private int hndThreshold, hndRange, hndGrain;
+
+    public GLDeband(Context ctx)
+    {
+        super(ctx, R.raw.deband);
+    }
+
+    @Override
+    protected void resolveUniforms(GLProgram program)
+    {
+        hndThreshold = program.getHandle("fThreshold");
+        hndRange = program.getHandle("fRange");
+        hndGrain = program.getHandle("fGrain");
+    }
+
+    @Override
+    protected void setFilterUniforms()
+    {
+        glUniform1f(hndThreshold, threshold);
+        glUniform1f(hndRange, range);
+        glUniform1f(hndGrain, grain);
+    }
+
+    //region Parameter Interface
+
+    /**
+     * @param threshold max. color difference that is considered banding (0.0-1.0)
+     */
+    @SuppressWarnings("unused")
+    public void setThreshold(float threshold)
+    {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param range distance to the sampled pixels, in pixels
+     */
+    @SuppressWarnings("unused")
+    public void setRange(float range)
+    {
+        this.range = range;
+    }
+
+    /**
+     * @param grain strength of the added grain (0.0-1.0)
+     */
+    @SuppressWarnings("unused")
+    public void setGrain(float grain)
+    {
+        this.grain = grain;
+    }
+    //endregion
+}
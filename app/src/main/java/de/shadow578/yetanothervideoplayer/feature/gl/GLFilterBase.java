@@ -6,7 +6,7 @@ import com.daasuu.epf.filter.GlFilter;
 
 import de.shadow578.yetanothervideoplayer.util.Logging;
 
-import java.util.HashMap;
+import java.io.File;
 
 //allow direct use of gl functions
 import static android.opengl.GLES20.*;
@@ -17,6 +17,20 @@ import static android.opengl.GLES20.*;
 @SuppressWarnings({"FieldCanBeLocal", "WeakerAccess"})
 public class GLFilterBase extends GlFilter
 {
+    /**
+     * Listener for the frame stats of a filter
+     */
+    public interface FrameStatsListener
+    {
+        /**
+         * Called on the GL thread every few seconds with the frame stats of that interval
+         *
+         * @param filter the filter that collected the stats
+         * @param stats  the frame stats of the interval
+         */
+        void onFrameStatsUpdate(GLFilterBase filter, FrameStats stats);
+    }
+
     // region GLSL Shaders
     protected static final String DEFAULT_VERTEX_SHADER =
             "attribute vec4 aPosition;\n" +
@@ -44,16 +58,27 @@ public class GLFilterBase extends GlFilter
             -1.0f, -1.0f, 0.0f, 0.0f, 0.0f,
             1.0f, -1.0f, 0.0f, 1.0f, 0.0f
     };
-    private final HashMap<String, Integer> handleCache = new HashMap<>();
 
-    private int vertexShader, fragmentShader, program;
+    private GLProgram program;
     private int vertexBuffer;
 
-    protected final long fpsLogIntervalMs = 5000;
-    protected long tLastFrame = 0, tLastLog = 0, fpsFrameCounter = 0;
+    //directory linked programs are saved in by the GLProgramCache. if null, programs are only cached in memory
+    protected File programCacheDir;
+
+    protected final FramePacer framePacer = new FramePacer();
+    protected volatile FrameStats frameStats;
 
     protected boolean logFps = false;
-    protected long fpsLimit = 60;
+    protected volatile long fpsLimit = -1;
+
+    protected FrameStatsListener frameStatsListener;
+
+    //is this filter enabled? disabled filters are skipped by a GLFilterChain
+    protected volatile boolean enabled = true;
+
+    //pool frame buffers are obtained from. shared between the filters of a chain, otherwise owned by this filter
+    private GLFramebufferPool framebufferPool;
+    private boolean ownsFramebufferPool;
 
     /**
      * Set this filter up for use
@@ -62,9 +87,7 @@ public class GLFilterBase extends GlFilter
     public void setup()
     {
         //setup shader program
-        vertexShader = EglUtil.loadShader(DEFAULT_VERTEX_SHADER, GL_VERTEX_SHADER);
-        fragmentShader = EglUtil.loadShader(DEFAULT_FRAGMENT_SHADER, GL_FRAGMENT_SHADER);
-        program = EglUtil.createProgram(vertexShader, fragmentShader);
+        program = createProgram(DEFAULT_VERTEX_SHADER, DEFAULT_FRAGMENT_SHADER);
 
         //create vertex buffer
         setupVertexBuffer();
@@ -93,11 +116,11 @@ public class GLFilterBase extends GlFilter
     @Override
     public void draw(int sourceTexture, EFramebufferObject targetBuffer)
     {
+        //count fps. this filter is a plain copy, so there is nothing to gain by skipping frames
+        updateFpsLogic(logFps, -1);
+
         //draw texture to tmpBuffer using program
         drawUsingProgram(program, sourceTexture, targetBuffer);
-
-        //log + limit fps
-        updateFpsLogic(logFps, fpsLimit);
     }
 
     /**
@@ -107,25 +130,33 @@ public class GLFilterBase extends GlFilter
     public void release()
     {
         //delete shader program
-        glDeleteProgram(program);
-        glDeleteShader(vertexShader);
-        glDeleteShader(fragmentShader);
-
-        program = 0;
-        vertexShader = 0;
-        fragmentShader = 0;
-
-        //clear handle cache
-        handleCache.clear();
+        program.delete();
+        program = null;
 
         releaseVertexBuffer();
 
+        //stop observing vsync
+        framePacer.stop();
+
         //log release
         Logging.logD("Released shader.");
     }
 
     //region GL Util functions
 
+    /**
+     * Create a linked program using the GLProgramCache, and resolve its common handles.
+     * The program is loaded from a saved binary if possible, otherwise compiled from source.
+     *
+     * @param vertexSource   the vertex shader source
+     * @param fragmentSource the fragment shader source
+     * @return the linked program. delete it using GLProgram.delete()
+     */
+    protected GLProgram createProgram(String vertexSource, String fragmentSource)
+    {
+        return new GLProgram(GLProgramCache.getProgram(programCacheDir, vertexSource, fragmentSource));
+    }
+
     /**
      * Draw a texture to a frame buffer using a gl program
      *
@@ -133,17 +164,18 @@ public class GLFilterBase extends GlFilter
      * @param texToDraw  the texture to draw
      * @param drawTarget the frame buffer to draw to
      */
-    protected void drawUsingProgram(int program, int texToDraw, EFramebufferObject drawTarget)
+    protected void drawUsingProgram(GLProgram program, int texToDraw, EFramebufferObject drawTarget)
     {
-        //set drawTarget frame buffer as render target
+        //set drawTarget frame buffer as render target, and draw to all of it (it may be smaller than the render surface)
         drawTarget.enable();
+        glViewport(0, 0, drawTarget.getWidth(), drawTarget.getHeight());
 
         //use the wanted program
-        glUseProgram(program);
+        glUseProgram(program.getId());
 
-        //get attribute handles
-        int hndAPosition = getGlHandle(program, "aPosition");
-        int hndATextureCoord = getGlHandle(program, "aTextureCoord");
+        //get attribute handles (resolved when the program was created)
+        int hndAPosition = program.getPositionHandle();
+        int hndATextureCoord = program.getTextureCoordHandle();
 
         //setup gl vertex attributes
         glBindBuffer(GL_ARRAY_BUFFER, vertexBuffer);
@@ -157,7 +189,7 @@ public class GLFilterBase extends GlFilter
         glBindTexture(GL_TEXTURE_2D, texToDraw);
 
         //set uniform values (texture is default, additionally set custom uniforms
-        glUniform1i(getGlHandle(program, "sTexture"), 0);
+        glUniform1i(program.getTextureHandle(), 0);
         setCustomUniforms(program);
 
         //draw a textured quad using the bound texture
@@ -170,139 +202,96 @@ public class GLFilterBase extends GlFilter
         glBindBuffer(GL_ARRAY_BUFFER, 0);
     }
 
+    /**
+     * Forget output of previous frames this filter may present again (eg. on skipped frames), so the next frame is processed.
+     * Called on the gl thread by a GLFilterChain when the filter is drawn again after the chain was bypassed.
+     */
+    public void resetOutput()
+    {
+
+    }
+
     /**
      * Set custom uniform values for the current program.
      * Called in drawUsingProgram right before screen is drawn to buffer, but after sTexture uniform is set.
-     * Use getGlHandle to get the handle to the uniform you want to set, then set it using glUniform... function.
+     * Resolve the handles of the uniforms once using GLProgram.getHandle() after creating the program, then set them here using glUniform... functions.
+     * This is called for every draw, so it should not do lookups or allocate.
      *
      * @param program the program that is used for drawing
      */
-    protected void setCustomUniforms(int program)
+    protected void setCustomUniforms(GLProgram program)
     {
 
     }
 
     /**
-     * Get the GL handle for a attribute or uniform
+     * Get the pool to obtain frame buffers from.
+     * If no pool was set using setFramebufferPool(), a pool owned by this filter is created.
      *
-     * @param program the program the uniform / attribute is in
-     * @param name    the name of the attribute or uniform
-     * @return the handle for the uniform or attribute
-     * @throws IllegalStateException when no handle for the given name could be found
+     * @return the frame buffer pool
      */
-    protected int getGlHandle(final int program, final String name)
+    protected GLFramebufferPool getFramebufferPool()
     {
-        //try to get the value from the handle cache
-        final Integer cachedHandle = handleCache.get(program + ":" + name);
-        if (cachedHandle != null)
+        if (framebufferPool == null)
         {
-            return cachedHandle;
+            framebufferPool = new GLFramebufferPool();
+            ownsFramebufferPool = true;
         }
-
-        //not in cache, try to get from gl
-        int handle = glGetAttribLocation(program, name);
-        if (handle == -1)
-        {
-            //not a attribute, try uniform
-            handle = glGetUniformLocation(program, name);
-        }
-
-        //check handle is now valid
-        if (handle == -1)
-        {
-            throw new IllegalStateException("Cannot find handle for " + name);
-        }
-
-        //add handle to cache for faster access next time
-        handleCache.put(program + ":" + name, handle);
-        return handle;
+        return framebufferPool;
     }
 
     /**
-     * Update the Filter's FPS logic.
-     *
-     * @param logFps   if true, the average fps rate is periodically logged
-     * @param fpsLimit if > 0, the fps is limited to the desired frame rate (using Thread.sleep)
+     * Release the frame buffer pool, if it is owned by this filter.
+     * A shared pool is released by its owner.
      */
-    protected void updateFpsLogic(boolean logFps, long fpsLimit)
+    protected void releaseFramebufferPool()
     {
-        //get current time and time delta (delta in seconds)
-        long tNow = System.currentTimeMillis();
-
-        //limit fps
-        if (fpsLimit > 0)
+        if (framebufferPool != null && ownsFramebufferPool)
         {
-            updateAndLimitFps(tNow, fpsLimit);
+            framebufferPool.releaseAll();
+            framebufferPool = null;
         }
-
-        //log fps if enabled
-        if (logFps)
-        {
-            updateAndLogFps(tNow);
-        }
-
-        //update time of last frame
-        tLastFrame = tNow;
     }
 
     /**
-     * Runs FPS Limiting logic and limits fps to the given target (using Thread.sleep)
+     * Update the Filter's FPS logic. Call once at the start of every frame.
+     * Frames are paced to the display's vsync by the framePacer, and frame stats are collected.
      *
-     * @param now       the current time (milliseconds)
-     * @param targetFps the target fps. better be positive
+     * @param logFps   if true, the frame stats are periodically logged
+     * @param fpsLimit if > 0, frames are paced to at most this frame rate
+     * @return should the frame be processed? if false, the frame would not be presented, so the last output should be drawn again
      */
-    protected void updateAndLimitFps(long now, long targetFps)
+    protected boolean updateFpsLogic(boolean logFps, long fpsLimit)
     {
-        //calculate time this frame took in seconds
-        long tDeltaMs = now - tLastFrame;
+        long now = System.nanoTime();
 
-        //calculate target frame time
-        long tDeltaTargetMs = 1000 / targetFps;
+        //pace frame
+        boolean process = framePacer.onFrame(now, fpsLimit);
 
-        //check if frame was faster than target
-        if (tDeltaMs < tDeltaTargetMs)
+        //publish stats every few seconds
+        if (framePacer.isStatsIntervalOver(now))
         {
-            //calculate time to sleep in ms
-            //for some reason it always limited to 2x the targeted fps, so here i am doubling the sleep time...
-            long tSleepMs = (tDeltaTargetMs - tDeltaMs) * 2;
-            //Logging.logE("delta=" + tDeltaMs + "; target=" + tDeltaTargetMs +"; sleep=" + tSleepMs);
-
-            //sanity check: check if sleep time is ACTUALLY positive and kind of in the right range
-            if (tSleepMs > 0 && tSleepMs < 2000)
-            {
-                //sleep to match target frame time
-                try
-                {
-                    Thread.sleep(tSleepMs, 0);
-                }
-                catch (InterruptedException ignored)
-                {
-                    //this is for frame rate limiting, dont care if it fails...
-                    //worst case is a higher frame rate :P
-                    Logging.logE("FPS Limiter Thread.sleep threw InterruptedException! Not stretching frame time!");
-                }
-            }
+            FrameStats stats = framePacer.pollStats(now, takeProcessingTimeMs());
+            frameStats = stats;
+            if (logFps)
+                Logging.logD("Frame Stats: " + stats.toString());
+
+            if (frameStatsListener != null)
+                frameStatsListener.onFrameStatsUpdate(this, stats);
         }
+
+        return process;
     }
 
     /**
-     * Runs FPS update logic and logs fps every 5 seconds
+     * Get the average gpu time spent processing a frame since the last call, for the frame stats.
+     * Filters that measure their processing time (eg. using a GLPassTimer) override this.
      *
-     * @param now the current time (milliseconds)
+     * @return the average processing time, in ms. -1 if not measured
      */
-    protected void updateAndLogFps(long now)
+    protected float takeProcessingTimeMs()
     {
-        //count frames
-        fpsFrameCounter++;
-
-        //log fps to console every 5 seconds
-        long lastLogDuration = (now - tLastLog);
-        if (lastLogDuration >= fpsLogIntervalMs)
-        {
-            Logging.logD("Average FPS: " + (fpsFrameCounter / (lastLogDuration / 1000f)));
-            tLastLog = now;
-            fpsFrameCounter = 0;
-        }
+        return -1f;
     }
 
     /**
@@ -347,5 +336,47 @@ public class GLFilterBase extends GlFilter
     {
         return fpsLimit;
     }
+
+    /**
+     * Enable or disable this filter. Disabled filters are skipped by a GLFilterChain.
+     *
+     * @param en enable the filter?
+     */
+    public void setEnabled(boolean en)
+    {
+        enabled = en;
+    }
+
+    /**
+     * @return is this filter enabled?
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Share a frame buffer pool with other filters. Has to be called before setup().
+     *
+     * @param pool the pool to obtain frame buffers from. it is not released by this filter
+     */
+    public void setFramebufferPool(GLFramebufferPool pool)
+    {
+        framebufferPool = pool;
+        ownsFramebufferPool = false;
+    }
+
+    public void setFrameStatsListener(FrameStatsListener listener)
+    {
+        frameStatsListener = listener;
+    }
+
+    /**
+     * @return the frame stats of the last interval, or null if not yet collected
+     */
+    public FrameStats getFrameStats()
+    {
+        return frameStats;
+    }
     // endregion
 }
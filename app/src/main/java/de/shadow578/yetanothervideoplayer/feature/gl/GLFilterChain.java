@@ -0,0 +1,403 @@
+package de.shadow578.yetanothervideoplayer.feature.gl;
+
+import com.daasuu.epf.EFramebufferObject;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.video.VideoFrameMetadataListener;
+
+import de.shadow578.yetanothervideoplayer.util.Logging;
+
+//allow direct use of gl functions
+import static android.opengl.GLES20.*;
+
+/**
+ * Chains multiple filters into one filter for ExoPlayerFilter.
+ * Every enabled filter draws into a ping- pong buffer that is the input of the next enabled filter, the last enabled filter draws to the target (or the output cache, see below).
+ * Disabled filters are skipped. All filters share one {@link GLFramebufferPool}, and at most two ping- pong buffers are used,
+ * so adding a filter does not add frame buffers or extra full- screen copies.
+ * The chain is bypassed (source is copied directly) while in PiP or when the render surface is too small for filtering to be visible.
+ * When filtering resumes, the filtered frames are faded in over a few frames.
+ * Rendering is demand- driven: when registered as the player's VideoFrameMetadataListener, the filters only run on the first draw
+ * at or after the release time of each new video frame. The last filter then draws into a output cache that is copied to the target,
+ * and all other draws (paused video, overlays, controls, vsyncs between frames of low frame rate video) only copy the cached output.
+ * Without frame times, the filters run on every draw and the last filter draws directly to the target.
+ */
+public class GLFilterChain extends GLFilterBase implements VideoFrameMetadataListener
+{
+    /**
+     * the chain is bypassed if the shorter side of the render surface is smaller than this, in pixels
+     */
+    private static final int BYPASS_SURFACE_SIZE = 360;
+
+    /**
+     * how many frames filtered output is faded in over, after the chain was bypassed
+     */
+    private static final int FADE_IN_FRAMES = 12;
+
+    /**
+     * program blending between the source and filtered output
+     */
+    private static final String BLEND_FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+                    "varying highp vec2 vTextureCoord;\n" +
+                    "uniform lowp sampler2D sTexture;\n" +
+                    "uniform lowp sampler2D sFiltered;\n" +
+                    "uniform float fMix;\n" +
+                    "void main() {\n" +
+                    "gl_FragColor = mix(texture2D(sTexture, vTextureCoord), texture2D(sFiltered, vTextureCoord), fMix);\n" +
+                    "}\n";
+
+    /**
+     * the filters of the chain, in the order they are drawn
+     */
+    private final GLFilterBase[] filters;
+
+    /**
+     * frame buffer pool shared by the chain and its filters
+     */
+    private final GLFramebufferPool sharedPool = new GLFramebufferPool();
+
+    /**
+     * ping- pong buffers between the filters. obtained from the pool when first needed
+     */
+    private final EFramebufferObject[] pingPongBuffers = new EFramebufferObject[2];
+
+    /**
+     * render resolution, size of the ping- pong buffers
+     */
+    private int renderWidth, renderHeight;
+
+    /**
+     * should the chain be bypassed (eg. in PiP)? set from any thread
+     */
+    private volatile boolean bypassRequested = false;
+
+    /**
+     * is the chain currently bypassed? only used on the gl thread
+     */
+    private boolean bypassed = false;
+
+    /**
+     * frames left in the fade in after the chain was bypassed. 0 if not fading
+     */
+    private int fadeInFramesLeft = 0;
+
+    /**
+     * blend program and its handles, for fading in filtered output
+     */
+    private GLProgram blendProgram;
+    private int hndBlendFiltered, hndBlendMix;
+
+    /**
+     * filtered texture and mix factor for the current blend draw
+     */
+    private int blendFilteredTexture;
+    private float blendMix;
+
+    /**
+     * release time (System.nanoTime()) of the last video frame, -1 if frame times are not known (then filters run on every draw)
+     */
+    private volatile long lastFrameReleaseNs = -1;
+
+    /**
+     * release time of the video frame the filters last ran for. -1 if they did not run for a known frame yet
+     */
+    private long drawnFrameReleaseNs = -1;
+
+    /**
+     * output of the last filter, presented again when there is no new frame. obtained from the pool when frame times are first known
+     */
+    private EFramebufferObject outputCache;
+
+    /**
+     * does outputCache contain the output of the last frame the filters ran for?
+     */
+    private boolean hasCachedOutput = false;
+
+    /**
+     * enabled filters (bit mask) when the filters last ran
+     */
+    private int drawnFilterMask = 0;
+
+    /**
+     * create a filter chain
+     *
+     * @param filters the filters of the chain, in the order they are drawn
+     */
+    public GLFilterChain(GLFilterBase... filters)
+    {
+        this.filters = filters;
+        setFramebufferPool(sharedPool);
+        for (GLFilterBase filter : filters)
+            filter.setFramebufferPool(sharedPool);
+    }
+
+    /**
+     * Set this filter and all filters of the chain up for use
+     */
+    @Override
+    public void setup()
+    {
+        super.setup();
+        for (GLFilterBase filter : filters)
+            filter.setup();
+
+        //blend program for fading in filtered output
+        blendProgram = createProgram(DEFAULT_VERTEX_SHADER, BLEND_FRAGMENT_SHADER);
+        hndBlendFiltered = blendProgram.getHandle("sFiltered");
+        hndBlendMix = blendProgram.getHandle("fMix");
+
+        Logging.logD("[Chain] setup %d filters.", filters.length);
+    }
+
+    /**
+     * Called when the frame size is changed. Resizes the ping- pong buffers with the next frame, and passes the size on to all filters.
+     *
+     * @param width  the new width
+     * @param height the new height
+     */
+    @Override
+    public void setFrameSize(int width, int height)
+    {
+        super.setFrameSize(width, height);
+        renderWidth = width;
+        renderHeight = height;
+
+        //return ping- pong buffers and output cache to the pool, they are obtained in the new size when needed
+        for (int i = 0; i < pingPongBuffers.length; i++)
+        {
+            sharedPool.recycle(pingPongBuffers[i]);
+            pingPongBuffers[i] = null;
+        }
+        sharedPool.recycle(outputCache);
+        outputCache = null;
+        hasCachedOutput = false;
+
+        for (GLFilterBase filter : filters)
+            filter.setFrameSize(width, height);
+    }
+
+    /**
+     * Draw all enabled filters. If no filter is enabled, the source is copied to the target.
+     *
+     * @param sourceTexture the texture to draw
+     * @param target        the frame buffer to draw to
+     */
+    @Override
+    public void draw(int sourceTexture, EFramebufferObject target)
+    {
+        //find the last enabled filter, it draws to the target directly
+        int last = -1;
+        int filterMask = 0;
+        for (int i = 0; i < filters.length; i++)
+        {
+            if (filters[i].isEnabled())
+            {
+                last = i;
+                filterMask |= 1 << i;
+            }
+        }
+
+        //bypass while in PiP or on tiny surfaces
+        updateBypass();
+
+        //no filter enabled or bypassed, just copy
+        if (last == -1 || bypassed)
+        {
+            super.draw(sourceTexture, target);
+            hasCachedOutput = false;
+            return;
+        }
+
+        //while fading in, the last filter draws to a ping- pong buffer that is then blended with the source
+        boolean fadeIn = fadeInFramesLeft > 0;
+
+        //if frame times are known, the filters run once per video frame and their output is cached for the other draws
+        long frameReleaseNs = lastFrameReleaseNs;
+        boolean cacheOutput = !fadeIn && frameReleaseNs != -1;
+
+        //no new video frame since the filters last ran, present their output again
+        if (cacheOutput && hasCachedOutput && filterMask == drawnFilterMask && !isNewFrame(frameReleaseNs))
+        {
+            //outputCache -> target
+            super.draw(outputCache.getTexName(), target);
+            return;
+        }
+
+        hasCachedOutput = cacheOutput;
+        drawnFilterMask = filterMask;
+        drawnFrameReleaseNs = frameReleaseNs;
+
+        //draw all enabled filters, ping- ponging between the buffers
+        int input = sourceTexture;
+        int pingPong = 0;
+        for (int i = 0; i <= last; i++)
+        {
+            GLFilterBase filter = filters[i];
+            if (!filter.isEnabled()) continue;
+
+            //the last filter draws to the output cache, to a ping- pong buffer when fading in, or directly to the target
+            EFramebufferObject output;
+            if (i != last || fadeIn)
+                output = getPingPongBuffer(pingPong);
+            else if (cacheOutput)
+                output = getOutputCache();
+            else
+                output = target;
+
+            filter.draw(input, output);
+
+            input = output.getTexName();
+            pingPong ^= 1;
+        }
+
+        //source + filtered output -> target
+        if (fadeIn)
+        {
+            blendFilteredTexture = input;
+            blendMix = 1f - ((float) fadeInFramesLeft / (FADE_IN_FRAMES + 1));
+            fadeInFramesLeft--;
+            drawUsingProgram(blendProgram, sourceTexture, target);
+        }
+        else if (cacheOutput)
+        {
+            //outputCache -> target
+            super.draw(outputCache.getTexName(), target);
+        }
+    }
+
+    /**
+     * Check if the filters should run for a video frame: only on the first draw at or after its release time.
+     * Draws before the release time still present the previous frame.
+     *
+     * @param frameReleaseNs the release time of the last video frame (System.nanoTime())
+     * @return is the frame new, so the filters should run for this draw?
+     */
+    private boolean isNewFrame(long frameReleaseNs)
+    {
+        return frameReleaseNs != drawnFrameReleaseNs && System.nanoTime() >= frameReleaseNs;
+    }
+
+    /**
+     * Called by the player on the playback thread when a video frame is about to be released to the surface
+     *
+     * @param presentationTimeUs the presentation time of the frame
+     * @param releaseTimeNs      the time the frame is released to the surface (System.nanoTime())
+     * @param format             the format of the frame
+     */
+    @Override
+    public void onVideoFrameAboutToBeRendered(long presentationTimeUs, long releaseTimeNs, Format format)
+    {
+        lastFrameReleaseNs = releaseTimeNs;
+    }
+
+    /**
+     * Stop demand- driven rendering, when the chain is no longer registered as VideoFrameMetadataListener. Filters then run on every draw
+     */
+    public void clearFrameTimes()
+    {
+        lastFrameReleaseNs = -1;
+    }
+
+    /**
+     * Get the output cache, obtaining it from the pool if needed
+     *
+     * @return the output cache, in render resolution
+     */
+    private EFramebufferObject getOutputCache()
+    {
+        if (outputCache == null)
+            outputCache = sharedPool.obtain(renderWidth, renderHeight);
+
+        return outputCache;
+    }
+
+    /**
+     * Update if the chain is bypassed, from the bypass request and the surface size.
+     * When filtering resumes, filters forget their old output and the filtered output is faded in
+     */
+    private void updateBypass()
+    {
+        boolean bypass = bypassRequested || Math.min(renderWidth, renderHeight) < BYPASS_SURFACE_SIZE;
+        if (bypass == bypassed) return;
+        bypassed = bypass;
+
+        if (bypass)
+        {
+            //entering bypass happens on a resize (PiP), so the change is not visible. no fade needed
+            fadeInFramesLeft = 0;
+        }
+        else
+        {
+            //filters may still hold output from before the bypass
+            for (GLFilterBase filter : filters)
+                filter.resetOutput();
+            fadeInFramesLeft = FADE_IN_FRAMES;
+        }
+
+        Logging.logD("[Chain] bypass= %b (surface %d x %d, requested= %b)", bypass, renderWidth, renderHeight, bypassRequested);
+    }
+
+    /**
+     * Sets the filtered texture and mix factor of the blend program
+     *
+     * @param program the program that is used for drawing
+     */
+    @Override
+    protected void setCustomUniforms(GLProgram program)
+    {
+        if (program != blendProgram) return;
+
+        //filtered output on texture unit 1, source is on unit 0
+        glActiveTexture(GL_TEXTURE1);
+        glBindTexture(GL_TEXTURE_2D, blendFilteredTexture);
+        glUniform1i(hndBlendFiltered, 1);
+        glUniform1f(hndBlendMix, blendMix);
+        glActiveTexture(GL_TEXTURE0);
+    }
+
+    /**
+     * Bypass the chain (copy the source directly), eg. while in PiP. The chain is also bypassed when the surface is tiny
+     *
+     * @param bypass bypass the chain?
+     */
+    public void setBypass(boolean bypass)
+    {
+        bypassRequested = bypass;
+    }
+
+    /**
+     * Get a ping- pong buffer, obtaining it from the pool if needed
+     *
+     * @param index the index of the buffer (0 or 1)
+     * @return the buffer, in render resolution
+     */
+    private EFramebufferObject getPingPongBuffer(int index)
+    {
+        if (pingPongBuffers[index] == null)
+            pingPongBuffers[index] = sharedPool.obtain(renderWidth, renderHeight);
+
+        return pingPongBuffers[index];
+    }
+
+    /**
+     * Release Gl Resources of this filter, all filters of the chain and the shared frame buffers
+     */
+    @Override
+    public void release()
+    {
+        for (GLFilterBase filter : filters)
+            filter.release();
+
+        //release all buffers, including the ping- pong buffers
+        sharedPool.releaseAll();
+        pingPongBuffers[0] = null;
+        pingPongBuffers[1] = null;
+        outputCache = null;
+        hasCachedOutput = false;
+
+        blendProgram.delete();
+        blendProgram = null;
+
+        super.release();
+    }
+}
@@ -0,0 +1,104 @@
+package de.shadow578.yetanothervideoplayer.feature.gl;
+
+import com.daasuu.epf.EFramebufferObject;
+
+import java.util.ArrayList;
+
+import de.shadow578.yetanothervideoplayer.util.Logging;
+
+/**
+ * Pool of frame buffers, shared by the filters of a {@link GLFilterChain}.
+ * Buffers are only (re) allocated when no free buffer is left or the resolution changed,
+ * so chaining more filters does not allocate new buffers on every frame.
+ * Not thread safe, only use on the gl thread.
+ */
+public class GLFramebufferPool
+{
+    /**
+     * buffers that are not in use
+     */
+    private final ArrayList<EFramebufferObject> freeBuffers = new ArrayList<>();
+
+    /**
+     * all buffers created by this pool (free and in use)
+     */
+    private final ArrayList<EFramebufferObject> allBuffers = new ArrayList<>();
+
+    /**
+     * Get a RGBA8 frame buffer with the given size.
+     *
+     * @param width  the width of the buffer
+     * @param height the height of the buffer
+     * @return the buffer. return it using recycle() once no longer needed
+     * @see #obtain(int, int, boolean)
+     */
+    public EFramebufferObject obtain(int width, int height)
+    {
+        return obtain(width, height, false);
+    }
+
+    /**
+     * Get a frame buffer with the given size and format.
+     * A free buffer with the same size is preferred, then a free buffer of a different size (that is resized), and only then a new buffer is created.
+     *
+     * @param width     the width of the buffer
+     * @param height    the height of the buffer
+     * @param halfFloat get a RGBA16F buffer instead of RGBA8? check GLHalfFloatFramebuffer.isSupported() first
+     * @return the buffer. return it using recycle() once no longer needed
+     */
+    public EFramebufferObject obtain(int width, int height, boolean halfFloat)
+    {
+        //find a free buffer with the same format and size
+        int resizeIndex = -1;
+        for (int i = 0; i < freeBuffers.size(); i++)
+        {
+            EFramebufferObject buffer = freeBuffers.get(i);
+            if ((buffer instanceof GLHalfFloatFramebuffer) != halfFloat) continue;
+
+            if (buffer.getWidth() == width && buffer.getHeight() == height)
+            {
+                freeBuffers.remove(i);
+                return buffer;
+            }
+            resizeIndex = i;
+        }
+
+        //no buffer with the same size, resize a free buffer with the same format
+        if (resizeIndex != -1)
+        {
+            EFramebufferObject buffer = freeBuffers.remove(resizeIndex);
+            buffer.setup(width, height);
+            return buffer;
+        }
+
+        //no free buffers left, create a new one
+        EFramebufferObject buffer = halfFloat ? new GLHalfFloatFramebuffer() : new EFramebufferObject();
+        buffer.setup(width, height);
+        allBuffers.add(buffer);
+        Logging.logD("[FBPool] created %s buffer %d (%d x %d)", halfFloat ? "RGBA16F" : "RGBA8", allBuffers.size(), width, height);
+        return buffer;
+    }
+
+    /**
+     * return a buffer to the pool, so it can be reused
+     *
+     * @param buffer the buffer to return. has to be obtained from this pool
+     */
+    public void recycle(EFramebufferObject buffer)
+    {
+        if (buffer != null && !freeBuffers.contains(buffer))
+            freeBuffers.add(buffer);
+    }
+
+    /**
+     * release all buffers of this pool, including the ones that are in use
+     */
+    public void releaseAll()
+    {
+        for (EFramebufferObject buffer : allBuffers)
+            buffer.release();
+
+        allBuffers.clear();
+        freeBuffers.clear();
+    }
+}
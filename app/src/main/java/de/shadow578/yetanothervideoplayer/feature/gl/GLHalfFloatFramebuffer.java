@@ -0,0 +1,134 @@
+package de.shadow578.yetanothervideoplayer.feature.gl;
+
+import android.opengl.GLES30;
+
+import com.daasuu.epf.EFramebufferObject;
+
+//allow direct use of gl functions
+import static android.opengl.GLES20.*;
+
+/**
+ * Frame buffer with a RGBA16F color texture (and no depth buffer), for intermediate results that need more precision than RGBA8.
+ * Rendering to RGBA16F needs GLES 3.2, or GLES 3.0 with EXT_color_buffer_half_float or EXT_color_buffer_float. Check isSupported() first.
+ */
+public class GLHalfFloatFramebuffer extends EFramebufferObject
+{
+    /**
+     * size of the buffer
+     */
+    private int width, height;
+
+    /**
+     * gl names of frame buffer and color texture. 0 if not set up
+     */
+    private int framebufferName, texName;
+
+    /**
+     * Check if the current gl context can render to RGBA16F textures. Has to be called on the gl thread.
+     *
+     * @return are half float frame buffers supported?
+     */
+    public static boolean isSupported()
+    {
+        //color buffer float is core since GLES 3.2, GLES 3.0 needs an extension
+        int version = GLProgramCache.getGLESVersion();
+        if (version < 30) return false;
+        if (version >= 32) return true;
+
+        String extensions = glGetString(GL_EXTENSIONS);
+        return extensions != null && (extensions.contains("GL_EXT_color_buffer_half_float") || extensions.contains("GL_EXT_color_buffer_float"));
+    }
+
+    /**
+     * (re) create the frame buffer with the given size. The current frame buffer and texture bindings are kept
+     *
+     * @param width  the width of the buffer
+     * @param height the height of the buffer
+     * @throws RuntimeException if the frame buffer is not complete
+     */
+    @Override
+    public void setup(int width, int height)
+    {
+        //save current bindings
+        int[] args = new int[1];
+        glGetIntegerv(GL_FRAMEBUFFER_BINDING, args, 0);
+        int savedFramebuffer = args[0];
+        glGetIntegerv(GL_TEXTURE_BINDING_2D, args, 0);
+        int savedTexture = args[0];
+
+        release();
+        this.width = width;
+        this.height = height;
+
+        //create frame buffer
+        glGenFramebuffers(1, args, 0);
+        framebufferName = args[0];
+        glBindFramebuffer(GL_FRAMEBUFFER, framebufferName);
+
+        //create half float color texture
+        glGenTextures(1, args, 0);
+        texName = args[0];
+        glBindTexture(GL_TEXTURE_2D, texName);
+        GLES30.glTexImage2D(GL_TEXTURE_2D, 0, GLES30.GL_RGBA16F, width, height, 0, GL_RGBA, GLES30.GL_HALF_FLOAT, null);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, texName, 0);
+
+        //check the buffer can be rendered to
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+
+        //restore bindings
+        glBindFramebuffer(GL_FRAMEBUFFER, savedFramebuffer);
+        glBindTexture(GL_TEXTURE_2D, savedTexture);
+
+        if (status != GL_FRAMEBUFFER_COMPLETE)
+        {
+            release();
+            throw new RuntimeException("Failed to initialize half float framebuffer object " + status);
+        }
+    }
+
+    /**
+     * release the frame buffer and texture
+     */
+    @Override
+    public void release()
+    {
+        if (texName != 0)
+            glDeleteTextures(1, new int[]{texName}, 0);
+        if (framebufferName != 0)
+            glDeleteFramebuffers(1, new int[]{framebufferName}, 0);
+
+        texName = 0;
+        framebufferName = 0;
+    }
+
+    /**
+     * bind this frame buffer as render target
+     */
+    @Override
+    public void enable()
+    {
+        glBindFramebuffer(GL_FRAMEBUFFER, framebufferName);
+    }
+
+    @Override
+    public int getWidth()
+    {
+        return width;
+    }
+
+    @Override
+    public int getHeight()
+    {
+        return height;
+    }
+
+    @Override
+    public int getTexName()
+    {
+        return texName;
+    }
+}
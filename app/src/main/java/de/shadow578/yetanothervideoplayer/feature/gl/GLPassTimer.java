@@ -0,0 +1,202 @@
+package de.shadow578.yetanothervideoplayer.feature.gl;
+
+import android.opengl.GLES30;
+
+import de.shadow578.yetanothervideoplayer.util.Logging;
+
+//allow direct use of gl functions
+import static android.opengl.GLES20.*;
+
+/**
+ * Measures how long the gpu takes for a block of gl commands (eg. the passes of a filter).
+ * With GL_EXT_disjoint_timer_query (GLES 3.0+), every measured block is wrapped in a GL_TIME_ELAPSED query.
+ * Results are read a few frames later, when they are available, so measuring never stalls the pipeline.
+ * Without the extension, one in SAMPLE_INTERVAL blocks is measured with System.nanoTime(), waiting for the gpu to finish
+ * before and after the block (so earlier work is not counted and the block's work is).
+ * Only use on the gl thread.
+ */
+public class GLPassTimer
+{
+    /**
+     * query target of GL_EXT_disjoint_timer_query. not in the GLES30 class
+     */
+    private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+
+    /**
+     * set by the driver if timer results are invalid (eg. because the gpu changed clocks). not in the GLES30 class
+     */
+    private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+
+    /**
+     * how many timer queries are in flight at most. blocks are not measured while all are waiting for their result
+     */
+    private static final int QUERY_COUNT = 4;
+
+    /**
+     * without timer queries, only every this many blocks is measured
+     */
+    private static final int SAMPLE_INTERVAL = 30;
+
+    /**
+     * timer query names, 0 if timer queries are not used
+     */
+    private final int[] queries = new int[QUERY_COUNT];
+
+    /**
+     * is the query waiting for its result?
+     */
+    private final boolean[] queryPending = new boolean[QUERY_COUNT];
+
+    /**
+     * the query of the current block, -1 if the block is not measured
+     */
+    private int activeQuery = -1;
+
+    /**
+     * the query used for the next block
+     */
+    private int nextQuery = 0;
+
+    /**
+     * are timer queries used?
+     */
+    private boolean useQueries = false;
+
+    /**
+     * blocks since the last sampled block, and the start time of the current sampled block (0 if not sampling). without timer queries only
+     */
+    private int blocksSinceSample = SAMPLE_INTERVAL;
+    private long sampleStartNanos = 0;
+
+    /**
+     * sum and count of measured block times since the last takeAverageMs()
+     */
+    private long measuredNanos = 0;
+    private int measuredBlocks = 0;
+
+    /**
+     * buffer for gl queries
+     */
+    private final int[] args = new int[1];
+
+    /**
+     * set the timer up. Timer queries are used if supported
+     */
+    public void setup()
+    {
+        String extensions = glGetString(GL_EXTENSIONS);
+        useQueries = GLProgramCache.getGLESVersion() >= 30 && extensions != null && extensions.contains("GL_EXT_disjoint_timer_query");
+        if (useQueries)
+        {
+            GLES30.glGenQueries(QUERY_COUNT, queries, 0);
+
+            //clear the disjoint flag
+            glGetIntegerv(GL_GPU_DISJOINT_EXT, args, 0);
+        }
+
+        Logging.logD("[PassTimer] measuring with %s", useQueries ? "timer queries" : "sampled glFinish");
+    }
+
+    /**
+     * start measuring a block
+     */
+    public void begin()
+    {
+        if (useQueries)
+        {
+            //collect finished results, and only measure if a query is free
+            pollQueries();
+            if (queryPending[nextQuery]) return;
+
+            activeQuery = nextQuery;
+            nextQuery = (nextQuery + 1) % QUERY_COUNT;
+            GLES30.glBeginQuery(GL_TIME_ELAPSED_EXT, queries[activeQuery]);
+            return;
+        }
+
+        //without queries, only sample a few blocks, as waiting for the gpu stalls the pipeline
+        if (++blocksSinceSample < SAMPLE_INTERVAL) return;
+        blocksSinceSample = 0;
+        glFinish();
+        sampleStartNanos = System.nanoTime();
+    }
+
+    /**
+     * stop measuring the block started with begin()
+     */
+    public void end()
+    {
+        if (useQueries)
+        {
+            if (activeQuery == -1) return;
+            GLES30.glEndQuery(GL_TIME_ELAPSED_EXT);
+            queryPending[activeQuery] = true;
+            activeQuery = -1;
+            return;
+        }
+
+        if (sampleStartNanos == 0) return;
+        glFinish();
+        measuredNanos += System.nanoTime() - sampleStartNanos;
+        measuredBlocks++;
+        sampleStartNanos = 0;
+    }
+
+    /**
+     * Get the average gpu time of the blocks measured since the last call, and start a new average
+     *
+     * @return the average time of one block, in ms. -1 if no block was measured
+     */
+    public float takeAverageMs()
+    {
+        if (useQueries) pollQueries();
+        if (measuredBlocks <= 0) return -1f;
+
+        float averageMs = measuredNanos / (measuredBlocks * 1e6f);
+        measuredNanos = 0;
+        measuredBlocks = 0;
+        return averageMs;
+    }
+
+    /**
+     * delete the timer queries
+     */
+    public void release()
+    {
+        if (useQueries)
+            GLES30.glDeleteQueries(QUERY_COUNT, queries, 0);
+
+        useQueries = false;
+        activeQuery = -1;
+        for (int i = 0; i < QUERY_COUNT; i++)
+        {
+            queries[i] = 0;
+            queryPending[i] = false;
+        }
+    }
+
+    /**
+     * read the results of all pending queries that are available. results are dropped if the gpu timer was disjoint
+     */
+    private void pollQueries()
+    {
+        //results of all queries that finished while disjoint are invalid
+        glGetIntegerv(GL_GPU_DISJOINT_EXT, args, 0);
+        boolean disjoint = args[0] != 0;
+
+        for (int i = 0; i < QUERY_COUNT; i++)
+        {
+            if (!queryPending[i]) continue;
+
+            GLES30.glGetQueryObjectuiv(queries[i], GLES30.GL_QUERY_RESULT_AVAILABLE, args, 0);
+            if (args[0] == 0 && !disjoint) continue;
+            queryPending[i] = false;
+            if (disjoint) continue;
+
+            //result is a unsigned 32 bit time in ns
+            GLES30.glGetQueryObjectuiv(queries[i], GLES30.GL_QUERY_RESULT, args, 0);
+            measuredNanos += args[0] & 0xFFFFFFFFL;
+            measuredBlocks++;
+        }
+    }
+}
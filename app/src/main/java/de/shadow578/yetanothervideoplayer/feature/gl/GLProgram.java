@@ -0,0 +1,103 @@
+package de.shadow578.yetanothervideoplayer.feature.gl;
+
+import androidx.annotation.NonNull;
+
+//allow direct use of gl functions
+import static android.opengl.GLES20.*;
+
+/**
+ * A linked gl program with the handles of its common attributes and uniforms.
+ * Handles are resolved once when the program is created, so drawing with the program needs no lookups.
+ * Filters resolve the handles of their custom uniforms once using getHandle(), after the program was created.
+ */
+public final class GLProgram
+{
+    /**
+     * the gl program id
+     */
+    private int id;
+
+    /**
+     * handles of the common attributes (aPosition, aTextureCoord) and uniforms (sTexture) every program has
+     */
+    private final int hndPosition, hndTextureCoord, hndTexture;
+
+    /**
+     * resolve the common handles of a program
+     *
+     * @param id the id of the linked program
+     * @throws IllegalStateException if a common attribute or uniform is missing
+     */
+    public GLProgram(int id)
+    {
+        this.id = id;
+        hndPosition = getHandle("aPosition");
+        hndTextureCoord = getHandle("aTextureCoord");
+        hndTexture = getHandle("sTexture");
+    }
+
+    /**
+     * Get the GL handle for a attribute or uniform. Do not call this while drawing, but resolve handles once and keep them.
+     *
+     * @param name the name of the attribute or uniform
+     * @return the handle for the uniform or attribute
+     * @throws IllegalStateException when no handle for the given name could be found
+     */
+    public int getHandle(@NonNull String name)
+    {
+        int handle = glGetAttribLocation(id, name);
+        if (handle == -1)
+        {
+            //not a attribute, try uniform
+            handle = glGetUniformLocation(id, name);
+        }
+
+        //check handle is now valid
+        if (handle == -1)
+        {
+            throw new IllegalStateException("Cannot find handle for " + name);
+        }
+        return handle;
+    }
+
+    /**
+     * delete the gl program
+     */
+    public void delete()
+    {
+        glDeleteProgram(id);
+        id = 0;
+    }
+
+    /**
+     * @return the gl program id
+     */
+    public int getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return handle of the aPosition attribute
+     */
+    public int getPositionHandle()
+    {
+        return hndPosition;
+    }
+
+    /**
+     * @return handle of the aTextureCoord attribute
+     */
+    public int getTextureCoordHandle()
+    {
+        return hndTextureCoord;
+    }
+
+    /**
+     * @return handle of the sTexture uniform
+     */
+    public int getTextureHandle()
+    {
+        return hndTexture;
+    }
+}
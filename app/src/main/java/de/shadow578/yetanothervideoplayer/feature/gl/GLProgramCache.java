@@ -0,0 +1,469 @@
+package de.shadow578.yetanothervideoplayer.feature.gl;
+
+import android.content.Context;
+import android.opengl.GLES30;
+import android.opengl.GLES31;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.daasuu.epf.EglUtil;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import de.shadow578.yetanothervideoplayer.util.Logging;
+
+//allow direct use of gl functions
+import static android.opengl.GLES20.*;
+
+/**
+ * Cache for shader sources and linked gl programs.
+ * Shader sources are read from res/raw once per process.
+ * On GLES3, linked programs are saved as program binaries (in memory and on disk), keyed by the gl renderer and driver version.
+ * When a binary is missing or rejected by the driver, the program is compiled from source.
+ */
+public final class GLProgramCache
+{
+    /**
+     * name of the directory the program binaries are saved in
+     */
+    private static final String CACHE_DIR_NAME = "gl_programs";
+
+    /**
+     * size of the header of a binary file: format (int), data length (int)
+     */
+    private static final int BINARY_HEADER_SIZE = 8;
+
+    /**
+     * writes program binaries to disk, one at a time
+     */
+    private static final ExecutorService binaryWriter = Executors.newSingleThreadExecutor();
+
+    /**
+     * shader sources, by resource id
+     */
+    private static final HashMap<Integer, String> sources = new HashMap<>();
+
+    /**
+     * program binaries loaded or saved in this process, by cache key
+     */
+    private static final HashMap<String, ProgramBinary> binaries = new HashMap<>();
+
+    /**
+     * A linked program binary
+     */
+    private static final class ProgramBinary
+    {
+        /**
+         * driver specific format of the binary
+         */
+        final int format;
+
+        /**
+         * the binary data
+         */
+        final byte[] data;
+
+        ProgramBinary(int format, byte[] data)
+        {
+            this.format = format;
+            this.data = data;
+        }
+    }
+
+    //region ~~ Shader Sources ~~
+
+    /**
+     * Get a shader source from res/raw. The source is only read once per process.
+     *
+     * @param ctx the context to read in
+     * @param res the resource id in res/raw
+     * @return the shader source. When reading fails, defaults to GLFilterBase.DEFAULT_FRAGMENT_SHADER
+     */
+    @NonNull
+    public static String getSource(@NonNull Context ctx, int res)
+    {
+        synchronized (sources)
+        {
+            String src = sources.get(res);
+            if (src == null)
+            {
+                src = readShaderRes(ctx, res);
+                sources.put(res, src);
+            }
+            return src;
+        }
+    }
+
+    /**
+     * Read a shader source from res/raw
+     *
+     * @param ctx the context to read in
+     * @param res the resource id in res/raw
+     * @return the loaded shader source. When fails, defaults to GLFilterBase.DEFAULT_FRAGMENT_SHADER
+     */
+    @NonNull
+    private static String readShaderRes(@NonNull Context ctx, int res)
+    {
+        try
+        {
+            StringBuilder shaderSrc = new StringBuilder();
+            InputStream resStream = ctx.getResources().openRawResource(res);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(resStream));
+            String ln = reader.readLine();
+            while (ln != null)
+            {
+                shaderSrc.append(ln).append("\n");
+                ln = reader.readLine();
+            }
+
+            reader.close();
+            resStream.close();
+            return shaderSrc.toString();
+        }
+        catch (IOException e)
+        {
+            Logging.logE("[GLCache] Error loading shader source from Res ID " + res + "! Exception: " + e.toString());
+            return GLFilterBase.DEFAULT_FRAGMENT_SHADER;
+        }
+    }
+    //endregion
+
+    //region ~~ Programs ~~
+
+    /**
+     * Get a linked program for the shader sources. Has to be called on the gl thread.
+     * On GLES3, the program is loaded from a saved binary if possible. Otherwise, it is compiled from source (and the binary is saved).
+     *
+     * @param cacheDir       the directory to save program binaries in. if null, binaries are only kept in memory
+     * @param vertexSource   the vertex shader source
+     * @param fragmentSource the fragment shader source
+     * @return the linked program. delete it with glDeleteProgram
+     */
+    public static int getProgram(@Nullable File cacheDir, @NonNull String vertexSource, @NonNull String fragmentSource)
+    {
+        return getProgram(cacheDir, new String[]{vertexSource, fragmentSource}, new int[]{GL_VERTEX_SHADER, GL_FRAGMENT_SHADER});
+    }
+
+    /**
+     * Get a linked compute program (GLES 3.1) for the shader source. Has to be called on the gl thread.
+     * The program is loaded from a saved binary if possible. Otherwise, it is compiled from source (and the binary is saved).
+     *
+     * @param cacheDir      the directory to save program binaries in. if null, binaries are only kept in memory
+     * @param computeSource the compute shader source
+     * @return the linked program. delete it with glDeleteProgram
+     */
+    public static int getComputeProgram(@Nullable File cacheDir, @NonNull String computeSource)
+    {
+        return getProgram(cacheDir, new String[]{computeSource}, new int[]{GLES31.GL_COMPUTE_SHADER});
+    }
+
+    /**
+     * Get a linked program for the shader sources, from a saved binary if possible
+     *
+     * @param cacheDir the directory to save program binaries in. if null, binaries are only kept in memory
+     * @param sources  the shader sources
+     * @param types    the types of the shaders (GL_VERTEX_SHADER, ...)
+     * @return the linked program
+     */
+    private static int getProgram(@Nullable File cacheDir, @NonNull String[] sources, @NonNull int[] types)
+    {
+        //program binaries need GLES3
+        if (getGLESVersion() < 30)
+            return compileProgram(sources, types, false);
+
+        //try to load the binary
+        String key = getCacheKey(sources);
+        int program = loadProgramBinary(cacheDir, key);
+        if (program != 0) return program;
+
+        //no binary, or the driver rejected it. compile from source and save the binary
+        program = compileProgram(sources, types, true);
+        saveProgramBinary(cacheDir, key, program);
+        return program;
+    }
+
+    /**
+     * Compile and link a program from source
+     *
+     * @param sources     the shader sources
+     * @param types       the types of the shaders (GL_VERTEX_SHADER, ...)
+     * @param retrievable should the program binary be retrievable? (GLES3 only)
+     * @return the linked program
+     * @throws RuntimeException if the program could not be linked
+     */
+    private static int compileProgram(@NonNull String[] sources, @NonNull int[] types, boolean retrievable)
+    {
+        int[] shaders = new int[sources.length];
+        for (int i = 0; i < sources.length; i++)
+            shaders[i] = EglUtil.loadShader(sources[i], types[i]);
+
+        //create program
+        int program = glCreateProgram();
+        if (program == 0)
+            throw new RuntimeException("Could not create program");
+
+        for (int shader : shaders)
+            glAttachShader(program, shader);
+        if (retrievable)
+            GLES30.glProgramParameteri(program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+
+        //link program
+        glLinkProgram(program);
+        int[] linkStatus = new int[1];
+        glGetProgramiv(program, GL_LINK_STATUS, linkStatus, 0);
+
+        //shaders are no longer needed once the program is linked
+        for (int shader : shaders)
+        {
+            glDetachShader(program, shader);
+            glDeleteShader(shader);
+        }
+
+        if (linkStatus[0] != GL_TRUE)
+        {
+            String log = glGetProgramInfoLog(program);
+            glDeleteProgram(program);
+            throw new RuntimeException("Could not link program: " + log);
+        }
+        return program;
+    }
+
+    /**
+     * Load a program from a saved binary, from memory or the cache dir
+     *
+     * @param cacheDir the directory binaries are saved in. may be null
+     * @param key      the cache key of the program
+     * @return the program, or 0 if there is no binary or the driver rejected it
+     */
+    private static int loadProgramBinary(@Nullable File cacheDir, @NonNull String key)
+    {
+        //get binary from memory, or load from disk
+        ProgramBinary binary;
+        synchronized (binaries)
+        {
+            binary = binaries.get(key);
+        }
+        if (binary == null && cacheDir != null)
+            binary = readBinaryFile(getBinaryFile(cacheDir, key));
+
+        if (binary == null) return 0;
+
+        //create program from binary
+        int program = glCreateProgram();
+        ByteBuffer data = ByteBuffer.allocateDirect(binary.data.length);
+        data.put(binary.data).position(0);
+        GLES30.glProgramBinary(program, binary.format, data, binary.data.length);
+
+        //driver may reject binaries, eg. after a driver update
+        int[] linkStatus = new int[1];
+        glGetProgramiv(program, GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] != GL_TRUE)
+        {
+            Logging.logW("[GLCache] program binary %s was rejected, compiling from source", key);
+            glDeleteProgram(program);
+            synchronized (binaries)
+            {
+                binaries.remove(key);
+            }
+            if (cacheDir != null && !getBinaryFile(cacheDir, key).delete())
+                Logging.logW("[GLCache] could not delete rejected program binary %s", key);
+
+            return 0;
+        }
+
+        synchronized (binaries)
+        {
+            binaries.put(key, binary);
+        }
+        return program;
+    }
+
+    /**
+     * Save the binary of a linked program in memory, and write it to the cache dir on a background thread
+     *
+     * @param cacheDir the directory to save the binary in. if null, it is only kept in memory
+     * @param key      the cache key of the program
+     * @param program  the linked program
+     */
+    private static void saveProgramBinary(@Nullable File cacheDir, @NonNull String key, int program)
+    {
+        //get binary from the driver
+        int[] length = new int[1];
+        glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0) return;
+
+        int[] format = new int[1];
+        ByteBuffer data = ByteBuffer.allocateDirect(length[0]);
+        GLES30.glGetProgramBinary(program, length[0], length, 0, format, 0, data);
+        if (glGetError() != GL_NO_ERROR || length[0] <= 0) return;
+
+        byte[] bytes = new byte[length[0]];
+        data.position(0);
+        data.get(bytes);
+        final ProgramBinary binary = new ProgramBinary(format[0], bytes);
+        synchronized (binaries)
+        {
+            binaries.put(key, binary);
+        }
+
+        //write to disk
+        if (cacheDir == null) return;
+        final File binaryFile = getBinaryFile(cacheDir, key);
+        binaryWriter.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                writeBinaryFile(binaryFile, binary);
+            }
+        });
+    }
+    //endregion
+
+    //region ~~ Util ~~
+
+    /**
+     * Get the GLES version of the current gl context. Has to be called on the gl thread.
+     *
+     * @return the version as major * 10 + minor (eg. 31 for GLES 3.1), or 0 if unknown
+     */
+    public static int getGLESVersion()
+    {
+        //version string is "OpenGL ES <major>.<minor> <vendor specific>"
+        String version = glGetString(GL_VERSION);
+        if (version == null || !version.startsWith("OpenGL ES ") || version.length() < 13) return 0;
+
+        char major = version.charAt(10);
+        char minor = version.charAt(12);
+        if (!Character.isDigit(major) || !Character.isDigit(minor)) return 0;
+        return (major - '0') * 10 + (minor - '0');
+    }
+
+    /**
+     * Get the cache key of a program. It includes the renderer and driver version, so binaries of a different driver are never used
+     *
+     * @param sources the shader sources of the program
+     * @return the cache key
+     */
+    @NonNull
+    private static String getCacheKey(@NonNull String[] sources)
+    {
+        StringBuilder keySourceBuilder = new StringBuilder();
+        keySourceBuilder.append(glGetString(GL_RENDERER)).append("\n").append(glGetString(GL_VERSION));
+        for (String source : sources)
+            keySourceBuilder.append("\n").append(source);
+
+        String keySource = keySourceBuilder.toString();
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest(keySource.getBytes(StandardCharsets.UTF_8)))
+                key.append(String.format(Locale.US, "%02x", b));
+
+            return key.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            return Integer.toHexString(keySource.hashCode());
+        }
+    }
+
+    /**
+     * @param cacheDir the directory binaries are saved in
+     * @param key      the cache key of the program
+     * @return the file the binary is saved in
+     */
+    @NonNull
+    private static File getBinaryFile(@NonNull File cacheDir, @NonNull String key)
+    {
+        return new File(new File(cacheDir, CACHE_DIR_NAME), key + ".bin");
+    }
+
+    /**
+     * read a program binary file
+     *
+     * @param file the file to read
+     * @return the binary, or null if the file does not exist, is damaged or could not be read
+     */
+    @Nullable
+    private static ProgramBinary readBinaryFile(@NonNull File file)
+    {
+        if (!file.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file)))
+        {
+            //the length in the header has to match the file, otherwise the file is damaged (and the length may be garbage)
+            int format = in.readInt();
+            int length = in.readInt();
+            if (length <= 0 || length != file.length() - BINARY_HEADER_SIZE)
+            {
+                Logging.logW("[GLCache] program binary %s is damaged, deleting it", file.getName());
+                if (!file.delete())
+                    Logging.logW("[GLCache] could not delete damaged program binary %s", file.getName());
+                return null;
+            }
+
+            byte[] data = new byte[length];
+            in.readFully(data);
+            return new ProgramBinary(format, data);
+        }
+        catch (IOException e)
+        {
+            Logging.logE("[GLCache] error reading program binary: %s", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * write a program binary file
+     *
+     * @param file   the file to write
+     * @param binary the binary to write
+     */
+    private static void writeBinaryFile(@NonNull File file, @NonNull ProgramBinary binary)
+    {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs())
+        {
+            Logging.logW("[GLCache] could not create program binary dir");
+            return;
+        }
+
+        //write to a temp file and rename it, so a crash or a concurrent read never sees a half written binary
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile)))
+        {
+            out.writeInt(binary.format);
+            out.writeInt(binary.data.length);
+            out.write(binary.data);
+        }
+        catch (IOException e)
+        {
+            Logging.logE("[GLCache] error writing program binary: %s", e.toString());
+            if (tempFile.exists() && !tempFile.delete())
+                Logging.logW("[GLCache] could not delete temp program binary %s", tempFile.getName());
+            return;
+        }
+
+        if (!tempFile.renameTo(file))
+            Logging.logW("[GLCache] could not rename temp program binary %s", tempFile.getName());
+    }
+    //endregion
+}
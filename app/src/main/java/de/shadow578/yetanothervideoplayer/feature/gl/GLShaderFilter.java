@@ -0,0 +1,109 @@
+package de.shadow578.yetanothervideoplayer.feature.gl;
+
+import android.content.Context;
+
+import com.daasuu.epf.EFramebufferObject;
+
+import de.shadow578.yetanothervideoplayer.util.Logging;
+
+//allow direct use of gl functions
+import static android.opengl.GLES20.*;
+
+/**
+ * Base class for filters that are a single draw using a fragment shader from res/raw.
+ * If the shader has a vTextureSize uniform, it is set to the size of the texture drawn to.
+ * Other uniforms are resolved once by resolveUniforms() and set by setFilterUniforms()
+ */
+public abstract class GLShaderFilter extends GLFilterBase
+{
+    //shader source
+    private final String srcFragment;
+
+    //shader program
+    private GLProgram program;
+
+    //handle of the vTextureSize uniform, -1 if the shader does not use it
+    private int hndTextureSize = -1;
+
+    //width and height of the buffer that is drawn to
+    private int targetWidth, targetHeight;
+
+    /**
+     * create the filter
+     *
+     * @param ctx         the context to load the shader in
+     * @param resFragment the resource id of the fragment shader in res/raw
+     */
+    public GLShaderFilter(Context ctx, int resFragment)
+    {
+        srcFragment = GLProgramCache.getSource(ctx, resFragment);
+        programCacheDir = ctx.getCodeCacheDir();
+    }
+
+    /**
+     * Set this filter up for use
+     */
+    @Override
+    public void setup()
+    {
+        //setup shader program
+        program = createProgram(DEFAULT_VERTEX_SHADER, srcFragment);
+        hndTextureSize = glGetUniformLocation(program.getId(), "vTextureSize");
+        resolveUniforms(program);
+
+        //create vertex buffer
+        setupVertexBuffer();
+        Logging.logD("[%s] setup shader finished.", getClass().getSimpleName());
+    }
+
+    /**
+     * @param sourceTexture the texture to draw
+     * @param target        the frame buffer to draw to
+     */
+    @Override
+    public void draw(int sourceTexture, EFramebufferObject target)
+    {
+        targetWidth = target.getWidth();
+        targetHeight = target.getHeight();
+        drawUsingProgram(program, sourceTexture, target);
+    }
+
+    /**
+     * sets vTextureSize (if used by the shader), then the filter's uniforms
+     *
+     * @param program the program that is used for drawing
+     */
+    @Override
+    protected void setCustomUniforms(GLProgram program)
+    {
+        if (hndTextureSize != -1)
+            glUniform2f(hndTextureSize, targetWidth, targetHeight);
+        setFilterUniforms();
+    }
+
+    /**
+     * Resolve the handles of the filter's uniforms, using GLProgram.getHandle(). Called once in setup()
+     *
+     * @param program the filter's program
+     */
+    protected abstract void resolveUniforms(GLProgram program);
+
+    /**
+     * Set the uniforms of the filter's shader, using the resolved handles and glUniform... functions. Called for every draw
+     */
+    protected abstract void setFilterUniforms();
+
+    /**
+     * Release Gl Resources of this filter
+     */
+    @Override
+    public void release()
+    {
+        //delete shader program
+        program.delete();
+        program = null;
+
+        releaseVertexBuffer();
+        Logging.logD("[%s] Released shader.", getClass().getSimpleName());
+    }
+}
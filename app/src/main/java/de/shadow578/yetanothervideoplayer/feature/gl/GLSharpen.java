@@ -0,0 +1,58 @@
+package de.shadow578.yetanothervideoplayer.feature.gl;
+
+import android.content.Context;
+
+import de.shadow578.yetanothervideoplayer.R;
+
+//allow direct use of gl functions
+import static android.opengl.GLES20.*;
+
+/**
+ * Sharpen filter (unsharp mask)
+ */
+public class GLSharpen extends GLShaderFilter
+{
+    //strength of the sharpening (0.0 = none)
+    private float strength = 0.5f;
+
+    //handle of the fStrength uniform
+    private int hndStrength;
+
+    public GLSharpen(Context ctx)
+    {
+        super(ctx, R.raw.sharpen);
+    }
+
+    @Override
+    protected void resolveUniforms(GLProgram program)
+    {
+        hndStrength = program.getHandle("fStrength");
+    }
+
+    @Override
+    protected void setFilterUniforms()
+    {
+        glUniform1f(hndStrength, strength);
+    }
+
+    //region Parameter Interface
+
+    /**
+     * @param strength strength of the sharpening (0.0 = none)
+     */
+    @SuppressWarnings("unused")
+    public void setStrength(float strength)
+    {
+        this.strength = strength;
+    }
+
+    /**
+     * @return strength of the sharpening
+     */
+    @SuppressWarnings("unused")
+    public float getStrength()
+    {
+        return strength;
+    }
+    //endregion
+}
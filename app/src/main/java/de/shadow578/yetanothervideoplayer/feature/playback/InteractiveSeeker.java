@@ -0,0 +1,282 @@
+package de.shadow578.yetanothervideoplayer.feature.playback;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SeekParameters;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+
+import de.shadow578.yetanothervideoplayer.util.Logging;
+
+/**
+ * Low- latency seeking for user interactions (scrubbing, stacked double- taps).
+ * While the user interacts, seeks snap to keyframes (no decoding from the previous keyframe to the target) and are coalesced,
+ * so only the latest target is executed once the previous seek was processed.
+ * When the interaction ends, a single exact seek to the last target is done.
+ * A single relative seek (eg. one skip button press) is exact right away; only relative seeks that stack up turn into a interaction.
+ */
+public class InteractiveSeeker implements Player.EventListener
+{
+    /**
+     * how long after the last relative seek the interaction is considered finished, in ms.
+     * A relative seek within this time after another one stacks up on it
+     */
+    private static final long RELATIVE_SEEK_SETTLE_DELAY_MS = 600;
+
+    /**
+     * the player to seek
+     */
+    private final SimpleExoPlayer player;
+
+    /**
+     * handler on the main thread, used to finish relative seeks after they settled
+     */
+    private final Handler settleHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * runnable that finishes the interaction after relative seeks settled
+     */
+    private final Runnable finishRunnable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            finish();
+        }
+    };
+
+    /**
+     * the last target of the current interaction. C.TIME_UNSET if no interaction is active
+     */
+    private long interactionTarget = C.TIME_UNSET;
+
+    /**
+     * target of the last single (exact) relative seek, later relative seeks stack up on it. C.TIME_UNSET if there was none
+     */
+    private long lastRelativeTarget = C.TIME_UNSET;
+
+    /**
+     * time of the last single relative seek, in SystemClock.uptimeMillis() base
+     */
+    private long lastRelativeSeekMs = 0;
+
+    /**
+     * target that waits for the seek in flight to be processed. C.TIME_UNSET if no seek is pending
+     */
+    private long pendingTarget = C.TIME_UNSET;
+
+    /**
+     * seek parameters of the pending seek
+     */
+    private SeekParameters pendingParameters = SeekParameters.EXACT;
+
+    /**
+     * was a seek sent to the player that was not yet processed?
+     */
+    private boolean isSeekInFlight = false;
+
+    /**
+     * Create a seeker and register it as listener on the player
+     *
+     * @param player the player to seek
+     */
+    public InteractiveSeeker(@NonNull SimpleExoPlayer player)
+    {
+        this.player = player;
+        player.addListener(this);
+    }
+
+    //region ~~ Interaction ~~
+
+    /**
+     * Seek to a position while scrubbing. Snaps to the closest keyframe.
+     * Call {@link #finish()} when scrubbing ends.
+     *
+     * @param pos the position to seek to
+     */
+    public void scrubTo(long pos)
+    {
+        settleHandler.removeCallbacks(finishRunnable);
+        lastRelativeTarget = C.TIME_UNSET;
+        seekInteractive(pos, SeekParameters.CLOSEST_SYNC);
+    }
+
+    /**
+     * Seek relative to the target of the current interaction (or the playback position if no interaction is active).
+     * A single call seeks exactly. Calls in short succession stack up into a interaction, that snaps to the previous keyframe
+     * (as the final exact seek decodes from there anyway) and finishes automatically once no more calls follow.
+     *
+     * @param posOffset the offset to seek by
+     */
+    public void seekRelative(long posOffset)
+    {
+        long now = SystemClock.uptimeMillis();
+        boolean stacked = lastRelativeTarget != C.TIME_UNSET && (now - lastRelativeSeekMs) < RELATIVE_SEEK_SETTLE_DELAY_MS;
+        if (interactionTarget == C.TIME_UNSET && !stacked)
+        {
+            //single seek: exact right away, but remember it so a following seek stacks up on it
+            lastRelativeTarget = clampToDuration(player.getContentPosition() + posOffset);
+            lastRelativeSeekMs = now;
+            seekCoalesced(lastRelativeTarget, SeekParameters.EXACT);
+            return;
+        }
+
+        //stacked seeks: continue from the last target, snapping until the user stops seeking
+        long base = interactionTarget != C.TIME_UNSET ? interactionTarget : lastRelativeTarget;
+        lastRelativeTarget = C.TIME_UNSET;
+        seekInteractive(base + posOffset, SeekParameters.PREVIOUS_SYNC);
+
+        //finish once the user stops seeking
+        settleHandler.removeCallbacks(finishRunnable);
+        settleHandler.postDelayed(finishRunnable, RELATIVE_SEEK_SETTLE_DELAY_MS);
+    }
+
+    /**
+     * finish the current interaction with a exact seek to its last target. Does nothing if no interaction is active.
+     */
+    public void finish()
+    {
+        settleHandler.removeCallbacks(finishRunnable);
+        lastRelativeTarget = C.TIME_UNSET;
+        if (interactionTarget == C.TIME_UNSET) return;
+
+        //the exact seek supersedes any pending seek
+        long target = interactionTarget;
+        interactionTarget = C.TIME_UNSET;
+        pendingTarget = C.TIME_UNSET;
+        executeSeek(target, SeekParameters.EXACT);
+        Logging.logD("[Seek] interaction finished with exact seek to %d", target);
+    }
+
+    /**
+     * finish the current interaction with a exact seek to the given position
+     *
+     * @param pos the position to seek to
+     */
+    public void finish(long pos)
+    {
+        interactionTarget = pos;
+        finish();
+    }
+
+    /**
+     * cancel the current interaction without a final seek (eg. because a exact seek is done anyways)
+     */
+    public void cancel()
+    {
+        settleHandler.removeCallbacks(finishRunnable);
+        interactionTarget = C.TIME_UNSET;
+        lastRelativeTarget = C.TIME_UNSET;
+        pendingTarget = C.TIME_UNSET;
+        isSeekInFlight = false;
+        player.setSeekParameters(SeekParameters.EXACT);
+    }
+
+    /**
+     * @return is a interaction active that was not yet finished?
+     */
+    public boolean isInteracting()
+    {
+        return interactionTarget != C.TIME_UNSET;
+    }
+
+    /**
+     * stop listening to the player and drop any pending seek
+     */
+    public void release()
+    {
+        cancel();
+        player.removeListener(this);
+    }
+    //endregion
+
+    /**
+     * seek to a position as part of a interaction.
+     *
+     * @param pos        the position to seek to
+     * @param parameters the seek parameters to use
+     */
+    private void seekInteractive(long pos, @NonNull SeekParameters parameters)
+    {
+        interactionTarget = clampToDuration(pos);
+        seekCoalesced(interactionTarget, parameters);
+    }
+
+    /**
+     * keep a position inside player bounds
+     *
+     * @param pos the position
+     * @return the position, clamped to 0 - duration
+     */
+    private long clampToDuration(long pos)
+    {
+        long duration = player.getContentDuration();
+        if (pos < 0) pos = 0;
+        if (pos > duration && duration != C.TIME_UNSET) pos = duration;
+        return pos;
+    }
+
+    /**
+     * seek to a position. If a seek is in flight, the seek is deferred until the player processed it,
+     * replacing any other deferred seek.
+     *
+     * @param pos        the position to seek to
+     * @param parameters the seek parameters to use
+     */
+    private void seekCoalesced(long pos, @NonNull SeekParameters parameters)
+    {
+        if (isSeekInFlight)
+        {
+            //coalesce with the pending seek
+            pendingTarget = pos;
+            pendingParameters = parameters;
+        }
+        else
+        {
+            executeSeek(pos, parameters);
+        }
+    }
+
+    /**
+     * send a seek to the player
+     *
+     * @param pos        the position to seek to
+     * @param parameters the seek parameters to use
+     */
+    private void executeSeek(long pos, @NonNull SeekParameters parameters)
+    {
+        player.setSeekParameters(parameters);
+        player.seekTo(pos);
+        isSeekInFlight = true;
+    }
+
+    //region ~~ Player.EventListener ~~
+
+    @Override
+    public void onSeekProcessed()
+    {
+        isSeekInFlight = false;
+
+        //execute the latest deferred seek
+        if (pendingTarget != C.TIME_UNSET)
+        {
+            long target = pendingTarget;
+            pendingTarget = C.TIME_UNSET;
+            executeSeek(target, pendingParameters);
+        }
+    }
+
+    @Override
+    public void onPlayerStateChanged(boolean playWhenReady, int playbackState)
+    {
+        //seeks are not processed while idle, don't wait for them
+        if (playbackState == Player.STATE_IDLE)
+            isSeekInFlight = false;
+    }
+    //endregion
+}
@@ -1,22 +1,31 @@
 package de.shadow578.yetanothervideoplayer.feature.playback;
 
 import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Binder;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.webkit.URLUtil;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
 
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.DefaultLoadControl;
 import com.google.android.exoplayer2.DefaultRenderersFactory;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.ExoPlayerFactory;
+import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.SimpleExoPlayer;
 import com.google.android.exoplayer2.metadata.Metadata;
@@ -28,6 +37,8 @@ import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer2.util.Util;
 
 import de.shadow578.yetanothervideoplayer.R;
+import de.shadow578.yetanothervideoplayer.feature.qoe.QoECollector;
+import de.shadow578.yetanothervideoplayer.feature.resume.PlaybackPositionStore;
 import de.shadow578.yetanothervideoplayer.util.Logging;
 
 /**
@@ -74,6 +85,34 @@ public class VideoPlaybackService extends Service
         return new VideoServiceBinder();
     }
 
+    /**
+     * Called when the service is started, or a notification action was clicked
+     *
+     * @param intent  the start intent, with the notification action
+     * @param flags   start flags
+     * @param startId start id
+     * @return how to continue if the service is killed
+     */
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId)
+    {
+        String action = intent == null ? null : intent.getAction();
+        if (ACTION_TOGGLE_PLAY_PAUSE.equals(action))
+        {
+            //toggle play / pause from notification
+            setPlayWhenReady(!getPlayWhenReady());
+        }
+        else if (ACTION_STOP_BACKGROUND.equals(action))
+        {
+            //stop background playback from notification
+            setPlayWhenReady(false);
+            exitBackgroundMode();
+        }
+
+        //dont restart, the player state would be lost anyways
+        return START_NOT_STICKY;
+    }
+
     /**
      * Called when the service is stopped
      */
@@ -90,6 +129,34 @@ public class VideoPlaybackService extends Service
     }
 
 
+    //region ~~ Constants ~~
+
+    /**
+     * notification action to toggle between play and pause
+     */
+    private static final String ACTION_TOGGLE_PLAY_PAUSE = "de.shadow578.yetanothervideoplayer.playback.TOGGLE_PLAY_PAUSE";
+
+    /**
+     * notification action to stop background playback
+     */
+    private static final String ACTION_STOP_BACKGROUND = "de.shadow578.yetanothervideoplayer.playback.STOP_BACKGROUND";
+
+    /**
+     * id of the notification channel for background playback
+     */
+    private static final String BACKGROUND_NOTIFICATION_CHANNEL_ID = "background_playback";
+
+    /**
+     * id of the background playback notification
+     */
+    private static final int BACKGROUND_NOTIFICATION_ID = 1;
+
+    /**
+     * interval in which the playback position is saved while playing in the background, in ms
+     */
+    private static final int BACKGROUND_CHECKPOINT_INTERVAL_MS = 10000;
+    //endregion
+
     /**
      * The ExoPlayer instance that is decoding and playing the video
      */
@@ -120,6 +187,21 @@ public class VideoPlaybackService extends Service
      */
     private DefaultBandwidthMeter bandwidthMeter;
 
+    /**
+     * builds the video constraints of the track selector from viewport, decoder caps and dropped frames
+     */
+    private VideoTrackConstraints trackConstraints;
+
+    /**
+     * collects quality of experience metrics of each loaded media
+     */
+    private QoECollector qoeCollector;
+
+    /**
+     * seeker for low- latency seeking while the user interacts
+     */
+    private InteractiveSeeker interactiveSeeker;
+
 
     /**
      * has the player been initialized yet?
@@ -138,6 +220,35 @@ public class VideoPlaybackService extends Service
      */
     private long lastLoadStartPosition = 0;
 
+    /**
+     * is the service in background (audio- only) mode?
+     */
+    private boolean isInBackgroundMode = false;
+
+    /**
+     * intent that is launched when the background playback notification is clicked
+     */
+    @Nullable
+    private PendingIntent backgroundContentIntent;
+
+    /**
+     * handler the background playback position checkpoints run on
+     */
+    private final Handler checkpointHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * saves the playback position periodically while playing in the background, as no activity does it then
+     */
+    private final Runnable backgroundCheckpointRunnable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            saveBackgroundPlaybackPosition();
+            checkpointHandler.postDelayed(this, BACKGROUND_CHECKPOINT_INTERVAL_MS);
+        }
+    };
+
     /**
      * do we still have to seek the media because of the loadMedia() call?
      */
@@ -232,6 +343,15 @@ public class VideoPlaybackService extends Service
             }
         }
 
+        //new media, forget dropped frames history of the last media
+        trackConstraints.reset();
+
+        //drop seeks into the last media
+        interactiveSeeker.cancel();
+
+        //start a new qoe session for the new media
+        qoeCollector.startSession(mediaUri);
+
         //load media from the uri
         player.prepare(mediaFactory.createMediaSource(mediaUri), true, true);
 
@@ -310,6 +430,60 @@ public class VideoPlaybackService extends Service
         return bandwidthMeter;
     }
 
+    /**
+     * set the size of the view the video is rendered to.
+     * used to avoid selecting video tracks that are larger than what is visible
+     *
+     * @param width  the width of the view, in pixels
+     * @param height the height of the view, in pixels
+     */
+    public void setViewportSize(int width, int height)
+    {
+        if (trackConstraints != null)
+            trackConstraints.setViewportSize(width, height);
+    }
+
+    /**
+     * lower the max video size (or frame rate) one step because the renderer cannot keep up with the current video
+     *
+     * @return was the video quality lowered? false if the video is already as small as it gets
+     */
+    public boolean reduceVideoQuality()
+    {
+        return trackConstraints != null && trackConstraints.stepDownRenderLimit();
+    }
+
+    /**
+     * undo the last call to {@link #reduceVideoQuality()}
+     *
+     * @return was the video quality raised? false if the quality was not reduced
+     */
+    public boolean restoreVideoQuality()
+    {
+        return trackConstraints != null && trackConstraints.stepUpRenderLimit();
+    }
+
+    /**
+     * undo all calls to {@link #reduceVideoQuality()}
+     */
+    public void resetVideoQuality()
+    {
+        if (trackConstraints != null)
+            trackConstraints.clearRenderLimit();
+    }
+
+    /**
+     * @return the frame rate of the currently playing video, or -1 if not known
+     */
+    public float getVideoFrameRate()
+    {
+        if (!isPlayerValid()) return -1;
+
+        Format videoFormat = player.getVideoFormat();
+        if (videoFormat == null || videoFormat.frameRate == Format.NO_VALUE) return -1;
+        return videoFormat.frameRate;
+    }
+
     /**
      * @return is the internal player instance valid for use?
      */
@@ -318,6 +492,158 @@ public class VideoPlaybackService extends Service
         return isPlayerValid();
     }
 
+    //region Background Playback
+
+    /**
+     * Continue playback in the background, without video.
+     * The video renderers are disabled (so only audio is fetched and decoded), and the service is moved to the foreground with a notification.
+     * The service keeps running when all activities unbind, until {@link #exitBackgroundMode()} is called.
+     *
+     * @param contentIntent the intent launched when the notification is clicked
+     */
+    public void enterBackgroundMode(@Nullable PendingIntent contentIntent)
+    {
+        if (!isPlayerValid() || isInBackgroundMode) return;
+        Logging.logD("entering background mode");
+
+        isInBackgroundMode = true;
+        backgroundContentIntent = contentIntent;
+
+        //only play audio
+        trackConstraints.setVideoDisabled(true, getVideoRendererIndices());
+
+        //start the service so it survives unbinding, and keep it in the foreground
+        startService(new Intent(this, VideoPlaybackService.class));
+        startForeground(BACKGROUND_NOTIFICATION_ID, buildBackgroundNotification());
+
+        //save the playback position while no activity is bound
+        checkpointHandler.removeCallbacks(backgroundCheckpointRunnable);
+        checkpointHandler.postDelayed(backgroundCheckpointRunnable, BACKGROUND_CHECKPOINT_INTERVAL_MS);
+    }
+
+    /**
+     * Stop background playback: re- enable video and remove the notification.
+     * The service is stopped once all activities unbind.
+     */
+    public void exitBackgroundMode()
+    {
+        if (!isInBackgroundMode) return;
+        Logging.logD("exiting background mode");
+
+        //save the final position, a activity takes over saving (if any)
+        checkpointHandler.removeCallbacks(backgroundCheckpointRunnable);
+        saveBackgroundPlaybackPosition();
+
+        isInBackgroundMode = false;
+        backgroundContentIntent = null;
+
+        //play video again
+        if (trackConstraints != null)
+            trackConstraints.setVideoDisabled(false, getVideoRendererIndices());
+
+        //remove notification and return to a bound- only service
+        stopForeground(true);
+        stopSelf();
+    }
+
+    /**
+     * @return is the service in background (audio- only) mode?
+     */
+    public boolean getIsInBackgroundMode()
+    {
+        return isInBackgroundMode;
+    }
+
+    /**
+     * save the playback position of the current media while playing in the background.
+     * If the media finished playing, the saved position is removed so it starts from the beginning next time
+     */
+    private void saveBackgroundPlaybackPosition()
+    {
+        if (!isInBackgroundMode || currentMediaUri == null || !isPlayerValid()) return;
+
+        long position = player.getPlaybackState() == Player.STATE_ENDED ? 0 : getPlaybackPosition();
+        PlaybackPositionStore.save(this, currentMediaUri, position, getMediaDuration());
+        Logging.logD("saved background playback position %d", position);
+    }
+
+    /**
+     * update the background playback notification, eg. when the play state changed
+     */
+    private void updateBackgroundNotification()
+    {
+        if (!isInBackgroundMode) return;
+
+        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        if (notificationManager != null)
+            notificationManager.notify(BACKGROUND_NOTIFICATION_ID, buildBackgroundNotification());
+    }
+
+    /**
+     * @return the notification shown while playing in the background
+     */
+    @NonNull
+    private Notification buildBackgroundNotification()
+    {
+        //create notification channel on O+
+        if (Util.SDK_INT >= 26)
+        {
+            NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            if (notificationManager != null)
+                notificationManager.createNotificationChannel(new NotificationChannel(BACKGROUND_NOTIFICATION_CHANNEL_ID,
+                        getString(R.string.background_playback_channel_name), NotificationManager.IMPORTANCE_LOW));
+        }
+
+        //get media title
+        String title = getString(R.string.app_name);
+        if (currentMediaUri != null && currentMediaUri.getLastPathSegment() != null)
+            title = currentMediaUri.getLastPathSegment();
+
+        //build play/pause and stop actions
+        boolean isPlaying = getPlayWhenReady();
+        PendingIntent togglePlayIntent = PendingIntent.getService(this, 0,
+                new Intent(this, VideoPlaybackService.class).setAction(ACTION_TOGGLE_PLAY_PAUSE), PendingIntent.FLAG_UPDATE_CURRENT);
+        PendingIntent stopIntent = PendingIntent.getService(this, 1,
+                new Intent(this, VideoPlaybackService.class).setAction(ACTION_STOP_BACKGROUND), PendingIntent.FLAG_UPDATE_CURRENT);
+
+        return new NotificationCompat.Builder(this, BACKGROUND_NOTIFICATION_CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_music_note_black_24dp)
+                .setContentTitle(title)
+                .setContentText(getString(R.string.background_playback_text))
+                .setContentIntent(backgroundContentIntent)
+                .setOngoing(isPlaying)
+                .setShowWhen(false)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .addAction(isPlaying ? R.drawable.ic_pause_black_24dp : R.drawable.ic_play_arrow_black_24dp,
+                        getString(isPlaying ? R.string.pip_title_pause : R.string.pip_title_play), togglePlayIntent)
+                .addAction(R.drawable.ic_close_black_24dp, getString(R.string.background_playback_stop), stopIntent)
+                .build();
+    }
+
+    /**
+     * @return the indices of the player's video renderers
+     */
+    @NonNull
+    private int[] getVideoRendererIndices()
+    {
+        if (player == null) return new int[0];
+
+        //count video renderers
+        int count = 0;
+        for (int i = 0; i < player.getRendererCount(); i++)
+            if (player.getRendererType(i) == C.TRACK_TYPE_VIDEO) count++;
+
+        //collect their indices
+        int[] indices = new int[count];
+        count = 0;
+        for (int i = 0; i < player.getRendererCount(); i++)
+            if (player.getRendererType(i) == C.TRACK_TYPE_VIDEO) indices[count++] = i;
+
+        return indices;
+    }
+
+    //endregion
+
     //region Playback Controls
 
     /**
@@ -371,6 +697,14 @@ public class VideoPlaybackService extends Service
         return contentDuration;
     }
 
+    /**
+     * @return how much media is buffered ahead of the current position, in milliseconds (0 if the player is invalid)
+     */
+    public long getBufferedDuration()
+    {
+        return isPlayerValid() ? player.getTotalBufferedDuration() : 0;
+    }
+
     /**
      * @return the current position of the player in the currently loaded media
      */
@@ -380,13 +714,20 @@ public class VideoPlaybackService extends Service
     }
 
     /**
-     * Seek the current media relative to the current position
+     * Seek the current media relative to the current position.
+     * Seeks in short succession stack up and snap to keyframes, with a exact seek once they settle
      *
      * @param posOffset offset to the current playback position to seek to
      */
     public void seekRelative(long posOffset)
     {
-        seekTo(getPlaybackPosition() + posOffset);
+        //check player is valid before doing anything
+        if (!isPlayerValid()) return;
+
+        interactiveSeeker.seekRelative(posOffset);
+
+        //reset seekPending flag every time we seek
+        isLoadMediaSeekPending = false;
     }
 
     /**
@@ -404,6 +745,9 @@ public class VideoPlaybackService extends Service
         if (pos < 0) pos = 0;
         if (pos > mediaDuration && mediaDuration != -1) pos = mediaDuration;
 
+        //exact seek, drop any interactive seek
+        interactiveSeeker.cancel();
+
         //seek the player
         player.seekTo(pos);
 
@@ -411,6 +755,14 @@ public class VideoPlaybackService extends Service
         isLoadMediaSeekPending = false;
     }
 
+    /**
+     * @return the seeker used for low- latency seeking while the user scrubs or double- taps
+     */
+    public InteractiveSeeker getInteractiveSeeker()
+    {
+        return interactiveSeeker;
+    }
+
     /**
      * set if the player should loop the current media
      *
@@ -440,6 +792,7 @@ public class VideoPlaybackService extends Service
     {
         //prepare track selector and stuff for the player
         trackSelector = new DefaultTrackSelector(new AdaptiveTrackSelection.Factory());
+        trackConstraints = new VideoTrackConstraints(trackSelector);
         bandwidthMeter = new DefaultBandwidthMeter.Builder(this).build();
         DefaultRenderersFactory renderersFactory = new DefaultRenderersFactory(this);
         DefaultLoadControl loadControl = buildLoadControl();
@@ -450,6 +803,14 @@ public class VideoPlaybackService extends Service
         //register listeners
         player.addListener(new PlayerEventListener());
         player.addMetadataOutput(new PlayerMetadataListener());
+        player.addAnalyticsListener(trackConstraints);
+
+        //seek with low latency while the user interacts
+        interactiveSeeker = new InteractiveSeeker(player);
+
+        //collect qoe metrics
+        qoeCollector = new QoECollector(this);
+        player.addAnalyticsListener(qoeCollector);
 
         //set init flag
         isPlayerInitialized = true;
@@ -466,6 +827,27 @@ public class VideoPlaybackService extends Service
     {
         Logging.logD("releasing player and media...");
 
+        //remove background playback notification
+        exitBackgroundMode();
+
+        //end the qoe session of the current media
+        if (qoeCollector != null)
+        {
+            qoeCollector.endSession();
+            qoeCollector = null;
+        }
+
+        //stop dropped frames recovery
+        if (trackConstraints != null)
+            trackConstraints.release();
+
+        //release seeker
+        if (interactiveSeeker != null)
+        {
+            interactiveSeeker.release();
+            interactiveSeeker = null;
+        }
+
         //release player
         if (player != null)
         {
@@ -549,6 +931,10 @@ public class VideoPlaybackService extends Service
                     //player is not playing and not able to
                     if (isEventListenerValid())
                         eventListener.onPlaybackEnded();
+
+                    //no activity is bound to reset the position while playing in the background
+                    if (playbackState == Player.STATE_ENDED)
+                        saveBackgroundPlaybackPosition();
                     break;
                 }
                 case Player.STATE_READY:
@@ -575,6 +961,9 @@ public class VideoPlaybackService extends Service
             if (isEventListenerValid())
                 eventListener.onPlayerStateChange(playbackState);
 
+            //show the new play state in the background notification
+            updateBackgroundNotification();
+
             //set lastState var
             lastPlaybackState = playbackState;
         }
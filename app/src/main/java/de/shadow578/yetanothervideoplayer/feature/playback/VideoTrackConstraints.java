@@ -0,0 +1,679 @@
+package de.shadow578.yetanothervideoplayer.feature.playback;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Range;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.analytics.AnalyticsListener;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.util.Util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import de.shadow578.yetanothervideoplayer.util.Logging;
+
+/**
+ * Builds the video constraints of the {@link DefaultTrackSelector} used by the {@link VideoPlaybackService}.
+ * Constraints are based on
+ * - the size of the view the video is rendered to (viewport)
+ * - what the device's video decoders can decode in real time (MediaCodecInfo performance points)
+ * - how many frames were dropped while playing the current media
+ * - limits requested by the renderer when it cannot keep up (eg. Anime4K on a weak GPU)
+ * - if video is needed at all (audio- only background playback)
+ * This way, no bandwidth, decoder power and battery is wasted on pixels that are never shown.
+ */
+public class VideoTrackConstraints implements AnalyticsListener
+{
+    //region ~~ Constants ~~
+
+    /**
+     * Size tiers (long side, short side) used to step the max video size down when the decoder can't keep up.
+     * Tiers are compared against the long and short side of the video, so they apply to portrait video as well
+     */
+    private static final int[][] SIZE_TIERS = {
+            {3840, 2160},
+            {2560, 1440},
+            {1920, 1080},
+            {1280, 720},
+            {854, 480},
+            {640, 360}
+    };
+
+    /**
+     * frame rates that are checked against the decoder capabilities, highest first
+     */
+    private static final int[] FRAME_RATE_TIERS = {60, 50, 30, 25};
+
+    /**
+     * How many frames may be dropped in the observation window before the max video size is stepped down
+     */
+    private static final int DROPPED_FRAMES_THRESHOLD = 50;
+
+    /**
+     * length of the window dropped frames are counted in, in milliseconds of playback
+     */
+    private static final long DROPPED_FRAMES_WINDOW_MS = 10000;
+
+    /**
+     * how long the video has to play without stepping down again before the dropped frames limit is raised by one tier, in ms
+     */
+    private static final long DROPPED_FRAMES_RECOVERY_MS = 60000;
+
+    /**
+     * frame rate the video is limited to as the last step of {@link #stepDownRenderLimit()}
+     */
+    private static final int RENDER_LIMIT_FRAME_RATE = 30;
+    //endregion
+
+    /**
+     * cache of decoder limits per mime type and orientation, so that the codec list is only queried once for each.
+     * value is the highest frame rate any decoder can decode each of the SIZE_TIERS at (-1 if not at all)
+     */
+    private static final HashMap<String, int[]> decoderLimitCache = new HashMap<>();
+
+    /**
+     * The track selector whose parameters are set
+     */
+    private final DefaultTrackSelector trackSelector;
+
+    /**
+     * handler on the main thread, used to raise the dropped frames limit again after it recovered
+     */
+    private final Handler recoveryHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * runnable that raises the dropped frames limit once the video played long enough without dropping frames
+     */
+    private final Runnable recoveryRunnable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            recoverFromDroppedFrames();
+        }
+    };
+
+    /**
+     * size of the view the video is rendered to. 0 if not known
+     */
+    private int viewportWidth, viewportHeight;
+
+    /**
+     * the format of the video the decoder currently decodes
+     */
+    @Nullable
+    private Format currentVideoFormat;
+
+    /**
+     * limits of the video decoder for the current video format, as frame rate per size tier. null if not known
+     */
+    @Nullable
+    private int[] decoderLimit;
+
+    /**
+     * the size tier the dropped frames history forces the video down to. -1 if no penalty
+     */
+    private int droppedFramesTier = -1;
+
+    /**
+     * the size tier the renderer (eg. GL filters) asked the video to be limited to. -1 if no limit
+     */
+    private int renderLimitTier = -1;
+
+    /**
+     * did the renderer ask to limit the frame rate to RENDER_LIMIT_FRAME_RATE?
+     */
+    private boolean renderLimitFrameRate = false;
+
+    /**
+     * indices of the player's video renderers, disabled while video is disabled
+     */
+    private int[] videoRendererIndices = new int[0];
+
+    /**
+     * are the video renderers disabled (audio- only playback)?
+     */
+    private boolean videoDisabled = false;
+
+    /**
+     * dropped frames and playback duration counted in the current observation window
+     */
+    private int windowDroppedFrames = 0;
+    private long windowElapsedMs = 0;
+
+    /**
+     * is the video currently playing? dropped frames recovery only counts playback time
+     */
+    private boolean isPlaying = false;
+
+    /**
+     * when the video started playing, in SystemClock.elapsedRealtime() base. only valid while isPlaying
+     */
+    private long playingSinceMs = 0;
+
+    /**
+     * how long the video played since the dropped frames limit was last changed, not counting the current playing stretch
+     */
+    private long playedSinceDropMs = 0;
+
+    public VideoTrackConstraints(@NonNull DefaultTrackSelector trackSelector)
+    {
+        this.trackSelector = trackSelector;
+    }
+
+    //region ~~ Interface ~~
+
+    /**
+     * set the size of the view the video is rendered to
+     *
+     * @param width  the width of the view, in pixels
+     * @param height the height of the view, in pixels
+     */
+    public void setViewportSize(int width, int height)
+    {
+        //skip if nothing changed
+        if (width == viewportWidth && height == viewportHeight) return;
+
+        viewportWidth = width;
+        viewportHeight = height;
+        applyConstraints();
+    }
+
+    /**
+     * Limit the video to the next smaller size tier below the current video, because the renderer cannot keep up.
+     * If there is no smaller tier, the frame rate is limited instead.
+     *
+     * @return was the limit lowered? false if the video is already as small as it gets
+     */
+    public boolean stepDownRenderLimit()
+    {
+        //cannot step down without knowing the current video
+        if (!isVideoSizeKnown()) return false;
+
+        //find the first tier that is smaller than the current video and the current limit
+        for (int tier = Math.max(renderLimitTier + 1, 0); tier < SIZE_TIERS.length; tier++)
+        {
+            if (isVideoLargerThan(tier))
+            {
+                renderLimitTier = tier;
+                applyConstraints();
+                return true;
+            }
+        }
+
+        //no smaller tier, limit frame rate instead
+        if (!renderLimitFrameRate && currentVideoFormat.frameRate > RENDER_LIMIT_FRAME_RATE)
+        {
+            renderLimitFrameRate = true;
+            applyConstraints();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * undo the last step of {@link #stepDownRenderLimit()}
+     *
+     * @return was the limit raised? false if there is no render limit
+     */
+    public boolean stepUpRenderLimit()
+    {
+        if (renderLimitFrameRate)
+        {
+            //frame rate was limited last
+            renderLimitFrameRate = false;
+        }
+        else if (renderLimitTier != -1)
+        {
+            //go one tier up (tier 0 is the largest, so -1 = no limit)
+            renderLimitTier--;
+        }
+        else
+        {
+            //nothing to undo
+            return false;
+        }
+
+        applyConstraints();
+        return true;
+    }
+
+    /**
+     * remove all limits set by {@link #stepDownRenderLimit()}
+     */
+    public void clearRenderLimit()
+    {
+        //skip if there is no limit
+        if (renderLimitTier == -1 && !renderLimitFrameRate) return;
+
+        renderLimitTier = -1;
+        renderLimitFrameRate = false;
+        applyConstraints();
+    }
+
+    /**
+     * Disable or enable the video renderers. While disabled, no video track is selected,
+     * so only audio is fetched (for adaptive streams) and decoded.
+     *
+     * @param disabled        should the video renderers be disabled?
+     * @param rendererIndices the indices of the player's video renderers
+     */
+    public void setVideoDisabled(boolean disabled, @NonNull int[] rendererIndices)
+    {
+        //skip if nothing changed
+        if (disabled == videoDisabled) return;
+
+        videoRendererIndices = rendererIndices;
+        videoDisabled = disabled;
+        applyConstraints();
+    }
+
+    /**
+     * @return are the video renderers disabled?
+     */
+    public boolean isVideoDisabled()
+    {
+        return videoDisabled;
+    }
+
+    /**
+     * reset the dropped frames history and render limits (eg. when new media is loaded)
+     */
+    public void reset()
+    {
+        recoveryHandler.removeCallbacks(recoveryRunnable);
+        playedSinceDropMs = 0;
+        droppedFramesTier = -1;
+        renderLimitTier = -1;
+        renderLimitFrameRate = false;
+        windowDroppedFrames = 0;
+        windowElapsedMs = 0;
+        currentVideoFormat = null;
+        decoderLimit = null;
+        applyConstraints();
+    }
+
+    /**
+     * stop the dropped frames recovery, when the player is released
+     */
+    public void release()
+    {
+        recoveryHandler.removeCallbacks(recoveryRunnable);
+    }
+    //endregion
+
+    //region ~~ AnalyticsListener ~~
+
+    @Override
+    public void onPlayerStateChanged(@NonNull EventTime eventTime, boolean playWhenReady, int playbackState)
+    {
+        //count playback time for dropped frames recovery
+        boolean playing = playWhenReady && playbackState == Player.STATE_READY;
+        if (playing == isPlaying) return;
+
+        long now = SystemClock.elapsedRealtime();
+        if (playing)
+            playingSinceMs = now;
+        else
+            playedSinceDropMs += now - playingSinceMs;
+        isPlaying = playing;
+    }
+
+    @Override
+    public void onDecoderInputFormatChanged(@NonNull EventTime eventTime, int trackType, @NonNull Format format)
+    {
+        //only care about video
+        if (trackType != C.TRACK_TYPE_VIDEO) return;
+        float lastFrameRate = currentVideoFormat == null ? Format.NO_VALUE : currentVideoFormat.frameRate;
+        boolean lastPortrait = isPortrait();
+        currentVideoFormat = format;
+
+        //update decoder limits if the mime type or orientation changed. the size the decoder can handle depends on the frame rate, so update if that changed too
+        //max size is set in the orientation of the video, so update if that changed even without decoder limits
+        if (format.sampleMimeType != null)
+        {
+            int[] newLimit = getDecoderLimit(format.sampleMimeType, isPortrait());
+            if (newLimit != decoderLimit || (newLimit != null && format.frameRate != lastFrameRate) || isPortrait() != lastPortrait)
+            {
+                decoderLimit = newLimit;
+                applyConstraints();
+            }
+        }
+    }
+
+    @Override
+    public void onDroppedVideoFrames(@NonNull EventTime eventTime, int droppedFrames, long elapsedMs)
+    {
+        //count frames in the window
+        windowDroppedFrames += droppedFrames;
+        windowElapsedMs += elapsedMs;
+
+        //check if too many frames were dropped in the window
+        if (windowDroppedFrames >= DROPPED_FRAMES_THRESHOLD && windowElapsedMs <= DROPPED_FRAMES_WINDOW_MS)
+        {
+            Logging.logW("[TrackConstraints] dropped %d frames in %d ms, stepping down max video size", windowDroppedFrames, windowElapsedMs);
+            stepDownForDroppedFrames();
+        }
+
+        //start a new window if the current one is full
+        if (windowDroppedFrames >= DROPPED_FRAMES_THRESHOLD || windowElapsedMs > DROPPED_FRAMES_WINDOW_MS)
+        {
+            windowDroppedFrames = 0;
+            windowElapsedMs = 0;
+        }
+    }
+    //endregion
+
+    /**
+     * set the max video size one tier below the size of the current video
+     */
+    private void stepDownForDroppedFrames()
+    {
+        //cannot step down without knowing the current video
+        if (!isVideoSizeKnown()) return;
+
+        //find the first tier that is smaller than the current video
+        for (int tier = 0; tier < SIZE_TIERS.length; tier++)
+        {
+            if (isVideoLargerThan(tier))
+            {
+                if (droppedFramesTier == -1 || tier > droppedFramesTier)
+                {
+                    droppedFramesTier = tier;
+                    applyConstraints();
+                    restartRecovery();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * start counting playback time towards raising the dropped frames limit again
+     */
+    private void restartRecovery()
+    {
+        playedSinceDropMs = 0;
+        playingSinceMs = SystemClock.elapsedRealtime();
+        recoveryHandler.removeCallbacks(recoveryRunnable);
+        recoveryHandler.postDelayed(recoveryRunnable, DROPPED_FRAMES_RECOVERY_MS);
+    }
+
+    /**
+     * raise the dropped frames limit by one tier if the video played for DROPPED_FRAMES_RECOVERY_MS since it was last changed.
+     * If it played shorter (eg. because it was paused), check again once the remaining time could have passed
+     */
+    private void recoverFromDroppedFrames()
+    {
+        if (droppedFramesTier == -1) return;
+
+        //check playback time, not wall time
+        long played = playedSinceDropMs;
+        if (isPlaying)
+            played += SystemClock.elapsedRealtime() - playingSinceMs;
+        if (played < DROPPED_FRAMES_RECOVERY_MS)
+        {
+            recoveryHandler.postDelayed(recoveryRunnable, DROPPED_FRAMES_RECOVERY_MS - played);
+            return;
+        }
+
+        //go one tier up (tier 0 is the largest, so -1 = no limit)
+        droppedFramesTier--;
+        windowDroppedFrames = 0;
+        windowElapsedMs = 0;
+        Logging.logD("[TrackConstraints] no frames dropped for %d ms, raising max video size to tier %d", played, droppedFramesTier);
+        applyConstraints();
+
+        //keep raising while playback stays smooth
+        if (droppedFramesTier != -1)
+            restartRecovery();
+    }
+
+    /**
+     * @return are width and height of the current video known?
+     */
+    private boolean isVideoSizeKnown()
+    {
+        return currentVideoFormat != null && currentVideoFormat.width != Format.NO_VALUE && currentVideoFormat.height != Format.NO_VALUE;
+    }
+
+    /**
+     * @return is the current video taller than wide? false if the size is not known
+     */
+    private boolean isPortrait()
+    {
+        return isVideoSizeKnown() && currentVideoFormat.height > currentVideoFormat.width;
+    }
+
+    /**
+     * check if the current video does not fit into a size tier, comparing long and short sides (so it works for any orientation)
+     *
+     * @param tier the size tier to check
+     * @return is the long or short side of the video larger than that of the tier?
+     */
+    private boolean isVideoLargerThan(int tier)
+    {
+        int videoLong = Math.max(currentVideoFormat.width, currentVideoFormat.height);
+        int videoShort = Math.min(currentVideoFormat.width, currentVideoFormat.height);
+        return videoLong > SIZE_TIERS[tier][0] || videoShort > SIZE_TIERS[tier][1];
+    }
+
+    /**
+     * build the track selector parameters from viewport, decoder limits and dropped frames history and set them
+     */
+    private void applyConstraints()
+    {
+        DefaultTrackSelector.ParametersBuilder params = trackSelector.buildUponParameters();
+
+        //viewport: select tracks that are just large enough for the view
+        if (viewportWidth > 0 && viewportHeight > 0)
+        {
+            params.setViewportSize(viewportWidth, viewportHeight, false);
+        }
+        else
+        {
+            params.clearViewportSizeConstraints();
+        }
+
+        //tiers are (long side, short side), so swap them for portrait video
+        int widthSide = isPortrait() ? 1 : 0;
+        int heightSide = 1 - widthSide;
+
+        //max size from dropped frames and render limit
+        int maxTier = Math.max(droppedFramesTier, renderLimitTier);
+        int maxWidth = maxTier == -1 ? Integer.MAX_VALUE : SIZE_TIERS[maxTier][widthSide];
+        int maxHeight = maxTier == -1 ? Integer.MAX_VALUE : SIZE_TIERS[maxTier][heightSide];
+        int maxFrameRate = Integer.MAX_VALUE;
+
+        //max size and frame rate the decoder can handle, as a pair of the same tier
+        int decoderTier = pickDecoderTier(Math.max(maxTier, 0));
+        if (decoderTier != -1)
+        {
+            maxWidth = SIZE_TIERS[decoderTier][widthSide];
+            maxHeight = SIZE_TIERS[decoderTier][heightSide];
+            maxFrameRate = decoderLimit[decoderTier];
+        }
+        if (renderLimitFrameRate)
+        {
+            maxFrameRate = Math.min(maxFrameRate, RENDER_LIMIT_FRAME_RATE);
+        }
+        params.setMaxVideoSize(maxWidth, maxHeight)
+                .setMaxVideoFrameRate(maxFrameRate)
+                .setExceedVideoConstraintsIfNecessary(true);
+
+        //audio- only: disable video renderers so no video track is selected
+        for (int rendererIndex : videoRendererIndices)
+            params.setRendererDisabled(rendererIndex, videoDisabled);
+
+        //set the parameters
+        trackSelector.setParameters(params.build());
+        Logging.logD("[TrackConstraints] viewport= %d x %d; max size= %d x %d @ %d fps; video disabled= %b", viewportWidth, viewportHeight, maxWidth, maxHeight, maxFrameRate, videoDisabled);
+    }
+
+    /**
+     * Pick the size tier the decoder limits the video to. Size and frame rate are a pair: a decoder that handles 2160p at 30 fps may
+     * handle 1080p at 60 fps, so the largest tier that can be decoded at the frame rate of the current video is picked.
+     * If no tier is fast enough, the largest tier that can be decoded at all is picked, with the frame rate it can be decoded at.
+     *
+     * @param firstTier the largest tier allowed by the other limits
+     * @return the size tier, or -1 if there is no decoder limit
+     */
+    private int pickDecoderTier(int firstTier)
+    {
+        if (decoderLimit == null) return -1;
+
+        //frame rate of the current video, rounded down a bit so eg. 59.94 fps fits the 60 fps tier
+        float wantedFrameRate = 0;
+        if (currentVideoFormat != null && currentVideoFormat.frameRate != Format.NO_VALUE)
+            wantedFrameRate = currentVideoFormat.frameRate - 0.5f;
+
+        int largestDecodable = -1;
+        for (int tier = firstTier; tier < SIZE_TIERS.length; tier++)
+        {
+            if (decoderLimit[tier] <= 0) continue;
+            if (decoderLimit[tier] >= wantedFrameRate) return tier;
+            if (largestDecodable == -1) largestDecodable = tier;
+        }
+        return largestDecodable;
+    }
+
+    //region ~~ Decoder capabilities ~~
+
+    /**
+     * Get the highest frame rate a decoder for the mime type can decode each size tier at in real time
+     *
+     * @param mimeType the mime type to check
+     * @param portrait check the size tiers in portrait orientation?
+     * @return the frame rate per size tier (-1 if the tier cannot be decoded), or null if no decoder was found
+     */
+    @Nullable
+    private static int[] getDecoderLimit(@NonNull String mimeType, boolean portrait)
+    {
+        String key = portrait ? mimeType + "#portrait" : mimeType;
+        synchronized (decoderLimitCache)
+        {
+            if (decoderLimitCache.containsKey(key))
+                return decoderLimitCache.get(key);
+
+            int[] limit = findDecoderLimit(mimeType, portrait);
+            decoderLimitCache.put(key, limit);
+            if (limit != null)
+                Logging.logD("[TrackConstraints] decoder frame rates for %s per size tier: %s", key, Arrays.toString(limit));
+            return limit;
+        }
+    }
+
+    /**
+     * query the codec list for the highest frame rate of all decoders for the mime type, per size tier
+     *
+     * @param mimeType the mime type to check
+     * @param portrait check the size tiers in portrait orientation?
+     * @return the frame rate per size tier (-1 if the tier cannot be decoded), or null if no decoder was found
+     */
+    @Nullable
+    private static int[] findDecoderLimit(@NonNull String mimeType, boolean portrait)
+    {
+        int[] best = null;
+        for (MediaCodecInfo codec : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos())
+        {
+            //only decoders
+            if (codec.isEncoder()) continue;
+
+            //get video caps for the mime type
+            MediaCodecInfo.VideoCapabilities videoCaps;
+            try
+            {
+                MediaCodecInfo.CodecCapabilities caps = codec.getCapabilitiesForType(mimeType);
+                videoCaps = caps == null ? null : caps.getVideoCapabilities();
+            }
+            catch (IllegalArgumentException ignored)
+            {
+                //codec does not support the mime type
+                continue;
+            }
+            if (videoCaps == null) continue;
+
+            //keep the highest frame rate of all decoders for every tier
+            if (best == null)
+            {
+                best = new int[SIZE_TIERS.length];
+                Arrays.fill(best, -1);
+            }
+            for (int tier = 0; tier < SIZE_TIERS.length; tier++)
+            {
+                int width = SIZE_TIERS[tier][portrait ? 1 : 0];
+                int height = SIZE_TIERS[tier][portrait ? 0 : 1];
+                best[tier] = Math.max(best[tier], getMaxFrameRate(videoCaps, width, height));
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * get the highest frame rate from FRAME_RATE_TIERS that the codec can decode in the given size
+     *
+     * @param videoCaps the video caps of the codec
+     * @param width     the width to check
+     * @param height    the height to check
+     * @return the frame rate, or -1 if the size is not supported at all
+     */
+    private static int getMaxFrameRate(@NonNull MediaCodecInfo.VideoCapabilities videoCaps, int width, int height)
+    {
+        //API 29+: use the performance points the vendor declared
+        if (Util.SDK_INT >= 29)
+        {
+            List<MediaCodecInfo.VideoCapabilities.PerformancePoint> points = videoCaps.getSupportedPerformancePoints();
+            if (points != null && !points.isEmpty())
+            {
+                for (int fps : FRAME_RATE_TIERS)
+                {
+                    MediaCodecInfo.VideoCapabilities.PerformancePoint wanted = new MediaCodecInfo.VideoCapabilities.PerformancePoint(width, height, fps);
+                    for (MediaCodecInfo.VideoCapabilities.PerformancePoint point : points)
+                        if (point.covers(wanted))
+                            return fps;
+                }
+                return -1;
+            }
+        }
+
+        //check size is supported at all
+        if (!videoCaps.isSizeSupported(width, height)) return -1;
+
+        //use measured achievable frame rates if available
+        try
+        {
+            Range<Double> achievable = videoCaps.getAchievableFrameRatesFor(width, height);
+            if (achievable != null)
+            {
+                for (int fps : FRAME_RATE_TIERS)
+                    if (achievable.getUpper() >= fps)
+                        return fps;
+                return -1;
+            }
+        }
+        catch (IllegalArgumentException ignored)
+        {
+            //size not supported for measurements, fall through
+        }
+
+        //fallback to advertised frame rates
+        for (int fps : FRAME_RATE_TIERS)
+            if (videoCaps.areSizeAndRateSupported(width, height, fps))
+                return fps;
+
+        return -1;
+    }
+    //endregion
+}
@@ -0,0 +1,217 @@
+package de.shadow578.yetanothervideoplayer.feature.qoe;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.analytics.AnalyticsListener;
+import com.google.android.exoplayer2.source.MediaSourceEventListener;
+
+import de.shadow578.yetanothervideoplayer.util.Logging;
+
+/**
+ * Collects Quality of Experience metrics of the player, per session (= loaded media).
+ * Finished sessions are written to the {@link QoELog}
+ */
+public class QoECollector implements AnalyticsListener
+{
+    /**
+     * context used to write the qoe log
+     */
+    private final Context ctx;
+
+    /**
+     * uri of the media of the current session. null if no session is active
+     */
+    @Nullable
+    private Uri sessionUri;
+
+    /**
+     * when the session started (unix timestamp)
+     */
+    private long sessionStartTimestamp;
+
+    /**
+     * when the session started (elapsed realtime)
+     */
+    private long sessionStartRealtime;
+
+    /**
+     * when the first frame was rendered (elapsed realtime). -1 if not yet rendered
+     */
+    private long firstFrameRealtime;
+
+    /**
+     * when the current rebuffer started (elapsed realtime). -1 if not rebuffering
+     */
+    private long rebufferStartRealtime;
+
+    /**
+     * is the player currently seeking? buffering while seeking is not counted as rebuffer
+     */
+    private boolean isSeeking;
+
+    /**
+     * bitrate of the last video format that was loaded
+     */
+    private int lastVideoBitrate;
+
+    //metrics of the current session
+    private int rebufferCount;
+    private long rebufferDurationMs;
+    private int droppedFrames;
+    private int bitrateSwitches;
+    private long decoderInitMs;
+    private long bytesLoaded;
+
+    public QoECollector(@NonNull Context ctx)
+    {
+        this.ctx = ctx.getApplicationContext();
+    }
+
+    //region ~~ Session ~~
+
+    /**
+     * start a new session. The current session is ended.
+     *
+     * @param mediaUri the uri of the media of the new session
+     */
+    public void startSession(@NonNull Uri mediaUri)
+    {
+        endSession();
+
+        sessionUri = mediaUri;
+        sessionStartTimestamp = System.currentTimeMillis();
+        sessionStartRealtime = SystemClock.elapsedRealtime();
+        firstFrameRealtime = -1;
+        rebufferStartRealtime = -1;
+        isSeeking = false;
+        lastVideoBitrate = Format.NO_VALUE;
+
+        rebufferCount = 0;
+        rebufferDurationMs = 0;
+        droppedFrames = 0;
+        bitrateSwitches = 0;
+        decoderInitMs = 0;
+        bytesLoaded = 0;
+    }
+
+    /**
+     * end the current session and write it to the qoe log. Does nothing if no session is active
+     */
+    public void endSession()
+    {
+        if (sessionUri == null) return;
+        long now = SystemClock.elapsedRealtime();
+
+        //finish a active rebuffer
+        if (rebufferStartRealtime != -1)
+        {
+            rebufferDurationMs += now - rebufferStartRealtime;
+            rebufferStartRealtime = -1;
+        }
+
+        //build session and write to log
+        QoESession session = new QoESession(sessionUri.toString(),
+                sessionStartTimestamp,
+                now - sessionStartRealtime,
+                firstFrameRealtime == -1 ? -1 : firstFrameRealtime - sessionStartRealtime,
+                rebufferCount,
+                rebufferDurationMs,
+                droppedFrames,
+                bitrateSwitches,
+                decoderInitMs,
+                bytesLoaded);
+        QoELog.append(ctx, session);
+        Logging.logD("[QoE] session ended: %s", session.toString());
+
+        sessionUri = null;
+    }
+    //endregion
+
+    //region ~~ AnalyticsListener ~~
+
+    @Override
+    public void onPlayerStateChanged(@NonNull EventTime eventTime, boolean playWhenReady, int playbackState)
+    {
+        if (sessionUri == null) return;
+
+        if (playbackState == Player.STATE_BUFFERING)
+        {
+            //started buffering after the first frame and not because of a seek = rebuffer
+            if (firstFrameRealtime != -1 && !isSeeking && rebufferStartRealtime == -1)
+            {
+                rebufferCount++;
+                rebufferStartRealtime = eventTime.realtimeMs;
+            }
+        }
+        else
+        {
+            //stopped buffering
+            if (rebufferStartRealtime != -1)
+            {
+                rebufferDurationMs += eventTime.realtimeMs - rebufferStartRealtime;
+                rebufferStartRealtime = -1;
+            }
+
+            //seek finished once the player is ready again
+            if (playbackState == Player.STATE_READY)
+                isSeeking = false;
+        }
+    }
+
+    @Override
+    public void onSeekStarted(@NonNull EventTime eventTime)
+    {
+        isSeeking = true;
+    }
+
+    @Override
+    public void onRenderedFirstFrame(@NonNull EventTime eventTime, @Nullable Surface surface)
+    {
+        if (sessionUri != null && firstFrameRealtime == -1)
+            firstFrameRealtime = eventTime.realtimeMs;
+    }
+
+    @Override
+    public void onDroppedVideoFrames(@NonNull EventTime eventTime, int droppedFrames, long elapsedMs)
+    {
+        this.droppedFrames += droppedFrames;
+    }
+
+    @Override
+    public void onDecoderInitialized(@NonNull EventTime eventTime, int trackType, @NonNull String decoderName, long initializationDurationMs)
+    {
+        decoderInitMs += initializationDurationMs;
+    }
+
+    @Override
+    public void onDownstreamFormatChanged(@NonNull EventTime eventTime, @NonNull MediaSourceEventListener.MediaLoadData mediaLoadData)
+    {
+        //only care about video formats with a known bitrate
+        if (mediaLoadData.trackType != C.TRACK_TYPE_VIDEO
+                || mediaLoadData.trackFormat == null
+                || mediaLoadData.trackFormat.bitrate == Format.NO_VALUE) return;
+
+        //count bitrate changes, but not the first format
+        int bitrate = mediaLoadData.trackFormat.bitrate;
+        if (lastVideoBitrate != Format.NO_VALUE && bitrate != lastVideoBitrate)
+            bitrateSwitches++;
+
+        lastVideoBitrate = bitrate;
+    }
+
+    @Override
+    public void onLoadCompleted(@NonNull EventTime eventTime, @NonNull MediaSourceEventListener.LoadEventInfo loadEventInfo, @NonNull MediaSourceEventListener.MediaLoadData mediaLoadData)
+    {
+        bytesLoaded += loadEventInfo.bytesLoaded;
+    }
+    //endregion
+}
@@ -0,0 +1,169 @@
+package de.shadow578.yetanothervideoplayer.feature.qoe;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.shadow578.yetanothervideoplayer.util.Logging;
+
+/**
+ * Rolling on- device log of {@link QoESession}s.
+ * Only the last MAX_SESSIONS sessions are kept.
+ */
+public final class QoELog
+{
+    /**
+     * name of the log file in the app's files dir
+     */
+    private static final String LOG_FILE_NAME = "qoe_sessions.json";
+
+    /**
+     * how many sessions are kept in the log
+     */
+    private static final int MAX_SESSIONS = 25;
+
+    /**
+     * lock for reading and writing the log file
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * Append a session to the log, removing the oldest sessions if the log is full.
+     * The log is written on a background thread.
+     *
+     * @param ctx     the context to get the files dir with
+     * @param session the session to append
+     */
+    public static void append(@NonNull Context ctx, @NonNull final QoESession session)
+    {
+        final File logFile = getLogFile(ctx);
+        new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized (LOCK)
+                {
+                    //load existing sessions and add the new one
+                    List<QoESession> sessions = read(logFile);
+                    sessions.add(session);
+
+                    //remove oldest sessions
+                    while (sessions.size() > MAX_SESSIONS)
+                        sessions.remove(0);
+
+                    write(logFile, sessions);
+                }
+            }
+        }, "QoELogWriter").start();
+    }
+
+    /**
+     * Load all sessions in the log
+     *
+     * @param ctx the context to get the files dir with
+     * @return the sessions in the log, oldest first
+     */
+    @NonNull
+    public static List<QoESession> load(@NonNull Context ctx)
+    {
+        synchronized (LOCK)
+        {
+            return read(getLogFile(ctx));
+        }
+    }
+
+    /**
+     * delete all sessions in the log
+     *
+     * @param ctx the context to get the files dir with
+     */
+    public static void clear(@NonNull Context ctx)
+    {
+        synchronized (LOCK)
+        {
+            if (!getLogFile(ctx).delete())
+                Logging.logW("[QoE] could not delete qoe log");
+        }
+    }
+
+    /**
+     * @param ctx the context to get the files dir with
+     * @return the log file
+     */
+    @NonNull
+    private static File getLogFile(@NonNull Context ctx)
+    {
+        return new File(ctx.getApplicationContext().getFilesDir(), LOG_FILE_NAME);
+    }
+
+    /**
+     * read the sessions from the log file
+     *
+     * @param logFile the file to read
+     * @return the sessions in the file. empty if the file does not exist or could not be read
+     */
+    @NonNull
+    private static List<QoESession> read(@NonNull File logFile)
+    {
+        List<QoESession> sessions = new ArrayList<>();
+        if (!logFile.exists()) return sessions;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(logFile), StandardCharsets.UTF_8)))
+        {
+            //read the whole file
+            StringBuilder json = new StringBuilder();
+            String ln;
+            while ((ln = reader.readLine()) != null)
+                json.append(ln);
+
+            //parse sessions
+            JSONArray array = new JSONArray(json.toString());
+            for (int i = 0; i < array.length(); i++)
+                sessions.add(QoESession.fromJson(array.getJSONObject(i)));
+        }
+        catch (IOException | JSONException e)
+        {
+            Logging.logE("[QoE] error reading qoe log: %s", e.toString());
+        }
+
+        return sessions;
+    }
+
+    /**
+     * write the sessions to the log file
+     *
+     * @param logFile  the file to write
+     * @param sessions the sessions to write
+     */
+    private static void write(@NonNull File logFile, @NonNull List<QoESession> sessions)
+    {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(logFile), StandardCharsets.UTF_8))
+        {
+            JSONArray array = new JSONArray();
+            for (QoESession session : sessions)
+                array.put(session.toJson());
+
+            writer.write(array.toString());
+        }
+        catch (IOException | JSONException e)
+        {
+            Logging.logE("[QoE] error writing qoe log: %s", e.toString());
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package de.shadow578.yetanothervideoplayer.feature.qoe;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Quality of Experience metrics of one playback session (= one loaded media)
+ */
+@SuppressWarnings("unused")
+public final class QoESession
+{
+    /**
+     * the uri of the media played in this session
+     */
+    @NonNull
+    private final String mediaUri;
+
+    /**
+     * when the session was started (unix timestamp, ms)
+     */
+    private final long startTimestamp;
+
+    /**
+     * how long the session lasted, in ms
+     */
+    private final long sessionDurationMs;
+
+    /**
+     * time from loading the media to the first rendered frame, in ms. -1 if no frame was rendered
+     */
+    private final long timeToFirstFrameMs;
+
+    /**
+     * how often playback stalled because the buffer ran empty (not counting initial buffering and seeks)
+     */
+    private final int rebufferCount;
+
+    /**
+     * how long playback stalled in total, in ms
+     */
+    private final long rebufferDurationMs;
+
+    /**
+     * how many video frames were dropped
+     */
+    private final int droppedFrames;
+
+    /**
+     * how often the video bitrate changed
+     */
+    private final int bitrateSwitches;
+
+    /**
+     * how long it took to initialize all decoders, in ms
+     */
+    private final long decoderInitMs;
+
+    /**
+     * how many bytes were loaded
+     */
+    private final long bytesLoaded;
+
+    public QoESession(@NonNull String mediaUri, long startTimestamp, long sessionDurationMs, long timeToFirstFrameMs,
+                      int rebufferCount, long rebufferDurationMs, int droppedFrames, int bitrateSwitches, long decoderInitMs, long bytesLoaded)
+    {
+        this.mediaUri = mediaUri;
+        this.startTimestamp = startTimestamp;
+        this.sessionDurationMs = sessionDurationMs;
+        this.timeToFirstFrameMs = timeToFirstFrameMs;
+        this.rebufferCount = rebufferCount;
+        this.rebufferDurationMs = rebufferDurationMs;
+        this.droppedFrames = droppedFrames;
+        this.bitrateSwitches = bitrateSwitches;
+        this.decoderInitMs = decoderInitMs;
+        this.bytesLoaded = bytesLoaded;
+    }
+
+    //region ~~ JSON ~~
+
+    /**
+     * @return this session as json object
+     * @throws JSONException thrown on json errors
+     */
+    @NonNull
+    public JSONObject toJson() throws JSONException
+    {
+        JSONObject json = new JSONObject();
+        json.put("uri", mediaUri);
+        json.put("start", startTimestamp);
+        json.put("duration", sessionDurationMs);
+        json.put("ttff", timeToFirstFrameMs);
+        json.put("rebuffer_count", rebufferCount);
+        json.put("rebuffer_duration", rebufferDurationMs);
+        json.put("dropped_frames", droppedFrames);
+        json.put("bitrate_switches", bitrateSwitches);
+        json.put("decoder_init", decoderInitMs);
+        json.put("bytes_loaded", bytesLoaded);
+        return json;
+    }
+
+    /**
+     * parse a session from a json object created by {@link #toJson()}
+     *
+     * @param json the json to parse
+     * @return the parsed session
+     * @throws JSONException thrown on json parse errors
+     */
+    @NonNull
+    public static QoESession fromJson(@NonNull JSONObject json) throws JSONException
+    {
+        return new QoESession(json.getString("uri"),
+                json.getLong("start"),
+                json.getLong("duration"),
+                json.getLong("ttff"),
+                json.getInt("rebuffer_count"),
+                json.getLong("rebuffer_duration"),
+                json.getInt("dropped_frames"),
+                json.getInt("bitrate_switches"),
+                json.getLong("decoder_init"),
+                json.getLong("bytes_loaded"));
+    }
+    //endregion
+
+    //region ~~ Getters ~~
+
+    /**
+     * @return the uri of the media played in this session
+     */
+    @NonNull
+    public String getMediaUri()
+    {
+        return mediaUri;
+    }
+
+    /**
+     * @return when the session was started (unix timestamp, ms)
+     */
+    public long getStartTimestamp()
+    {
+        return startTimestamp;
+    }
+
+    /**
+     * @return how long the session lasted, in ms
+     */
+    public long getSessionDurationMs()
+    {
+        return sessionDurationMs;
+    }
+
+    /**
+     * @return time from loading the media to the first rendered frame, in ms. -1 if no frame was rendered
+     */
+    public long getTimeToFirstFrameMs()
+    {
+        return timeToFirstFrameMs;
+    }
+
+    /**
+     * @return how often playback stalled because the buffer ran empty
+     */
+    public int getRebufferCount()
+    {
+        return rebufferCount;
+    }
+
+    /**
+     * @return how long playback stalled in total, in ms
+     */
+    public long getRebufferDurationMs()
+    {
+        return rebufferDurationMs;
+    }
+
+    /**
+     * @return how many video frames were dropped
+     */
+    public int getDroppedFrames()
+    {
+        return droppedFrames;
+    }
+
+    /**
+     * @return how often the video bitrate changed
+     */
+    public int getBitrateSwitches()
+    {
+        return bitrateSwitches;
+    }
+
+    /**
+     * @return how long it took to initialize all decoders, in ms
+     */
+    public long getDecoderInitMs()
+    {
+        return decoderInitMs;
+    }
+
+    /**
+     * @return how many bytes were loaded
+     */
+    public long getBytesLoaded()
+    {
+        return bytesLoaded;
+    }
+    //endregion
+
+    /**
+     * @return a multi- line, human readable summary of this session
+     */
+    @NonNull
+    public String toDisplayString()
+    {
+        return String.format(Locale.US, "%s\n%s\n" +
+                        "duration: %d s; ttff: %d ms; decoder init: %d ms\n" +
+                        "rebuffers: %d (%d ms); dropped frames: %d; bitrate switches: %d; loaded: %.2f MB",
+                new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).format(new Date(startTimestamp)), mediaUri,
+                sessionDurationMs / 1000, timeToFirstFrameMs, decoderInitMs,
+                rebufferCount, rebufferDurationMs, droppedFrames, bitrateSwitches, bytesLoaded / (1024f * 1024f));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "QoESession{" +
+                "mediaUri='" + mediaUri + '\'' +
+                ", startTimestamp=" + startTimestamp +
+                ", sessionDurationMs=" + sessionDurationMs +
+                ", timeToFirstFrameMs=" + timeToFirstFrameMs +
+                ", rebufferCount=" + rebufferCount +
+                ", rebufferDurationMs=" + rebufferDurationMs +
+                ", droppedFrames=" + droppedFrames +
+                ", bitrateSwitches=" + bitrateSwitches +
+                ", decoderInitMs=" + decoderInitMs +
+                ", bytesLoaded=" + bytesLoaded +
+                '}';
+    }
+}
@@ -0,0 +1,586 @@
+package de.shadow578.yetanothervideoplayer.feature.resume;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.shadow578.yetanothervideoplayer.util.ConfigKeys;
+import de.shadow578.yetanothervideoplayer.util.ConfigUtil;
+import de.shadow578.yetanothervideoplayer.util.Logging;
+
+/**
+ * Persistent per- media store of playback positions for the "resume where i left off" feature.
+ * Every media is identified by a 64 bit hash of its uri. The positions of the last MAX_ENTRIES media are kept in a
+ * least- recently- used index in memory, so looking up a position is a single hash map lookup.
+ * Changes are appended as fixed- size, checksummed records to a log file in the app's files dir and synced to disk,
+ * on a background thread. Saving never blocks the caller, and only the latest position per media is written if saves queue up.
+ * The log is read once, on the writer thread, started by preload() (or the first use). Lookups never wait for it: until it is read,
+ * the index only holds the positions saved since, and getSnapshot() callbacks are delayed until it is read.
+ * Once the log holds many more records than the index, it is rewritten with only the indexed entries.
+ */
+public final class PlaybackPositionStore
+{
+    /**
+     * A saved playback position
+     */
+    public static final class Entry
+    {
+        /**
+         * the saved playback position, in ms
+         */
+        public final long position;
+
+        /**
+         * the duration of the media, in ms. -1 if not known
+         */
+        public final long duration;
+
+        Entry(long position, long duration)
+        {
+            this.position = position;
+            this.duration = duration;
+        }
+
+        /**
+         * @return how much of the media was played (0.0 - 1.0), or -1 if the duration is not known
+         */
+        public float getProgress()
+        {
+            if (duration <= 0) return -1f;
+            return Math.min(Math.max((float) position / (float) duration, 0f), 1f);
+        }
+    }
+
+    /**
+     * Copy of all saved positions, for looking up many media at once (eg. every entry in the media picker) without locking the store for every lookup.
+     * Does not change when positions are saved later.
+     */
+    public static final class Snapshot
+    {
+        /**
+         * the saved positions, by key
+         */
+        @NonNull
+        private final Map<Long, Entry> entries;
+
+        Snapshot(@NonNull Map<Long, Entry> entries)
+        {
+            this.entries = entries;
+        }
+
+        /**
+         * @param uri the uri of the media
+         * @return the saved position of the media, or null if no position was saved
+         */
+        @Nullable
+        public Entry get(@NonNull Uri uri)
+        {
+            return entries.get(getKey(uri));
+        }
+
+        /**
+         * @param uri the uri of the media
+         * @return how much of the media was played (0.0 - 1.0), or -1 if no position or duration was saved
+         */
+        public float getProgress(@NonNull Uri uri)
+        {
+            Entry entry = get(uri);
+            return entry == null ? -1f : entry.getProgress();
+        }
+    }
+
+    /**
+     * Receives a snapshot of all saved positions once the log was read
+     */
+    public interface SnapshotCallback
+    {
+        /**
+         * Called on the main thread with the snapshot of all saved positions
+         *
+         * @param snapshot the snapshot of all saved positions
+         */
+        void onSnapshot(@NonNull Snapshot snapshot);
+    }
+
+    /**
+     * name of the log file in the app's files dir
+    private static final String LOG_FILE_NAME = "resume_positions.log";
+
+    /**
+     * magic value at the start of every record
+     */
+    private static final int RECORD_MAGIC = 0x59505052;
+
+    /**
+     * size of one record: magic (int), key (long), position (long), duration (long), checksum (int)
+     */
+    private static final int RECORD_SIZE = 32;
+
+    /**
+     * how many media the index holds. The least recently used media are dropped once it is full
+     */
+    private static final int MAX_ENTRIES = 4096;
+
+    /**
+     * how many records the log holds at least before it is compacted
+     */
+    private static final int MIN_COMPACT_RECORDS = 1024;
+
+    /**
+     * lock for all state of the store
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * the log file. null until loading starts
+     */
+    private static File logFile;
+
+    /**
+     * the application context, to import the legacy position with. null until loading starts
+     */
+    private static Context appContext;
+
+    /**
+     * handler of the writer thread. null until loading starts
+     */
+    private static Handler writeHandler;
+
+    /**
+     * the saved positions, by key. in access order, so the least recently used entry is dropped once the index is full
+     */
+    private static final LinkedHashMap<Long, Entry> entries = createIndex();
+
+    /**
+     * was reading the log into the index started?
+     */
+    private static boolean isLoadStarted = false;
+
+    /**
+     * was the log read into the index?
+     */
+    private static boolean isLoaded = false;
+
+    /**
+     * callbacks waiting for the log to be read
+     */
+    private static final List<SnapshotCallback> pendingSnapshotCallbacks = new ArrayList<>();
+
+    /**
+     * records waiting to be written, by key. a entry with position 0 removes the saved position
+     */
+    private static LinkedHashMap<Long, Entry> pendingRecords = new LinkedHashMap<>();
+
+    /**
+     * how many records the log holds
+     */
+    private static int logRecords;
+
+    /**
+     * does the log have to be rewritten? (eg. because it has a incomplete record at the end)
+     */
+    private static boolean needsCompaction = false;
+
+    /**
+     * is a write posted to the writer thread?
+     */
+    private static boolean isWritePending = false;
+
+    /**
+     * Writes the pending records on the writer thread
+     */
+    private static final Runnable writeRunnable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            Map<Long, Entry> records;
+            File file;
+            boolean compact;
+            synchronized (LOCK)
+            {
+                records = pendingRecords;
+                pendingRecords = new LinkedHashMap<>();
+                file = logFile;
+                isWritePending = false;
+
+                //rewrite the log with only the indexed entries if it grew too large, otherwise append
+                compact = needsCompaction || (logRecords + records.size()) >= Math.max(MIN_COMPACT_RECORDS, entries.size() * 2);
+                if (compact)
+                {
+                    //least recently used first, so reading the log restores the order
+                    records = new LinkedHashMap<>(entries);
+                    logRecords = records.size();
+                    needsCompaction = false;
+                }
+                else
+                {
+                    logRecords += records.size();
+                }
+            }
+
+            try
+            {
+                writeRecords(file, records, !compact);
+                if (compact)
+                    Logging.logD("[PosStore] compacted position log to %d records", records.size());
+            }
+            catch (IOException e)
+            {
+                Logging.logW("[PosStore] could not save playback positions: %s", e.toString());
+
+                //the log may end with a incomplete record now
+                synchronized (LOCK)
+                {
+                    needsCompaction = true;
+                }
+            }
+        }
+    };
+
+    /**
+     * Reads the log into the index on the writer thread.
+     * Runs before any write, as writes are only posted after the load was started
+     */
+    private static final Runnable loadRunnable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            File file;
+            synchronized (LOCK)
+            {
+                file = logFile;
+            }
+
+            //read without holding the lock, so saves and lookups do not wait for the disk
+            LinkedHashMap<Long, Entry> loaded = createIndex();
+            readLog(file, loaded);
+
+            List<SnapshotCallback> callbacks;
+            final Snapshot snapshot;
+            synchronized (LOCK)
+            {
+                //positions saved while reading are newer than the log. none of them was written yet, so all are still pending
+                for (Map.Entry<Long, Entry> e : pendingRecords.entrySet())
+                {
+                    if (e.getValue().position > 0)
+                        loaded.put(e.getKey(), e.getValue());
+                    else
+                        loaded.remove(e.getKey());
+                }
+                entries.clear();
+                entries.putAll(loaded);
+                isLoaded = true;
+                Logging.logD("[PosStore] loaded %d playback positions from %d records", entries.size(), logRecords);
+
+                //import the single position saved in the preferences by older versions
+                if (entries.isEmpty())
+                    importLegacyPosition(appContext);
+
+                callbacks = new ArrayList<>(pendingSnapshotCallbacks);
+                pendingSnapshotCallbacks.clear();
+                snapshot = new Snapshot(new HashMap<>(entries));
+            }
+
+            //deliver snapshots to everybody that asked while reading
+            Handler mainHandler = new Handler(Looper.getMainLooper());
+            for (final SnapshotCallback callback : callbacks)
+                mainHandler.post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        callback.onSnapshot(snapshot);
+                    }
+                });
+        }
+    };
+
+    /**
+     * Start reading the log into the index on the writer thread, so it is ready when first needed.
+     * Call early, eg. when the app is created. Returns immediately.
+     *
+     * @param ctx the context to get the files dir with
+     */
+    public static void preload(@NonNull Context ctx)
+    {
+        synchronized (LOCK)
+        {
+            startLoading(ctx);
+        }
+    }
+
+    /**
+     * Save the playback position of a media. Returns immediately, the position is written on a background thread.
+     *
+     * @param ctx      the context to get the files dir with
+     * @param uri      the uri of the media
+     * @param position the position to save. 0 or less removes the saved position, so the media starts from the beginning next time
+     * @param duration the duration of the media, -1 if not known
+     */
+    public static void save(@NonNull Context ctx, @NonNull Uri uri, long position, long duration)
+    {
+        long key = getKey(uri);
+        Entry entry = new Entry(Math.max(position, 0), duration);
+        synchronized (LOCK)
+        {
+            startLoading(ctx);
+            if (entry.position > 0)
+                entries.put(key, entry);
+            else
+                entries.remove(key);
+
+            putRecord(key, entry);
+        }
+    }
+
+    /**
+     * Load the saved playback position of a media. Only looks up the index, and never waits for the log to be read.
+     *
+     * @param ctx the context to get the files dir with
+     * @param uri the uri of the media
+     * @return the saved position, or -1 if no position was saved for the media (or the log was not read yet)
+     */
+    public static long load(@NonNull Context ctx, @NonNull Uri uri)
+    {
+        synchronized (LOCK)
+        {
+            startLoading(ctx);
+            Entry entry = entries.get(getKey(uri));
+            return entry == null ? -1 : entry.position;
+        }
+    }
+
+    /**
+     * Get a copy of all saved positions, for looking up many media at once.
+     * If the log was read, the callback is called right away. Otherwise, it is called on the main thread once the log was read.
+     *
+     * @param ctx      the context to get the files dir with
+     * @param callback the callback that receives the snapshot of all saved positions
+     */
+    public static void getSnapshot(@NonNull Context ctx, @NonNull SnapshotCallback callback)
+    {
+        Snapshot snapshot;
+        synchronized (LOCK)
+        {
+            startLoading(ctx);
+            if (!isLoaded)
+            {
+                pendingSnapshotCallbacks.add(callback);
+                return;
+            }
+            snapshot = new Snapshot(new HashMap<>(entries));
+        }
+
+        callback.onSnapshot(snapshot);
+    }
+
+    /**
+     * @param uri the uri of the media
+     * @return the key of the media (64 bit FNV-1a hash of the uri)
+     */
+    private static long getKey(@NonNull Uri uri)
+    {
+        String str = uri.toString();
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < str.length(); i++)
+        {
+            hash ^= str.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * queue a record for writing, and start the writer if needed. has to be called with LOCK held
+     *
+     * @param key   the key of the media
+     * @param entry the entry to write
+     */
+    private static void putRecord(long key, @NonNull Entry entry)
+    {
+        //only the latest record per media is written if writes queue up
+        pendingRecords.put(key, entry);
+        if (isWritePending) return;
+        isWritePending = true;
+
+        //the writer thread is started when loading starts, which always happens first
+        writeHandler.post(writeRunnable);
+    }
+
+    /**
+     * start the writer thread and read the log into the index on it, if not already done. has to be called with LOCK held
+     *
+     * @param ctx the context to get the files dir with
+     */
+    private static void startLoading(@NonNull Context ctx)
+    {
+        if (isLoadStarted) return;
+        isLoadStarted = true;
+
+        appContext = ctx.getApplicationContext();
+        logFile = new File(appContext.getFilesDir(), LOG_FILE_NAME);
+
+        HandlerThread writerThread = new HandlerThread("PlaybackPositionWriter");
+        writerThread.start();
+        writeHandler = new Handler(writerThread.getLooper());
+        writeHandler.post(loadRunnable);
+    }
+
+    /**
+     * @return a empty index, in access order and limited to MAX_ENTRIES
+     */
+    @NonNull
+    private static LinkedHashMap<Long, Entry> createIndex()
+    {
+        return new LinkedHashMap<Long, Entry>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest)
+            {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+
+    /**
+     * read all complete records of the log into a index, in the order they were written.
+     * stops at the first damaged record, and flags the log for compaction. only called on the writer thread, before the first write
+     *
+     * @param file  the log file
+     * @param index the index to read the records into
+     */
+    private static void readLog(@NonNull File file, @NonNull Map<Long, Entry> index)
+    {
+        if (!file.exists()) return;
+
+        long length = file.length();
+        if ((length % RECORD_SIZE) != 0)
+            needsCompaction = true;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            byte[] record = new byte[RECORD_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            for (long count = length / RECORD_SIZE; count > 0; count--)
+            {
+                in.readFully(record);
+                buffer.rewind();
+                int magic = buffer.getInt();
+                long key = buffer.getLong();
+                long position = buffer.getLong();
+                long duration = buffer.getLong();
+                int checksum = buffer.getInt();
+                if (magic != RECORD_MAGIC || checksum != getChecksum(key, position, duration))
+                {
+                    needsCompaction = true;
+                    break;
+                }
+
+                logRecords++;
+                if (position > 0)
+                    index.put(key, new Entry(position, duration));
+                else
+                    index.remove(key);
+            }
+        }
+        catch (IOException e)
+        {
+            Logging.logW("[PosStore] could not load playback positions: %s", e.toString());
+            needsCompaction = true;
+        }
+    }
+
+    /**
+     * import the position of the last played media saved in the preferences by older versions. has to be called with LOCK held
+     *
+     * @param ctx the context to get the preferences with
+     */
+    private static void importLegacyPosition(@NonNull Context ctx)
+    {
+        SharedPreferences prefs = ConfigUtil.getAppConfig(ctx);
+        String url = prefs.getString(ConfigKeys.KEY_LAST_PLAYED_URL, null);
+        long position = prefs.getLong(ConfigKeys.KEY_LAST_PLAYED_POSITION, -1);
+        if (url == null || position <= 0) return;
+
+        long key = getKey(Uri.parse(url));
+        Entry entry = new Entry(position, -1);
+        entries.put(key, entry);
+        putRecord(key, entry);
+
+        //import only once
+        prefs.edit().remove(ConfigKeys.KEY_LAST_PLAYED_POSITION).apply();
+        Logging.logD("[PosStore] imported legacy playback position of %s", url);
+    }
+
+    /**
+     * write records to the log and sync it to disk
+     *
+     * @param file    the log file
+     * @param records the records to write
+     * @param append  append to the log? if false, the log is replaced by a log with only these records
+     * @throws IOException if writing failed
+     */
+    private static void writeRecords(@NonNull File file, @NonNull Map<Long, Entry> records, boolean append) throws IOException
+    {
+        //write to a temp file when replacing the log, so a crash never leaves a half written log
+        File target = append ? file : new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(target, append))
+        {
+            BufferedOutputStream bufferedOut = new BufferedOutputStream(out);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            for (Map.Entry<Long, Entry> e : records.entrySet())
+            {
+                long key = e.getKey();
+                Entry entry = e.getValue();
+
+                record.clear();
+                record.putInt(RECORD_MAGIC);
+                record.putLong(key);
+                record.putLong(entry.position);
+                record.putLong(entry.duration);
+                record.putInt(getChecksum(key, entry.position, entry.duration));
+                bufferedOut.write(record.array());
+            }
+
+            bufferedOut.flush();
+            out.getFD().sync();
+        }
+
+        if (!append && !target.renameTo(file))
+            throw new IOException("could not replace " + file.getName());
+    }
+
+    /**
+     * @param key      the key of the record
+     * @param position the position of the record
+     * @param duration the duration of the record
+     * @return the checksum of the record
+     */
+    private static int getChecksum(long key, long position, long duration)
+    {
+        long hash = (key * 31 + position) * 31 + duration;
+        return (int) (hash ^ (hash >>> 32)) ^ RECORD_MAGIC;
+    }
+}
@@ -10,38 +10,90 @@ import android.view.InputDevice;
 import android.view.MotionEvent;
 import android.view.View;
 
+/**
+ * Touch listener that detects swipes, flings, clicks and double- taps.
+ * All positions are in dp. Touch processing does not allocate: the points passed to the events are reused,
+ * so they are only valid during the call (copy them if they are needed later).
+ * The velocity of swipes is smoothed over all samples of a move event, including the batched historical ones.
+ */
 public class SwipeGestureListener implements View.OnTouchListener
 {
+    /**
+     * time constant of the velocity smoothing, in ms. samples older than this have little influence
+     */
+    private static final float VELOCITY_SMOOTHING_MS = 40f;
+
+    /**
+     * The current position of the finger, updated on every event
+     */
+    private final PointF currentPos = new PointF();
+
     /**
      * The First contact point of the finger
      */
-    private PointF firstContactPoint;
+    private final PointF firstContactPoint = new PointF();
 
     /**
      * The position of the finger the last time one of the onSwipe events was fired
      */
-    private PointF lastSwipePoint;
+    private final PointF lastSwipePoint = new PointF();
+
+    /**
+     * are firstContactPoint and lastSwipePoint set (finger pressed down outside of the dead zone)?
+     */
+    private boolean isSwiping = false;
 
     /**
      * The time the last swipe point was changed
      */
     private long lastSwipePointMillis;
 
+    /**
+     * position and time (event time, ms) of the last velocity sample
+     */
+    private float lastSampleX, lastSampleY;
+    private long lastSampleTime;
+
+    /**
+     * smoothed velocity of the finger, in dp per second
+     */
+    private float velocityX, velocityY;
+
     /**
      * The position of the finger on the last touch
      * Used for double- tap detection
      */
-    private PointF lastDoubleTapPoint;
+    private final PointF lastDoubleTapPoint = new PointF();
+
+    /**
+     * is lastDoubleTapPoint set?
+     */
+    private boolean hasLastDoubleTapPoint = false;
 
     /**
      * when the last double tap point was changed
      */
     private long lastDoubleTapPointMillis;
 
+    /**
+     * view and position of the normal click that is performed delayed (after the double- tap decay time)
+     */
+    private View pendingClickView;
+    private final PointF pendingClickPos = new PointF();
+
     /**
      * the runnable responsible for clicking the underlying view, from the last normal click
      */
-    private Runnable lastPerformNormalClick;
+    private final Runnable performPendingClick = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            if (pendingClickView == null) return;
+            onNoSwipeClick(pendingClickView, pendingClickPos, screenSize);
+            pendingClickView = null;
+        }
+    };
 
     /**
      * handler for delaying clicks on views
@@ -49,6 +101,21 @@ public class SwipeGestureListener implements View.OnTouchListener
      */
     private Handler clickDelayHandler = new Handler();
 
+    /**
+     * the size of the screen in dp. only recalculated when the view size, density or input device changed
+     */
+    private SizeF screenSize = new SizeF(0, 0);
+
+    /**
+     * values screenSize was calculated for
+     */
+    private int screenSizeViewWidth = -1, screenSizeViewHeight = -1, screenSizeDeviceId = -1;
+
+    /**
+     * the density used for px -> dp conversion, cached with the screen size
+     */
+    private float density = 1f;
+
 
     /**
      * How long two taps near to each other can be spaced apart (in time) to be counted as a double- tap
@@ -138,21 +205,16 @@ public class SwipeGestureListener implements View.OnTouchListener
     @Override
     public boolean onTouch(final View view, MotionEvent e)
     {
-        //get context of view for px -> dp conversion
-        Context ctx = view.getContext();
-
-        //get current finger position in dp
-        final PointF currentPos = new PointF(pxToDp(e.getX(), ctx), pxToDp(e.getY(), ctx));
-
         //get input device (=touch screen) this event was invoked on
         //this device can be null (tho rare), so check for that
-        InputDevice eventDevice = e.getDevice();
+        InputDevice eventDevice = getInputDevice(e);
         if (eventDevice == null) return false;
 
-        //get screen size in dp
-        float screenWidthRaw = eventDevice.getMotionRange(MotionEvent.AXIS_X).getRange();
-        float screenHeightRaw = eventDevice.getMotionRange(MotionEvent.AXIS_Y).getRange();
-        final SizeF screenSize = new SizeF(pxToDp(screenWidthRaw, ctx), pxToDp(screenHeightRaw, ctx));
+        //update screen size and density if the layout or device changed
+        updateScreenSize(view, eventDevice);
+
+        //get current finger position in dp
+        currentPos.set(e.getX() / density, e.getY() / density);
 
         //check if finger is in dead zone around the edges
         boolean isInDeadZone = currentPos.x < swipeEdgeIgnore.left                      //check left edge
@@ -166,7 +228,7 @@ public class SwipeGestureListener implements View.OnTouchListener
             case MotionEvent.ACTION_DOWN:
             {
                 //first check if we have a double tap point recorded that is not yet decayed
-                if (lastDoubleTapPoint != null && ((System.currentTimeMillis() - lastDoubleTapPointMillis) <= doubleTapDecayTime))
+                if (hasLastDoubleTapPoint && ((System.currentTimeMillis() - lastDoubleTapPointMillis) <= doubleTapDecayTime))
                 {
                     //point is not decayed, check distance between between the current and the initial tap
                     float deltaX = Math.abs(lastDoubleTapPoint.x - currentPos.x);
@@ -177,10 +239,8 @@ public class SwipeGestureListener implements View.OnTouchListener
                         //the current tap is inside the radius for a double- tap AND was fast enough
                         //so this is a double- tap:
                         //cancel the first tap clicking on a view asap
-                        if (lastPerformNormalClick != null)
-                        {
-                            clickDelayHandler.removeCallbacks(lastPerformNormalClick);
-                        }
+                        clickDelayHandler.removeCallbacks(performPendingClick);
+                        pendingClickView = null;
 
                         //now call the event
                         onDoubleClick(distanceSq, (System.currentTimeMillis() - lastDoubleTapPointMillis), lastDoubleTapPoint, currentPos, screenSize);
@@ -188,26 +248,38 @@ public class SwipeGestureListener implements View.OnTouchListener
                         //set last double tap point to the current position
                         //this way, after one double tap, a second one can follow directly after
                         //also, set the time of this tap into the future, so the user has more (=double) the time to press after the initial double- tap
-                        lastDoubleTapPoint = currentPos;
+                        lastDoubleTapPoint.set(currentPos);
                         lastDoubleTapPointMillis = System.currentTimeMillis() + doubleTapDecayTime;
                         return true;
                     }
                 }
 
                 //record position of event as last touchUp
-                lastDoubleTapPoint = currentPos;
+                lastDoubleTapPoint.set(currentPos);
+                hasLastDoubleTapPoint = true;
                 lastDoubleTapPointMillis = System.currentTimeMillis();
 
                 //check deadzone for swipe detection
                 if (!isInDeadZone)
                 {
                     //finger pressed down outside of dead zone, get initial position
-                    firstContactPoint = currentPos;
+                    firstContactPoint.set(currentPos);
                     setLastSwipePoint(currentPos);
+                    isSwiping = true;
+
+                    //start velocity tracking
+                    velocityX = 0;
+                    velocityY = 0;
+                    lastSampleX = currentPos.x;
+                    lastSampleY = currentPos.y;
+                    lastSampleTime = e.getEventTime();
+
+                    onSwipeStart(firstContactPoint, screenSize);
                 }
                 else
                 {
                     //finger pressed down inside dead zone, pass through
+                    isSwiping = false;
                     onNoSwipeClick(view, currentPos, screenSize);
                     view.performClick();
                 }
@@ -217,7 +289,8 @@ public class SwipeGestureListener implements View.OnTouchListener
             case MotionEvent.ACTION_UP:
             {
                 //no point set previously, ignore up event
-                if (firstContactPoint == null || lastSwipePoint == null) return false;
+                if (!isSwiping) return false;
+                isSwiping = false;
 
                 //finger lifted, fire fling event if threshold met
                 //calculate movement delta
@@ -228,23 +301,14 @@ public class SwipeGestureListener implements View.OnTouchListener
                 if (Math.abs(deltaX) < flingThreshold && Math.abs(deltaY) < flingThreshold)
                 {
                     //does not qualify as a fling, make click
-                    //perform the click on the view delayed, inside a (saved) runnable so we can cancel it
-                    lastPerformNormalClick = new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            onNoSwipeClick(view, currentPos, screenSize);
-                        }
-                    };
+                    //perform the click on the view delayed (the runnable is reused), so we can cancel it
+                    pendingClickView = view;
+                    pendingClickPos.set(currentPos);
 
                     //dispatch the click delayed, so we perform the click right after
                     //the tap reached it's decay time for being a double- tap
-                    clickDelayHandler.postDelayed(lastPerformNormalClick, doubleTapDecayTime);
-
-                    //null values
-                    firstContactPoint = null;
-                    lastSwipePoint = null;
+                    clickDelayHandler.removeCallbacks(performPendingClick);
+                    clickDelayHandler.postDelayed(performPendingClick, doubleTapDecayTime);
                     return false;
                 }
 
@@ -259,16 +323,17 @@ public class SwipeGestureListener implements View.OnTouchListener
                     //~~ Up/Down Vertical ~~
                     onVerticalFling(deltaY, firstContactPoint, currentPos, screenSize);
                 }
-
-                //null values
-                firstContactPoint = null;
-                lastSwipePoint = null;
                 return true;
             }
             case MotionEvent.ACTION_MOVE:
             {
                 //no point set previously, ignore up event
-                if (firstContactPoint == null || lastSwipePoint == null) return false;
+                if (!isSwiping) return false;
+
+                //update velocity with all samples batched into this event, oldest first
+                for (int h = 0; h < e.getHistorySize(); h++)
+                    addVelocitySample(e.getHistoricalX(h) / density, e.getHistoricalY(h) / density, e.getHistoricalEventTime(h));
+                addVelocitySample(currentPos.x, currentPos.y, e.getEventTime());
 
                 //finger moved, update swipe event:
                 //check if last position decayed
@@ -291,12 +356,12 @@ public class SwipeGestureListener implements View.OnTouchListener
                 if (Math.abs(deltaX) > Math.abs(deltaY))
                 {
                     //~~ Left/Right Horizontal ~~
-                    onHorizontalSwipe(deltaX, lastSwipePoint, currentPos, firstContactPoint, screenSize);
+                    onHorizontalSwipe(deltaX, velocityX, lastSwipePoint, currentPos, firstContactPoint, screenSize);
                 }
                 else
                 {
                     //~~ Up/Down Vertical ~~
-                    onVerticalSwipe(deltaY, lastSwipePoint, currentPos, firstContactPoint, screenSize);
+                    onVerticalSwipe(deltaY, velocityY, lastSwipePoint, currentPos, firstContactPoint, screenSize);
                 }
 
                 //record current pos for next swipe event
@@ -311,6 +376,69 @@ public class SwipeGestureListener implements View.OnTouchListener
         }
     }
 
+    /**
+     * Get the input device a event was invoked on
+     * (overridden by tests, where events have no device)
+     *
+     * @param e the event
+     * @return the input device, or null if not known
+     */
+    protected InputDevice getInputDevice(MotionEvent e)
+    {
+        return e.getDevice();
+    }
+
+    /**
+     * Update the cached screen size (in dp) and density, if the view was laid out with a different size or the input device changed.
+     * Getting the motion ranges of the device is not free, so this is not done on every event
+     *
+     * @param view   the view that was touched
+     * @param device the input device of the event
+     */
+    private void updateScreenSize(View view, InputDevice device)
+    {
+        if (view.getWidth() == screenSizeViewWidth && view.getHeight() == screenSizeViewHeight && device.getId() == screenSizeDeviceId)
+            return;
+
+        screenSizeViewWidth = view.getWidth();
+        screenSizeViewHeight = view.getHeight();
+        screenSizeDeviceId = device.getId();
+        density = view.getResources().getDisplayMetrics().density;
+
+        //get screen size in dp
+        InputDevice.MotionRange rangeX = device.getMotionRange(MotionEvent.AXIS_X);
+        InputDevice.MotionRange rangeY = device.getMotionRange(MotionEvent.AXIS_Y);
+        float screenWidthRaw = rangeX != null ? rangeX.getRange() : screenSizeViewWidth;
+        float screenHeightRaw = rangeY != null ? rangeY.getRange() : screenSizeViewHeight;
+        screenSize = new SizeF(screenWidthRaw / density, screenHeightRaw / density);
+    }
+
+    /**
+     * Add a sample to the smoothed velocity.
+     * Smoothing is exponential, weighted by the time between samples, so it does not depend on the touch sample rate.
+     *
+     * @param x    x position of the sample, in dp
+     * @param y    y position of the sample, in dp
+     * @param time time of the sample (event time), in ms
+     */
+    private void addVelocitySample(float x, float y, long time)
+    {
+        long dt = time - lastSampleTime;
+        if (dt <= 0) return;
+
+        //velocity of this sample in dp/s (swipe deltas are last - current, so velocity is, too)
+        float vx = (lastSampleX - x) * 1000f / dt;
+        float vy = (lastSampleY - y) * 1000f / dt;
+
+        float alpha = dt / (dt + VELOCITY_SMOOTHING_MS);
+        velocityX += alpha * (vx - velocityX);
+        velocityY += alpha * (vy - velocityY);
+
+        lastSampleX = x;
+        lastSampleY = y;
+        lastSampleTime = time;
+    }
+
     /**
      * Set the last swipe point and record the time
      *
@@ -318,7 +446,7 @@ public class SwipeGestureListener implements View.OnTouchListener
      */
     private void setLastSwipePoint(PointF to)
     {
-        lastSwipePoint = to;
+        lastSwipePoint.set(to);
         lastSwipePointMillis = System.currentTimeMillis();
     }
 
@@ -350,6 +478,19 @@ public class SwipeGestureListener implements View.OnTouchListener
 
     //region ~~ Overrideable "events" ~~
 
+    /**
+     * Called when the user's finger pressed down outside of the dead zone, so the following movement may be a swipe
+     * (all units, positions, etc. in dp (density- independent- pixels))
+     *
+     * @param firstContact the first contact point of the finger
+     * @param screenSize   the size of the screen
+     */
+    @SuppressWarnings({"EmptyMethod", "unused", "WeakerAccess", "RedundantSuppression"})
+    protected void onSwipeStart(PointF firstContact, SizeF screenSize)
+    {
+
+    }
+
     /**
      * Called if the user's finger moved at least the minimum swipe distance Horizontally
      * (User pressed down and moved finger horizontally at least x pixels, where x is the set swipe threshold)
@@ -367,6 +508,24 @@ public class SwipeGestureListener implements View.OnTouchListener
 
     }
 
+    /**
+     * Called if the user's finger moved at least the minimum swipe distance Horizontally, with the smoothed velocity of the swipe.
+     * Calls onHorizontalSwipe without velocity by default
+     * (all units, positions, etc. in dp (density- independent- pixels))
+     *
+     * @param deltaX       the distance between start and end point, on the X axis only
+     * @param velocityX    the smoothed velocity of the finger on the X axis, in dp/s. same sign as deltaX
+     * @param swipeStart   the position the current swipe started
+     * @param swipeEnd     the position the current swipe ended (current finger position)
+     * @param firstContact the first contact point of the finger
+     * @param screenSize   the size of the screen
+     */
+    @SuppressWarnings({"unused", "WeakerAccess", "RedundantSuppression"})
+    protected void onHorizontalSwipe(float deltaX, float velocityX, PointF swipeStart, PointF swipeEnd, PointF firstContact, SizeF screenSize)
+    {
+        onHorizontalSwipe(deltaX, swipeStart, swipeEnd, firstContact, screenSize);
+    }
+
     /**
      * Called if the user's finger moved at least the minimum swipe distance Vertically
      * (User pressed down and moved finger Vertically at least x pixels, where x is the set swipe threshold)
@@ -383,6 +542,24 @@ public class SwipeGestureListener implements View.OnTouchListener
     {
     }
 
+    /**
+     * Called if the user's finger moved at least the minimum swipe distance Vertically, with the smoothed velocity of the swipe.
+     * Calls onVerticalSwipe without velocity by default
+     * (all units, positions, etc. in dp (density- independent- pixels))
+     *
+     * @param deltaY       the distance between start and end point, on the Y axis only
+     * @param velocityY    the smoothed velocity of the finger on the Y axis, in dp/s. same sign as deltaY
+     * @param swipeStart   the position the current swipe started
+     * @param swipeEnd     the position the current swipe ended (current finger position)
+     * @param firstContact the first contact point of the finger
+     * @param screenSize   the size of the screen
+     */
+    @SuppressWarnings({"unused", "WeakerAccess", "RedundantSuppression"})
+    protected void onVerticalSwipe(float deltaY, float velocityY, PointF swipeStart, PointF swipeEnd, PointF firstContact, SizeF screenSize)
+    {
+        onVerticalSwipe(deltaY, swipeStart, swipeEnd, firstContact, screenSize);
+    }
+
     /**
      * Called when a Horizontal fling is released
      * (User pressed down, moved finger horizontally, then released finger)
@@ -0,0 +1,112 @@
+package de.shadow578.yetanothervideoplayer.feature.upscale;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+import de.shadow578.yetanothervideoplayer.util.Logging;
+
+/**
+ * Anime4K upscaler that runs on the CPU, for images that never reach the GL filters (eg. thumbnails), or when GL effects are disabled.
+ * Works like the GL version: the image is scaled bilinear, then every pass pushes color and gradient using the luminance stored in the alpha channel.
+ * The pixel stages are in {@link CpuAnime4KKernel}. With multiple cores, they are split into bands of rows that are processed in parallel,
+ * on a single core they run scalar (splitting only adds overhead there, see CpuAnime4KBenchmark in the benchmark module).
+ * Instances are not thread safe, but multiple instances may be used in parallel.
+ */
+public class CpuAnime4K
+{
+    /**
+     * how many passes are executed (more = slower)
+     */
+    private int passes = 2;
+
+    /**
+     * the strength of push operations, 0-256. negative if calculated from the scale
+     */
+    private int colorPushStrength = -1;
+    private int gradPushStrength = -1;
+
+    /**
+     * how the stages are run, one of CpuAnime4KKernel.MODE_
+     */
+    private int mode = Runtime.getRuntime().availableProcessors() > 1 ? CpuAnime4KKernel.MODE_BANDED : CpuAnime4KKernel.MODE_SCALAR;
+
+    /**
+     * Upscale a image using anime4k.
+     * This is slow for large images, do not call on the main thread.
+     *
+     * @param source the image to upscale. is not modified
+     * @param scale  the scale factor. 1.0 only enhances the image
+     * @return the upscaled image, ARGB_8888
+     */
+    @NonNull
+    public Bitmap upscale(@NonNull Bitmap source, float scale)
+    {
+        long start = System.currentTimeMillis();
+
+        //scale bilinear to the target size
+        int width = Math.max(1, Math.round(source.getWidth() * scale));
+        int height = Math.max(1, Math.round(source.getHeight() * scale));
+        Bitmap scaled = Bitmap.createScaledBitmap(source, width, height, true);
+
+        //get pixels. ping- ponged between stages by the kernel
+        int[] pixels = new int[width * height];
+        int[] buffer = new int[width * height];
+        scaled.getPixels(pixels, 0, width, 0, 0, width, height);
+        if (scaled != source)
+            scaled.recycle();
+
+        //push strength from scale, like GLAnime4K
+        int colStrength = colorPushStrength >= 0 ? colorPushStrength : Math.min(256, Math.round(scale / 6f * 256));
+        int gradStrength = gradPushStrength >= 0 ? gradPushStrength : Math.min(256, Math.round(scale / 2f * 256));
+
+        //luminance, then color and gradient push for every pass
+        pixels = CpuAnime4KKernel.process(pixels, buffer, width, height, passes, colStrength, gradStrength, mode);
+
+        //luminance in alpha is not needed anymore, make opaque
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] |= 0xFF000000;
+
+        Bitmap output = Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+        Logging.logD("[CpuA4K] upscaled %d x %d to %d x %d (%d passes) in %d ms", source.getWidth(), source.getHeight(), width, height, passes, System.currentTimeMillis() - start);
+        return output;
+    }
+
+    //region Parameter Interface
+
+    /**
+     * Set passes count
+     *
+     * @param passes how many passes are executed
+     */
+    @SuppressWarnings("unused")
+    public void setPasses(int passes)
+    {
+        this.passes = passes;
+    }
+
+    /**
+     * Manually set push strengths. Disables calculating the push strength from the scale.
+     *
+     * @param colorPushStrength color push strength (0.0-1.0)
+     * @param gradPushStrength  gradient push strength (0.0-1.0)
+     */
+    @SuppressWarnings("unused")
+    public void setPushStrength(float colorPushStrength, float gradPushStrength)
+    {
+        this.colorPushStrength = Math.round(Math.max(0f, Math.min(1f, colorPushStrength)) * 256);
+        this.gradPushStrength = Math.round(Math.max(0f, Math.min(1f, gradPushStrength)) * 256);
+    }
+
+    /**
+     * Set how the stages are run. All modes give the same result, see CpuAnime4KBenchmark for their speed.
+     *
+     * @param mode one of CpuAnime4KKernel.MODE_SCALAR, MODE_BANDED or MODE_TILED
+     */
+    @SuppressWarnings("unused")
+    public void setMode(int mode)
+    {
+        this.mode = mode;
+    }
+    //endregion
+}
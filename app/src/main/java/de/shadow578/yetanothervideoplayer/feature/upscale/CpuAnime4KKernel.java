@@ -0,0 +1,441 @@
+package de.shadow578.yetanothervideoplayer.feature.upscale;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The pixel stages of {@link CpuAnime4K}, on plain ARGB int arrays (no android classes, so it runs in unit tests and benchmarks).
+ * Every pixel is ARGB, with luminance (or gradient) in alpha instead of opacity. Edges are clamped, like texture sampling with GL_CLAMP_TO_EDGE.
+ * Stages can run scalar on the calling thread, or split into bands of rows or into square tiles on a shared fork- join pool.
+ * All modes produce the same output, they only differ in speed.
+ */
+public final class CpuAnime4KKernel
+{
+    /**
+     * run every stage on the calling thread, row by row
+     */
+    public static final int MODE_SCALAR = 0;
+
+    /**
+     * split every stage into bands of BAND_ROWS full rows, processed in parallel
+     */
+    public static final int MODE_BANDED = 1;
+
+    /**
+     * split every stage into tiles of at most TILE_SIZE x TILE_SIZE pixels, processed in parallel
+     */
+    public static final int MODE_TILED = 2;
+
+    /**
+     * max. number of rows processed by one band task. smaller bands are split less, larger ones balance worse
+     */
+    private static final int BAND_ROWS = 32;
+
+    /**
+     * max. width and height of a tile. the 3 rows a tile reads stay in L1 for wide images, where full rows do not
+     */
+    private static final int TILE_SIZE = 64;
+
+    /**
+     * luminance weights (0.2125, 0.7154, 0.0721), * 256
+     */
+    private static final int LUM_R = 54, LUM_G = 183, LUM_B = 19;
+
+    /**
+     * stages, see the methods with the same name
+     */
+    private static final int STAGE_LUMINANCE = 0,
+            STAGE_COLOR_PUSH = 1,
+            STAGE_GRADIENT = 2,
+            STAGE_GRADIENT_PUSH = 3;
+
+    /**
+     * pool shared by all callers, created on first use
+     */
+    private static ForkJoinPool pool;
+
+    private CpuAnime4KKernel()
+    {
+    }
+
+    /**
+     * Run anime4k on a image: luminance once, then color push, gradient and gradient push for every pass.
+     * pixels and buffer are ping- ponged between stages.
+     *
+     * @param pixels       the image, ARGB. alpha is ignored. overwritten
+     * @param buffer       scratch buffer with the same size as pixels. overwritten
+     * @param width        width of the image
+     * @param height       height of the image
+     * @param passes       how many passes are executed
+     * @param colStrength  color push strength, 0-256
+     * @param gradStrength gradient push strength, 0-256
+     * @param mode         how stages are run, one of the MODE_ constants
+     * @return pixels or buffer, whichever contains the result. alpha of the result is its luminance
+     */
+    public static int[] process(int[] pixels, int[] buffer, int width, int height, int passes, int colStrength, int gradStrength, int mode)
+    {
+        //luminance into alpha (Color GET)
+        runStage(STAGE_LUMINANCE, pixels, pixels, width, height, 0, mode);
+        for (int pass = 0; pass < passes; pass++)
+        {
+            //Color PUSH: pixels -> buffer
+            runStage(STAGE_COLOR_PUSH, pixels, buffer, width, height, colStrength, mode);
+
+            //Gradient GET: buffer -> pixels
+            runStage(STAGE_GRADIENT, buffer, pixels, width, height, 0, mode);
+
+            //Gradient PUSH: pixels -> buffer, then swap so the result is in pixels
+            runStage(STAGE_GRADIENT_PUSH, pixels, buffer, width, height, gradStrength, mode);
+            int[] t = pixels;
+            pixels = buffer;
+            buffer = t;
+        }
+        return pixels;
+    }
+
+    /**
+     * Run one stage on the whole image
+     *
+     * @param stage    the stage to run
+     * @param src      source pixels
+     * @param dst      destination pixels. the same array as src for STAGE_LUMINANCE
+     * @param width    width of the image
+     * @param height   height of the image
+     * @param strength push strength, 0-256
+     * @param mode     how the stage is run, one of the MODE_ constants
+     */
+    private static void runStage(int stage, int[] src, int[] dst, int width, int height, int strength, int mode)
+    {
+        if (mode == MODE_SCALAR)
+        {
+            for (int y = 0; y < height; y++)
+                runRow(stage, src, dst, width, height, strength, y, 0, width);
+            return;
+        }
+
+        getPool().invoke(new StageTask(stage, src, dst, width, height, strength, mode == MODE_TILED, 0, width, 0, height));
+    }
+
+    /**
+     * Run one stage on a part of a row
+     *
+     * @param stage    the stage to run
+     * @param src      source pixels
+     * @param dst      destination pixels
+     * @param width    width of the image
+     * @param height   height of the image
+     * @param strength push strength, 0-256
+     * @param y        the row
+     * @param xStart   first column (inclusive)
+     * @param xEnd     last column (exclusive)
+     */
+    private static void runRow(int stage, int[] src, int[] dst, int width, int height, int strength, int y, int xStart, int xEnd)
+    {
+        switch (stage)
+        {
+            case STAGE_LUMINANCE:
+                luminance(src, dst, width, y, xStart, xEnd);
+                break;
+            case STAGE_COLOR_PUSH:
+            case STAGE_GRADIENT_PUSH:
+                push(stage == STAGE_COLOR_PUSH, src, dst, width, height, strength, y, xStart, xEnd);
+                break;
+            case STAGE_GRADIENT:
+                gradient(src, dst, width, height, y, xStart, xEnd);
+                break;
+        }
+    }
+
+    /**
+     * @return the shared pool, created with one thread per cpu core on first use
+     */
+    private static synchronized ForkJoinPool getPool()
+    {
+        //ForkJoinPool.commonPool() needs API 24
+        if (pool == null)
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        return pool;
+    }
+
+    /**
+     * Task that runs one stage on a region, splitting larger regions into halves.
+     * Bands are split by rows only, tiles along their longer side.
+     */
+    private static class StageTask extends RecursiveAction
+    {
+        /**
+         * the stage to run
+         */
+        private final int stage;
+
+        /**
+         * source and destination pixels
+         */
+        private final int[] src, dst;
+
+        /**
+         * size of the image
+         */
+        private final int width, height;
+
+        /**
+         * push strength, 0-256
+         */
+        private final int strength;
+
+        /**
+         * split into tiles (true) or bands of full rows (false)?
+         */
+        private final boolean tiled;
+
+        /**
+         * region to process (start inclusive, end exclusive)
+         */
+        private final int xStart, xEnd, yStart, yEnd;
+
+        StageTask(int stage, int[] src, int[] dst, int width, int height, int strength, boolean tiled, int xStart, int xEnd, int yStart, int yEnd)
+        {
+            this.stage = stage;
+            this.src = src;
+            this.dst = dst;
+            this.width = width;
+            this.height = height;
+            this.strength = strength;
+            this.tiled = tiled;
+            this.xStart = xStart;
+            this.xEnd = xEnd;
+            this.yStart = yStart;
+            this.yEnd = yEnd;
+        }
+
+        @Override
+        protected void compute()
+        {
+            int rows = yEnd - yStart;
+            int cols = xEnd - xStart;
+
+            //split columns (tiles only) while the region is wider than a tile and wider than high
+            if (tiled && cols > TILE_SIZE && cols >= rows)
+            {
+                int mid = (xStart + xEnd) >>> 1;
+                invokeAll(new StageTask(stage, src, dst, width, height, strength, true, xStart, mid, yStart, yEnd),
+                        new StageTask(stage, src, dst, width, height, strength, true, mid, xEnd, yStart, yEnd));
+                return;
+            }
+
+            //split rows until the band (or tile) is small enough
+            if (rows > (tiled ? TILE_SIZE : BAND_ROWS))
+            {
+                int mid = (yStart + yEnd) >>> 1;
+                invokeAll(new StageTask(stage, src, dst, width, height, strength, tiled, xStart, xEnd, yStart, mid),
+                        new StageTask(stage, src, dst, width, height, strength, tiled, xStart, xEnd, mid, yEnd));
+                return;
+            }
+
+            for (int y = yStart; y < yEnd; y++)
+                runRow(stage, src, dst, width, height, strength, y, xStart, xEnd);
+        }
+    }
+
+    //region Stages
+
+    /**
+     * Color GET: put the luminance of every pixel into alpha
+     *
+     * @param src    source pixels
+     * @param dst    destination pixels, may be src
+     * @param width  width of the image
+     * @param y      the row
+     * @param xStart first column (inclusive)
+     * @param xEnd   last column (exclusive)
+     */
+    private static void luminance(int[] src, int[] dst, int width, int y, int xStart, int xEnd)
+    {
+        for (int i = y * width + xStart, end = y * width + xEnd; i < end; i++)
+            dst[i] = withLuminance(src[i]);
+    }
+
+    /**
+     * Gradient GET: put the gradient of the luminance (in alpha) of every pixel into alpha
+     *
+     * @param src    source pixels
+     * @param dst    destination pixels
+     * @param width  width of the image
+     * @param height height of the image
+     * @param y      the row
+     * @param xStart first column (inclusive)
+     * @param xEnd   last column (exclusive)
+     */
+    private static void gradient(int[] src, int[] dst, int width, int height, int y, int xStart, int xEnd)
+    {
+        int top = Math.max(y - 1, 0) * width;
+        int mid = y * width;
+        int bot = Math.min(y + 1, height - 1) * width;
+        for (int x = xStart; x < xEnd; x++)
+        {
+            int l = Math.max(x - 1, 0);
+            int r = Math.min(x + 1, width - 1);
+
+            int tl = src[top + l] >>> 24, tc = src[top + x] >>> 24, tr = src[top + r] >>> 24;
+            int ml = src[mid + l] >>> 24, mr = src[mid + r] >>> 24;
+            int bl = src[bot + l] >>> 24, bc = src[bot + x] >>> 24, br = src[bot + r] >>> 24;
+
+            //sobel, like a4k_gradient.fs
+            int xGrad = -tl + tr - ml - ml + mr + mr - bl + br;
+            int yGrad = -tl - tc - tc - tr + bl + bc + bc + br;
+            int grad = 255 - Math.min(255, (int) Math.sqrt(xGrad * xGrad + yGrad * yGrad));
+            dst[mid + x] = (src[mid + x] & 0xFFFFFF) | (grad << 24);
+        }
+    }
+
+    /**
+     * Color / Gradient PUSH of every pixel.
+     * Color push keeps the lightest result (luminance in alpha), gradient push the last result and stores the luminance of the result in alpha.
+     *
+     * @param isColor  color push or gradient push?
+     * @param src      source pixels
+     * @param dst      destination pixels
+     * @param width    width of the image
+     * @param height   height of the image
+     * @param strength push strength, 0-256
+     * @param y        the row
+     * @param xStart   first column (inclusive)
+     * @param xEnd     last column (exclusive)
+     */
+    private static void push(boolean isColor, int[] src, int[] dst, int width, int height, int strength, int y, int xStart, int xEnd)
+    {
+        int top = Math.max(y - 1, 0) * width;
+        int mid = y * width;
+        int bot = Math.min(y + 1, height - 1) * width;
+        for (int x = xStart; x < xEnd; x++)
+        {
+            int l = Math.max(x - 1, 0);
+            int r = Math.min(x + 1, width - 1);
+
+            // Kernel defination:
+            // [tl][tc][tr]
+            // [ml][mc][mr]
+            // [bl][bc][br]
+            int tl = src[top + l], tc = src[top + x], tr = src[top + r];
+            int ml = src[mid + l], mc = src[mid + x], mr = src[mid + r];
+            int bl = src[bot + l], bc = src[bot + x], br = src[bot + r];
+            int mca = mc >>> 24;
+
+            //default lightest color to center
+            int lightest = mc;
+
+            //Kernel 0+4
+            int maxD = max3(br, bc, bl);
+            int minL = min3(tl, tc, tr);
+            if (minL > mca && minL > maxD)
+                lightest = push(isColor, strength, mc, lightest, tl, tc, tr);
+            else
+            {
+                maxD = max3(tl, tc, tr);
+                minL = min3(br, bc, bl);
+                if (minL > mca && minL > maxD)
+                    lightest = push(isColor, strength, mc, lightest, br, bc, bl);
+            }
+
+            //Kernel 1+5
+            maxD = max3(mc, ml, bc);
+            minL = min3(mr, tc, tr);
+            if (minL > maxD)
+                lightest = push(isColor, strength, mc, lightest, mr, tc, tr);
+            else
+            {
+                maxD = max3(mc, mr, tc);
+                minL = min3(bl, ml, bc);
+                if (minL > maxD)
+                    lightest = push(isColor, strength, mc, lightest, bl, ml, bc);
+            }
+
+            //Kernel 2+6
+            maxD = max3(ml, tl, bl);
+            minL = min3(mr, br, tr);
+            if (minL > mca && minL > maxD)
+                lightest = push(isColor, strength, mc, lightest, mr, br, tr);
+            else
+            {
+                maxD = max3(mr, br, tr);
+                minL = min3(ml, tl, bl);
+                if (minL > mca && minL > maxD)
+                    lightest = push(isColor, strength, mc, lightest, ml, tl, bl);
+            }
+
+            //Kernel 3+7
+            maxD = max3(mc, ml, tc);
+            minL = min3(mr, br, bc);
+            if (minL > maxD)
+                lightest = push(isColor, strength, mc, lightest, mr, br, bc);
+            else
+            {
+                maxD = max3(mc, mr, bc);
+                minL = min3(tc, ml, tl);
+                if (minL > maxD)
+                    lightest = push(isColor, strength, mc, lightest, tc, ml, tl);
+            }
+
+            //gradient push result is the input of the next pass, which needs the luminance
+            dst[mid + x] = isColor ? lightest : withLuminance(lightest);
+        }
+    }
+    //endregion
+
+    //region Pixel Functions
+
+    /**
+     * push the center color towards the average of a, b and c
+     *
+     * @param isColor  color push (keep the lightest) or gradient push (always use the new color)?
+     * @param strength push strength, 0-256
+     * @param cc       the center color
+     * @param lightest the lightest color so far
+     * @param a        first color to average
+     * @param b        second color to average
+     * @param c        third color to average
+     * @return the new lightest color
+     */
+    static int push(boolean isColor, int strength, int cc, int lightest, int a, int b, int c)
+    {
+        //blend every channel, including alpha
+        int nc = 0;
+        for (int shift = 0; shift < 32; shift += 8)
+        {
+            int avg = (((a >>> shift) & 0xFF) + ((b >>> shift) & 0xFF) + ((c >>> shift) & 0xFF)) / 3;
+            int ch = (((cc >>> shift) & 0xFF) * (256 - strength) + avg * strength) >> 8;
+            nc |= ch << shift;
+        }
+
+        if (!isColor || (nc >>> 24) > (lightest >>> 24))
+            return nc;
+        return lightest;
+    }
+
+    /**
+     * @return the max. alpha of a, b and c
+     */
+    static int max3(int a, int b, int c)
+    {
+        return Math.max(Math.max(a >>> 24, b >>> 24), c >>> 24);
+    }
+
+    /**
+     * @return the min. alpha of a, b and c
+     */
+    static int min3(int a, int b, int c)
+    {
+        return Math.min(Math.min(a >>> 24, b >>> 24), c >>> 24);
+    }
+
+    /**
+     * @param c the color
+     * @return the color with its luminance in alpha
+     */
+    static int withLuminance(int c)
+    {
+        int lum = (((c >> 16) & 0xFF) * LUM_R + ((c >> 8) & 0xFF) * LUM_G + (c & 0xFF) * LUM_B) >> 8;
+        return (c & 0xFFFFFF) | (Math.min(255, lum) << 24);
+    }
+    //endregion
+}
@@ -4,6 +4,7 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.preference.PreferenceManager;
 
 import de.shadow578.yetanothervideoplayer.R;
+import de.shadow578.yetanothervideoplayer.feature.resume.PlaybackPositionStore;
 import de.shadow578.yetanothervideoplayer.util.ConfigKeys;
 
 import android.content.Intent;
@@ -195,8 +196,8 @@ public class CrashScreenActivity extends AppCompatActivity
         //check if we have a title and url set
         if (getLastPlayedUrl() == null || getLastPlayedTitle() == null) return false;
 
-        //check if there is a playback position to resume stored
-        return appPreferences.getLong(ConfigKeys.KEY_LAST_PLAYED_POSITION, -1) > 0;
+        //check if there is a playback position to resume stored for the url
+        return PlaybackPositionStore.load(this, Uri.parse(getLastPlayedUrl())) > 0;
     }
 
     /**
@@ -9,6 +9,7 @@ import androidx.preference.PreferenceManager;
 
 import de.shadow578.yetanothervideoplayer.BuildConfig;
 import de.shadow578.yetanothervideoplayer.R;
+import de.shadow578.yetanothervideoplayer.feature.resume.PlaybackPositionStore;
 import de.shadow578.yetanothervideoplayer.feature.update.AppUpdateManager;
 import de.shadow578.yetanothervideoplayer.feature.update.DefaultUpdateCallback;
 import de.shadow578.yetanothervideoplayer.feature.update.UpdateInfo;
@@ -16,7 +17,7 @@ import de.shadow578.yetanothervideoplayer.ui.mediapicker.MediaPickerActivity;
 import de.shadow578.yetanothervideoplayer.ui.playback.PlaybackActivity;
 import de.shadow578.yetanothervideoplayer.ui.update.UpdateHelper;
 import de.shadow578.yetanothervideoplayer.util.ConfigKeys;
-import de.shadow578.yetanothervideoplayer.util.ConfigUtil;
+import de.shadow578.yetanothervideoplayer.util.ConfigSnapshot;
 import de.shadow578.yetanothervideoplayer.util.Logging;
 
 import android.Manifest;
@@ -90,7 +91,7 @@ public class LaunchActivity extends AppCompatActivity
             return false;
 
         //dont check if updates are disabled
-        if (!ConfigUtil.getConfigBoolean(this, ConfigKeys.KEY_ENABLE_APP_UPDATES, R.bool.DEF_ENABLE_APP_UPDATES))
+        if (!ConfigSnapshot.get(this).enableAppUpdates)
             return false;
 
         //get update check frequency
@@ -255,10 +256,11 @@ public class LaunchActivity extends AppCompatActivity
         launchIntent.putExtra(Intent.EXTRA_TITLE, title);
 
         //check if the video can be resumed
-        if (canResumePlayback(playbackUrl, title))
+        long resumePosition = getResumePosition(playbackUrl, title);
+        if (resumePosition > 0)
         {
             Logging.logD("Putting INTENT_EXTRA_JUMP_TO because playback can be resumed.");
-            launchIntent.putExtra(PlaybackActivity.INTENT_EXTRA_JUMP_TO, getResumePosition());
+            launchIntent.putExtra(PlaybackActivity.INTENT_EXTRA_JUMP_TO, resumePosition);
         }
 
         //dump launch intent
@@ -288,31 +290,23 @@ public class LaunchActivity extends AppCompatActivity
     }
 
     /**
-     * Check if the player can resume playback with the given url and title
-     * checks that either url or title match the stored previous video and that there is a position stored to resume at.
+     * Get the position at which the video with the given url and title should be resumed at.
+     * Looks up the position saved for the url. If there is none, falls back to the position of the last played video if the title matches.
      *
      * @param url   the url of the video that is being loaded now
      * @param title the title of the video that is being loaded now
-     * @return can we resume the video?
+     * @return the position to resume at, or 0 if the video cannot be resumed
      */
-    private boolean canResumePlayback(Uri url, String title)
+    private long getResumePosition(Uri url, String title)
     {
-        //check if there is a playback position to resume stored
-        if (appPreferences.getLong(ConfigKeys.KEY_LAST_PLAYED_POSITION, -1) <= 0) return false;
-
-        //check that url or title is the same as the last played
-        return url.toString().equalsIgnoreCase(appPreferences.getString(ConfigKeys.KEY_LAST_PLAYED_URL, ""))
-                || title.equalsIgnoreCase(appPreferences.getString(ConfigKeys.KEY_LAST_PLAYED_TITLE, ""));
-    }
-
-    /**
-     * Get the position at which the video should be resumed at
-     *
-     * @return the position to resume at
-     */
-    private long getResumePosition()
-    {
-        return appPreferences.getLong(ConfigKeys.KEY_LAST_PLAYED_POSITION, 0); //TODO: remove a few seconds (10s)
+        //check if there is a playback position stored for the url
+        long position = PlaybackPositionStore.load(this, url);
+        if (position > 0) return position; //TODO: remove a few seconds (10s)
+
+        //same video opened with a different url (eg. shared from another app)
+        String lastUrl = appPreferences.getString(ConfigKeys.KEY_LAST_PLAYED_URL, null);
+        if (lastUrl == null || !title.equalsIgnoreCase(appPreferences.getString(ConfigKeys.KEY_LAST_PLAYED_TITLE, ""))) return 0;
+        return Math.max(PlaybackPositionStore.load(this, Uri.parse(lastUrl)), 0);
     }
 
     // endregion
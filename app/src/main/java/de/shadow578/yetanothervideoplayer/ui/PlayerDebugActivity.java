@@ -10,18 +10,24 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.CompoundButton;
 import android.widget.Switch;
+import android.widget.TextView;
 
 import de.shadow578.yetanothervideoplayer.R;
+import de.shadow578.yetanothervideoplayer.feature.qoe.QoELog;
+import de.shadow578.yetanothervideoplayer.feature.qoe.QoESession;
 import de.shadow578.yetanothervideoplayer.ui.mediapicker.MediaPickerActivity;
 import de.shadow578.yetanothervideoplayer.util.ConfigKeys;
 import de.shadow578.yetanothervideoplayer.util.Logging;
 
+import java.util.List;
+
 public class PlayerDebugActivity extends AppCompatActivity implements CompoundButton.OnCheckedChangeListener
 {
     private Switch swOpenDirect;
     private Switch swOpenShare;
     private Switch swInsertTitles;
     private Switch swUseNonStandardTitle;
+    private TextView txtQoELog;
 
     @Override
     protected void onCreate(Bundle savedInstanceState)
@@ -34,12 +40,22 @@ public class PlayerDebugActivity extends AppCompatActivity implements CompoundBu
         swOpenShare = findViewById(R.id.vtest_tgl_open_share);
         swInsertTitles = findViewById(R.id.vtest_tgl_add_title_extra);
         swUseNonStandardTitle = findViewById(R.id.vtest_tgl_non_standard_title);
+        txtQoELog = findViewById(R.id.vtest_txt_qoe_log);
 
         //add listeners to enable / disable switches on the fly
         swOpenDirect.setOnCheckedChangeListener(this);
         swInsertTitles.setOnCheckedChangeListener(this);
     }
 
+    @Override
+    protected void onResume()
+    {
+        super.onResume();
+
+        //show qoe sessions (may have changed while playing)
+        updateQoELog();
+    }
+
     /**
      * Common Switch state change listener for switches in VideoTest activity
      *
@@ -79,6 +95,17 @@ public class PlayerDebugActivity extends AppCompatActivity implements CompoundBu
         throw new Exception("Manual APP Crash");
     }
 
+    /**
+     * Click handler for clear qoe log button in VideoTest activity
+     *
+     * @param view the view that invoked this handler
+     */
+    public void videoTest_OnClearQoELogClick(View view)
+    {
+        QoELog.clear(this);
+        updateQoELog();
+    }
+
     /**
      * Common click handler for buttons in VideoTest activity
      *
@@ -257,6 +284,25 @@ public class PlayerDebugActivity extends AppCompatActivity implements CompoundBu
         startActivity(playIntent);
     }
 
+    /**
+     * Show the sessions in the qoe log, newest first
+     */
+    private void updateQoELog()
+    {
+        List<QoESession> sessions = QoELog.load(this);
+        if (sessions.isEmpty())
+        {
+            txtQoELog.setText("No QoE sessions recorded");
+            return;
+        }
+
+        StringBuilder log = new StringBuilder();
+        for (int i = sessions.size() - 1; i >= 0; i--)
+            log.append(sessions.get(i).toDisplayString()).append("\n\n");
+
+        txtQoELog.setText(log.toString());
+    }
+
     /**
      * Get the last played url from shared prefs.
      *
@@ -31,6 +31,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import de.shadow578.yetanothervideoplayer.R;
+import de.shadow578.yetanothervideoplayer.feature.resume.PlaybackPositionStore;
 import de.shadow578.yetanothervideoplayer.ui.LaunchActivity;
 import de.shadow578.yetanothervideoplayer.util.Logging;
 
@@ -150,6 +151,26 @@ public class MediaChooserFragment extends Fragment implements RecyclerMediaEntry
         return rootView;
     }
 
+    @Override
+    public void onResume()
+    {
+        super.onResume();
+
+        //load the playback progress of all media at once (also updates the progress after returning from playback)
+        Context ctx = getContext();
+        if (ctx != null)
+            PlaybackPositionStore.getSnapshot(ctx, new PlaybackPositionStore.SnapshotCallback()
+            {
+                @Override
+                public void onSnapshot(@NonNull PlaybackPositionStore.Snapshot snapshot)
+                {
+                    //the adapter may have changed while the positions were loading
+                    if (mediaCardsRecycler != null && mediaCardsRecycler.getAdapter() instanceof RecyclerMediaEntryAdapter)
+                        ((RecyclerMediaEntryAdapter) mediaCardsRecycler.getAdapter()).setResumePositions(snapshot);
+                }
+            });
+    }
+
     /**
      * Called when the media card was clicked
      *
@@ -18,9 +18,14 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import de.shadow578.yetanothervideoplayer.R;
+import de.shadow578.yetanothervideoplayer.feature.resume.PlaybackPositionStore;
+import de.shadow578.yetanothervideoplayer.feature.upscale.CpuAnime4K;
 import de.shadow578.yetanothervideoplayer.ui.mediapicker.views.MediaCardView;
+import de.shadow578.yetanothervideoplayer.util.ConfigSnapshot;
 import de.shadow578.yetanothervideoplayer.util.Logging;
 
 /**
@@ -41,6 +46,11 @@ public class RecyclerMediaEntryAdapter extends RecyclerView.Adapter<RecyclerMedi
         void onMediaCardClicked(MediaEntry cardMedia);
     }
 
+    /**
+     * payload for rebinding a view when only the playback progress changed
+     */
+    private static final Object PAYLOAD_PROGRESS = new Object();
+
     /**
      * Context this adapter is in
      */
@@ -65,6 +75,12 @@ public class RecyclerMediaEntryAdapter extends RecyclerView.Adapter<RecyclerMedi
     @Nullable
     private Drawable placeholderThumbnail;
 
+    /**
+     * saved playback positions of all media, loaded at once. null if not yet loaded
+     */
+    @Nullable
+    private PlaybackPositionStore.Snapshot resumePositions;
+
     /**
      * Create a new media entry adapter for a recylcer view
      *
@@ -112,6 +128,7 @@ public class RecyclerMediaEntryAdapter extends RecyclerView.Adapter<RecyclerMedi
         //set view data from entry
         final MediaEntry entry = mediaEntries.get(index);
         viewHolder.setFromMediaEntry(context, entry, placeholderThumbnail);
+        viewHolder.setProgressFromMediaEntry(entry, resumePositions);
 
         //set click listener of card
         viewHolder.mediaCard.setOnClickListener(new View.OnClickListener()
@@ -125,6 +142,36 @@ public class RecyclerMediaEntryAdapter extends RecyclerView.Adapter<RecyclerMedi
         });
     }
 
+    /**
+     * Set the data of a view in the recyclerview. Only updates the playback progress if that is all that changed
+     *
+     * @param viewHolder the ViewHolder that wraps the view
+     * @param index      the index of the data in our internal list to use for setting the data of the view
+     * @param payloads   the payloads of the change, empty for a full rebind
+     */
+    @Override
+    public void onBindViewHolder(@NonNull MediaCardViewHolder viewHolder, int index, @NonNull List<Object> payloads)
+    {
+        if (payloads.isEmpty() || index < 0 || index >= mediaEntries.size())
+        {
+            onBindViewHolder(viewHolder, index);
+            return;
+        }
+
+        viewHolder.setProgressFromMediaEntry(mediaEntries.get(index), resumePositions);
+    }
+
+    /**
+     * Set the saved playback positions used to show the playback progress of all media, and update the progress of all views
+     *
+     * @param resumePositions the saved playback positions
+     */
+    void setResumePositions(@Nullable PlaybackPositionStore.Snapshot resumePositions)
+    {
+        this.resumePositions = resumePositions;
+        notifyItemRangeChanged(0, mediaEntries.size(), PAYLOAD_PROGRESS);
+    }
+
     /**
      * Sets the placeholder thumbnail
      *
@@ -206,9 +253,29 @@ public class RecyclerMediaEntryAdapter extends RecyclerView.Adapter<RecyclerMedi
             //clear thumbnail first
             mediaCard.setMediaThumbnail(placeholderThumbnail);
 
-            //set thumbnail
-            AsyncLoadThumbnailTask.Parameters params = new AsyncLoadThumbnailTask.Parameters(context, entry, mediaCard);
-            new AsyncLoadThumbnailTask().execute(params);
+            //set thumbnail. the card width is read here, views may only be accessed on the ui thread
+            boolean enhance = entry.getThumbnail() == null && ConfigSnapshot.get(context).anime4kEnhanceThumbnails;
+            AsyncLoadThumbnailTask.Parameters params = new AsyncLoadThumbnailTask.Parameters(context, entry, mediaCard, mediaCard.getWidth(), enhance);
+            if (enhance)
+            {
+                //enhancing is slow, so it does not block other tasks on the serial AsyncTask executor
+                new AsyncLoadThumbnailTask().executeOnExecutor(AsyncLoadThumbnailTask.enhanceExecutor, params);
+            }
+            else
+            {
+                new AsyncLoadThumbnailTask().execute(params);
+            }
+        }
+
+        /**
+         * Set the playback progress shown in the wrapped media card
+         *
+         * @param entry           the media entry to show the progress of
+         * @param resumePositions the saved playback positions to look up the progress in. null hides the progress
+         */
+        void setProgressFromMediaEntry(@NonNull MediaEntry entry, @Nullable PlaybackPositionStore.Snapshot resumePositions)
+        {
+            mediaCard.setMediaProgress(resumePositions == null ? -1f : resumePositions.getProgress(entry.getUri()));
         }
 
         /**
@@ -216,6 +283,11 @@ public class RecyclerMediaEntryAdapter extends RecyclerView.Adapter<RecyclerMedi
          */
         private static class AsyncLoadThumbnailTask extends AsyncTask<AsyncLoadThumbnailTask.Parameters, String, Bitmap>
         {
+            /**
+             * executor for tasks that enhance their thumbnail. one at a time, as CpuAnime4K already uses all cores
+             */
+            private static final Executor enhanceExecutor = Executors.newSingleThreadExecutor();
+
             /**
              * Task Parameters for the {@link AsyncLoadThumbnailTask}
              */
@@ -230,11 +302,23 @@ public class RecyclerMediaEntryAdapter extends RecyclerView.Adapter<RecyclerMedi
                 @NonNull
                 private final MediaCardView mediaCard;
 
-                Parameters(@NonNull Context context, @NonNull MediaEntry entry, @NonNull MediaCardView mediaCard)
+                /**
+                 * width of the media card when the task was started. 0 if not yet laid out
+                 */
+                private final int cardWidth;
+
+                /**
+                 * should the loaded thumbnail be enhanced using anime4k?
+                 */
+                private final boolean enhance;
+
+                Parameters(@NonNull Context context, @NonNull MediaEntry entry, @NonNull MediaCardView mediaCard, int cardWidth, boolean enhance)
                 {
                     this.context = context;
                     this.entry = entry;
                     this.mediaCard = mediaCard;
+                    this.cardWidth = cardWidth;
+                    this.enhance = enhance;
                 }
             }
 
@@ -255,10 +339,36 @@ public class RecyclerMediaEntryAdapter extends RecyclerView.Adapter<RecyclerMedi
                 }
                 else
                 {
-                    return loadThumbnail(params.context, params.entry);
+                    Bitmap thumbnail = loadThumbnail(params.context, params.entry);
+                    if (thumbnail != null && params.enhance)
+                    {
+                        //the source was never shown, so it can be recycled right away
+                        Bitmap enhanced = enhanceThumbnail(thumbnail, params.cardWidth);
+                        if (enhanced != thumbnail)
+                            thumbnail.recycle();
+                        thumbnail = enhanced;
+                    }
+                    return thumbnail;
                 }
             }
 
+            /**
+             * Enhance a thumbnail using anime4k on the cpu, upscaling it to the width of the media card (max. 2x)
+             *
+             * @param thumbnail the thumbnail to enhance
+             * @param cardWidth the width of the media card. if not yet known (0), the thumbnail is only enhanced
+             * @return the enhanced thumbnail
+             */
+            @NonNull
+            private Bitmap enhanceThumbnail(@NonNull Bitmap thumbnail, int cardWidth)
+            {
+                float scale = 1f;
+                if (cardWidth > 0)
+                    scale = Math.max(1f, Math.min(2f, (float) cardWidth / thumbnail.getWidth()));
+
+                return new CpuAnime4K().upscale(thumbnail, scale);
+            }
+
             @Override
             protected void onPostExecute(Bitmap thumbnail)
             {
@@ -5,6 +5,7 @@ import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 import android.widget.ImageView;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
@@ -17,7 +18,7 @@ import de.shadow578.yetanothervideoplayer.R;
 
 /**
  * CardView for Media Previews
- * Shows Thumbnail, Title, Playback Duration and Video Resolution to the user.
+ * Shows Thumbnail, Title, Playback Duration, Video Resolution and Playback Progress to the user.
  */
 @SuppressWarnings({"UnusedReturnValue", "unused"})
 public class MediaCardView extends CardView
@@ -46,6 +47,12 @@ public class MediaCardView extends CardView
      */
     TextView duration;
 
+    /**
+     * Shows how much of the media was played
+     * Invisible if the media was not played yet
+     */
+    ProgressBar progress;
+
     //endregion
 
     //region Constructor
@@ -72,6 +79,7 @@ public class MediaCardView extends CardView
         title = findViewById(R.id.mediacardview_title);
         resolution = findViewById(R.id.mediacardview_resolution);
         duration = findViewById(R.id.mediacardview_duration);
+        progress = findViewById(R.id.mediacardview_progress);
     }
     //endregion
 
@@ -160,5 +168,23 @@ public class MediaCardView extends CardView
         resolution.setVisibility(showMediaResolution ? VISIBLE : GONE);
         return this;
     }
+
+    /**
+     * Set how much of the media was played (0.0 - 1.0). Negative values hide the progress bar
+     *
+     * @return own instance, for set chaining
+     */
+    public MediaCardView setMediaProgress(float playedPercent)
+    {
+        if (playedPercent < 0)
+        {
+            progress.setVisibility(GONE);
+            return this;
+        }
+
+        progress.setProgress(Math.round(Math.min(playedPercent, 1f) * progress.getMax()));
+        progress.setVisibility(VISIBLE);
+        return this;
+    }
     //endregion
 }
@@ -12,19 +12,26 @@ import de.shadow578.yetanothervideoplayer.R;
 import de.shadow578.yetanothervideoplayer.YAVPApp;
 import de.shadow578.yetanothervideoplayer.feature.controlview.GesturePlayerControlView;
 import de.shadow578.yetanothervideoplayer.feature.controlview.TapToHidePlayerControlView;
+import de.shadow578.yetanothervideoplayer.feature.gl.Anime4KQualityGovernor;
 import de.shadow578.yetanothervideoplayer.feature.gl.GLAnime4K;
+import de.shadow578.yetanothervideoplayer.feature.gl.GLColorAdjust;
+import de.shadow578.yetanothervideoplayer.feature.gl.GLDeband;
+import de.shadow578.yetanothervideoplayer.feature.gl.GLFilterBase;
+import de.shadow578.yetanothervideoplayer.feature.gl.GLFilterChain;
+import de.shadow578.yetanothervideoplayer.feature.gl.GLSharpen;
 import de.shadow578.yetanothervideoplayer.feature.playback.VideoPlaybackService;
 import de.shadow578.yetanothervideoplayer.feature.playback.VideoPlaybackServiceListener;
 import de.shadow578.yetanothervideoplayer.feature.playerview.PlayerScaleType;
 import de.shadow578.yetanothervideoplayer.feature.playerview.YavpEPlayerView;
 import de.shadow578.yetanothervideoplayer.feature.playerview.YavpPlayerView;
+import de.shadow578.yetanothervideoplayer.feature.resume.PlaybackPositionStore;
 import de.shadow578.yetanothervideoplayer.ui.AppSettingsActivity;
 import de.shadow578.yetanothervideoplayer.ui.playback.views.ControlQuickSettingsButton;
 import de.shadow578.yetanothervideoplayer.util.ConfigKeys;
+import de.shadow578.yetanothervideoplayer.util.ConfigSnapshot;
 import de.shadow578.yetanothervideoplayer.util.ConfigUtil;
 import de.shadow578.yetanothervideoplayer.util.Logging;
 
-import android.annotation.SuppressLint;
 import android.app.Application;
 import android.app.PendingIntent;
 import android.app.PictureInPictureParams;
@@ -35,7 +42,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.ServiceConnection;
-import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
@@ -56,6 +62,7 @@ import android.widget.ImageButton;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.SimpleExoPlayer;
 import com.google.android.exoplayer2.metadata.Metadata;
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
@@ -84,6 +91,11 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
      */
     private static final int BATTERY_WARN_CHECK_INTERVAL_MS = 10000;
 
+    /**
+     * interval of playback position checkpoints while playing, ms. A crash loses at most this much progress
+     */
+    private static final int PLAYBACK_POSITION_CHECKPOINT_INTERVAL_MS = 10000;
+
     /**
      * With how much delay the buffering indicator is enabled after the player is buffering
      */
@@ -188,10 +200,29 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
     private BroadcastReceiver pipBroadcastReceiver;
 
     /**
-     * The Anime4K filter instance that may be active currently.
-     * Set to null if filter is inactive
+     * The chain of gl filters (deband, anime4k, sharpen, colors). Only set as filter of the gl player view while at least one filter is enabled.
+     * Null until a filter is first enabled
+     */
+    private GLFilterChain filterChain;
+
+    /**
+     * is the filter chain currently set as filter of the gl player view?
+     */
+    private boolean isFilterChainActive = false;
+
+    /**
+     * The filters in the filter chain. Null until a filter is first enabled
      */
     private GLAnime4K anime4KFilter;
+    private GLDeband debandFilter;
+    private GLSharpen sharpenFilter;
+    private GLColorAdjust colorAdjustFilter;
+
+    /**
+     * Lowers the video quality or anime4k passes when the anime4k filter cannot keep up.
+     * Set to null if filter is inactive
+     */
+    private Anime4KQualityGovernor anime4KGovernor;
 
     /**
      * the position playback should start at
@@ -237,6 +268,19 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
      */
     private boolean dontSavePlaybackPositionOnExit = false;
 
+    /**
+     * Did the playback service continue playing in the background when this activity was stopped?
+     * Set in onStop(), reset in onStart(). While set, onDestroy() leaves the service running
+     */
+    private boolean isPlayingInBackground = false;
+
+    /**
+     * Was the activity playing in the background before it was started again?
+     * Set in onStart(), reset once connected to the service. If the service no longer plays our media then,
+     * playbackStartPosition is stale and the position the service saved is used instead
+     */
+    private boolean wasPlayingInBackground = false;
+
     /**
      * if true, the buffering indicator may not be used to indicate buffering
      */
@@ -279,6 +323,11 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
          * hide the system ui navbar
          */
         private static final int HIDE_SYSTEM_UI_NAVBAR = 6;
+
+        /**
+         * Message to save the playback position while playing. (only call once - this message calls itself)
+         */
+        private static final int CHECKPOINT_PLAYBACK_POSITION = 7;
     }
 
     /**
@@ -306,7 +355,7 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
                     {
                         //get battery level and warn threshold in percent
                         int batteryPercent = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
-                        int batteryThresh = ConfigUtil.getConfigInt(getApplicationContext(), ConfigKeys.KEY_BATTERY_WARN_THRESHOLD, R.integer.DEF_BATTERY_WARN_THRESHOLD);
+                        int batteryThresh = ConfigSnapshot.get(getApplicationContext()).batteryWarnThreshold;
 
                         //check level against threshold
                         Logging.logD("[BatWarn] Battery is at %d %% - warn threshold is %d %%", batteryPercent, batteryThresh);
@@ -327,6 +376,16 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
                     delayHandler.sendEmptyMessageDelayed(Messages.BATTERY_WARN_CHECK, BATTERY_WARN_CHECK_INTERVAL_MS);
                     break;
                 }
+                case Messages.CHECKPOINT_PLAYBACK_POSITION:
+                {
+                    //save position while playing (it does not change while paused)
+                    if (playbackService != null && playbackService.getIsPlayerValid() && playbackService.getIsPlaying())
+                        savePlaybackPosition();
+
+                    //call self later
+                    delayHandler.sendEmptyMessageDelayed(Messages.CHECKPOINT_PLAYBACK_POSITION, PLAYBACK_POSITION_CHECKPOINT_INTERVAL_MS);
+                    break;
+                }
                 case Messages.SHOW_BUFFERING_INDICATOR:
                 {
                     setBufferingIndicatorVisible(true, isPictureInPicture);
@@ -388,7 +447,7 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
         playerControlView.getPlayerControls().setVisibilityChangeCallback(new PlayerControlsVisibilityListener());
 
         //set fast-forward and rewind increments
-        int seekIncrement = ConfigUtil.getConfigInt(this, ConfigKeys.KEY_SEEK_BUTTON_INCREMENT, R.integer.DEF_SEEK_BUTTON_INCREMENT);
+        int seekIncrement = ConfigSnapshot.get(this).seekButtonIncrement;
         playerControlView.getPlayerControls().setFastForwardIncrementMs(seekIncrement);
         playerControlView.getPlayerControls().setRewindIncrementMs(seekIncrement);
 
@@ -400,7 +459,7 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
         screenRotationManager.findComponents();
 
         //get battery manager service
-        if (ConfigUtil.getConfigBoolean(this, ConfigKeys.KEY_BATTERY_WARN_ENABLE, R.bool.DEF_BATTERY_WARN_ENABLE))
+        if (ConfigSnapshot.get(this).batteryWarnEnable)
         {
             batteryManager = (BatteryManager) getSystemService(Context.BATTERY_SERVICE);
 
@@ -449,7 +508,7 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
         playbackStartPosition = callIntent.getLongExtra(INTENT_EXTRA_JUMP_TO, 0);
 
         //get auto play when launching
-        playbackPlayWhenReady = ConfigUtil.getConfigBoolean(this, ConfigKeys.KEY_AUTO_PLAY, R.bool.DEF_AUTO_PLAY);
+        playbackPlayWhenReady = ConfigSnapshot.get(this).autoPlay;
 
         //update pip button visibility (hide on devices without pip support)
         updatePipButtonVisibility();
@@ -541,6 +600,10 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
     {
         super.onStart();
 
+        //the service exits background mode once we are connected again
+        wasPlayingInBackground = isPlayingInBackground;
+        isPlayingInBackground = false;
+
         //create and bind video playback service
         playbackServiceConnection = new VideoServiceConnection();
         bindService(new Intent(this, VideoPlaybackService.class), playbackServiceConnection, Context.BIND_AUTO_CREATE);
@@ -582,6 +645,19 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
         }
         dontSavePlaybackPositionOnExit = false;
 
+        //continue audio- only playback in background if enabled
+        isPlayingInBackground = shouldPlayInBackground();
+        if (isPlayingInBackground)
+        {
+            //the notification may start a new activity if this one was destroyed, so it has to know what to play
+            Intent contentIntent = new Intent(this, PlaybackActivity.class)
+                    .setData(playbackUri)
+                    .putExtra(Intent.EXTRA_TITLE, getIntent().getStringExtra(Intent.EXTRA_TITLE))
+                    .putExtra(INTENT_EXTRA_JUMP_TO, playbackService.getPlaybackPosition())
+                    .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_REORDER_TO_FRONT);
+            playbackService.enterBackgroundMode(PendingIntent.getActivity(this, 0, contentIntent, PendingIntent.FLAG_UPDATE_CURRENT));
+        }
+
         //disconnect from the service
         disconnectPlaybackService();
 
@@ -595,7 +671,22 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
         super.onDestroy();
 
         //stop the playback service when the app is stopped
-        stopService(new Intent(this, VideoPlaybackService.class));
+        //in background mode, the service keeps playing and stops itself from the notification's stop action
+        if (!isPlayingInBackground)
+            stopService(new Intent(this, VideoPlaybackService.class));
+    }
+
+    /**
+     * @return should playback continue in the background (audio- only) when the activity is stopped?
+     */
+    private boolean shouldPlayInBackground()
+    {
+        return ConfigSnapshot.get(this).backgroundPlaybackEnable
+                && !isFinishing()
+                && playbackServiceConnection != null
+                && playbackServiceConnection.isConnected
+                && playbackService != null
+                && playbackService.getIsPlaying();
     }
 
     /**
@@ -636,14 +727,14 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
         super.onUserLeaveHint();
 
         //enter pip mode if enabled
-        if (ConfigUtil.getConfigBoolean(this, ConfigKeys.KEY_ENTER_PIP_ON_LEAVE, R.bool.DEF_ENTER_PIP_ON_LEAVE) && playbackService.getIsPlaying())
+        if (ConfigSnapshot.get(this).enterPipOnLeave && playbackService.getIsPlaying())
             tryGoPip();
     }
 
     @Override
     public void onBackPressed()
     {
-        if (wasBackPressedOnce || !ConfigUtil.getConfigBoolean(this, ConfigKeys.KEY_BACK_DOUBLE_PRESS_EN, R.bool.DEF_BACK_DOUBLE_PRESS_EN))
+        if (wasBackPressedOnce || !ConfigSnapshot.get(this).backDoublePressEnable)
         {
             //back pressed once already, do normal thing...
             super.onBackPressed();
@@ -654,7 +745,7 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
         wasBackPressedOnce = true;
 
         //send reset message delayed
-        delayHandler.sendEmptyMessageDelayed(Messages.RESET_BACK_PRESSED, ConfigUtil.getConfigInt(this, ConfigKeys.KEY_BACK_DOUBLE_PRESS_TIMEOUT, R.integer.DEF_BACK_DOUBLE_PRESS_TIMEOUT));
+        delayHandler.sendEmptyMessageDelayed(Messages.RESET_BACK_PRESSED, ConfigSnapshot.get(this).backDoublePressTimeout);
 
         //show user a Toast
         Toast.makeText(this, getString(R.string.toast_press_back_again_to_exit), Toast.LENGTH_SHORT).show();
@@ -809,6 +900,22 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
                 anime4kQSButton.setIconTint(getIsAnime4kEnabled() ? getColor(R.color.quick_settings_item_tint_active) : getColor(R.color.quick_settings_item_tint_default));
                 break;
             }
+            case R.id.qs_btn_deband_tgl:
+            case R.id.qs_btn_sharpen_tgl:
+            case R.id.qs_btn_colors_tgl:
+            {
+                //toggle deband / sharpen / vivid colors on/off
+                if (glPlayerView == null) break;
+                createFilterChain();
+                GLFilterBase filter = view.getId() == R.id.qs_btn_deband_tgl ? debandFilter
+                        : view.getId() == R.id.qs_btn_sharpen_tgl ? sharpenFilter : colorAdjustFilter;
+                filter.setEnabled(!filter.isEnabled());
+                updateFilterChain();
+
+                //update button
+                ((ControlQuickSettingsButton) view).setIconTint(filter.isEnabled() ? getColor(R.color.quick_settings_item_tint_active) : getColor(R.color.quick_settings_item_tint_default));
+                break;
+            }
             //endregion
 
             case R.id.pb_quick_settings:
@@ -886,6 +993,10 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
             unregisterReceiver(pipBroadcastReceiver);
         }
 
+        //bypass gl filters while in pip, they resume when returning to full screen
+        if (filterChain != null)
+            filterChain.setBypass(isInPictureInPictureMode);
+
         //set flag for outside use
         isPictureInPicture = isInPictureInPictureMode;
     }
@@ -956,13 +1067,13 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
                     case PIPConstants.REQUEST_FAST_FORWARD:
                     {
                         //fast- forward request, fast- forward video
-                        playbackService.seekRelative(ConfigUtil.getConfigInt(getApplicationContext(), ConfigKeys.KEY_SEEK_BUTTON_INCREMENT, R.integer.DEF_SEEK_BUTTON_INCREMENT));
+                        playbackService.seekRelative(ConfigSnapshot.get(getApplicationContext()).seekButtonIncrement);
                         break;
                     }
                     case PIPConstants.REQUEST_REWIND:
                     {
                         //rewind request, rewind video
-                        playbackService.seekRelative(-ConfigUtil.getConfigInt(getApplicationContext(), ConfigKeys.KEY_SEEK_BUTTON_INCREMENT, R.integer.DEF_SEEK_BUTTON_INCREMENT));
+                        playbackService.seekRelative(-ConfigSnapshot.get(getApplicationContext()).seekButtonIncrement);
                         break;
                     }
                     default:
@@ -1097,13 +1208,77 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
      */
     private void updateGlEffectsDrawer()
     {
-        boolean disableGl = ConfigUtil.getConfigBoolean(getApplicationContext(), ConfigKeys.KEY_DISABLE_GL_EFFECTS, R.bool.DEF_DISABLE_GL_EFFECTS);
+        boolean disableGl = ConfigSnapshot.get(getApplicationContext()).disableGlEffects;
 
         //lock effects drawer
         if (quickAccessDrawer != null)
             quickAccessDrawer.setDrawerLockMode(disableGl ? DrawerLayout.LOCK_MODE_LOCKED_CLOSED : DrawerLayout.LOCK_MODE_UNLOCKED, GravityCompat.START);
     }
 
+    /**
+     * Create the gl filter chain and its filters, all disabled. Does nothing if the chain already exists
+     */
+    private void createFilterChain()
+    {
+        if (filterChain != null) return;
+
+        //create filters
+        debandFilter = new GLDeband(this);
+        anime4KFilter = new GLAnime4K(this, R.raw.common, R.raw.a4k_color, R.raw.a4k_gradient, R.raw.a4k_gradpush, R.raw.a4k_compute);
+        sharpenFilter = new GLSharpen(this);
+        colorAdjustFilter = new GLColorAdjust(this);
+
+        //colors filter makes colors a bit more vivid
+        colorAdjustFilter.setSaturation(1.25f);
+        colorAdjustFilter.setContrast(1.05f);
+
+        //all filters start disabled
+        debandFilter.setEnabled(false);
+        anime4KFilter.setEnabled(false);
+        sharpenFilter.setEnabled(false);
+        colorAdjustFilter.setEnabled(false);
+
+        //deband before anime4k (so it does not sharpen the bands), color adjustments last
+        filterChain = new GLFilterChain(debandFilter, anime4KFilter, sharpenFilter, colorAdjustFilter);
+
+        //no filtering while in pip, the window is too small to see a difference
+        filterChain.setBypass(isPictureInPicture);
+    }
+
+    /**
+     * Set the filter chain as filter of the gl player view if any filter is enabled, or remove it if all filters are disabled
+     */
+    private void updateFilterChain()
+    {
+        if (glPlayerView == null || filterChain == null) return;
+
+        boolean anyEnabled = debandFilter.isEnabled() || anime4KFilter.isEnabled() || sharpenFilter.isEnabled() || colorAdjustFilter.isEnabled();
+        if (anyEnabled && !isFilterChainActive)
+        {
+            glPlayerView.setGlFilter(filterChain);
+            isFilterChainActive = true;
+
+            //only run the filters when a new video frame arrives, otherwise the cached output is presented again
+            SimpleExoPlayer playerInstance = playbackService.getIsPlayerValid() ? playbackService.getPlayerInstance() : null;
+            if (playerInstance != null)
+                playerInstance.setVideoFrameMetadataListener(filterChain);
+            Logging.logD("Enabled gl filter chain");
+        }
+        else if (!anyEnabled && isFilterChainActive)
+        {
+            //stop tracking video frames
+            SimpleExoPlayer playerInstance = playbackService.getIsPlayerValid() ? playbackService.getPlayerInstance() : null;
+            if (playerInstance != null)
+                playerInstance.clearVideoFrameMetadataListener(filterChain);
+            filterChain.clearFrameTimes();
+
+            //remove filter (this calls release on the chain, it is set up again when set the next time)
+            glPlayerView.setGlFilter(null);
+            isFilterChainActive = false;
+            Logging.logD("Disabled gl filter chain");
+        }
+    }
+
     /**
      * Enable / disable anime4k filter
      *
@@ -1117,16 +1292,10 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
         Logging.logD("Setting Anime4K Filter to enabled= %b", enable);
         if (enable)
         {
-            if (anime4KFilter == null)
+            if (!getIsAnime4kEnabled())
             {
                 //filter currently not enabled, enable it
-                anime4KFilter = new GLAnime4K(this, R.raw.common, R.raw.colorget, R.raw.colorpush, R.raw.gradget, R.raw.gradpush);
-
-                //set anime4k to one pass only
-                anime4KFilter.setPasses(1);
-
-                //set a4k as active filter
-                glPlayerView.setGlFilter(anime4KFilter);
+                createFilterChain();
 
                 //set a4k as video listener
                 if (playbackService.getIsPlayerValid())
@@ -1135,23 +1304,45 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
                     if (playerInstance != null)
                     {
                         playerInstance.addVideoListener(anime4KFilter);
+
+                        //video size is only reported on changes, so tell a4k the size of the current video
+                        Format videoFormat = playerInstance.getVideoFormat();
+                        if (videoFormat != null && videoFormat.width != Format.NO_VALUE && videoFormat.height != Format.NO_VALUE)
+                            anime4KFilter.onVideoSizeChanged(videoFormat.width, videoFormat.height, 0, videoFormat.pixelWidthHeightRatio);
                     }
                 }
                 //set fps limiting values
                 int fpsLimit = -1;
-                if (ConfigUtil.getConfigBoolean(this, ConfigKeys.KEY_ANIME4K_FPS_LIMIT_ENABLE, R.bool.DEF_ANIME4K_FPS_LIMIT_EN))
+                if (ConfigSnapshot.get(this).anime4kFpsLimitEnable)
                 {
                     //enable the fps limit
-                    fpsLimit = ConfigUtil.getConfigInt(this, ConfigKeys.KEY_ANIME4K_FPS_LIMIT, R.integer.DEF_ANIME4K_FPS_LIMIT);
+                    fpsLimit = ConfigSnapshot.get(this).anime4kFpsLimit;
                 }
                 anime4KFilter.setFpsLimit(fpsLimit);
+
+                //use half float intermediates if enabled
+                anime4KFilter.setHighPrecision(ConfigSnapshot.get(this).anime4kHighPrecision);
+
+                //pick passes from the processing scale, and lower quality automatically when anime4k cannot keep up
+                //the governor watches decoder format changes, so it knows when lowered quality is decoded
+                anime4KGovernor = new Anime4KQualityGovernor(anime4KFilter, new Anime4KGovernorCallback());
+                if (playbackService.getIsPlayerValid())
+                {
+                    SimpleExoPlayer playerInstance = playbackService.getPlayerInstance();
+                    if (playerInstance != null)
+                        playerInstance.addAnalyticsListener(anime4KGovernor);
+                }
+
+                //enable a4k in the filter chain
+                anime4KFilter.setEnabled(true);
+                updateFilterChain();
                 Logging.logD("Enabled Anime4K with fps limit= %d", fpsLimit);
             }
         }
         else
         {
             //if filter is currently enabled, disable it
-            if (anime4KFilter != null)
+            if (getIsAnime4kEnabled())
             {
                 //remove video listener
                 if (playbackService.getIsPlayerValid())
@@ -1160,14 +1351,22 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
                     if (playerInstance != null)
                     {
                         playerInstance.removeVideoListener(anime4KFilter);
+                        if (anime4KGovernor != null)
+                            playerInstance.removeAnalyticsListener(anime4KGovernor);
                     }
                 }
 
-                //remove filter (this calls release on the filter)
-                glPlayerView.setGlFilter(null);
+                //stop governor and undo its quality changes
+                if (anime4KGovernor != null)
+                {
+                    anime4KGovernor.release();
+                    anime4KGovernor = null;
+                    playbackService.resetVideoQuality();
+                }
 
-                //set variable to null
-                anime4KFilter = null;
+                //disable a4k in the filter chain (removes the chain if no other filter is enabled)
+                anime4KFilter.setEnabled(false);
+                updateFilterChain();
                 Logging.logD("Disabled Anime4K");
             }
         }
@@ -1178,11 +1377,11 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
      */
     private boolean getIsAnime4kEnabled()
     {
-        return anime4KFilter != null;
+        return anime4KFilter != null && anime4KFilter.isEnabled();
     }
 
     /**
-     * Save the current playback position to save as LAST_PLAYED_POSITION for use in the "resume where i left off" feature
+     * Save the current playback position for use in the "resume where i left off" feature
      */
     private void savePlaybackPosition()
     {
@@ -1201,28 +1400,19 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
     }
 
     /**
-     * Save the given playback position to save as LAST_PLAYED_POSITION for use in the "resume where i left off" feature
+     * Save the given playback position of the current media for use in the "resume where i left off" feature.
+     * The position is written on a background thread, this does not block.
      *
-     * @param positionToSave the playback position to save
+     * @param positionToSave the playback position to save. 0 to start the media from the beginning next time
      */
-    @SuppressLint("ApplySharedPref")
     private void savePlaybackPosition(long positionToSave)
     {
-        //get preferences from util class
-        SharedPreferences prefs = ConfigUtil.getAppConfig(this);
-
-        //check that the prefs are ok
-        if (prefs == null)
-        {
-            Logging.logD("cannot save playback position: ConfigUtil.getAppConfig() returned null!");
-            return;
-        }
+        if (playbackUri == null) return;
 
-        //save to prefs
-        //we use .commit() here since the main thread could close pretty much the moment this function returns.
-        //this would not leave enough time for saving the preferences using .apply() (which is async)...
-        prefs.edit().putLong(ConfigKeys.KEY_LAST_PLAYED_POSITION, positionToSave).commit();
-        Logging.logD("Saved LAST_PLAYED_POSITION");
+        //save the duration too, so the media picker can show the progress
+        long duration = playbackService != null ? playbackService.getMediaDuration() : -1;
+        PlaybackPositionStore.save(this, playbackUri, positionToSave, duration);
+        Logging.logD("Saved playback position %d of %d for %s", positionToSave, duration, playbackUri.toString());
     }
 
     /**
@@ -1233,11 +1423,11 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
     private void savePersistentValues(@SuppressWarnings("SameParameterValue") boolean restoreOriginalVolume)
     {
         //save volume
-        if (ConfigUtil.getConfigBoolean(this, ConfigKeys.KEY_PERSIST_VOLUME_EN, R.bool.DEF_PERSIST_VOLUME_EN))
+        if (ConfigSnapshot.get(this).persistVolumeEnable)
             ConfigUtil.setConfigInt(this, ConfigKeys.KEY_PERSIST_VOLUME, audioManager.getStreamVolume(AudioManager.STREAM_MUSIC), false);
 
         //save brightness
-        if (ConfigUtil.getConfigBoolean(this, ConfigKeys.KEY_PERSIST_BRIGHTNESS_EN, R.bool.DEF_PERSIST_BRIGHTNESS_EN))
+        if (ConfigSnapshot.get(this).persistBrightnessEnable)
             ConfigUtil.setConfigInt(this, ConfigKeys.KEY_PERSIST_BRIGHTNESS, (int) Math.floor(getWindow().getAttributes().screenBrightness * 100), false);
 
         //restore original volume after saving
@@ -1261,14 +1451,14 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
         }
 
         //restore volume
-        if (ConfigUtil.getConfigBoolean(this, ConfigKeys.KEY_PERSIST_VOLUME_EN, R.bool.DEF_PERSIST_VOLUME_EN))
+        if (ConfigSnapshot.get(this).persistVolumeEnable)
         {
             int persistVolume = ConfigUtil.getAppConfig(this).getInt(ConfigKeys.KEY_PERSIST_VOLUME, originalVolumeIndex);
             audioManager.setStreamVolume(AudioManager.STREAM_MUSIC, persistVolume, 0);
         }
 
         //restore brightness
-        if (ConfigUtil.getConfigBoolean(this, ConfigKeys.KEY_PERSIST_BRIGHTNESS_EN, R.bool.DEF_PERSIST_BRIGHTNESS_EN))
+        if (ConfigSnapshot.get(this).persistBrightnessEnable)
         {
             //get window attributes
             WindowManager.LayoutParams windowAttributes = getWindow().getAttributes();
@@ -1358,7 +1548,8 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
             if (playerControlView.getPlayer() != playbackService.getPlayerInstance())
             {
                 //player not set, fix that
-                playerControlView.setPlayer(playbackService.getPlayerInstance());
+                playerControlView.setPlayer(playbackService.getPlayerInstance())
+                        .setInteractiveSeeker(playbackService.getInteractiveSeeker());
             }
 
             //show controls
@@ -1391,7 +1582,7 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
 
         //reset later
         int indicatorVisibleDuration = getResources().getInteger(R.integer.info_buffering_indicator_duration)
-                + ConfigUtil.getConfigInt(this, ConfigKeys.KEY_INFO_TEXT_DURATION, R.integer.DEF_INFO_TEXT_DURATION);
+                + ConfigSnapshot.get(this).infoTextDuration;
         delayHandler.removeMessages(Messages.UNBLOCK_BUFFERING_INDICATOR);
         delayHandler.sendEmptyMessageDelayed(Messages.UNBLOCK_BUFFERING_INDICATOR, indicatorVisibleDuration);
     }
@@ -1597,7 +1788,35 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
                 isConnected = true;
 
                 //set callback
-                playbackService.setListener(new VideoServiceCallbackListener());
+                VideoServiceCallbackListener callbackListener = new VideoServiceCallbackListener();
+                playbackService.setListener(callbackListener);
+
+                //start saving playback position checkpoints
+                delayHandler.removeMessages(Messages.CHECKPOINT_PLAYBACK_POSITION);
+                delayHandler.sendEmptyMessageDelayed(Messages.CHECKPOINT_PLAYBACK_POSITION, PLAYBACK_POSITION_CHECKPOINT_INTERVAL_MS);
+
+                //back from background playback?
+                if (playbackService.getIsInBackgroundMode())
+                {
+                    //play video again
+                    playbackService.exitBackgroundMode();
+
+                    //still playing our media, so just attach to the player instead of reloading
+                    if (playbackService.getIsPlayerValid() && playbackUri.equals(playbackService.getCurrentMediaUri()))
+                    {
+                        wasPlayingInBackground = false;
+                        callbackListener.onPlayerInitialized();
+                        return;
+                    }
+                }
+
+                //background playback continued after we were stopped (and was maybe stopped from the notification since),
+                //so resume from the position the service saved when it stopped. no saved position means playback ended
+                if (wasPlayingInBackground)
+                {
+                    wasPlayingInBackground = false;
+                    playbackStartPosition = Math.max(PlaybackPositionStore.load(PlaybackActivity.this, playbackUri), 0);
+                }
 
                 //load the media
                 playbackService.loadMedia(playbackUri, playbackPlayWhenReady, playbackStartPosition);
@@ -1633,7 +1852,7 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
         {
             //get scale type to use
             PlayerScaleType scaleType;
-            if (ConfigUtil.getConfigBoolean(getApplicationContext(), ConfigKeys.KEY_SCALE_TO_WIDTH, R.bool.DEF_SCALE_TO_WIDTH))
+            if (ConfigSnapshot.get(getApplicationContext()).scaleToWidth)
             {
                 //scale the video to fill the whole width available, even if part of the video is cropped
                 scaleType = PlayerScaleType.FillWidth;
@@ -1645,7 +1864,7 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
             }
 
             View pView;
-            if (ConfigUtil.getConfigBoolean(getApplicationContext(), ConfigKeys.KEY_DISABLE_GL_EFFECTS, R.bool.DEF_DISABLE_GL_EFFECTS))
+            if (ConfigSnapshot.get(getApplicationContext()).disableGlEffects)
             {
                 //use normal player view
                 pView = playerView = new YavpPlayerView(playerViewPlaceholder.getContext());
@@ -1668,6 +1887,9 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
                 glPlayerView.setPlayerScaleType(scaleType);
             }
 
+            //report the size of the player view to the service, so it does not select tracks larger than the view
+            pView.addOnLayoutChangeListener(new PlayerViewLayoutListener());
+
             //adjust layout
             pView.setLayoutParams(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
 
@@ -1764,7 +1986,7 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
             dontSavePlaybackPositionOnExit = true;
 
             //close app if pref is set
-            if (ConfigUtil.getConfigBoolean(getApplicationContext(), ConfigKeys.KEY_CLOSE_WHEN_FINISHED_PLAYING, R.bool.DEF_CLOSE_WHEN_FINISHED_PLAYING))
+            if (ConfigSnapshot.get(getApplicationContext()).closeWhenFinishedPlaying)
             {
                 //close app
                 finish();
@@ -1824,6 +2046,53 @@ public class PlaybackActivity extends AppCompatActivity implements YAVPApp.ICras
         }
     }
 
+    /**
+     * Callback for the anime4k quality governor, that changes the video quality using the playback service
+     */
+    private class Anime4KGovernorCallback implements Anime4KQualityGovernor.Callback
+    {
+        @Override
+        public float getVideoFrameRate()
+        {
+            return playbackService == null ? -1 : playbackService.getVideoFrameRate();
+        }
+
+        @Override
+        public long getBufferedDurationMs()
+        {
+            return playbackService == null ? 0 : playbackService.getBufferedDuration();
+        }
+
+        @Override
+        public boolean reduceVideoQuality()
+        {
+            return playbackService != null && playbackService.reduceVideoQuality();
+        }
+
+        @Override
+        public boolean restoreVideoQuality()
+        {
+            return playbackService != null && playbackService.restoreVideoQuality();
+        }
+    }
+
+    /**
+     * Listens for layout changes of the player view and forwards the view size to the playback service
+     */
+    private class PlayerViewLayoutListener implements View.OnLayoutChangeListener
+    {
+        @Override
+        public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom)
+        {
+            //skip if size did not change
+            if ((right - left) == (oldRight - oldLeft) && (bottom - top) == (oldBottom - oldTop)) return;
+
+            //forward to service
+            if (playbackService != null)
+                playbackService.setViewportSize(right - left, bottom - top);
+        }
+    }
+
     /**
      * Listener for the quick access drawer
      */
@@ -33,6 +33,11 @@ public final class ConfigKeys
      */
     public static final String KEY_ENTER_PIP_ON_LEAVE = "ENTER_PIP_ON_LEAVE";
 
+    /**
+     * player continue audio playback in background (true/false)
+     */
+    public static final String KEY_BACKGROUND_PLAYBACK_EN = "BACKGROUND_PLAYBACK_EN";
+
     /**
      * player seek button increment (ms)
      */
@@ -48,6 +53,16 @@ public final class ConfigKeys
      */
     public static final String KEY_ANIME4K_FPS_LIMIT = "ANIME4K_FPS_LIMIT";
 
+    /**
+     * use half float (RGBA16F) intermediate textures for anime4k (true/false)
+     */
+    public static final String KEY_ANIME4K_HIGH_PRECISION = "ANIME4K_HIGH_PRECISION";
+
+    /**
+     * enhance thumbnails in the media picker using anime4k on the cpu (true/false)
+     */
+    public static final String KEY_ANIME4K_ENHANCE_THUMBNAILS = "ANIME4K_ENHANCE_THUMBNAILS";
+
     /**
      * low battery warning enable (warn if battery less than threshold)
      */
@@ -170,7 +185,8 @@ public final class ConfigKeys
     public static final String KEY_LAST_PLAYED_URL = "LAST_PLAYED_URL";
 
     /**
-     * last played video progress (=position) value ("resume where i left off")
+     * last played video progress (=position) value ("resume where i left off").
+     * Only written by older versions, positions are now saved per media in PlaybackPositionStore (which imports this value once)
      */
     public static final String KEY_LAST_PLAYED_POSITION = "LAST_PLAYED_POSITION";
     //endregion
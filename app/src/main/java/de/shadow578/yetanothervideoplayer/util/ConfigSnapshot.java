@@ -0,0 +1,204 @@
+package de.shadow578.yetanothervideoplayer.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+
+import androidx.annotation.BoolRes;
+import androidx.annotation.IntegerRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import de.shadow578.yetanothervideoplayer.R;
+
+/**
+ * Immutable, typed snapshot of the app settings.
+ * The snapshot is loaded once, and replaced by a new one whenever a preference changes,
+ * so reading a setting is a plain field access (no preference lookup, no parsing, no logging).
+ * Fields are named after the keys in {@link ConfigKeys}. Use {@link ConfigUtil} for values that are not settings (eg. update state).
+ */
+public final class ConfigSnapshot
+{
+    /**
+     * the current snapshot. null until first loaded
+     */
+    @Nullable
+    private static volatile ConfigSnapshot current;
+
+    /**
+     * listener that replaces the snapshot when a preference changes.
+     * has to be kept here, SharedPreferences only holds weak references to its listeners
+     */
+    @Nullable
+    private static SharedPreferences.OnSharedPreferenceChangeListener reloadListener;
+
+    //region Settings
+    //~~ General ~~
+    public final boolean backDoublePressEnable;
+    public final int backDoublePressTimeout;
+    public final int infoTextDuration;
+    public final boolean autoPlay;
+    public final boolean closeWhenFinishedPlaying;
+    public final boolean enterPipOnLeave;
+    public final boolean backgroundPlaybackEnable;
+    public final int seekButtonIncrement;
+    public final boolean enableAppUpdates;
+
+    //~~ Anime4K ~~
+    public final boolean anime4kFpsLimitEnable;
+    public final int anime4kFpsLimit;
+    public final boolean anime4kHighPrecision;
+    public final boolean anime4kEnhanceThumbnails;
+
+    //~~ Battery ~~
+    public final boolean batteryWarnEnable;
+    public final int batteryWarnThreshold;
+
+    //~~ Video ~~
+    public final boolean scaleToWidth;
+    public final boolean disableGlEffects;
+
+    //~~ Gestures ~~
+    public final boolean swipeGesturesEnable;
+    public final int swipeDecayTime;
+    public final int swipeFlingThreshold;
+    public final int doubleTapDecayTime;
+    public final int doubleTapMaxRadius;
+    public final int brightnessAdjustStep;
+    public final boolean brightnessHardSwipeEnable;
+    public final int brightnessHardSwipeThreshold;
+    public final int swipeDeadZoneLeft, swipeDeadZoneTop, swipeDeadZoneRight, swipeDeadZoneBottom;
+
+    //~~ Persistence ~~
+    public final boolean persistBrightnessEnable;
+    public final boolean persistVolumeEnable;
+    //endregion
+
+    /**
+     * Get the current settings snapshot. Loads the snapshot on first use.
+     *
+     * @param ctx the context to load the settings with
+     * @return the current snapshot
+     */
+    @NonNull
+    public static ConfigSnapshot get(@NonNull Context ctx)
+    {
+        ConfigSnapshot snapshot = current;
+        if (snapshot != null) return snapshot;
+        return load(ctx.getApplicationContext());
+    }
+
+    /**
+     * load the snapshot and start listening for preference changes, if not already done
+     *
+     * @param appCtx the application context
+     * @return the current snapshot
+     */
+    @NonNull
+    private static synchronized ConfigSnapshot load(@NonNull final Context appCtx)
+    {
+        if (current != null) return current;
+
+        SharedPreferences prefs = ConfigUtil.getAppConfig(appCtx);
+        current = new ConfigSnapshot(appCtx.getResources(), prefs);
+
+        //replace the snapshot on every change
+        reloadListener = new SharedPreferences.OnSharedPreferenceChangeListener()
+        {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key)
+            {
+                current = new ConfigSnapshot(appCtx.getResources(), sharedPreferences);
+                Logging.logD("[ConfigSnapshot] reloaded because %s changed", key);
+            }
+        };
+        prefs.registerOnSharedPreferenceChangeListener(reloadListener);
+        return current;
+    }
+
+    /**
+     * Read all settings from the preferences
+     *
+     * @param res   resources to get default values from
+     * @param prefs the preferences to read
+     */
+    private ConfigSnapshot(@NonNull Resources res, @NonNull SharedPreferences prefs)
+    {
+        backDoublePressEnable = getBoolean(res, prefs, ConfigKeys.KEY_BACK_DOUBLE_PRESS_EN, R.bool.DEF_BACK_DOUBLE_PRESS_EN);
+        backDoublePressTimeout = getInt(res, prefs, ConfigKeys.KEY_BACK_DOUBLE_PRESS_TIMEOUT, R.integer.DEF_BACK_DOUBLE_PRESS_TIMEOUT);
+        infoTextDuration = getInt(res, prefs, ConfigKeys.KEY_INFO_TEXT_DURATION, R.integer.DEF_INFO_TEXT_DURATION);
+        autoPlay = getBoolean(res, prefs, ConfigKeys.KEY_AUTO_PLAY, R.bool.DEF_AUTO_PLAY);
+        closeWhenFinishedPlaying = getBoolean(res, prefs, ConfigKeys.KEY_CLOSE_WHEN_FINISHED_PLAYING, R.bool.DEF_CLOSE_WHEN_FINISHED_PLAYING);
+        enterPipOnLeave = getBoolean(res, prefs, ConfigKeys.KEY_ENTER_PIP_ON_LEAVE, R.bool.DEF_ENTER_PIP_ON_LEAVE);
+        backgroundPlaybackEnable = getBoolean(res, prefs, ConfigKeys.KEY_BACKGROUND_PLAYBACK_EN, R.bool.DEF_BACKGROUND_PLAYBACK_EN);
+        seekButtonIncrement = getInt(res, prefs, ConfigKeys.KEY_SEEK_BUTTON_INCREMENT, R.integer.DEF_SEEK_BUTTON_INCREMENT);
+        enableAppUpdates = getBoolean(res, prefs, ConfigKeys.KEY_ENABLE_APP_UPDATES, R.bool.DEF_ENABLE_APP_UPDATES);
+
+        anime4kFpsLimitEnable = getBoolean(res, prefs, ConfigKeys.KEY_ANIME4K_FPS_LIMIT_ENABLE, R.bool.DEF_ANIME4K_FPS_LIMIT_EN);
+        anime4kFpsLimit = getInt(res, prefs, ConfigKeys.KEY_ANIME4K_FPS_LIMIT, R.integer.DEF_ANIME4K_FPS_LIMIT);
+        anime4kHighPrecision = getBoolean(res, prefs, ConfigKeys.KEY_ANIME4K_HIGH_PRECISION, R.bool.DEF_ANIME4K_HIGH_PRECISION);
+        anime4kEnhanceThumbnails = getBoolean(res, prefs, ConfigKeys.KEY_ANIME4K_ENHANCE_THUMBNAILS, R.bool.DEF_ANIME4K_ENHANCE_THUMBNAILS);
+
+        batteryWarnEnable = getBoolean(res, prefs, ConfigKeys.KEY_BATTERY_WARN_ENABLE, R.bool.DEF_BATTERY_WARN_ENABLE);
+        batteryWarnThreshold = getInt(res, prefs, ConfigKeys.KEY_BATTERY_WARN_THRESHOLD, R.integer.DEF_BATTERY_WARN_THRESHOLD);
+
+        scaleToWidth = getBoolean(res, prefs, ConfigKeys.KEY_SCALE_TO_WIDTH, R.bool.DEF_SCALE_TO_WIDTH);
+        disableGlEffects = getBoolean(res, prefs, ConfigKeys.KEY_DISABLE_GL_EFFECTS, R.bool.DEF_DISABLE_GL_EFFECTS);
+
+        swipeGesturesEnable = getBoolean(res, prefs, ConfigKeys.KEY_SWIPE_GESTURES_EN, R.bool.DEF_SWIPE_GESTURES_EN);
+        swipeDecayTime = getInt(res, prefs, ConfigKeys.KEY_SWIPE_DECAY_TIME, R.integer.DEF_TOUCH_DECAY_TIME);
+        swipeFlingThreshold = getInt(res, prefs, ConfigKeys.KEY_SWIPE_FLING_THRESHOLD, R.integer.DEF_SWIPE_FLING_THRESHOLD);
+        doubleTapDecayTime = getInt(res, prefs, ConfigKeys.KEY_DOUBLE_TAP_DECAY_TIME, R.integer.DEF_DOUBLE_TAP_DECAY_TIME);
+        doubleTapMaxRadius = getInt(res, prefs, ConfigKeys.KEY_DOUBLE_TAP_MAX_RADIUS, R.integer.DEF_DOUBLE_TAP_MAX_RADIUS);
+        brightnessAdjustStep = getInt(res, prefs, ConfigKeys.KEY_BRIGHTNESS_ADJUST_STEP, R.integer.DEF_BRIGHTNESS_ADJUST_STEP);
+        brightnessHardSwipeEnable = getBoolean(res, prefs, ConfigKeys.KEY_BRIGHTNESS_HARD_SWIPE_EN, R.bool.DEF_BRIGHTNESS_HARD_SWIPE_EN);
+        brightnessHardSwipeThreshold = getInt(res, prefs, ConfigKeys.KEY_BRIGHTNESS_HARD_SWIPE_THRESHOLD, R.integer.DEF_BRIGHTNESS_HARD_SWIPE_THRESHOLD);
+        swipeDeadZoneLeft = getInt(res, prefs, ConfigKeys.KEY_SWIPE_DEAD_ZONE_RECT_LEFT, R.integer.DEF_SWIPE_DEAD_ZONE_LEFT);
+        swipeDeadZoneTop = getInt(res, prefs, ConfigKeys.KEY_SWIPE_DEAD_ZONE_RECT_TOP, R.integer.DEF_SWIPE_DEAD_ZONE_TOP);
+        swipeDeadZoneRight = getInt(res, prefs, ConfigKeys.KEY_SWIPE_DEAD_ZONE_RECT_RIGHT, R.integer.DEF_SWIPE_DEAD_ZONE_RIGHT);
+        swipeDeadZoneBottom = getInt(res, prefs, ConfigKeys.KEY_SWIPE_DEAD_ZONE_RECT_BOTTOM, R.integer.DEF_SWIPE_DEAD_ZONE_BOTTOM);
+
+        persistBrightnessEnable = getBoolean(res, prefs, ConfigKeys.KEY_PERSIST_BRIGHTNESS_EN, R.bool.DEF_PERSIST_BRIGHTNESS_EN);
+        persistVolumeEnable = getBoolean(res, prefs, ConfigKeys.KEY_PERSIST_VOLUME_EN, R.bool.DEF_PERSIST_VOLUME_EN);
+    }
+
+    /**
+     * Read a boolean setting
+     *
+     * @param res   resources to get the default value from
+     * @param prefs the preferences to read
+     * @param key   the key of the value
+     * @param defId the id of the default value in R.bool
+     * @return the boolean value
+     */
+    private static boolean getBoolean(@NonNull Resources res, @NonNull SharedPreferences prefs, @NonNull String key, @BoolRes int defId)
+    {
+        return prefs.getBoolean(key, res.getBoolean(defId));
+    }
+
+    /**
+     * Read a int setting. Int settings are saved as string (see {@link ConfigUtil#getConfigInt(Context, String, int)})
+     *
+     * @param res   resources to get the default value from
+     * @param prefs the preferences to read
+     * @param key   the key of the value
+     * @param defId the id of the default value in R.integer
+     * @return the int value, or the default value if the saved value is not a number
+     */
+    private static int getInt(@NonNull Resources res, @NonNull SharedPreferences prefs, @NonNull String key, @IntegerRes int defId)
+    {
+        int def = res.getInteger(defId);
+        String value = prefs.getString(key, null);
+        if (value == null) return def;
+
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e)
+        {
+            Logging.logW("[ConfigSnapshot] value of %s is not a int: %s", key, value);
+            return def;
+        }
+    }
+}
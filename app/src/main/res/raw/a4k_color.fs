@@ -1,18 +1,24 @@
 // Anime4K GLSL ES fragment shader
-// Stage 2/4: Color PUSH
-// pushes color based on luminance in alpha channel.
+// Stage 1/3: Color (Color GET + Color PUSH in one pass)
+// computes the luminance of the kernel on the fly, pushes color based on it and stores the luminance of the result in alpha channel. 9 fetches per pixel.
 
 // DEMO_MODE skips processing the RIGHT half of the screen completely
 #define DEMO_MODE false
 
 
+// precision of the texture sampler, set by GLAnime4K to match the format of the intermediate textures:
+// lowp for RGBA8 (8 bits per channel), mediump for RGBA16F (half float)
+#ifndef A4K_SAMPLER_PRECISION
+#define A4K_SAMPLER_PRECISION lowp
+#endif
+
 precision mediump float;
 
 // coordinates on the current texture (range 0.0 - 1.0!)
 varying highp vec2 vTextureCoord;
 
 // the current texture
-uniform lowp sampler2D sTexture;
+uniform A4K_SAMPLER_PRECISION sampler2D sTexture;
 
 // the size of the current texture
 uniform highp vec2 vTextureSize;
@@ -20,6 +26,12 @@ uniform highp vec2 vTextureSize;
 // push strenght (0.0-1.0)
 uniform float fPushStrength;
 
+float getLuminance(vec4 c)
+{
+	const vec3 W = vec3(0.2125, 0.7154, 0.0721);
+	return dot(c.rgb, W);
+}
+
 float max3c(vec4 a, vec4 b, vec4 c)
 {
 	return max(max(a.a, b.a), c.a);
@@ -54,7 +66,9 @@ vec2 transCoord(vec2 texCoord, vec2 pxAmount)
 
 vec4 sampleTexture(vec2 texCoord, vec2 pxOffset)
 {
-	return texture2D(sTexture, transCoord(texCoord, pxOffset));
+	// sample color and put luminance into alpha (this was the Color GET stage)
+	vec4 c = texture2D(sTexture, transCoord(texCoord, pxOffset));
+	return vec4(c.rgb, clamp(getLuminance(c), 0.0, 1.0));
 }
 
 void main()
@@ -172,4 +186,4 @@ void main()
 
 	// set pixel
 	gl_FragColor = lightest;
-}
\ No newline at end of file
+}
@@ -0,0 +1,364 @@
+#version 310 es
+// Anime4K GLSL ES 3.1 compute shader
+// one full pass (Color GET + PUSH, Gradient GET + PUSH) in a single dispatch.
+// every work group loads a tile of the source plus a halo into shared memory once, and runs all stages on it:
+// - the gradient push of a pixel needs the gradient of its 3x3 neighbours
+// - the gradient of a pixel needs the pushed color of its 3x3 neighbours
+// - the color push of a pixel needs the source of its 3x3 neighbours
+// so the source tile needs a halo of 3 pixels, the color tile 2 and the gradient tile 1.
+// the source is sampled at the output resolution, so scaling between render and processing resolution is done by the load stage.
+
+// format of the output image, set by GLAnime4KCompute to match the format of the output textures
+#ifndef A4K_IMAGE_FORMAT
+#define A4K_IMAGE_FORMAT rgba8
+#endif
+
+// size of the output tile of one work group
+#define TILE_SIZE 16
+
+// size of the tiles in shared memory (tile + halo)
+#define SRC_SIZE (TILE_SIZE + 6)
+#define COL_SIZE (TILE_SIZE + 4)
+#define GRAD_SIZE (TILE_SIZE + 2)
+
+// invocations of one work group (GLES 3.1 only guarantees 128)
+#define INVOCATIONS 128
+
+precision highp float;
+precision highp image2D;
+precision mediump sampler2D;
+
+layout(local_size_x = 16, local_size_y = 8, local_size_z = 1) in;
+
+// the source texture
+uniform sampler2D sTexture;
+
+// the output image
+layout(A4K_IMAGE_FORMAT, binding = 0) writeonly uniform image2D oImage;
+
+// the size of the output image
+uniform vec2 vTextureSize;
+
+// push strenghts (0.0-1.0)
+uniform float fColorPushStrength;
+uniform float fGradPushStrength;
+
+// source color, with luminance in alpha
+shared vec4 srcTile[SRC_SIZE * SRC_SIZE];
+
+// pushed color, with luminance in alpha
+shared vec4 colTile[COL_SIZE * COL_SIZE];
+
+// gradient of the pushed color
+shared float gradTile[GRAD_SIZE * GRAD_SIZE];
+
+float getLuminance(vec4 c)
+{
+	const vec3 W = vec3(0.2125, 0.7154, 0.0721);
+	return dot(c.rgb, W);
+}
+
+float max3(float a, float b, float c)
+{
+	return max(max(a, b), c);
+}
+
+float min3(float a, float b, float c)
+{
+	return min(min(a, b), c);
+}
+
+vec4 getLargest(vec4 cc, vec4 lightest, vec4 a, vec4 b, vec4 c)
+{
+	vec4 nc = (cc * (1.0 - fColorPushStrength)) + (((a + b + c) / 3.0) * fColorPushStrength);
+
+	if(nc.a > lightest.a)
+	{
+		return nc;
+	}
+
+	return lightest;
+}
+
+vec4 getAverage(vec4 cc, vec4 a, vec4 b, vec4 c)
+{
+	return (cc * (1.0 - fGradPushStrength)) + ((a + b + c) / 3.0) * fGradPushStrength;
+}
+
+// Stage 1: Color (GET + PUSH) of the pixel at x, y of the color tile
+vec4 colorPush(int x, int y)
+{
+	// the color tile is offset by one pixel in the source tile
+	int i = (y + 1) * SRC_SIZE + (x + 1);
+
+	// Kernel defination:
+	// [tl][tc][tr]
+	// [ml][mc][mr]
+	// [bl][bc][br]
+	vec4 tl = srcTile[i - SRC_SIZE - 1];
+	vec4 tc = srcTile[i - SRC_SIZE];
+	vec4 tr = srcTile[i - SRC_SIZE + 1];
+	vec4 ml = srcTile[i - 1];
+	vec4 mc = srcTile[i];
+	vec4 mr = srcTile[i + 1];
+	vec4 bl = srcTile[i + SRC_SIZE - 1];
+	vec4 bc = srcTile[i + SRC_SIZE];
+	vec4 br = srcTile[i + SRC_SIZE + 1];
+
+	// default lightest color to center
+	vec4 lightest = mc;
+
+	// Kernel 0+4
+	float maxD = max3(br.a, bc.a, bl.a);
+	float minL = min3(tl.a, tc.a, tr.a);
+
+	if(minL > mc.a && minL > maxD)
+	{
+		lightest = getLargest(mc, lightest, tl, tc, tr);
+	}
+	else
+	{
+		maxD = max3(tl.a, tc.a, tr.a);
+		minL = min3(br.a, bc.a, bl.a);
+
+		if(minL > mc.a && minL > maxD)
+		{
+			lightest = getLargest(mc, lightest, br, bc, bl);
+		}
+	}
+
+	// Kernel 1+5
+	maxD = max3(mc.a, ml.a, bc.a);
+	minL = min3(mr.a, tc.a, tr.a);
+
+	if(minL > maxD)
+	{
+		lightest = getLargest(mc, lightest, mr, tc, tr);
+	}
+	else
+	{
+		maxD = max3(mc.a, mr.a, tc.a);
+		minL = min3(bl.a, ml.a, bc.a);
+
+		if(minL > maxD)
+		{
+			lightest = getLargest(mc, lightest, bl, ml, bc);
+		}
+	}
+
+	// Kernel 2+6
+	maxD = max3(ml.a, tl.a, bl.a);
+	minL = min3(mr.a, br.a, tr.a);
+
+	if(minL > mc.a && minL > maxD)
+	{
+		lightest = getLargest(mc, lightest, mr, br, tr);
+	}
+	else
+	{
+		maxD = max3(mr.a, br.a, tr.a);
+		minL = min3(ml.a, tl.a, bl.a);
+
+		if(minL > mc.a && minL > maxD)
+		{
+			lightest = getLargest(mc, lightest, ml, tl, bl);
+		}
+	}
+
+	// Kernel 3+7
+	maxD = max3(mc.a, ml.a, tc.a);
+	minL = min3(mr.a, br.a, bc.a);
+
+	if(minL > maxD)
+	{
+		lightest = getLargest(mc, lightest, mr, br, bc);
+	}
+	else
+	{
+		maxD = max3(mc.a, mr.a, bc.a);
+		minL = min3(tc.a, ml.a, tl.a);
+
+		if(minL > maxD)
+		{
+			lightest = getLargest(mc, lightest, tc, ml, tl);
+		}
+	}
+
+	return lightest;
+}
+
+// Stage 2: Gradient GET of the pixel at x, y of the gradient tile
+float gradientGet(int x, int y)
+{
+	// the gradient tile is offset by one pixel in the color tile
+	int i = (y + 1) * COL_SIZE + (x + 1);
+
+	float tl = colTile[i - COL_SIZE - 1].a;
+	float tc = colTile[i - COL_SIZE].a;
+	float tr = colTile[i - COL_SIZE + 1].a;
+	float ml = colTile[i - 1].a;
+	float mr = colTile[i + 1].a;
+	float bl = colTile[i + COL_SIZE - 1].a;
+	float bc = colTile[i + COL_SIZE].a;
+	float br = colTile[i + COL_SIZE + 1].a;
+
+	// Using function from Anime4K 0.9:
+	//Horizontal Gradient
+	//[-1  0  1]
+	//[-2  0  2]
+	//[-1  0  1]
+	float xGrad = (-tl + tr - ml - ml + mr + mr - bl + br);
+
+	//Vertical Gradient
+	//[-1 -2 -1]
+	//[ 0  0  0]
+	//[ 1  2  1]
+	float yGrad = (-tl - tc - tc - tr + bl + bc + bc + br);
+
+	return 1.0 - clamp(sqrt(xGrad * xGrad + yGrad * yGrad), 0.0, 1.0);
+}
+
+// Stage 3: Gradient PUSH of the pixel at x, y of the output tile
+vec4 gradientPush(int x, int y)
+{
+	// the output tile is offset by one pixel in the gradient tile, and by two in the color tile
+	int g = (y + 1) * GRAD_SIZE + (x + 1);
+	int c = (y + 2) * COL_SIZE + (x + 2);
+
+	// kernel setup, with the gradient of every pixel in alpha
+	vec4 tl = vec4(colTile[c - COL_SIZE - 1].rgb, gradTile[g - GRAD_SIZE - 1]);
+	vec4 tc = vec4(colTile[c - COL_SIZE].rgb, gradTile[g - GRAD_SIZE]);
+	vec4 tr = vec4(colTile[c - COL_SIZE + 1].rgb, gradTile[g - GRAD_SIZE + 1]);
+	vec4 ml = vec4(colTile[c - 1].rgb, gradTile[g - 1]);
+	vec4 mc = vec4(colTile[c].rgb, gradTile[g]);
+	vec4 mr = vec4(colTile[c + 1].rgb, gradTile[g + 1]);
+	vec4 bl = vec4(colTile[c + COL_SIZE - 1].rgb, gradTile[g + GRAD_SIZE - 1]);
+	vec4 bc = vec4(colTile[c + COL_SIZE].rgb, gradTile[g + GRAD_SIZE]);
+	vec4 br = vec4(colTile[c + COL_SIZE + 1].rgb, gradTile[g + GRAD_SIZE + 1]);
+
+	// default lightest color to center
+	vec4 lightest = mc;
+
+	// Kernel 0+4
+	float maxD = max3(br.a, bc.a, bl.a);
+	float minL = min3(tl.a, tc.a, tr.a);
+
+	if(minL > mc.a && minL > maxD)
+	{
+		lightest = getAverage(mc, tl, tc, tr);
+	}
+	else
+	{
+		maxD = max3(tl.a, tc.a, tr.a);
+		minL = min3(br.a, bc.a, bl.a);
+
+		if(minL > mc.a && minL > maxD)
+		{
+			lightest = getAverage(mc, br, bc, bl);
+		}
+	}
+
+	// Kernel 1+5
+	maxD = max3(mc.a, ml.a, bc.a);
+	minL = min3(mr.a, tc.a, tr.a);
+
+	if(minL > maxD)
+	{
+		lightest = getAverage(mc, mr, tc, tr);
+	}
+	else
+	{
+		maxD = max3(mc.a, mr.a, tc.a);
+		minL = min3(bl.a, ml.a, bc.a);
+
+		if(minL > maxD)
+		{
+			lightest = getAverage(mc, bl, ml, bc);
+		}
+	}
+
+	// Kernel 2+6
+	maxD = max3(ml.a, tl.a, bl.a);
+	minL = min3(mr.a, br.a, tr.a);
+
+	if(minL > mc.a && minL > maxD)
+	{
+		lightest = getAverage(mc, mr, br, tr);
+	}
+	else
+	{
+		maxD = max3(mr.a, br.a, tr.a);
+		minL = min3(ml.a, tl.a, bl.a);
+
+		if(minL > mc.a && minL > maxD)
+		{
+			lightest = getAverage(mc, ml, tl, bl);
+		}
+	}
+
+	// Kernel 3+7
+	maxD = max3(mc.a, ml.a, tc.a);
+	minL = min3(mr.a, br.a, bc.a);
+
+	if(minL > maxD)
+	{
+		lightest = getAverage(mc, mr, br, bc);
+	}
+	else
+	{
+		maxD = max3(mc.a, mr.a, bc.a);
+		minL = min3(tc.a, ml.a, tl.a);
+
+		if(minL > maxD)
+		{
+			lightest = getAverage(mc, tc, ml, tl);
+		}
+	}
+
+	return lightest;
+}
+
+void main()
+{
+	// top left pixel of the source tile, in output image coordinates
+	ivec2 tileOrigin = ivec2(gl_WorkGroupID.xy) * TILE_SIZE - 3;
+	int localIndex = int(gl_LocalInvocationIndex);
+
+	// Stage 0: load the source tile (with halo) and put luminance into alpha (this was the Color GET stage)
+	// pixels outside of the image are clamped to the edge by the sampler
+	for(int i = localIndex; i < SRC_SIZE * SRC_SIZE; i += INVOCATIONS)
+	{
+		ivec2 p = tileOrigin + ivec2(i % SRC_SIZE, i / SRC_SIZE);
+		vec4 c = textureLod(sTexture, (vec2(p) + 0.5) / vTextureSize, 0.0);
+		srcTile[i] = vec4(c.rgb, clamp(getLuminance(c), 0.0, 1.0));
+	}
+	memoryBarrierShared();
+	barrier();
+
+	// Stage 1: color push of the tile + 2 pixels halo
+	for(int i = localIndex; i < COL_SIZE * COL_SIZE; i += INVOCATIONS)
+	{
+		colTile[i] = colorPush(i % COL_SIZE, i / COL_SIZE);
+	}
+	memoryBarrierShared();
+	barrier();
+
+	// Stage 2: gradient of the tile + 1 pixel halo
+	for(int i = localIndex; i < GRAD_SIZE * GRAD_SIZE; i += INVOCATIONS)
+	{
+		gradTile[i] = gradientGet(i % GRAD_SIZE, i / GRAD_SIZE);
+	}
+	memoryBarrierShared();
+	barrier();
+
+	// Stage 3: gradient push of the tile, and write the output
+	ivec2 size = ivec2(vTextureSize);
+	for(int i = localIndex; i < TILE_SIZE * TILE_SIZE; i += INVOCATIONS)
+	{
+		ivec2 p = tileOrigin + 3 + ivec2(i % TILE_SIZE, i / TILE_SIZE);
+		if(p.x < size.x && p.y < size.y)
+		{
+			imageStore(oImage, p, gradientPush(i % TILE_SIZE, i / TILE_SIZE));
+		}
+	}
+}
@@ -0,0 +1,97 @@
+// Anime4K GLSL ES fragment shader
+// Stage 2/3: Gradient GET
+// computes the gradient (edges) of the luminance in alpha channel, written by a4k_color.fs, and stores it into alpha channel. 9 fetches per pixel.
+// this is a separate pass so the gradient of every pixel is computed once: computing it on the fly in the push shader needs the luminance of the surrounding 5x5 pixels (25 fetches).
+// CpuAnime4KKernel.gradient() is the reference for this stage.
+
+// DEMO_MODE skips processing the RIGHT half of the screen completely
+#define DEMO_MODE false
+
+
+// precision of the texture sampler, set by GLAnime4K to match the format of the intermediate textures:
+// lowp for RGBA8 (8 bits per channel), mediump for RGBA16F (half float)
+#ifndef A4K_SAMPLER_PRECISION
+#define A4K_SAMPLER_PRECISION lowp
+#endif
+
+precision mediump float;
+
+// coordinates on the current texture (range 0.0 - 1.0!)
+varying highp vec2 vTextureCoord;
+
+// the current texture
+uniform A4K_SAMPLER_PRECISION sampler2D sTexture;
+
+// the size of the current texture
+uniform highp vec2 vTextureSize;
+
+vec2 transCoord(vec2 texCoord, vec2 pxAmount)
+{
+	//normalize pxAmount (range 0 - width OR 0 - height to range 0-1)
+	vec2 texAmount = vec2(pxAmount.x / vTextureSize.x, pxAmount.y / vTextureSize.y);
+	
+	//translate given texture coordinates
+	return texCoord + texAmount;
+}
+
+vec4 sampleTexture(vec2 texCoord, vec2 pxOffset)
+{
+	return texture2D(sTexture, transCoord(texCoord, pxOffset));
+}
+
+float getGradient(float tl, float tc, float tr, float ml, float mr, float bl, float bc, float br)
+{
+	// Using function from Anime4K 0.9:
+	//Horizontal Gradient
+	//[-1  0  1]
+	//[-2  0  2]
+	//[-1  0  1]
+	float xGrad = (-tl + tr - ml - ml + mr + mr - bl + br);
+	
+	//Vertical Gradient
+	//[-1 -2 -1]
+	//[ 0  0  0]
+	//[ 1  2  1]
+	float yGrad = (-tl - tc - tc - tr + bl + bc + bc + br);
+	
+	//Computes the luminance's gradient
+	return 1.0 - clamp(sqrt(xGrad * xGrad + yGrad * yGrad), 0.0, 1.0);
+}
+
+void main()
+{
+	// DEMO mode: only apply for half of the screen
+	if(DEMO_MODE)
+	{
+		if(vTextureCoord.x > 0.499 && vTextureCoord.x < 0.501)
+		{
+			// draw black line in center (also to hide artifacts)
+			gl_FragColor = vec4(0.0, 0.0, 0.0, 1.0);
+			return;
+		}
+		else if(vTextureCoord.x > 0.5) 
+		{
+			// skip processing right side of screen
+			gl_FragColor = texture2D(sTexture, vTextureCoord);
+			return;
+		}
+	}
+
+	// Kernel defination:
+	// [tl][tc][tr]
+	// [ml][mc][mr]
+	// [bl][bc][br]
+	// only the luminance (in alpha) of the neighbours is needed, the color of the center is kept
+	float tl = sampleTexture(vTextureCoord, vec2(-1.0, -1.0)).a;
+	float tc = sampleTexture(vTextureCoord, vec2( 0.0, -1.0)).a;
+	float tr = sampleTexture(vTextureCoord, vec2( 1.0, -1.0)).a;
+	float ml = sampleTexture(vTextureCoord, vec2(-1.0,  0.0)).a;
+	vec4  mc = sampleTexture(vTextureCoord, vec2( 0.0,  0.0));
+	float mr = sampleTexture(vTextureCoord, vec2( 1.0,  0.0)).a;
+	float bl = sampleTexture(vTextureCoord, vec2(-1.0,  1.0)).a;
+	float bc = sampleTexture(vTextureCoord, vec2( 0.0,  1.0)).a;
+	float br = sampleTexture(vTextureCoord, vec2( 1.0,  1.0)).a;
+
+	// set pixel, with the gradient in alpha
+	gl_FragColor = vec4(mc.rgb, getGradient(tl, tc, tr, ml, mr, bl, bc, br));
+}
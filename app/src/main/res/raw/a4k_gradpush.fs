@@ -1,18 +1,25 @@
 // Anime4K GLSL ES fragment shader
-// Stage 4/4: Gradient PUSH
-// pushes gradient based on gradient information in alpha channel.
+// Stage 3/3: Gradient PUSH
+// pushes color based on the gradient (edges) in alpha channel, written by a4k_gradient.fs. 9 fetches per pixel.
+// CpuAnime4KKernel.push() with gradient push is the reference for this stage.
 
 // DEMO_MODE skips processing the RIGHT half of the screen completely
 #define DEMO_MODE false
 
 
+// precision of the texture sampler, set by GLAnime4K to match the format of the intermediate textures:
+// lowp for RGBA8 (8 bits per channel), mediump for RGBA16F (half float)
+#ifndef A4K_SAMPLER_PRECISION
+#define A4K_SAMPLER_PRECISION lowp
+#endif
+
 precision mediump float;
 
 // coordinates on the current texture (range 0.0 - 1.0!)
 varying highp vec2 vTextureCoord;
 
 // the current texture
-uniform lowp sampler2D sTexture;
+uniform A4K_SAMPLER_PRECISION sampler2D sTexture;
 
 // the size of the current texture
 uniform highp vec2 vTextureSize;
@@ -69,27 +76,20 @@ void main()
 		}
 	}
 
-    // Kernel defination:
+	// Kernel defination, with the gradient of every pixel in alpha:
 	// [tl][tc][tr]
 	// [ml][mc][mr]
 	// [bl][bc][br]
-
-	// kernel setup:
-	// top
 	vec4 tl = sampleTexture(vTextureCoord, vec2(-1.0, -1.0));
 	vec4 tc = sampleTexture(vTextureCoord, vec2( 0.0, -1.0));
 	vec4 tr = sampleTexture(vTextureCoord, vec2( 1.0, -1.0));
-
-	// center
-	vec4 ml = sampleTexture(vTextureCoord, vec2(-1.0, 0.0));
-	vec4 mc = sampleTexture(vTextureCoord, vec2( 0.0, 0.0));
-	vec4 mr = sampleTexture(vTextureCoord, vec2( 1.0, 0.0));
-
-	// bottom
-	vec4 bl = sampleTexture(vTextureCoord, vec2(-1.0, 1.0));
-	vec4 bc = sampleTexture(vTextureCoord, vec2( 0.0, 1.0));
-	vec4 br = sampleTexture(vTextureCoord, vec2( 1.0, 1.0));
-
+	vec4 ml = sampleTexture(vTextureCoord, vec2(-1.0,  0.0));
+	vec4 mc = sampleTexture(vTextureCoord, vec2( 0.0,  0.0));
+	vec4 mr = sampleTexture(vTextureCoord, vec2( 1.0,  0.0));
+	vec4 bl = sampleTexture(vTextureCoord, vec2(-1.0,  1.0));
+	vec4 bc = sampleTexture(vTextureCoord, vec2( 0.0,  1.0));
+	vec4 br = sampleTexture(vTextureCoord, vec2( 1.0,  1.0));
+	
 	// default lightest color to center
 	vec4 lightest = mc;
 		
@@ -169,7 +169,7 @@ void main()
 		}
 	}
 	
-    // set current fragment color
+	// set current fragment color
 	// resetting alpha not needed since it is ignored anyway.
 	gl_FragColor = lightest;
-}
\ No newline at end of file
+}
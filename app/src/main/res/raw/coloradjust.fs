@@ -0,0 +1,32 @@
+// Color adjustment GLSL ES fragment shader
+// applies brightness, contrast and saturation
+
+precision mediump float;
+
+// coordinates on the current texture (range 0.0 - 1.0!)
+varying highp vec2 vTextureCoord;
+
+// the current texture
+uniform lowp sampler2D sTexture;
+
+// added to the color (-1.0 - 1.0, 0.0 = unchanged)
+uniform float fBrightness;
+
+// contrast factor (1.0 = unchanged)
+uniform float fContrast;
+
+// saturation factor (0.0 = grayscale, 1.0 = unchanged)
+uniform float fSaturation;
+
+void main()
+{
+	const vec3 W = vec3(0.2125, 0.7154, 0.0721);
+	vec4 cc = texture2D(sTexture, vTextureCoord);
+
+	// brightness + contrast around mid gray
+	vec3 c = (cc.rgb - 0.5) * fContrast + 0.5 + fBrightness;
+
+	// saturation: mix between luminance and color
+	c = mix(vec3(dot(c, W)), c, fSaturation);
+	gl_FragColor = vec4(clamp(c, 0.0, 1.0), cc.a);
+}
@@ -1,8 +1,7 @@
 // Common GLSL ES Vertex shader for Anime4K Fragment shaders:
-// - colorget.fs
-// - colorpush.fs
-// - gradget.fs
-// - gradpush.fs
+// - a4k_color.fs
+// - a4k_gradient.fs
+// - a4k_gradpush.fs
 	
 attribute vec4 aPosition;
 attribute vec4 aTextureCoord;
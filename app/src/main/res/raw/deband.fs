@@ -0,0 +1,54 @@
+// Deband GLSL ES fragment shader
+// compares the pixel with 4 pixels at a random angle and distance around it.
+// if all differ only slightly (= banding in a flat area), the pixel is replaced by their average.
+// a bit of grain is added to hide the remaining steps
+
+precision mediump float;
+
+// coordinates on the current texture (range 0.0 - 1.0!)
+varying highp vec2 vTextureCoord;
+
+// the current texture
+uniform lowp sampler2D sTexture;
+
+// the size of the current texture
+uniform highp vec2 vTextureSize;
+
+// max. color difference that is considered banding (0.0-1.0)
+uniform float fThreshold;
+
+// distance to the sampled pixels, in pixels
+uniform float fRange;
+
+// strength of the added grain (0.0-1.0)
+uniform float fGrain;
+
+highp float random(highp vec2 co)
+{
+	return fract(sin(dot(co, vec2(12.9898, 78.233))) * 43758.5453);
+}
+
+void main()
+{
+	vec4 cc = texture2D(sTexture, vTextureCoord);
+
+	// random offset around the pixel
+	highp float angle = random(vTextureCoord) * 6.2831853;
+	highp float dist = fRange * (0.5 + 0.5 * random(vTextureCoord.yx));
+	highp vec2 o = vec2(cos(angle), sin(angle)) * dist / vTextureSize;
+
+	// average of 4 pixels on a cross around the pixel
+	vec3 avg = (texture2D(sTexture, vTextureCoord + o).rgb
+		+ texture2D(sTexture, vTextureCoord - o).rgb
+		+ texture2D(sTexture, vTextureCoord + vec2(-o.y, o.x)).rgb
+		+ texture2D(sTexture, vTextureCoord + vec2(o.y, -o.x)).rgb) * 0.25;
+
+	// use the average only if the difference is small enough to be banding
+	vec3 diff = abs(cc.rgb - avg);
+	float isBanding = step(max(max(diff.r, diff.g), diff.b), fThreshold);
+	vec3 result = mix(cc.rgb, avg, isBanding);
+
+	// add grain
+	result += (random(vTextureCoord + 0.5) - 0.5) * fGrain;
+	gl_FragColor = vec4(clamp(result, 0.0, 1.0), cc.a);
+}
@@ -0,0 +1,32 @@
+// Sharpen GLSL ES fragment shader
+// unsharp mask: the difference between the pixel and the average of its direct neighbours is added to the pixel
+
+precision mediump float;
+
+// coordinates on the current texture (range 0.0 - 1.0!)
+varying highp vec2 vTextureCoord;
+
+// the current texture
+uniform lowp sampler2D sTexture;
+
+// the size of the current texture
+uniform highp vec2 vTextureSize;
+
+// sharpening strength (0.0 = none)
+uniform float fStrength;
+
+void main()
+{
+	highp vec2 d = 1.0 / vTextureSize;
+	vec4 cc = texture2D(sTexture, vTextureCoord);
+
+	// blur using the direct neighbours
+	vec3 blur = (texture2D(sTexture, vTextureCoord + vec2(-d.x, 0.0)).rgb
+		+ texture2D(sTexture, vTextureCoord + vec2(d.x, 0.0)).rgb
+		+ texture2D(sTexture, vTextureCoord + vec2(0.0, -d.y)).rgb
+		+ texture2D(sTexture, vTextureCoord + vec2(0.0, d.y)).rgb) * 0.25;
+
+	// add the detail that was removed by the blur
+	vec3 sharp = cc.rgb + (cc.rgb - blur) * fStrength;
+	gl_FragColor = vec4(clamp(sharp, 0.0, 1.0), cc.a);
+}
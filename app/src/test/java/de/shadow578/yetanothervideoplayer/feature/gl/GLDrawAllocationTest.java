@@ -0,0 +1,227 @@
+package de.shadow578.yetanothervideoplayer.feature.gl;
+
+import android.content.ContextWrapper;
+import android.content.res.Resources;
+
+import com.daasuu.epf.EFramebufferObject;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that drawing a frame with the GL filters does not allocate, once warmed up.
+ * The gl layer is the android.jar of unit tests (unitTests.returnDefaultValues), where every GLES20 call is a no- op returning 0,
+ * so this runs drawUsingProgram() and setCustomUniforms() of the filters with everything but the gpu work.
+ * Programs and frame buffers are replaced by test doubles, as creating them needs a real gl context.
+ */
+public class GLDrawAllocationTest
+{
+    /**
+     * frames drawn before measuring, so lazy initialization is done
+     */
+    private static final int WARMUP_FRAMES = 200;
+
+    /**
+     * frames drawn while measuring
+     */
+    private static final int FRAMES = 1000;
+
+    /**
+     * render surface size
+     */
+    private static final int RENDER_WIDTH = 1920, RENDER_HEIGHT = 1080;
+
+    @Test
+    public void copyFilterDoesNotAllocate()
+    {
+        GLFilterBase filter = new GLFilterBase()
+        {
+            @Override
+            protected GLProgram createProgram(String vertexSource, String fragmentSource)
+            {
+                return new GLProgram(1);
+            }
+        };
+        assertNoAllocationsPerFrame("copy", filter);
+    }
+
+    @Test
+    public void shaderFiltersDoNotAllocate()
+    {
+        ShaderContext ctx = new ShaderContext();
+        assertNoAllocationsPerFrame("sharpen", new GLSharpen(ctx)
+        {
+            @Override
+            protected GLProgram createProgram(String vertexSource, String fragmentSource)
+            {
+                return new GLProgram(1);
+            }
+        });
+        assertNoAllocationsPerFrame("color adjust", new GLColorAdjust(ctx)
+        {
+            @Override
+            protected GLProgram createProgram(String vertexSource, String fragmentSource)
+            {
+                return new GLProgram(1);
+            }
+        });
+        assertNoAllocationsPerFrame("deband", new GLDeband(ctx)
+        {
+            @Override
+            protected GLProgram createProgram(String vertexSource, String fragmentSource)
+            {
+                return new GLProgram(1);
+            }
+        });
+    }
+
+    @Test
+    public void anime4KDoesNotAllocate()
+    {
+        //video at render size: all passes draw to buffer, gradientBuffer and the target
+        assertNoAllocationsPerFrame("anime4k at render size", createAnime4K(RENDER_WIDTH, RENDER_HEIGHT));
+
+        //smaller video: processed at a lower resolution into outputBuffer, then scaled to the target
+        assertNoAllocationsPerFrame("anime4k scaled", createAnime4K(640, 360));
+    }
+
+    /**
+     * create a anime4k filter with every program id set to 1, and frame buffers without gl objects
+     *
+     * @param videoWidth  width of the video
+     * @param videoHeight height of the video
+     * @return the filter
+     */
+    private static GLAnime4K createAnime4K(int videoWidth, int videoHeight)
+    {
+        GLAnime4K a4k = new GLAnime4K(new ShaderContext(), 1, 2, 3, 4, 5)
+        {
+            @Override
+            protected GLProgram createProgram(String vertexSource, String fragmentSource)
+            {
+                return new GLProgram(1);
+            }
+        };
+        a4k.setFramebufferPool(new TestFramebufferPool());
+        a4k.onVideoSizeChanged(videoWidth, videoHeight, 0, 1f);
+        return a4k;
+    }
+
+    /**
+     * Set up a filter, warm it up, then assert that drawing frames allocates nothing (on average, so a rare stats update is fine)
+     *
+     * @param name   name of the filter, for the message
+     * @param filter the filter to draw
+     */
+    private static void assertNoAllocationsPerFrame(String name, GLFilterBase filter)
+    {
+        TestFramebuffer target = new TestFramebuffer(RENDER_WIDTH, RENDER_HEIGHT);
+        filter.setup();
+        filter.setFrameSize(RENDER_WIDTH, RENDER_HEIGHT);
+        for (int i = 0; i < WARMUP_FRAMES; i++)
+            filter.draw(7, target);
+
+        //the measurement itself may allocate, subtract that
+        long overhead = allocatedBytes();
+        overhead = allocatedBytes() - overhead;
+
+        long start = allocatedBytes();
+        for (int i = 0; i < FRAMES; i++)
+            filter.draw(7, target);
+        long allocated = allocatedBytes() - start - overhead;
+
+        assertEquals(name + ": bytes allocated per frame (" + allocated + " in " + FRAMES + " frames)", 0, allocated / FRAMES);
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far
+     */
+    private static long allocatedBytes()
+    {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Context that returns the default fragment shader for every raw resource
+     */
+    private static final class ShaderContext extends ContextWrapper
+    {
+        @SuppressWarnings("deprecation")
+        private final Resources resources = new Resources(null, null, null)
+        {
+            @Override
+            public InputStream openRawResource(int id)
+            {
+                return new ByteArrayInputStream(GLFilterBase.DEFAULT_FRAGMENT_SHADER.getBytes());
+            }
+        };
+
+        ShaderContext()
+        {
+            super(null);
+        }
+
+        @Override
+        public Resources getResources()
+        {
+            return resources;
+        }
+
+        @Override
+        public File getCodeCacheDir()
+        {
+            //no program binaries, programs are not created
+            return null;
+        }
+    }
+
+    /**
+     * Frame buffer with a size, but without gl objects
+     */
+    private static final class TestFramebuffer extends EFramebufferObject
+    {
+        private int width, height;
+
+        TestFramebuffer(int width, int height)
+        {
+            setup(width, height);
+        }
+
+        @Override
+        public void setup(int width, int height)
+        {
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int getWidth()
+        {
+            return width;
+        }
+
+        @Override
+        public int getHeight()
+        {
+            return height;
+        }
+    }
+
+    /**
+     * Pool that creates TestFramebuffers
+     */
+    private static final class TestFramebufferPool extends GLFramebufferPool
+    {
+        @Override
+        public EFramebufferObject obtain(int width, int height, boolean halfFloat)
+        {
+            return new TestFramebuffer(width, height);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package de.shadow578.yetanothervideoplayer.feature.swipe;
+
+import android.graphics.PointF;
+import android.graphics.RectF;
+import android.util.SizeF;
+import android.view.InputDevice;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowInputDevice;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that touch processing of {@link SwipeGestureListener} does not allocate, once warmed up.
+ * Replays gesture traces like a touch screen delivers them (DOWN, MOVEs with the samples between frames batched into their history, UP)
+ * through onTouch(). MotionEvents are real (robolectric), and are created once before measuring.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SwipeGestureAllocationTest
+{
+    /**
+     * times all traces are replayed before measuring, so lazy initialization is done
+     */
+    private static final int WARMUP_REPLAYS = 100;
+
+    /**
+     * times all traces are replayed while measuring
+     */
+    private static final int REPLAYS = 500;
+
+    /**
+     * move events per gesture, and samples batched into the history of each move
+     */
+    private static final int MOVE_EVENTS = 12, HISTORY = 3;
+
+    /**
+     * time between two touch samples, in ms
+     */
+    private static final int SAMPLE_MS = 4;
+
+    /**
+     * size of the touched view (px = dp in robolectric)
+     */
+    private static final int VIEW_WIDTH = 1920, VIEW_HEIGHT = 1080;
+
+    @Test
+    public void replayingGesturesDoesNotAllocate()
+    {
+        View view = new View(RuntimeEnvironment.application);
+        view.layout(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+        CountingListener listener = new CountingListener();
+
+        //a horizontal and a vertical fling, starting far apart so no DOWN is taken as double- tap
+        MotionEvent[][] traces = {
+                createTrace(1000, 1500, 500, 700, 540),
+                createTrace(5000, 600, 200, 640, 900)
+        };
+
+        replay(listener, view, traces, WARMUP_REPLAYS);
+
+        //the measurement itself may allocate, subtract that
+        long overhead = allocatedBytes();
+        overhead = allocatedBytes() - overhead;
+
+        listener.reset();
+        long start = allocatedBytes();
+        replay(listener, view, traces, REPLAYS);
+        long allocated = allocatedBytes() - start - overhead;
+
+        //check the traces were recognized as swipes and flings
+        assertEquals(2 * REPLAYS, listener.swipeStarts);
+        assertEquals(REPLAYS, listener.horizontalFlings);
+        assertEquals(REPLAYS, listener.verticalFlings);
+        assertTrue(listener.horizontalSwipes >= REPLAYS && listener.verticalSwipes >= REPLAYS);
+        assertEquals(0, listener.clicks);
+        assertEquals(0, listener.doubleClicks);
+
+        assertEquals("bytes allocated per replay (" + allocated + " in " + REPLAYS + " replays)", 0, allocated / REPLAYS);
+    }
+
+    /**
+     * feed all events of the traces to the listener
+     *
+     * @param listener the listener
+     * @param view     the view that is touched
+     * @param traces   the traces to replay
+     * @param times    how often all traces are replayed
+     */
+    private static void replay(SwipeGestureListener listener, View view, MotionEvent[][] traces, int times)
+    {
+        for (int i = 0; i < times; i++)
+            for (MotionEvent[] trace : traces)
+                for (MotionEvent e : trace)
+                    listener.onTouch(view, e);
+    }
+
+    /**
+     * Create a straight gesture trace: DOWN, MOVE_EVENTS moves with HISTORY batched samples each, UP
+     *
+     * @param downTime time the finger is pressed down, in ms
+     * @param fromX    x position the finger is pressed down at
+     * @param fromY    y position the finger is pressed down at
+     * @param toX      x position the finger is lifted at
+     * @param toY      y position the finger is lifted at
+     * @return the events of the trace
+     */
+    private static MotionEvent[] createTrace(long downTime, float fromX, float fromY, float toX, float toY)
+    {
+        int samples = MOVE_EVENTS * (HISTORY + 1);
+        MotionEvent[] trace = new MotionEvent[MOVE_EVENTS + 2];
+        trace[0] = MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, fromX, fromY, 0);
+
+        int sample = 0;
+        for (int m = 1; m <= MOVE_EVENTS; m++)
+        {
+            MotionEvent move = null;
+            for (int h = 0; h <= HISTORY; h++)
+            {
+                //addBatch() moves the current sample into the history
+                sample++;
+                float t = (float) sample / samples;
+                long time = downTime + sample * SAMPLE_MS;
+                float x = fromX + ((toX - fromX) * t);
+                float y = fromY + ((toY - fromY) * t);
+                if (move == null)
+                    move = MotionEvent.obtain(downTime, time, MotionEvent.ACTION_MOVE, x, y, 0);
+                else
+                    move.addBatch(time, x, y, 1f, 1f, 0);
+            }
+            trace[m] = move;
+        }
+
+        trace[MOVE_EVENTS + 1] = MotionEvent.obtain(downTime, downTime + sample * SAMPLE_MS, MotionEvent.ACTION_UP, toX, toY, 0);
+        return trace;
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far
+     */
+    private static long allocatedBytes()
+    {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Listener that counts the events it fires
+     */
+    private static final class CountingListener extends SwipeGestureListener
+    {
+        /**
+         * robolectric events have no input device, use one without motion ranges (screen size = view size)
+         */
+        private final InputDevice device = ShadowInputDevice.makeInputDeviceNamed("touchscreen");
+
+        int swipeStarts, horizontalSwipes, verticalSwipes, horizontalFlings, verticalFlings, clicks, doubleClicks;
+
+        CountingListener()
+        {
+            super(1000, 200, 10, 50, 5, new RectF(0, 0, 0, 0));
+
+            //the shadow device is created without constructor, so it has no list of motion ranges
+            ReflectionHelpers.setField(device, "mMotionRanges", new ArrayList<>());
+        }
+
+        void reset()
+        {
+            swipeStarts = horizontalSwipes = verticalSwipes = horizontalFlings = verticalFlings = clicks = doubleClicks = 0;
+        }
+
+        @Override
+        protected InputDevice getInputDevice(MotionEvent e)
+        {
+            return device;
+        }
+
+        @Override
+        protected void onSwipeStart(PointF firstContact, SizeF screenSize)
+        {
+            swipeStarts++;
+        }
+
+        @Override
+        protected void onHorizontalSwipe(float deltaX, float velocityX, PointF swipeStart, PointF swipeEnd, PointF firstContact, SizeF screenSize)
+        {
+            horizontalSwipes++;
+        }
+
+        @Override
+        protected void onVerticalSwipe(float deltaY, float velocityY, PointF swipeStart, PointF swipeEnd, PointF firstContact, SizeF screenSize)
+        {
+            verticalSwipes++;
+        }
+
+        @Override
+        protected void onHorizontalFling(float deltaX, PointF flingStart, PointF flingEnd, SizeF screenSize)
+        {
+            horizontalFlings++;
+        }
+
+        @Override
+        protected void onVerticalFling(float deltaY, PointF flingStart, PointF flingEnd, SizeF screenSize)
+        {
+            verticalFlings++;
+        }
+
+        @Override
+        protected void onNoSwipeClick(View view, PointF clickPos, SizeF screenSize)
+        {
+            clicks++;
+        }
+
+        @Override
+        protected void onDoubleClick(float distanceSquared, long tapDeltaTime, PointF firstTouchPos, PointF secondTouchPos, SizeF screenSize)
+        {
+            doubleClicks++;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package de.shadow578.yetanothervideoplayer.feature.upscale;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the three draw Anime4K shader pipeline of GLAnime4K computes the same as the old four draw pipeline,
+ * and both the same as {@link CpuAnime4KKernel}. See {@link Anime4KShaderReference} for the shader models.
+ */
+public class Anime4KShaderPipelineTest
+{
+    /**
+     * image sizes, including single pixels and rows (every pixel is a edge)
+     */
+    private static final int[][] SIZES = {{1, 1}, {1, 5}, {6, 1}, {2, 3}, {17, 9}, {64, 40}};
+
+    /**
+     * color and gradient push strengths, 0-256
+     */
+    private static final int[][] STRENGTHS = {{85, 256}, {0, 128}, {256, 0}, {43, 171}};
+
+    @Test
+    public void pipelineMatchesOldPipeline()
+    {
+        Random random = new Random(578);
+        for (int[] size : SIZES)
+            for (int[] strength : STRENGTHS)
+                for (int passes = 1; passes <= 3; passes++)
+                {
+                    int[] image = CpuAnime4KKernelTest.createImage(size[0], size[1], random);
+                    Anime4KShaderReference.Texture old = Anime4KShaderReference.runOldPipeline(texture(image, size), passes, strength[0], strength[1], null);
+                    Anime4KShaderReference.Texture current = Anime4KShaderReference.runPipeline(texture(image, size), passes, strength[0], strength[1], null);
+
+                    //alpha included: both gradient push shaders output the pushed gradient in alpha
+                    assertArrayEquals(describe(size, strength, passes), old.texels, current.texels);
+                }
+    }
+
+    @Test
+    public void pipelineMatchesCpuKernel()
+    {
+        Random random = new Random(4);
+        int[] modes = {CpuAnime4KKernel.MODE_SCALAR, CpuAnime4KKernel.MODE_BANDED, CpuAnime4KKernel.MODE_TILED};
+        for (int[] size : SIZES)
+            for (int[] strength : STRENGTHS)
+                for (int passes = 1; passes <= 3; passes++)
+                {
+                    int[] image = CpuAnime4KKernelTest.createImage(size[0], size[1], random);
+                    int[] gpu = rgb(Anime4KShaderReference.runPipeline(texture(image, size), passes, strength[0], strength[1], null).texels);
+                    for (int mode : modes)
+                    {
+                        //alpha excluded: the kernel stores the luminance of the result for the next pass, the shaders recompute it
+                        int[] pixels = image.clone();
+                        int[] cpu = rgb(CpuAnime4KKernel.process(pixels, new int[pixels.length], size[0], size[1], passes, strength[0], strength[1], mode));
+                        assertArrayEquals("mode " + mode + ", " + describe(size, strength, passes), gpu, cpu);
+                    }
+                }
+    }
+
+    @Test
+    public void fetchesPerPixel()
+    {
+        int[] size = {32, 18};
+        int[] image = CpuAnime4KKernelTest.createImage(size[0], size[1], new Random(1));
+        int pixels = size[0] * size[1];
+        long[] fetches = new long[2];
+
+        //old: 1 + 9 + 9 + 9
+        Anime4KShaderReference.runOldPipeline(texture(image, size), 2, 85, 256, fetches);
+        assertEquals(28L * pixels, fetches[0]);
+        assertEquals(28L * pixels, fetches[1]);
+
+        //current: 9 + 9 + 9
+        Anime4KShaderReference.runPipeline(texture(image, size), 2, 85, 256, fetches);
+        assertEquals(27L * pixels, fetches[0]);
+        assertEquals(27L * pixels, fetches[1]);
+    }
+
+    private static Anime4KShaderReference.Texture texture(int[] image, int[] size)
+    {
+        return new Anime4KShaderReference.Texture(image.clone(), size[0], size[1]);
+    }
+
+    private static int[] rgb(int[] pixels)
+    {
+        int[] rgb = new int[pixels.length];
+        for (int i = 0; i < pixels.length; i++)
+            rgb[i] = pixels[i] & 0xFFFFFF;
+        return rgb;
+    }
+
+    private static String describe(int[] size, int[] strength, int passes)
+    {
+        return size[0] + " x " + size[1] + ", strength " + strength[0] + " / " + strength[1] + ", " + passes + " passes";
+    }
+}
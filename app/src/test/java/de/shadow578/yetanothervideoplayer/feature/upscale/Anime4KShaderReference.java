@@ -0,0 +1,262 @@
+package de.shadow578.yetanothervideoplayer.feature.upscale;
+
+/**
+ * Pure java models of the Anime4K fragment shaders: every draw runs a shader for every fragment of a new render target.
+ * Sampling clamps to the edge (like GL_CLAMP_TO_EDGE), and every texture fetch is counted.
+ * The arithmetic is the 8 bit fixed point math of {@link CpuAnime4KKernel}, so pipelines can be compared bit exact:
+ * this checks which texels feed which stage and how the stages are split into draws, not float rounding of the gpu.
+ */
+final class Anime4KShaderReference
+{
+    //region Shaders
+
+    /**
+     * colorget.fs (old stage 1/4): luminance of the pixel into alpha
+     */
+    static final int OLD_COLOR_GET = 0;
+
+    /**
+     * colorpush.fs (old stage 2/4): color push on the luminance in alpha
+     */
+    static final int OLD_COLOR_PUSH = 1;
+
+    /**
+     * gradget.fs (old stage 3/4): gradient of the luminance in alpha into alpha
+     */
+    static final int OLD_GRADIENT_GET = 2;
+
+    /**
+     * gradpush.fs (old stage 4/4): gradient push on the gradient in alpha
+     */
+    static final int OLD_GRADIENT_PUSH = 3;
+
+    /**
+     * a4k_color.fs (stage 1/3): luminance of every fetched pixel on the fly, then color push
+     */
+    static final int COLOR = 4;
+
+    /**
+     * a4k_gradient.fs (stage 2/3): gradient of the luminance in alpha into alpha
+     */
+    static final int GRADIENT = 5;
+
+    /**
+     * a4k_gradpush.fs (stage 3/3): gradient push on the gradient in alpha
+     */
+    static final int GRADIENT_PUSH = 6;
+    //endregion
+
+    /**
+     * A texture (or render target), ARGB
+     */
+    static final class Texture
+    {
+        final int[] texels;
+        final int width, height;
+
+        /**
+         * number of fetches from this texture
+         */
+        long fetches;
+
+        Texture(int[] texels, int width, int height)
+        {
+            this.texels = texels;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * texture2D() with GL_CLAMP_TO_EDGE and GL_NEAREST
+         */
+        int fetch(int x, int y)
+        {
+            fetches++;
+            x = Math.max(0, Math.min(width - 1, x));
+            y = Math.max(0, Math.min(height - 1, y));
+            return texels[y * width + x];
+        }
+    }
+
+    private Anime4KShaderReference()
+    {
+    }
+
+    /**
+     * Run the old pipeline: four draws per pass (color get, color push, gradient get, gradient push)
+     *
+     * @param source       the source texture
+     * @param passes       how many passes are executed
+     * @param colStrength  color push strength, 0-256
+     * @param gradStrength gradient push strength, 0-256
+     * @param fetches      receives the texture fetches of every pass. may be null
+     * @return the output of the last draw
+     */
+    static Texture runOldPipeline(Texture source, int passes, int colStrength, int gradStrength, long[] fetches)
+    {
+        Texture t = source;
+        for (int pass = 0; pass < passes; pass++)
+        {
+            Texture colorGet = draw(OLD_COLOR_GET, t, 0);
+            Texture colorPush = draw(OLD_COLOR_PUSH, colorGet, colStrength);
+            Texture gradientGet = draw(OLD_GRADIENT_GET, colorPush, 0);
+            Texture out = draw(OLD_GRADIENT_PUSH, gradientGet, gradStrength);
+            if (fetches != null)
+                fetches[pass] = t.fetches + colorGet.fetches + colorPush.fetches + gradientGet.fetches;
+            t = out;
+        }
+        return t;
+    }
+
+    /**
+     * Run the pipeline of GLAnime4K: three draws per pass (color, gradient, gradient push)
+     *
+     * @param source       the source texture
+     * @param passes       how many passes are executed
+     * @param colStrength  color push strength, 0-256
+     * @param gradStrength gradient push strength, 0-256
+     * @param fetches      receives the texture fetches of every pass. may be null
+     * @return the output of the last draw
+     */
+    static Texture runPipeline(Texture source, int passes, int colStrength, int gradStrength, long[] fetches)
+    {
+        Texture t = source;
+        for (int pass = 0; pass < passes; pass++)
+        {
+            Texture color = draw(COLOR, t, colStrength);
+            Texture gradient = draw(GRADIENT, color, 0);
+            Texture out = draw(GRADIENT_PUSH, gradient, gradStrength);
+            if (fetches != null)
+                fetches[pass] = t.fetches + color.fetches + gradient.fetches;
+            t = out;
+        }
+        return t;
+    }
+
+    /**
+     * Draw a full screen quad with a shader, sampling a texture
+     *
+     * @param shader   the shader, one of the constants of this class
+     * @param src      the texture the shader samples
+     * @param strength push strength of the shader, 0-256
+     * @return the new render target
+     */
+    static Texture draw(int shader, Texture src, int strength)
+    {
+        int[] out = new int[src.width * src.height];
+        for (int y = 0; y < src.height; y++)
+            for (int x = 0; x < src.width; x++)
+                out[y * src.width + x] = shade(shader, src, strength, x, y);
+        return new Texture(out, src.width, src.height);
+    }
+
+    /**
+     * run a shader for one fragment
+     */
+    private static int shade(int shader, Texture src, int strength, int x, int y)
+    {
+        switch (shader)
+        {
+            case OLD_COLOR_GET:
+                return CpuAnime4KKernel.withLuminance(src.fetch(x, y));
+            case OLD_COLOR_PUSH:
+                return push(src, x, y, true, false, strength);
+            case COLOR:
+                return push(src, x, y, true, true, strength);
+            case OLD_GRADIENT_GET:
+            case GRADIENT:
+                return gradient(src, x, y);
+            case OLD_GRADIENT_PUSH:
+            case GRADIENT_PUSH:
+                return push(src, x, y, false, false, strength);
+            default:
+                throw new IllegalArgumentException("unknown shader " + shader);
+        }
+    }
+
+    /**
+     * gradient get: sobel on the alpha of the 8 neighbours, color of the center is kept. 9 fetches
+     */
+    private static int gradient(Texture src, int x, int y)
+    {
+        int tl = src.fetch(x - 1, y - 1) >>> 24, tc = src.fetch(x, y - 1) >>> 24, tr = src.fetch(x + 1, y - 1) >>> 24;
+        int ml = src.fetch(x - 1, y) >>> 24, mc = src.fetch(x, y), mr = src.fetch(x + 1, y) >>> 24;
+        int bl = src.fetch(x - 1, y + 1) >>> 24, bc = src.fetch(x, y + 1) >>> 24, br = src.fetch(x + 1, y + 1) >>> 24;
+
+        int xGrad = -tl + tr - ml - ml + mr + mr - bl + br;
+        int yGrad = -tl - tc - tc - tr + bl + bc + bc + br;
+        int grad = 255 - Math.min(255, (int) Math.sqrt(xGrad * xGrad + yGrad * yGrad));
+        return (mc & 0xFFFFFF) | (grad << 24);
+    }
+
+    /**
+     * color or gradient push, following the kernels of the shaders. 9 fetches
+     *
+     * @param isColor     color push (keep the lightest) or gradient push (keep the last)?
+     * @param lumOnTheFly compute the luminance of every fetched pixel into alpha (a4k_color.fs)?
+     */
+    private static int push(Texture src, int x, int y, boolean isColor, boolean lumOnTheFly, int strength)
+    {
+        // [tl][tc][tr]
+        // [ml][mc][mr]
+        // [bl][bc][br]
+        int tl = sample(src, x - 1, y - 1, lumOnTheFly), tc = sample(src, x, y - 1, lumOnTheFly), tr = sample(src, x + 1, y - 1, lumOnTheFly);
+        int ml = sample(src, x - 1, y, lumOnTheFly), mc = sample(src, x, y, lumOnTheFly), mr = sample(src, x + 1, y, lumOnTheFly);
+        int bl = sample(src, x - 1, y + 1, lumOnTheFly), bc = sample(src, x, y + 1, lumOnTheFly), br = sample(src, x + 1, y + 1, lumOnTheFly);
+        int mca = mc >>> 24;
+        int lightest = mc;
+
+        // Kernel 0+4
+        if (min3(tl, tc, tr) > mca && min3(tl, tc, tr) > max3(br, bc, bl))
+            lightest = average(isColor, strength, mc, lightest, tl, tc, tr);
+        else if (min3(br, bc, bl) > mca && min3(br, bc, bl) > max3(tl, tc, tr))
+            lightest = average(isColor, strength, mc, lightest, br, bc, bl);
+
+        // Kernel 1+5
+        if (min3(mr, tc, tr) > max3(mc, ml, bc))
+            lightest = average(isColor, strength, mc, lightest, mr, tc, tr);
+        else if (min3(bl, ml, bc) > max3(mc, mr, tc))
+            lightest = average(isColor, strength, mc, lightest, bl, ml, bc);
+
+        // Kernel 2+6
+        if (min3(mr, br, tr) > mca && min3(mr, br, tr) > max3(ml, tl, bl))
+            lightest = average(isColor, strength, mc, lightest, mr, br, tr);
+        else if (min3(ml, tl, bl) > mca && min3(ml, tl, bl) > max3(mr, br, tr))
+            lightest = average(isColor, strength, mc, lightest, ml, tl, bl);
+
+        // Kernel 3+7
+        if (min3(mr, br, bc) > max3(mc, ml, tc))
+            lightest = average(isColor, strength, mc, lightest, mr, br, bc);
+        else if (min3(tc, ml, tl) > max3(mc, mr, bc))
+            lightest = average(isColor, strength, mc, lightest, tc, ml, tl);
+
+        return lightest;
+    }
+
+    /**
+     * fetch a pixel, optionally with its luminance in alpha (sampleTexture() of a4k_color.fs)
+     */
+    private static int sample(Texture src, int x, int y, boolean lumOnTheFly)
+    {
+        int c = src.fetch(x, y);
+        return lumOnTheFly ? CpuAnime4KKernel.withLuminance(c) : c;
+    }
+
+    /**
+     * getLargest() (color push) or getAverage() (gradient push)
+     */
+    private static int average(boolean isColor, int strength, int cc, int lightest, int a, int b, int c)
+    {
+        return CpuAnime4KKernel.push(isColor, strength, cc, lightest, a, b, c);
+    }
+
+    private static int max3(int a, int b, int c)
+    {
+        return CpuAnime4KKernel.max3(a, b, c);
+    }
+
+    private static int min3(int a, int b, int c)
+    {
+        return CpuAnime4KKernel.min3(a, b, c);
+    }
+}
@@ -0,0 +1,76 @@
+package de.shadow578.yetanothervideoplayer.feature.upscale;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link CpuAnime4KKernel}: the scalar, banded and tiled modes must give the same output.
+ */
+public class CpuAnime4KKernelTest
+{
+    /**
+     * image sizes, including single pixels and rows, and sizes that are no multiple of bands or tiles
+     */
+    private static final int[][] SIZES = {{1, 1}, {1, 7}, {9, 1}, {3, 3}, {64, 64}, {65, 33}, {130, 70}, {200, 129}};
+
+    @Test
+    public void modesGiveSameResult()
+    {
+        Random random = new Random(578);
+        for (int[] size : SIZES)
+            for (int passes = 0; passes <= 3; passes++)
+            {
+                int[] image = createImage(size[0], size[1], random);
+                int[] scalar = process(image, size[0], size[1], passes, CpuAnime4KKernel.MODE_SCALAR);
+                String msg = size[0] + " x " + size[1] + ", " + passes + " passes";
+                assertArrayEquals("banded, " + msg, scalar, process(image, size[0], size[1], passes, CpuAnime4KKernel.MODE_BANDED));
+                assertArrayEquals("tiled, " + msg, scalar, process(image, size[0], size[1], passes, CpuAnime4KKernel.MODE_TILED));
+            }
+    }
+
+    @Test
+    public void flatImageStaysFlat()
+    {
+        int[] image = new int[32 * 16];
+        Arrays.fill(image, 0xFF336699);
+        int[] result = process(image, 32, 16, 2, CpuAnime4KKernel.MODE_TILED);
+        for (int c : result)
+            assertEquals(0x336699, c & 0xFFFFFF);
+    }
+
+    /**
+     * run the kernel on a copy of the image
+     *
+     * @return the result, with luminance in alpha
+     */
+    static int[] process(int[] image, int width, int height, int passes, int mode)
+    {
+        int[] pixels = image.clone();
+        int[] buffer = new int[pixels.length];
+        return CpuAnime4KKernel.process(pixels, buffer, width, height, passes, 85, 256, mode).clone();
+    }
+
+    /**
+     * create a random image of flat blocks with dark edges (like anime), plus some noise
+     *
+     * @return the image, ARGB
+     */
+    static int[] createImage(int width, int height, Random random)
+    {
+        int[] image = new int[width * height];
+        int blockColor = 0;
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+            {
+                if (x % 7 == 0) blockColor = 0xFF000000 | random.nextInt(0x1000000);
+                boolean edge = (x % 7 == 6) || (y % 5 == 4);
+                image[y * width + x] = edge ? 0xFF101010 : (random.nextInt(8) == 0 ? 0xFF000000 | random.nextInt(0x1000000) : blockColor);
+            }
+        return image;
+    }
+}
@@ -0,0 +1,104 @@
+package de.shadow578.yetanothervideoplayer.feature.upscale;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the scalar, banded and tiled modes of {@link CpuAnime4KKernel} across resolutions, from thumbnail size to 1080p.
+ * The image is cel- shaded like anime (flat regions with dark outlines), so the push kernels take the same branches as on real frames.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CpuAnime4KBenchmark
+{
+    /**
+     * size of the processed image (after scaling), width x height
+     */
+    @Param({"256x144", "640x360", "1280x720", "1920x1080"})
+    public String resolution;
+
+    /**
+     * the kernel mode, see CpuAnime4KKernel.MODE_
+     */
+    @Param({"SCALAR", "BANDED", "TILED"})
+    public String mode;
+
+    /**
+     * the unprocessed image, copied into pixels before every run
+     */
+    private int[] source;
+
+    /**
+     * pixels and scratch buffer passed to the kernel
+     */
+    private int[] pixels, buffer;
+
+    private int width, height, kernelMode;
+
+    @Setup
+    public void setup()
+    {
+        String[] size = resolution.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        kernelMode = "SCALAR".equals(mode) ? CpuAnime4KKernel.MODE_SCALAR
+                : "BANDED".equals(mode) ? CpuAnime4KKernel.MODE_BANDED : CpuAnime4KKernel.MODE_TILED;
+
+        source = createCelImage(width, height, 578);
+        pixels = new int[width * height];
+        buffer = new int[width * height];
+    }
+
+    /**
+     * 2 passes with the push strength of a 2x upscale, like thumbnails in the media picker
+     */
+    @Benchmark
+    public int[] process()
+    {
+        System.arraycopy(source, 0, pixels, 0, source.length);
+        return CpuAnime4KKernel.process(pixels, buffer, width, height, 2, 85, 256, kernelMode);
+    }
+
+    /**
+     * Create a image of flat colored circles with dark outlines on a flat background
+     *
+     * @param width  width of the image
+     * @param height height of the image
+     * @param seed   seed of the circle positions and colors
+     * @return the image, ARGB
+     */
+    private static int[] createCelImage(int width, int height, long seed)
+    {
+        Random random = new Random(seed);
+        int[] image = new int[width * height];
+        Arrays.fill(image, 0xFFE0D0C0);
+
+        int circles = Math.max(4, width * height / 4096);
+        for (int i = 0; i < circles; i++)
+        {
+            int cx = random.nextInt(width);
+            int cy = random.nextInt(height);
+            int r = 4 + random.nextInt(Math.max(1, Math.min(width, height) / 8));
+            int color = 0xFF000000 | random.nextInt(0x1000000);
+            for (int y = Math.max(0, cy - r); y < Math.min(height, cy + r + 1); y++)
+                for (int x = Math.max(0, cx - r); x < Math.min(width, cx + r + 1); x++)
+                {
+                    int dSq = (x - cx) * (x - cx) + (y - cy) * (y - cy);
+                    if (dSq <= r * r)
+                        image[y * width + x] = dSq >= (r - 2) * (r - 2) ? 0xFF202020 : color;
+                }
+        }
+        return image;
+    }
+}